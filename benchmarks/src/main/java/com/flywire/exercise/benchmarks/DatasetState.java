@@ -0,0 +1,53 @@
+package com.flywire.exercise.benchmarks;
+
+import com.flywire.exercise.service.EmployeeService;
+import com.flywire.exercise.util.FileUtil;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * A generated data directory with a store and service opened on it, shared by
+ * all threads of a trial. The directory is deleted again afterwards.
+ */
+@State(Scope.Benchmark)
+public class DatasetState {
+
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    // The default is what production runs; pass -p mode=journal to compare
+    @Param({"json"})
+    public String mode;
+
+    public Path directory;
+    public FileUtil fileUtil;
+    public EmployeeService employeeService;
+
+    @Setup(Level.Trial)
+    public void open() throws IOException {
+        directory = EmployeeGenerator.writeDataDirectory(rows, 42);
+        fileUtil = new FileUtil(mode, 64, 1, false, directory.toString());
+        employeeService = new EmployeeService(fileUtil);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        if (fileUtil != null) {
+            fileUtil.close();
+        }
+        EmployeeGenerator.deleteDirectory(directory);
+    }
+
+    // Generated managers come first, so ids in the first tenth always have reports and stay active
+    public long randomManagerId(Random random) {
+        return EmployeeGenerator.FIRST_ID + random.nextInt(Math.max(1, rows / 10));
+    }
+}
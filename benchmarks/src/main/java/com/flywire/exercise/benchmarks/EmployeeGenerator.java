@@ -0,0 +1,104 @@
+package com.flywire.exercise.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flywire.exercise.model.Employee;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Synthetic employees shaped like a real company: one head, every manager with
+ * 3 to 10 direct reports filled in breadth-first (so a million people sit about
+ * seven levels deep), common first and last names that repeat, a handful of
+ * positions and hire dates over the last twenty years. About one in twelve
+ * individual contributors is inactive. The same seed always gives the same data.
+ */
+public final class EmployeeGenerator {
+
+    // Well clear of the ids in the bundled json/data.json
+    public static final long FIRST_ID = 100_000;
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+    private static final int HISTORY_DAYS = 20 * 365;
+
+    private static final String[] FIRST_NAMES = {
+            "James", "Mary", "Robert", "Patricia", "John", "Jennifer", "Michael", "Linda", "David", "Elizabeth",
+            "William", "Barbara", "Richard", "Susan", "Joseph", "Jessica", "Thomas", "Sarah", "Charles", "Karen",
+            "Daniel", "Lisa", "Matthew", "Nancy", "Anthony", "Betty", "Mark", "Sandra", "Steven", "Ashley",
+            "Paul", "Emily", "Andrew", "Donna", "Joshua", "Michelle", "Kenneth", "Carol", "Kevin", "Amanda"
+    };
+    private static final String[] LAST_NAMES = {
+            "Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller", "Davis", "Rodriguez", "Martinez",
+            "Hernandez", "Lopez", "Gonzalez", "Wilson", "Anderson", "Thomas", "Taylor", "Moore", "Jackson", "Martin",
+            "Lee", "Perez", "Thompson", "White", "Harris", "Sanchez", "Clark", "Ramirez", "Lewis", "Robinson",
+            "Walker", "Young", "Allen", "King", "Wright", "Scott", "Torres", "Nguyen", "Hill", "Flores",
+            "Green", "Adams", "Nelson", "Baker", "Hall", "Rivera", "Campbell", "Mitchell", "Carter", "Roberts"
+    };
+    private static final String[] MANAGER_POSITIONS = {"Director", "Engineering Manager", "Sales Manager", "Team Lead"};
+    private static final String[] POSITIONS = {
+            "Software Engineer", "Accountant", "HR", "Sales Representative", "Designer", "Analyst", "Support Engineer"
+    };
+
+    private EmployeeGenerator() {
+    }
+
+    public static List<Employee> generate(int count, long seed) {
+        Random random = new Random(seed);
+        long today = System.currentTimeMillis() / MILLIS_PER_DAY;
+        List<Employee> employees = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " "
+                    + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            Date hireDate = new Date((today - random.nextInt(HISTORY_DAYS)) * MILLIS_PER_DAY);
+            employees.add(new Employee(FIRST_ID + i, name, null, true, hireDate, false));
+        }
+
+        // Breadth-first: each manager in turn takes the next 3 to 10 employees as reports
+        int next = 1;
+        for (int manager = 0; manager < count && next < count; manager++) {
+            int reports = 3 + random.nextInt(8);
+            for (int r = 0; r < reports && next < count; r++) {
+                employees.get(manager).getDirectReports().add(employees.get(next++).getId());
+            }
+        }
+
+        for (Employee emp : employees) {
+            if (emp.getDirectReports().isEmpty()) {
+                emp.setPosition(POSITIONS[random.nextInt(POSITIONS.length)]);
+                // Deactivation clears reports, so only people without reports are ever inactive
+                emp.setActive(random.nextInt(12) != 0);
+            } else {
+                emp.setPosition(MANAGER_POSITIONS[random.nextInt(MANAGER_POSITIONS.length)]);
+            }
+        }
+        employees.get(0).setPosition("CEO");
+        return employees;
+    }
+
+    /**
+     * Writes {@code count} generated employees as new_employees.json into a new
+     * temporary directory, ready to be used as the application's data directory.
+     */
+    public static Path writeDataDirectory(int count, long seed) throws IOException {
+        Path directory = Files.createTempDirectory("employees-bench");
+        new ObjectMapper().writeValue(new File(directory.toFile(), "new_employees.json"), generate(count, seed));
+        return directory;
+    }
+
+    public static void deleteDirectory(Path directory) throws IOException {
+        if (directory == null || !Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.flywire.exercise.benchmarks;
+
+import com.flywire.exercise.model.Employee;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The read and write paths of {@link com.flywire.exercise.service.EmployeeService}
+ * that the API spends most of its time in. List results are lazy views, so every
+ * element is consumed to include the cost of producing it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class EmployeeServiceBenchmark {
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    // Ids for created employees, above anything the generator hands out
+    private static final AtomicLong NEXT_ID = new AtomicLong(1_000_000_000L);
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        final Random random = new Random(7);
+    }
+
+    // A fresh employee for every deleteEmployee call, created outside the measured time
+    @State(Scope.Thread)
+    public static class DeleteState {
+        long id;
+
+        @Setup(Level.Invocation)
+        public void create(DatasetState dataset, ThreadState thread) throws IOException {
+            id = NEXT_ID.getAndIncrement();
+            dataset.employeeService.createEmployee(newEmployee(id), dataset.randomManagerId(thread.random));
+        }
+    }
+
+    @Benchmark
+    public void getAllActiveEmployees(DatasetState dataset, Blackhole blackhole) throws IOException {
+        for (Employee employee : dataset.employeeService.getAllActiveEmployees()) {
+            blackhole.consume(employee);
+        }
+    }
+
+    // A random 90-day window of hire dates, about 1.2% of the employees
+    @Benchmark
+    public void getEmployeesByHireDateRange(DatasetState dataset, ThreadState thread, Blackhole blackhole)
+            throws IOException {
+        long today = System.currentTimeMillis() / MILLIS_PER_DAY;
+        long start = today - 90 - thread.random.nextInt(20 * 365 - 90);
+        for (Employee employee : dataset.employeeService.getEmployeesByHireDateRange(
+                new Date(start * MILLIS_PER_DAY), new Date((start + 90) * MILLIS_PER_DAY))) {
+            blackhole.consume(employee);
+        }
+    }
+
+    @Benchmark
+    public Employee createEmployee(DatasetState dataset, ThreadState thread) throws IOException {
+        return dataset.employeeService.createEmployee(newEmployee(NEXT_ID.getAndIncrement()),
+                dataset.randomManagerId(thread.random));
+    }
+
+    @Benchmark
+    public void deleteEmployee(DatasetState dataset, DeleteState state) throws IOException {
+        dataset.employeeService.deleteEmployee(state.id);
+    }
+
+    private static Employee newEmployee(long id) {
+        Employee employee = new Employee();
+        employee.setId(id);
+        employee.setName("Bench Employee" + id);
+        employee.setPosition("Software Engineer");
+        employee.setHireDate(new Date());
+        return employee;
+    }
+}
@@ -0,0 +1,49 @@
+package com.flywire.exercise.benchmarks;
+
+import com.flywire.exercise.model.Employee;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole-dataset reads and rewrites through {@link com.flywire.exercise.util.FileUtil}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class FileUtilBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class WriteState {
+        List<Employee> employees;
+
+        @Setup(Level.Trial)
+        public void read(DatasetState dataset) {
+            employees = dataset.fileUtil.readEmployees();
+        }
+    }
+
+    @Benchmark
+    public List<Employee> readEmployees(DatasetState dataset) {
+        return dataset.fileUtil.readEmployees();
+    }
+
+    @Benchmark
+    public void writeEmployees(DatasetState dataset, WriteState state) throws IOException {
+        dataset.fileUtil.writeEmployees(state.employees);
+    }
+}
@@ -0,0 +1,322 @@
+package com.flywire.exercise.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flywire.exercise.FlywireSpringBootApp;
+import com.flywire.exercise.model.Employee;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Boots the application on a random port against a generated data directory and
+ * drives the REST API from a pool of client threads with a weighted mix of
+ * operations, then prints throughput and latency percentiles per operation.
+ * Everything runs in one JVM on localhost, with no network access needed.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.flywire.exercise.benchmarks.LoadTest \
+ *     --rows=100000 --threads=16 --warmup=10 --duration=60 \
+ *     --mix=poll:60,list:10,hired:20,create:5,deactivate:5 --mode=json
+ * </pre>
+ * {@code poll} re-fetches the active list with the ETag of the last response, as a
+ * browser would; {@code list} always fetches it in full. {@code deactivate} works
+ * on employees created earlier in the run and creates one when there are none.
+ */
+public final class LoadTest {
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+    // Latencies are recorded in microseconds, up to a minute
+    private static final long MAX_MICROS = TimeUnit.MINUTES.toMicros(1);
+    private static final List<String> OPERATIONS = Arrays.asList("poll", "list", "hired", "create", "deactivate");
+
+    private final String baseUrl;
+    private final int rows;
+    private final Map<String, Integer> mix;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicLong nextId = new AtomicLong(1_000_000_000L);
+    private final Queue<Long> created = new ConcurrentLinkedQueue<>();
+
+    private LoadTest(String baseUrl, int rows, Map<String, Integer> mix) {
+        this.baseUrl = baseUrl;
+        this.rows = rows;
+        this.mix = mix;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        int rows = Integer.parseInt(options.getOrDefault("rows", "100000"));
+        int threads = Integer.parseInt(options.getOrDefault("threads", "16"));
+        int warmupSeconds = Integer.parseInt(options.getOrDefault("warmup", "10"));
+        int durationSeconds = Integer.parseInt(options.getOrDefault("duration", "60"));
+        String mode = options.getOrDefault("mode", "json");
+        Map<String, Integer> mix = parseMix(options.getOrDefault("mix", "poll:60,list:10,hired:20,create:5,deactivate:5"));
+
+        Path directory = EmployeeGenerator.writeDataDirectory(rows, 42);
+        ConfigurableApplicationContext context = SpringApplication.run(FlywireSpringBootApp.class,
+                "--server.port=0",
+                "--server.address=127.0.0.1",
+                "--employees.data-dir=" + directory,
+                "--employees.persistence.mode=" + mode,
+                "--spring.main.banner-mode=off");
+        try {
+            int port = context.getEnvironment().getProperty("local.server.port", Integer.class);
+            System.out.printf("Serving %d generated employees from %s on port %d (%s mode)%n", rows, directory, port, mode);
+            new LoadTest("http://127.0.0.1:" + port + "/api/employees", rows, mix)
+                    .run(threads, warmupSeconds, durationSeconds);
+        } finally {
+            context.close();
+            EmployeeGenerator.deleteDirectory(directory);
+        }
+    }
+
+    private void run(int threads, int warmupSeconds, int durationSeconds) throws InterruptedException {
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        List<Client> clients = new ArrayList<>(threads);
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            Client client = new Client(i, measureFrom, end);
+            clients.add(client);
+            Thread worker = new Thread(client, "load-client-" + i);
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        // Each client kept its own histograms; they are only merged here
+        Map<String, Histogram> latencies = new LinkedHashMap<>();
+        Map<String, Long> errors = new LinkedHashMap<>();
+        Histogram total = newHistogram();
+        long totalErrors = 0;
+        for (String operation : mix.keySet()) {
+            Histogram merged = newHistogram();
+            long failed = 0;
+            for (Client client : clients) {
+                merged.add(client.latencies.get(operation));
+                failed += client.errors.get(operation);
+            }
+            latencies.put(operation, merged);
+            errors.put(operation, failed);
+            total.add(merged);
+            totalErrors += failed;
+        }
+
+        System.out.printf("%n%d client threads, %ds measured after %ds warmup%n", threads, durationSeconds, warmupSeconds);
+        System.out.printf("%-12s %10s %8s %10s %10s %10s %10s %10s%n",
+                "operation", "count", "errors", "ops/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        for (String operation : mix.keySet()) {
+            print(operation, latencies.get(operation), errors.get(operation), durationSeconds);
+        }
+        print("total", total, totalErrors, durationSeconds);
+    }
+
+    private static void print(String operation, Histogram histogram, long errors, int seconds) {
+        System.out.printf("%-12s %10d %8d %10.1f %10.3f %10.3f %10.3f %10.3f%n",
+                operation, histogram.getTotalCount(), errors, histogram.getTotalCount() / (double) seconds,
+                histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(99) / 1000.0,
+                histogram.getValueAtPercentile(99.9) / 1000.0, histogram.getMaxValue() / 1000.0);
+    }
+
+    private final class Client implements Runnable {
+        private final Random random;
+        private final long measureFrom;
+        private final long end;
+        private final Map<String, Histogram> latencies = new LinkedHashMap<>();
+        private final Map<String, Long> errors = new LinkedHashMap<>();
+        private final String[] choices;
+        private String etag;
+
+        Client(int index, long measureFrom, long end) {
+            this.random = new Random(index);
+            this.measureFrom = measureFrom;
+            this.end = end;
+            List<String> weighted = new ArrayList<>();
+            for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+                latencies.put(entry.getKey(), newHistogram());
+                errors.put(entry.getKey(), 0L);
+                for (int i = 0; i < entry.getValue(); i++) {
+                    weighted.add(entry.getKey());
+                }
+            }
+            this.choices = weighted.toArray(new String[0]);
+        }
+
+        @Override
+        public void run() {
+            long now;
+            while ((now = System.nanoTime()) < end) {
+                String operation = choices[random.nextInt(choices.length)];
+                boolean ok;
+                try {
+                    ok = execute(operation);
+                } catch (IOException e) {
+                    ok = false;
+                }
+                long finished = System.nanoTime();
+                if (now >= measureFrom) {
+                    latencies.get(operation).recordValue(Math.min(MAX_MICROS, (finished - now) / 1000));
+                    if (!ok) {
+                        errors.put(operation, errors.get(operation) + 1);
+                    }
+                }
+            }
+        }
+
+        private boolean execute(String operation) throws IOException {
+            switch (operation) {
+                case "poll":
+                    return poll();
+                case "list":
+                    return request("GET", "", null, null) == 200;
+                case "hired":
+                    return hired();
+                case "create":
+                    return create();
+                case "deactivate":
+                    Long id = created.poll();
+                    if (id == null) {
+                        return create();
+                    }
+                    return request("PUT", "/" + id + "/deactivate", null, null) == 200;
+                default:
+                    throw new IllegalArgumentException("Unknown operation: " + operation);
+            }
+        }
+
+        private boolean poll() throws IOException {
+            HttpURLConnection connection = open("GET", "");
+            if (etag != null) {
+                connection.setRequestProperty("If-None-Match", etag);
+            }
+            int status = finish(connection, null);
+            if (status == 200) {
+                etag = connection.getHeaderField("ETag");
+            }
+            return status == 200 || status == 304;
+        }
+
+        // A 90-day window of hire dates anywhere in the generated history
+        private boolean hired() throws IOException {
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            long today = System.currentTimeMillis() / MILLIS_PER_DAY;
+            long start = today - 90 - random.nextInt(20 * 365 - 90);
+            String query = "/hired?startDate=" + format.format(new Date(start * MILLIS_PER_DAY))
+                    + "&endDate=" + format.format(new Date((start + 90) * MILLIS_PER_DAY)) + "&limit=100";
+            return request("GET", query, null, null) == 200;
+        }
+
+        private boolean create() throws IOException {
+            long id = nextId.getAndIncrement();
+            Employee employee = new Employee();
+            employee.setId(id);
+            employee.setName("Load Test" + id);
+            employee.setPosition("Software Engineer");
+            employee.setHireDate(new Date());
+            // Generated managers come first, so ids in the first tenth always have reports and stay active
+            long managerId = EmployeeGenerator.FIRST_ID + random.nextInt(Math.max(1, rows / 10));
+            boolean ok = request("POST", "?managerId=" + managerId, objectMapper.writeValueAsBytes(employee),
+                    "application/json") == 200;
+            if (ok) {
+                created.add(id);
+            }
+            return ok;
+        }
+    }
+
+    private int request(String method, String path, byte[] body, String contentType) throws IOException {
+        HttpURLConnection connection = open(method, path);
+        if (contentType != null) {
+            connection.setRequestProperty("Content-Type", contentType);
+        }
+        return finish(connection, body);
+    }
+
+    private HttpURLConnection open(String method, String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setRequestMethod(method);
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        connection.setConnectTimeout(10_000);
+        connection.setReadTimeout(60_000);
+        return connection;
+    }
+
+    // Sends the body, if any, and reads the whole response so the connection can be reused
+    private static int finish(HttpURLConnection connection, byte[] body) throws IOException {
+        if (body != null) {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        if (in != null) {
+            byte[] buffer = new byte[8192];
+            try {
+                while (in.read(buffer) >= 0) {
+                    // drain
+                }
+            } finally {
+                in.close();
+            }
+        }
+        return status;
+    }
+
+    private static Histogram newHistogram() {
+        return new Histogram(MAX_MICROS, 3);
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        return options;
+    }
+
+    private static Map<String, Integer> parseMix(String value) {
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        for (String part : value.split(",")) {
+            String[] entry = part.split(":");
+            if (!OPERATIONS.contains(entry[0].trim())) {
+                throw new IllegalArgumentException("Unknown operation " + entry[0] + ", expected one of " + OPERATIONS);
+            }
+            int weight = Integer.parseInt(entry[1].trim());
+            if (weight > 0) {
+                mix.put(entry[0].trim(), weight);
+            }
+        }
+        if (mix.isEmpty()) {
+            throw new IllegalArgumentException("The mix needs at least one operation with a positive weight");
+        }
+        return mix;
+    }
+}
@@ -1,4 +1,4 @@
-import React, { useState, useEffect } from 'react';
+import React, { useState, useEffect, useRef } from 'react';
 import EmployeeTable from './components/EmployeeTable';
 import EmployeeDetails from './components/EmployeeDetails';
 import AddEmployeeForm from './components/AddEmployeeForm';
@@ -23,11 +23,19 @@ function App() {
     type: 'success'
   });
 
+  // What the list currently shows, for change events that arrive after it was loaded
+  const viewRef = useRef({ filter, dateRange });
+  viewRef.current = { filter, dateRange };
+  const closeStreamRef = useRef(null);
+
   // Fetch employees on component mount and filter change
   useEffect(() => {
     fetchEmployees();
   }, [filter, dateRange.startDate, dateRange.endDate]); // eslint-disable-line react-hooks/exhaustive-deps
 
+  // Close the change stream when the app goes away
+  useEffect(() => () => closeStreamRef.current?.(), []);
+
   const getToday = () => '2025-04-13';
   const getMinDate = () => '1925-04-13';
 
@@ -80,6 +88,12 @@ function App() {
       if (data) {
         setEmployees(data);
         setError(null); // Clear any previous errors if data is received successfully
+        // Keep the list current from here on instead of reloading it after every change
+        if (dateRange.startDate) {
+          openChangeStream(null, null);
+        } else {
+          openChangeStream(EmployeeService.getDataVersion(), EmployeeService.getDataEpoch());
+        }
       }
     } catch (err) {
       console.error('Error fetching employees:', err);
@@ -94,6 +108,55 @@ function App() {
     }
   };
 
+  const openChangeStream = (since, epoch) => {
+    closeStreamRef.current?.();
+    closeStreamRef.current = EmployeeService.subscribeToChanges(since, epoch, handleChangeEvent);
+  };
+
+  // Whether an employee belongs in the list as currently filtered
+  const isInView = (employee) => {
+    const { filter: currentFilter, dateRange: currentRange } = viewRef.current;
+    if (currentRange.startDate && currentRange.endDate) {
+      // Hire dates come as MM/dd/yyyy, the range as yyyy-MM-dd
+      const [month, day, year] = (employee.hireDate || '').split('/');
+      const hired = `${year}-${month}-${day}`;
+      return hired >= currentRange.startDate && hired <= currentRange.endDate;
+    }
+    if (currentFilter === 'active') {
+      return employee.active;
+    }
+    if (currentFilter === 'inactive') {
+      return !employee.active;
+    }
+    return true;
+  };
+
+  const handleChangeEvent = (event) => {
+    if (event.type === 'reset') {
+      // The server no longer has the changes since this list was loaded, or has restarted
+      fetchEmployees();
+      return;
+    }
+    setEmployees(prevEmployees => {
+      let next = prevEmployees;
+      if (event.type === 'deleted') {
+        next = next.filter(emp => emp.id !== event.employee.id);
+      }
+      const changed = event.type === 'deleted' ? event.related : [event.employee, ...event.related];
+      changed.forEach(employee => {
+        const exists = next.some(emp => emp.id === employee.id);
+        if (exists) {
+          next = isInView(employee)
+            ? next.map(emp => (emp.id === employee.id ? employee : emp))
+            : next.filter(emp => emp.id !== employee.id);
+        } else if (isInView(employee)) {
+          next = [...next, employee];
+        }
+      });
+      return next;
+    });
+  };
+
   // Function to view employee details
   const handleViewDetails = async (id) => {
     try {
@@ -149,9 +212,6 @@ function App() {
         const details = await EmployeeService.getEmployeeDetails(id);
         setSelectedEmployee(details);
       }
-      
-      fetchEmployees();
-      
     } catch (err) {
       console.error('Error changing employee status:', err);
       showNotification(err.message, 'error');
@@ -173,7 +233,8 @@ function App() {
       setLoadingEmployeeId(id); // Show loading state
       await EmployeeService.deleteEmployee(id);
       console.log('Successfully deleted employee ID:', id);
-      await fetchEmployees(); // Refresh the list
+      // The deleted event updates the list; drop the row now so it doesn't linger until then
+      setEmployees(prevEmployees => prevEmployees.filter(emp => emp.id !== id));
       showNotification('Employee deleted successfully');
     } catch (err) {
       console.error('Error in handleDeleteEmployee:', err);
@@ -189,31 +250,9 @@ function App() {
 
   const handleAddEmployee = async (employee, managerId) => {
     try {
-      // Check if ID is unique
-      const allEmployees = await EmployeeService.getAllEmployees();
-      if (allEmployees.some(e => e.id === employee.id)) {
-        showNotification(`Employee ID ${employee.id} already exists`, 'error');
-        return;
-      }
-
-
-      // Validate direct reports if provided
-      if (employee.directReports.length > 0) {
-        const invalidReports = employee.directReports.filter(
-          id => !allEmployees.some(e => e.id === id)
-        );
-        if (invalidReports.length > 0) {
-          showNotification(
-            `The following direct report IDs do not exist: ${invalidReports.join(', ')}`,
-            'error'
-          );
-          return;
-        }
-      }
-
+      // The server rejects duplicate IDs and unknown direct reports, and the created event adds the row
       const newEmployee = await EmployeeService.createEmployee(employee, managerId);
       setShowAddForm(false);
-      fetchEmployees();
       showNotification(`Employee ${newEmployee.name} added successfully`);
     } catch (err) {
       console.error('Error adding employee:', err);
@@ -1,6 +1,18 @@
 import axios from 'axios';
 
 const API_URL = '/api/employees';
+const EVENT_TYPES = ['created', 'deactivated', 'reactivated', 'deleted', 'updated', 'reset'];
+
+// Version of the data in the last full list loaded and the server run it belongs to, from the
+// X-Data-Version and X-Data-Epoch headers; versions start over when the server restarts
+let dataVersion = null;
+let dataEpoch = null;
+
+const rememberVersion = (response) => {
+  const version = response.headers?.['x-data-version'];
+  dataVersion = version !== undefined ? Number(version) : null;
+  dataEpoch = response.headers?.['x-data-epoch'] ?? null;
+};
 
 const handleError = (error, message) => {
   console.error(message, error);
@@ -14,6 +26,7 @@ const EmployeeService = {
   getAllEmployees: async () => {
     try {
       const response = await axios.get(`${API_URL}/all`);
+      rememberVersion(response);
       return response.data;
     } catch (error) {
       console.error('Error fetching all employees:', error);
@@ -24,6 +37,7 @@ const EmployeeService = {
   getActiveEmployees: async () => {
     try {
       const response = await axios.get(API_URL);
+      rememberVersion(response);
       return response.data;
     } catch (error) {
       console.error('Error fetching active employees:', error);
@@ -100,6 +114,7 @@ const EmployeeService = {
         }
       });
       console.log('Got response:', response.data);
+      rememberVersion(response);
       return response.data;
     } catch (error) {
       console.error('Error fetching employees by hire date:', error);
@@ -109,6 +124,30 @@ const EmployeeService = {
 
 
 
+  getDataVersion: () => dataVersion,
+
+  getDataEpoch: () => dataEpoch,
+
+  // Opens the change event stream, starting after the given data version of the given epoch; returns a
+  // function that closes it. The browser reconnects on its own and the server resumes after the last event
+  // it saw. Events from another epoch (event ids are "<epoch>-<version>") mean the server restarted, so
+  // they arrive as a reset.
+  subscribeToChanges: (since, epoch, onEvent) => {
+    const url = since != null
+      ? `${API_URL}/events?since=${since}&epoch=${encodeURIComponent(epoch ?? '')}`
+      : `${API_URL}/events`;
+    const source = new EventSource(url);
+    EVENT_TYPES.forEach(type =>
+      source.addEventListener(type, (message) => {
+        const event = JSON.parse(message.data);
+        const eventEpoch = message.lastEventId?.slice(0, message.lastEventId.lastIndexOf('-'));
+        onEvent(epoch != null && eventEpoch && eventEpoch !== epoch ? { type: 'reset' } : event);
+      })
+    );
+    source.onerror = () => console.warn('Change stream interrupted, reconnecting');
+    return () => source.close();
+  },
+
   deleteEmployee: async (id) => {
     console.log(`Attempting to delete employee with ID: ${id}`);
     try {
@@ -0,0 +1,64 @@
+package com.flywire.exercise.controller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * One response body, serialized once and served as is until the data it was read
+ * from changes. A gzipped copy is made the first time a client asks for one.
+ */
+final class CachedResponse {
+
+    private final long version;
+    private final long[] dependencies;
+    private final byte[] body;
+    private final String etag;
+    private volatile byte[] gzipped;
+
+    CachedResponse(long version, long[] dependencies, byte[] body, String etag) {
+        this.version = version;
+        this.dependencies = dependencies;
+        this.body = body;
+        this.etag = etag;
+    }
+
+    // Version of the snapshot the body was read from
+    long getVersion() {
+        return version;
+    }
+
+    // Ids of the employees the body shows; null for responses that depend on everyone
+    long[] getDependencies() {
+        return dependencies;
+    }
+
+    byte[] getBody() {
+        return body;
+    }
+
+    String getEtag() {
+        return etag;
+    }
+
+    String getGzipEtag() {
+        return etag.substring(0, etag.length() - 1) + "-gz\"";
+    }
+
+    byte[] getGzipped() {
+        byte[] result = gzipped;
+        if (result == null) {
+            // Two threads may both compress; either copy is as good as the other
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length / 4 + 64);
+            try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+                out.write(body);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            result = bytes.toByteArray();
+            gzipped = result;
+        }
+        return result;
+    }
+}
@@ -1,14 +1,42 @@
 package com.flywire.exercise.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.flywire.exercise.exception.InvalidEmployeeDataException;
+import com.flywire.exercise.exception.VersionConflictException;
+import com.flywire.exercise.model.BatchResult;
+import com.flywire.exercise.model.ChangeSet;
 import com.flywire.exercise.model.Employee;
+import com.flywire.exercise.model.EmployeeBatchItem;
+import com.flywire.exercise.model.EmployeeStats;
+import com.flywire.exercise.model.OrgNode;
 import com.flywire.exercise.service.EmployeeService;
+import com.flywire.exercise.util.LogSampler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
@@ -20,32 +48,146 @@ import java.util.TimeZone;
 @CrossOrigin(origins = "http://localhost:3000")
 public class EmployeeController {
 
+    private static final Logger log = LoggerFactory.getLogger(EmployeeController.class);
+
+    // Version of the data a response was read from; send it back as If-Match to detect concurrent changes
+    static final String VERSION_HEADER = "X-Data-Version";
+    // Run of the server that version belongs to; versions start over on every restart
+    static final String EPOCH_HEADER = "X-Data-Epoch";
+    // Cursor for the page after this one; pass it back as ?after=
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final int DEFAULT_PAGE_SIZE = 100;
+    // Smaller cached bodies aren't worth compressing
+    static final int GZIP_MIN_BYTES = 1024;
+
     private final EmployeeService employeeService;
+    private final ResponseCache responseCache;
+    private final EmployeeEventStream eventStream;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter streamWriter;
+    // Debug logging of individual requests covers one in every employees.logging.sample-rate of them
+    private final LogSampler requestLogSampler;
 
-    public EmployeeController(EmployeeService employeeService) {
+    public EmployeeController(EmployeeService employeeService, ResponseCache responseCache,
+                              EmployeeEventStream eventStream, ObjectMapper objectMapper,
+                              @Value("${employees.logging.sample-rate:100}") int logSampleRate) {
         this.employeeService = employeeService;
+        this.responseCache = responseCache;
+        this.eventStream = eventStream;
+        this.objectMapper = objectMapper;
+        this.streamWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.requestLogSampler = new LogSampler(logSampleRate);
     }
 
     @GetMapping
-    public ResponseEntity<List<Employee>> getAllActiveEmployees() throws IOException {
-        return ResponseEntity.ok(employeeService.getAllActiveEmployees());
+    public ResponseEntity<?> getAllActiveEmployees(
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(defaultValue = "false") boolean stream,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) throws IOException {
+        return listEmployees(true, after, limit, stream, ifNoneMatch, acceptEncoding);
     }
 
     @GetMapping("/all")
-    public ResponseEntity<List<Employee>> getAllEmployees() throws IOException {
-        return ResponseEntity.ok(employeeService.getAllEmployees());
+    public ResponseEntity<?> getAllEmployees(
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(defaultValue = "false") boolean stream,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) throws IOException {
+        return listEmployees(false, after, limit, stream, ifNoneMatch, acceptEncoding);
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<Map<String, Object>> getEmployeeWithDirectHires(@PathVariable Long id) throws IOException {
-        return ResponseEntity.ok(employeeService.getEmployeeWithDirectHires(id));
+    public ResponseEntity<byte[]> getEmployeeWithDirectHires(
+            @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) throws IOException {
+        CachedResponse cached = responseCache.employee(id,
+                snapshot -> employeeService.getEmployeeWithDirectHires(snapshot, id));
+        return cachedResponse(cached, ifNoneMatch, acceptEncoding);
+    }
+
+    @GetMapping("/{id}/manager")
+    public ResponseEntity<Employee> getManager(@PathVariable Long id) {
+        return ResponseEntity.ok(employeeService.getManager(id));
+    }
+
+    @GetMapping("/{id}/chain")
+    public ResponseEntity<List<Employee>> getReportingChain(@PathVariable Long id) {
+        return ResponseEntity.ok(employeeService.getReportingChain(id));
+    }
+
+    // Change events as they are committed; since and epoch are the X-Data-Version and X-Data-Epoch of data the client has
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamEvents(
+            @RequestParam(required = false) Long since,
+            @RequestParam(required = false) String epoch,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return eventStream.subscribe(lastEventId, since, epoch);
+    }
+
+    // Search-as-you-type over names or positions; results are capped server-side
+    @GetMapping("/search")
+    public ResponseEntity<List<Employee>> searchEmployees(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "name") String field,
+            @RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(employeeService.searchEmployees(q, field, limit));
+    }
+
+    // Dashboard aggregates; startDate/endDate (yyyy-MM-dd, either may be left out) limit the hire figures
+    @GetMapping("/stats")
+    public ResponseEntity<EmployeeStats> getStats(
+            @RequestParam(required = false) String startDate,
+            @RequestParam(required = false) String endDate) {
+        long version = employeeService.getVersion();
+        return ResponseEntity.ok()
+                .header(VERSION_HEADER, String.valueOf(version))
+                .header(EPOCH_HEADER, employeeService.getEpoch())
+                .body(employeeService.getStats(parseDay(startDate), parseDay(endDate)));
+    }
+
+    // Records changed since a version; send back the version and epoch of the response to continue from it
+    @GetMapping("/changes")
+    public ResponseEntity<ChangeSet> getChanges(
+            @RequestParam long since,
+            @RequestParam(required = false) String epoch) {
+        ChangeSet changes = employeeService.getChangesSince(since, epoch);
+        return ResponseEntity.ok()
+                .header(VERSION_HEADER, String.valueOf(changes.getVersion()))
+                .header(EPOCH_HEADER, changes.getEpoch())
+                .body(changes);
+    }
+
+    @GetMapping("/lca")
+    public ResponseEntity<Employee> getCommonManager(@RequestParam Long a, @RequestParam Long b) {
+        return ResponseEntity.ok(employeeService.getCommonManager(a, b));
+    }
+
+    @GetMapping("/{id}/org")
+    public ResponseEntity<List<OrgNode>> getOrg(
+            @PathVariable Long id,
+            @RequestParam(required = false) Integer depth,
+            @RequestParam(defaultValue = "false") boolean activeOnly) {
+        long version = employeeService.getVersion();
+        return ResponseEntity.ok()
+                .header(VERSION_HEADER, String.valueOf(version))
+                .header(EPOCH_HEADER, employeeService.getEpoch())
+                .body(employeeService.getOrg(id, depth, activeOnly));
     }
 
     @GetMapping("/hired")
     public ResponseEntity<List<Employee>> getEmployeesByHireDateRange(
             @RequestParam String startDate,
-            @RequestParam String endDate) throws IOException {
-        System.out.println("Received dates - start: " + startDate + ", end: " + endDate);
+            @RequestParam String endDate,
+            @RequestParam(defaultValue = "0") int offset,
+            @RequestParam(required = false) Integer limit) throws IOException {
+        boolean trace = traceRequest();
+        if (trace) {
+            log.debug("Received dates - start: {}, end: {}", startDate, endDate);
+        }
         SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
         dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
         
@@ -55,9 +197,13 @@ public class EmployeeController {
         try {
             parsedStartDate = dateFormat.parse(startDate);
             parsedEndDate = dateFormat.parse(endDate);
-            System.out.println("Successfully parsed dates - start: " + parsedStartDate + ", end: " + parsedEndDate);
+            if (trace) {
+                log.debug("Successfully parsed dates - start: {}, end: {}", parsedStartDate, parsedEndDate);
+            }
         } catch (ParseException e) {
-            System.out.println("Failed to parse dates: " + e.getMessage());
+            if (trace) {
+                log.debug("Failed to parse dates: {}", e.getMessage());
+            }
             return ResponseEntity.badRequest().body(null);
         }
         
@@ -75,13 +221,17 @@ public class EmployeeController {
 
         // Validate that dates are not in the future
         if (parsedStartDate.after(today) || parsedEndDate.after(today)) {
-            System.out.println("Date validation failed: Future dates not allowed");
+            if (trace) {
+                log.debug("Date validation failed: Future dates not allowed");
+            }
             return ResponseEntity.badRequest().body(null);
         }
 
         // Validate start date is before or equal to end date
         if (parsedStartDate.after(parsedEndDate)) {
-            System.out.println("Date validation failed: Start date after end date");
+            if (trace) {
+                log.debug("Date validation failed: Start date after end date");
+            }
             return ResponseEntity.badRequest().body(null);
         }
         cal.set(Calendar.SECOND, 0);
@@ -92,31 +242,264 @@ public class EmployeeController {
             return ResponseEntity.badRequest().body(null);
         }
         // Validate dates
-        return ResponseEntity.ok(employeeService.getEmployeesByHireDateRange(parsedStartDate, parsedEndDate));
+        return ResponseEntity.ok(employeeService.getEmployeesByHireDateRange(
+                parsedStartDate, parsedEndDate, offset, limit != null ? limit : Integer.MAX_VALUE));
     }
 
     @PostMapping
     public ResponseEntity<Employee> createEmployee(
             @RequestBody Employee employee,
-            @RequestParam(required = false) Long managerId) throws IOException {
-        return ResponseEntity.ok(employeeService.createEmployee(employee, managerId));
+            @RequestParam(required = false) Long managerId,
+            @RequestHeader(value = "If-Match", required = false) String ifMatch,
+            @RequestHeader(value = EPOCH_HEADER, required = false) String epoch) throws IOException {
+        return ResponseEntity.ok(employeeService.createEmployee(employee, managerId, parseVersion(ifMatch, epoch)));
+    }
+
+    @PostMapping("/batch")
+    public ResponseEntity<BatchResult> createEmployees(
+            InputStream body,
+            @RequestParam(defaultValue = "false") boolean atomic) throws IOException {
+        return ResponseEntity.ok(employeeService.createEmployees(readArray(body, EmployeeBatchItem.class), atomic));
+    }
+
+    @PutMapping("/batch/deactivate")
+    public ResponseEntity<BatchResult> deactivateEmployees(
+            InputStream body,
+            @RequestParam(defaultValue = "false") boolean atomic) throws IOException {
+        return ResponseEntity.ok(employeeService.deactivateEmployees(readArray(body, Long.class), atomic));
+    }
+
+    @PutMapping("/batch/reactivate")
+    public ResponseEntity<BatchResult> reactivateEmployees(
+            InputStream body,
+            @RequestParam(defaultValue = "false") boolean atomic) throws IOException {
+        return ResponseEntity.ok(employeeService.reactivateEmployees(readArray(body, Long.class), atomic));
     }
 
     @PutMapping("/{id}/deactivate")
-    public ResponseEntity<Employee> deactivateEmployee(@PathVariable Long id) throws IOException {
-        return ResponseEntity.ok(employeeService.deactivateEmployee(id));
+    public ResponseEntity<Employee> deactivateEmployee(
+            @PathVariable Long id,
+            @RequestHeader(value = "If-Match", required = false) String ifMatch,
+            @RequestHeader(value = EPOCH_HEADER, required = false) String epoch) throws IOException {
+        return ResponseEntity.ok(employeeService.deactivateEmployee(id, parseVersion(ifMatch, epoch)));
     }
 
     @PutMapping("/{id}/reactivate")
-    public ResponseEntity<Employee> reactivateEmployee(@PathVariable Long id) throws IOException {
-        return ResponseEntity.ok(employeeService.reactivateEmployee(id));
+    public ResponseEntity<Employee> reactivateEmployee(
+            @PathVariable Long id,
+            @RequestHeader(value = "If-Match", required = false) String ifMatch,
+            @RequestHeader(value = EPOCH_HEADER, required = false) String epoch) throws IOException {
+        return ResponseEntity.ok(employeeService.reactivateEmployee(id, parseVersion(ifMatch, epoch)));
     }
 
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> deleteEmployee(@PathVariable Long id) throws IOException {
-        System.out.println("Received DELETE request for employee ID: " + id);
-        employeeService.deleteEmployee(id);
-        System.out.println("Successfully deleted employee ID: " + id);
+    public ResponseEntity<Void> deleteEmployee(
+            @PathVariable Long id,
+            @RequestHeader(value = "If-Match", required = false) String ifMatch,
+            @RequestHeader(value = EPOCH_HEADER, required = false) String epoch) throws IOException {
+        boolean trace = traceRequest();
+        if (trace) {
+            log.debug("Received DELETE request for employee ID: {}", id);
+        }
+        employeeService.deleteEmployee(id, parseVersion(ifMatch, epoch));
+        if (trace) {
+            log.debug("Successfully deleted employee ID: {}", id);
+        }
         return ResponseEntity.ok().build();
     }
+
+    // Without after/limit this is the full list; with either, a keyset page of the last-name order
+    private ResponseEntity<?> listEmployees(boolean activeOnly, String after, Integer limit, boolean stream,
+                                            String ifNoneMatch, String acceptEncoding) throws IOException {
+        if (after == null && limit == null && !stream) {
+            // The full lists are what clients poll, so they are served from the cache
+            CachedResponse cached = responseCache.list(activeOnly ? "active" : "all", snapshot -> activeOnly
+                    ? employeeService.getAllActiveEmployees(snapshot) : employeeService.getAllEmployees(snapshot));
+            return cachedResponse(cached, ifNoneMatch, acceptEncoding);
+        }
+        long version = employeeService.getVersion();
+        List<Employee> employees;
+        String nextCursor = null;
+        if (after == null && limit == null) {
+            employees = activeOnly ? employeeService.getAllActiveEmployees() : employeeService.getAllEmployees();
+        } else {
+            int pageSize = limit != null ? limit : DEFAULT_PAGE_SIZE;
+            employees = employeeService.getEmployeesPage(activeOnly, after, pageSize);
+            if (!employees.isEmpty() && employees.size() == pageSize) {
+                nextCursor = employeeService.cursorOf(employees.get(employees.size() - 1));
+            }
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .header(VERSION_HEADER, String.valueOf(version))
+                .header(EPOCH_HEADER, employeeService.getEpoch());
+        if (nextCursor != null) {
+            response.header(NEXT_CURSOR_HEADER, URLEncoder.encode(nextCursor, "UTF-8"));
+        }
+        if (!stream) {
+            return response.body(employees);
+        }
+        return response.contentType(MediaType.APPLICATION_JSON).body(streamJson(employees));
+    }
+
+    /**
+     * 304 when the client already has this representation, otherwise the cached
+     * bytes, gzipped if accepted. The version sent is the one the body was read
+     * from, which may be older than the current one if nothing it shows has changed.
+     */
+    private ResponseEntity<byte[]> cachedResponse(CachedResponse cached, String ifNoneMatch, String acceptEncoding) {
+        String version = String.valueOf(cached.getVersion());
+        boolean gzip = cached.getBody().length >= GZIP_MIN_BYTES && acceptsGzip(acceptEncoding);
+        String etag = gzip ? cached.getGzipEtag() : cached.getEtag();
+        if (matchesAny(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag)
+                    .header(VERSION_HEADER, version)
+                    .header(EPOCH_HEADER, employeeService.getEpoch())
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                    .build();
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .eTag(etag)
+                .header(VERSION_HEADER, version)
+                .header(EPOCH_HEADER, employeeService.getEpoch())
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .cacheControl(CacheControl.noCache())
+                .contentType(MediaType.APPLICATION_JSON);
+        if (gzip) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(cached.getGzipped());
+        }
+        return response.body(cached.getBody());
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            if (!"gzip".equalsIgnoreCase(parts[0].trim())) {
+                continue;
+            }
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(param.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    // If-None-Match compares weakly, so a W/ prefix is ignored
+    private static boolean matchesAny(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            String value = tag.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if ("*".equals(value) || etag.equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Writes the array one element at a time so the response is never buffered whole
+    private StreamingResponseBody streamJson(List<Employee> employees) {
+        return out -> {
+            try (JsonGenerator generator = streamWriter.getFactory().createGenerator(out)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.writeStartArray();
+                for (Employee employee : employees) {
+                    streamWriter.writeValue(generator, employee);
+                }
+                generator.writeEndArray();
+            }
+        };
+    }
+
+    // Binds array elements one at a time straight off the request stream, without an intermediate tree
+    private <T> List<T> readArray(InputStream body, Class<T> type) throws IOException {
+        ObjectReader reader = objectMapper.readerFor(type);
+        List<T> items = new ArrayList<>();
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new InvalidEmployeeDataException("Batch request body must be a JSON array");
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token == null) {
+                    throw new InvalidEmployeeDataException("Batch request body ended unexpectedly");
+                }
+                items.add(reader.readValue(parser));
+            }
+        } catch (JsonProcessingException e) {
+            throw new InvalidEmployeeDataException("Malformed batch request: " + e.getOriginalMessage());
+        }
+        return items;
+    }
+
+    // Whether to debug-log this request; the level is checked first so the sampler is left alone when it's off
+    private boolean traceRequest() {
+        return log.isDebugEnabled() && requestLogSampler.sample();
+    }
+
+    private static Date parseDay(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        try {
+            return dateFormat.parse(value.trim());
+        } catch (ParseException e) {
+            throw new InvalidEmployeeDataException("Invalid date (expected yyyy-MM-dd): " + value);
+        }
+    }
+
+    /**
+     * Reads If-Match as either the X-Data-Version of a response or its entity tag
+     * ("epoch-version", gzipped or not). Versions start over on every restart, so a
+     * tag from another epoch, or a bare version sent with another X-Data-Epoch,
+     * fails the precondition instead of matching a version of this run by accident.
+     */
+    private Long parseVersion(String ifMatch, String epoch) {
+        if (ifMatch == null || ifMatch.trim().isEmpty() || "*".equals(ifMatch.trim())) {
+            return null;
+        }
+        String value = ifMatch.trim();
+        if (value.startsWith("W/")) {
+            value = value.substring(2);
+        }
+        value = value.replace("\"", "");
+        if (value.endsWith("-gz")) {
+            value = value.substring(0, value.length() - 3);
+        }
+        String versionEpoch = epoch;
+        int dash = value.lastIndexOf('-');
+        if (dash > 0) {
+            versionEpoch = value.substring(0, dash);
+            value = value.substring(dash + 1);
+        }
+        long version;
+        try {
+            version = Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new InvalidEmployeeDataException("Invalid If-Match version: " + ifMatch);
+        }
+        if (versionEpoch != null && !versionEpoch.equals(employeeService.getEpoch())) {
+            throw new VersionConflictException("Employee data has changed: version " + version
+                    + " is from before the server restarted");
+        }
+        return version;
+    }
 }
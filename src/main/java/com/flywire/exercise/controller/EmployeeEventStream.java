@@ -0,0 +1,316 @@
+package com.flywire.exercise.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flywire.exercise.model.Employee;
+import com.flywire.exercise.model.EmployeeEvent;
+import com.flywire.exercise.store.EmployeeChange;
+import com.flywire.exercise.store.EmployeeSnapshot;
+import com.flywire.exercise.store.EmployeeStore;
+import com.flywire.exercise.store.SnapshotListener;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server-sent events for every committed change, one per change in commit order,
+ * each with the data version it produced as its event id. The writer thread only
+ * queues events; a small pool of dispatcher threads writes them to the clients.
+ * Each client's queue is bounded: one that falls that far behind is disconnected
+ * and, like any client that reconnects, resumes after its Last-Event-ID from the
+ * recent events kept here, or is told to reload everything when they are gone.
+ * Event ids carry the boot time too, since versions start over on every restart.
+ */
+@Component
+public class EmployeeEventStream implements SnapshotListener {
+
+    private static final Entry HEARTBEAT = new Entry(null, null);
+
+    private final ObjectMapper objectMapper;
+    private final int bufferSize;
+    private final long timeoutMillis;
+    private final String epoch;
+    private final ExecutorService dispatcher;
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final Counter dropped;
+
+    // Recent events by version modulo length; guarded by this, like the versions below
+    private final Entry[] history;
+    // Version of the latest event
+    private long latest;
+    // Oldest version a client can resume after
+    private long floor;
+
+    public EmployeeEventStream(EmployeeStore employeeStore, ObjectMapper objectMapper,
+                               @Value("${employees.events.buffer-size:256}") int bufferSize,
+                               @Value("${employees.events.history-size:1024}") int historySize,
+                               @Value("${employees.events.timeout-ms:1800000}") long timeoutMillis,
+                               @Value("${employees.events.dispatch-threads:2}") int dispatchThreads,
+                               MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.bufferSize = bufferSize;
+        this.epoch = employeeStore.getEpoch();
+        this.timeoutMillis = timeoutMillis;
+        this.history = new Entry[historySize];
+        AtomicInteger threads = new AtomicInteger();
+        this.dispatcher = Executors.newFixedThreadPool(dispatchThreads, task -> {
+            Thread thread = new Thread(task, "employee-events-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.dropped = Counter.builder("employees.events.dropped")
+                .description("Event stream clients disconnected for falling too far behind")
+                .register(meterRegistry);
+        Gauge.builder("employees.events.subscribers", subscribers, List::size)
+                .description("Connected event stream clients")
+                .register(meterRegistry);
+        synchronized (this) {
+            // Registered first, so a commit racing startup is either in the snapshot or reported here
+            employeeStore.addListener(this);
+            latest = employeeStore.getSnapshot().getVersion();
+            floor = latest;
+        }
+    }
+
+    /**
+     * Opens a stream for one client. {@code lastEventId} is the header a reconnecting
+     * browser sends; {@code since} is a data version the client already has, such as
+     * the X-Data-Version of a list it just loaded, and {@code sinceEpoch} the
+     * X-Data-Epoch that came with it. A version from another epoch, or without one,
+     * gets a reset. With neither, only new events are sent.
+     */
+    public SseEmitter subscribe(String lastEventId, Long since, String sinceEpoch) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        emitter.onTimeout(emitter::complete);
+
+        Long from = lastEventId != null ? versionOf(lastEventId)
+                : since != null && !epoch.equals(sinceEpoch) ? Long.valueOf(-1) : since;
+        synchronized (this) {
+            if (from != null && from != latest) {
+                if (from < floor || from > latest || latest - from > bufferSize) {
+                    subscriber.offer(reset(latest));
+                } else {
+                    for (long version = from + 1; version <= latest; version++) {
+                        subscriber.offer(history[slot(version)]);
+                    }
+                }
+            }
+            subscribers.add(subscriber);
+        }
+        return emitter;
+    }
+
+    @Override
+    public void beforePublish(EmployeeSnapshot previous, EmployeeSnapshot updated, List<EmployeeChange> changes) {
+    }
+
+    @Override
+    public synchronized void afterPublish(EmployeeSnapshot previous, EmployeeSnapshot updated,
+                                          List<EmployeeChange> changes) {
+        if (updated.getVersion() <= latest) {
+            return;
+        }
+        if (changes == null) {
+            Arrays.fill(history, null);
+            latest = updated.getVersion();
+            floor = latest;
+            broadcast(reset(latest));
+            return;
+        }
+        // Earlier versions of employees this group of changes touched, for deletes that follow them
+        Map<Long, Employee> touched = new HashMap<>();
+        long version = previous.getVersion();
+        for (EmployeeChange change : changes) {
+            version++;
+            Employee employee = null;
+            if (change.getType() == EmployeeChange.Type.DELETE) {
+                employee = touched.containsKey(change.getEmployeeId())
+                        ? touched.get(change.getEmployeeId()) : previous.get(change.getEmployeeId());
+            }
+            List<Employee> related = new ArrayList<>(change.getUpserts().size());
+            for (Employee upsert : change.getUpserts()) {
+                if (upsert.getId().equals(change.getEmployeeId())) {
+                    employee = upsert;
+                } else {
+                    related.add(upsert);
+                }
+                touched.put(upsert.getId(), upsert);
+            }
+            append(new Entry(eventId(version),
+                    new EmployeeEvent(typeOf(change.getType()), version, employee, related)));
+        }
+    }
+
+    // Keeps idle connections from being closed by proxies, and finds clients that have gone away
+    @Scheduled(fixedDelayString = "${employees.events.heartbeat-ms:15000}")
+    public void heartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.queue.isEmpty()) {
+                subscriber.offer(HEARTBEAT);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        dispatcher.shutdownNow();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.emitter.complete();
+        }
+    }
+
+    private void append(Entry entry) {
+        long version = entry.event.getVersion();
+        history[slot(version)] = entry;
+        latest = version;
+        floor = Math.max(floor, latest - history.length);
+        broadcast(entry);
+    }
+
+    private void broadcast(Entry entry) {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(entry);
+        }
+    }
+
+    private int slot(long version) {
+        return (int) (version % history.length);
+    }
+
+    private Entry reset(long version) {
+        return new Entry(eventId(version), new EmployeeEvent(EmployeeEvent.RESET, version, null, null));
+    }
+
+    private String eventId(long version) {
+        return epoch + "-" + version;
+    }
+
+    // The version in an event id from this run; -1, which forces a reset, for anything else
+    private Long versionOf(String eventId) {
+        int dash = eventId.lastIndexOf('-');
+        if (dash < 0 || !eventId.substring(0, dash).equals(epoch)) {
+            return -1L;
+        }
+        try {
+            return Long.parseLong(eventId.substring(dash + 1));
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    private static String typeOf(EmployeeChange.Type type) {
+        switch (type) {
+            case CREATE:
+                return EmployeeEvent.CREATED;
+            case DEACTIVATE:
+                return EmployeeEvent.DEACTIVATED;
+            case REACTIVATE:
+                return EmployeeEvent.REACTIVATED;
+            case DELETE:
+                return EmployeeEvent.DELETED;
+            default:
+                return EmployeeEvent.UPDATED;
+        }
+    }
+
+    // An event and its id; the JSON is written on first send and shared by every client
+    private static final class Entry {
+        final String id;
+        final EmployeeEvent event;
+        private volatile String json;
+
+        Entry(String id, EmployeeEvent event) {
+            this.id = id;
+            this.event = event;
+        }
+
+        SseEmitter.SseEventBuilder render(ObjectMapper objectMapper) {
+            if (event == null) {
+                return SseEmitter.event().comment("heartbeat");
+            }
+            String data = json;
+            if (data == null) {
+                try {
+                    data = objectMapper.writeValueAsString(event);
+                } catch (JsonProcessingException e) {
+                    throw new UncheckedIOException(e);
+                }
+                json = data;
+            }
+            return SseEmitter.event().id(id).name(event.getType()).data(data);
+        }
+    }
+
+    private final class Subscriber {
+        final SseEmitter emitter;
+        final BlockingQueue<Entry> queue;
+        // Set while a dispatcher thread owns the emitter
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile boolean closed;
+
+        Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+            this.queue = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        // Never blocks: called on the writer thread
+        void offer(Entry entry) {
+            if (closed) {
+                return;
+            }
+            if (!queue.offer(entry)) {
+                closed = true;
+                queue.clear();
+                dropped.increment();
+            }
+            if (draining.compareAndSet(false, true)) {
+                dispatcher.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            do {
+                try {
+                    Entry entry;
+                    while (!closed && (entry = queue.poll()) != null) {
+                        emitter.send(entry.render(objectMapper));
+                    }
+                    if (closed) {
+                        // Too far behind; it reconnects and resumes from the history or starts over
+                        subscribers.remove(this);
+                        emitter.complete();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // The client has gone away; the container completes the request
+                    closed = true;
+                    subscribers.remove(this);
+                }
+                draining.set(false);
+            } while (!closed && !queue.isEmpty() && draining.compareAndSet(false, true));
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.flywire.exercise.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flywire.exercise.model.Employee;
+import com.flywire.exercise.store.EmployeeChange;
+import com.flywire.exercise.store.EmployeeSnapshot;
+import com.flywire.exercise.store.EmployeeStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serialized list and detail responses, reused for as long as the data behind
+ * them is unchanged. Every commit records which employees it touched before the
+ * new snapshot is published; a cached response is only served if nothing it
+ * shows has been touched since the version it was read from. Entity tags carry
+ * the boot time too, since versions start over on every restart.
+ */
+@Component
+public class ResponseCache {
+
+    /**
+     * Reads a response body from one snapshot, so the cached bytes match the
+     * version they are stored under.
+     */
+    public interface BodySource {
+        Object read(EmployeeSnapshot snapshot) throws IOException;
+    }
+
+    private final EmployeeStore employeeStore;
+    private final ObjectMapper objectMapper;
+    private final int maxEntries;
+
+    private final Map<String, CachedResponse> lists = new ConcurrentHashMap<>();
+    private final Map<Long, CachedResponse> employees = new ConcurrentHashMap<>();
+    // Version of the latest commit that touched each employee, down to the oldest cached detail response
+    private final Map<Long, Long> changedAt = new ConcurrentHashMap<>();
+    /**
+     * Detail responses read before this version are never served: the whole set
+     * was replaced then, or the versions they would be checked against were pruned.
+     */
+    private volatile long validFrom = Long.MIN_VALUE;
+
+    private final Counter listHits;
+    private final Counter listMisses;
+    private final Counter employeeHits;
+    private final Counter employeeMisses;
+
+    public ResponseCache(EmployeeStore employeeStore, ObjectMapper objectMapper,
+                         @Value("${employees.cache.max-entries:10000}") int maxEntries,
+                         MeterRegistry meterRegistry) {
+        this.employeeStore = employeeStore;
+        this.objectMapper = objectMapper;
+        this.maxEntries = maxEntries;
+        this.listHits = lookups(meterRegistry, "list", "hit");
+        this.listMisses = lookups(meterRegistry, "list", "miss");
+        this.employeeHits = lookups(meterRegistry, "employee", "hit");
+        this.employeeMisses = lookups(meterRegistry, "employee", "miss");
+        Gauge.builder("employees.cache.size", employees, Map::size)
+                .description("Employee detail responses currently cached")
+                .register(meterRegistry);
+        employeeStore.addListener(this::beforePublish);
+    }
+
+    private static Counter lookups(MeterRegistry registry, String cache, String result) {
+        return Counter.builder("employees.cache.lookups")
+                .description("Response cache lookups")
+                .tag("cache", cache)
+                .tag("result", result)
+                .register(registry);
+    }
+
+    // A response that shows every employee, such as a full list; cached under the given key
+    public CachedResponse list(String key, BodySource source) throws IOException {
+        EmployeeSnapshot snapshot = employeeStore.getSnapshot();
+        CachedResponse cached = lists.get(key);
+        if (cached != null && cached.getVersion() == snapshot.getVersion()) {
+            listHits.increment();
+            return cached;
+        }
+        listMisses.increment();
+        CachedResponse built = build(snapshot, null, source);
+        lists.merge(key, built, ResponseCache::newer);
+        return built;
+    }
+
+    // The detail response of one employee, which shows the employee and everyone it lists as a report
+    public CachedResponse employee(long id, BodySource source) throws IOException {
+        EmployeeSnapshot snapshot = employeeStore.getSnapshot();
+        CachedResponse cached = employees.get(id);
+        if (cached != null && isCurrent(cached, snapshot.getVersion())) {
+            employeeHits.increment();
+            return cached;
+        }
+        employeeMisses.increment();
+        // An unknown id has no dependencies, but then the source fails and nothing is cached
+        Employee employee = snapshot.get(id);
+        CachedResponse built = build(snapshot, employee != null ? dependenciesOf(employee) : null, source);
+        if (employees.size() < maxEntries || employees.containsKey(id)) {
+            employees.merge(id, built, ResponseCache::newer);
+        }
+        return built;
+    }
+
+    private CachedResponse build(EmployeeSnapshot snapshot, long[] dependencies, BodySource source) throws IOException {
+        byte[] body = objectMapper.writeValueAsBytes(source.read(snapshot));
+        return new CachedResponse(snapshot.getVersion(), dependencies, body, etagFor(snapshot.getVersion()));
+    }
+
+    private static long[] dependenciesOf(Employee employee) {
+        List<Long> reports = employee.getDirectReports();
+        long[] ids = new long[reports.size() + 1];
+        ids[0] = employee.getId();
+        for (int i = 0; i < reports.size(); i++) {
+            ids[i + 1] = reports.get(i) != null ? reports.get(i) : employee.getId();
+        }
+        return ids;
+    }
+
+    private boolean isCurrent(CachedResponse cached, long version) {
+        if (cached.getVersion() > version || cached.getVersion() < validFrom) {
+            return false;
+        }
+        for (long id : cached.getDependencies()) {
+            Long changed = changedAt.get(id);
+            if (changed != null && changed > cached.getVersion()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void beforePublish(EmployeeSnapshot previous, EmployeeSnapshot updated, List<EmployeeChange> changes) {
+        long version = updated.getVersion();
+        if (changes == null) {
+            validFrom = version;
+            employees.clear();
+            changedAt.clear();
+        } else {
+            for (EmployeeChange change : changes) {
+                for (Employee emp : change.getUpserts()) {
+                    touch(emp.getId(), version);
+                }
+                for (Long id : change.getDeletedIds()) {
+                    touch(id, version);
+                }
+            }
+        }
+        if (changedAt.size() > 2 * maxEntries) {
+            prune(version);
+        }
+        // Lists show everyone, so no list survives a commit
+        lists.clear();
+    }
+
+    /**
+     * Forgets the versions no cached detail response is old enough to need. If that
+     * still leaves too many, as when one old entry pins them, the detail cache starts
+     * over instead.
+     */
+    private void prune(long version) {
+        long oldest = version;
+        for (CachedResponse cached : employees.values()) {
+            if (cached.getVersion() >= validFrom) {
+                oldest = Math.min(oldest, cached.getVersion());
+            }
+        }
+        // Raised first, so a response a reader is about to store from an older snapshot is never served
+        long floor = oldest;
+        validFrom = floor;
+        changedAt.values().removeIf(changed -> changed <= floor);
+        if (changedAt.size() > maxEntries) {
+            validFrom = version;
+            employees.clear();
+            changedAt.clear();
+        }
+    }
+
+    private void touch(Long id, long version) {
+        // Recorded before the entry is dropped, so a reader that races the commit can't put back a stale one
+        changedAt.put(id, version);
+        employees.remove(id);
+    }
+
+    private String etagFor(long version) {
+        return "\"" + employeeStore.getEpoch() + "-" + version + "\"";
+    }
+
+    private static CachedResponse newer(CachedResponse a, CachedResponse b) {
+        return a.getVersion() >= b.getVersion() ? a : b;
+    }
+}
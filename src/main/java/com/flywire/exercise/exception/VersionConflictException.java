@@ -0,0 +1,7 @@
+package com.flywire.exercise.exception;
+
+public class VersionConflictException extends RuntimeException {
+    public VersionConflictException(String message) {
+        super(message);
+    }
+}
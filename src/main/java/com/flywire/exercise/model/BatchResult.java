@@ -0,0 +1,89 @@
+package com.flywire.exercise.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BatchResult {
+
+    public static final String OK = "OK";
+    public static final String FAILED = "FAILED";
+    // Valid, but not applied because another item failed in an all-or-nothing batch
+    public static final String SKIPPED = "SKIPPED";
+
+    private final List<Item> items;
+    private int succeeded;
+    private int failed;
+
+    public BatchResult(int size) {
+        this.items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            items.add(null);
+        }
+    }
+
+    public void succeed(int index, Long id) {
+        items.set(index, new Item(index, id, OK, null));
+        succeeded++;
+    }
+
+    public void fail(int index, Long id, String error) {
+        items.set(index, new Item(index, id, FAILED, error));
+        failed++;
+    }
+
+    public boolean isFailed(int index) {
+        Item item = items.get(index);
+        return item != null && FAILED.equals(item.getStatus());
+    }
+
+    public void skipSucceeded() {
+        for (Item item : items) {
+            if (item != null && OK.equals(item.getStatus())) {
+                item.status = SKIPPED;
+            }
+        }
+        succeeded = 0;
+    }
+
+    public int getSucceeded() {
+        return succeeded;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public List<Item> getItems() {
+        return items;
+    }
+
+    public static class Item {
+        private final int index;
+        private final Long id;
+        private String status;
+        private final String error;
+
+        public Item(int index, Long id, String status, String error) {
+            this.index = index;
+            this.id = id;
+            this.status = status;
+            this.error = error;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.flywire.exercise.model;
+
+import java.util.List;
+
+// What changed between two data versions; see ChangeLog
+public class ChangeSet {
+
+    private final String epoch;
+    private final long since;
+    private final long version;
+    private final boolean fullSnapshot;
+    private final List<Employee> upserted;
+    private final List<Long> deleted;
+
+    private ChangeSet(String epoch, long since, long version, boolean fullSnapshot,
+                      List<Employee> upserted, List<Long> deleted) {
+        this.epoch = epoch;
+        this.since = since;
+        this.version = version;
+        this.fullSnapshot = fullSnapshot;
+        this.upserted = upserted;
+        this.deleted = deleted;
+    }
+
+    public static ChangeSet delta(String epoch, long since, long version, List<Employee> upserted, List<Long> deleted) {
+        return new ChangeSet(epoch, since, version, false, upserted, deleted);
+    }
+
+    // The changes since the requested version are no longer kept, so the client must reload everything
+    public static ChangeSet fullSnapshot(String epoch, long since, long version) {
+        return new ChangeSet(epoch, since, version, true, null, null);
+    }
+
+    // Versions are only comparable within one epoch; send it back with the version
+    public String getEpoch() {
+        return epoch;
+    }
+
+    public long getSince() {
+        return since;
+    }
+
+    // The version these changes bring the client to; pass it as since next time
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isFullSnapshot() {
+        return fullSnapshot;
+    }
+
+    // Latest version of every employee created or changed since; null when a full reload is needed
+    public List<Employee> getUpserted() {
+        return upserted;
+    }
+
+    // Ids deleted since; null when a full reload is needed
+    public List<Long> getDeleted() {
+        return deleted;
+    }
+}
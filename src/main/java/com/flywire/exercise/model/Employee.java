@@ -32,6 +32,16 @@ public class Employee {
         this.original = original;
     }
 
+    public Employee(Employee other) {
+        this.id = other.id;
+        this.name = other.name;
+        this.position = other.position;
+        this.active = other.active;
+        this.hireDate = other.hireDate != null ? new Date(other.hireDate.getTime()) : null;
+        this.directReports = other.directReports != null ? new ArrayList<>(other.directReports) : new ArrayList<>();
+        this.original = other.original;
+    }
+
     public Long getId() {
         return id;
     }
@@ -0,0 +1,14 @@
+package com.flywire.exercise.model;
+
+// One entry of a batch create: the employee plus the manager it should report to
+public class EmployeeBatchItem extends Employee {
+    private Long managerId;
+
+    public Long getManagerId() {
+        return managerId;
+    }
+
+    public void setManagerId(Long managerId) {
+        this.managerId = managerId;
+    }
+}
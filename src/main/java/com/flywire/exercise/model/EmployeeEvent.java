@@ -0,0 +1,46 @@
+package com.flywire.exercise.model;
+
+import java.util.List;
+
+// One committed change as sent on the event stream; see EmployeeEventStream
+public class EmployeeEvent {
+
+    public static final String CREATED = "created";
+    public static final String DEACTIVATED = "deactivated";
+    public static final String REACTIVATED = "reactivated";
+    public static final String DELETED = "deleted";
+    public static final String UPDATED = "updated";
+    // The whole employee set was replaced, or the changes a client missed are no longer kept: reload everything
+    public static final String RESET = "reset";
+
+    private final String type;
+    private final long version;
+    private final Employee employee;
+    private final List<Employee> related;
+
+    public EmployeeEvent(String type, long version, Employee employee, List<Employee> related) {
+        this.type = type;
+        this.version = version;
+        this.employee = employee;
+        this.related = related;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    // Data version right after this change, as in the X-Data-Version header
+    public long getVersion() {
+        return version;
+    }
+
+    // The employee the change was about; for a delete, as it was just before; null for a reset
+    public Employee getEmployee() {
+        return employee;
+    }
+
+    // Other employees the same change rewrote, such as the manager whose direct reports it edited
+    public List<Employee> getRelated() {
+        return related;
+    }
+}
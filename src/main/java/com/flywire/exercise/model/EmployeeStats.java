@@ -0,0 +1,107 @@
+package com.flywire.exercise.model;
+
+import java.util.List;
+import java.util.Map;
+
+// Aggregate figures for the dashboard, read from totals kept up to date by every change
+public class EmployeeStats {
+
+    private final int total;
+    private final int active;
+    private final List<PositionCount> positions;
+    private final Map<String, Integer> hiresByMonth;
+    private final Integer hiredInWindow;
+    private final Map<Integer, Integer> spanOfControl;
+
+    public EmployeeStats(int total, int active, List<PositionCount> positions, Map<String, Integer> hiresByMonth,
+                         Integer hiredInWindow, Map<Integer, Integer> spanOfControl) {
+        this.total = total;
+        this.active = active;
+        this.positions = positions;
+        this.hiresByMonth = hiresByMonth;
+        this.hiredInWindow = hiredInWindow;
+        this.spanOfControl = spanOfControl;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getActive() {
+        return active;
+    }
+
+    public int getInactive() {
+        return total - active;
+    }
+
+    // Share of employees that are active; 0 when there are none
+    public double getActiveRatio() {
+        return total > 0 ? (double) active / total : 0;
+    }
+
+    // Headcount per position, largest first
+    public List<PositionCount> getPositions() {
+        return positions;
+    }
+
+    // Hires per calendar month ("yyyy-MM"), oldest first, over the requested window or all hire dates
+    public Map<String, Integer> getHiresByMonth() {
+        return hiresByMonth;
+    }
+
+    // Hires in the requested window; null when no window was given
+    public Integer getHiredInWindow() {
+        return hiredInWindow;
+    }
+
+    // Number of direct reports -> how many employees have that many; people without reports are left out
+    public Map<Integer, Integer> getSpanOfControl() {
+        return spanOfControl;
+    }
+
+    public int getManagers() {
+        int managers = 0;
+        for (int count : spanOfControl.values()) {
+            managers += count;
+        }
+        return managers;
+    }
+
+    // Mean number of direct reports per manager
+    public double getAverageSpan() {
+        int managers = 0;
+        long reports = 0;
+        for (Map.Entry<Integer, Integer> entry : spanOfControl.entrySet()) {
+            managers += entry.getValue();
+            reports += (long) entry.getKey() * entry.getValue();
+        }
+        return managers > 0 ? (double) reports / managers : 0;
+    }
+
+    public static class PositionCount {
+
+        private final String position;
+        private final int total;
+        private final int active;
+
+        public PositionCount(String position, int total, int active) {
+            this.position = position;
+            this.total = total;
+            this.active = active;
+        }
+
+        // Null for employees without a position
+        public String getPosition() {
+            return position;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public int getActive() {
+            return active;
+        }
+    }
+}
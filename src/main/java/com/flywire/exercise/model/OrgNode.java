@@ -0,0 +1,36 @@
+package com.flywire.exercise.model;
+
+// One employee of an org subtree, listed in depth-first order below the requested root
+public class OrgNode {
+
+    private final Employee employee;
+    private final Long managerId;
+    private final int level;
+    private final int headcount;
+
+    public OrgNode(Employee employee, Long managerId, int level, int headcount) {
+        this.employee = employee;
+        this.managerId = managerId;
+        this.level = level;
+        this.headcount = headcount;
+    }
+
+    public Employee getEmployee() {
+        return employee;
+    }
+
+    // Null for the root of the requested subtree
+    public Long getManagerId() {
+        return managerId;
+    }
+
+    // Distance from the root; the root itself is level 0
+    public int getLevel() {
+        return level;
+    }
+
+    // Number of employees anywhere below this one
+    public int getHeadcount() {
+        return headcount;
+    }
+}
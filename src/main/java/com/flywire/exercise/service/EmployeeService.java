@@ -2,62 +2,120 @@ package com.flywire.exercise.service;
 
 import com.flywire.exercise.exception.EmployeeNotFoundException;
 import com.flywire.exercise.exception.InvalidEmployeeDataException;
+import com.flywire.exercise.model.BatchResult;
+import com.flywire.exercise.model.ChangeSet;
 import com.flywire.exercise.model.Employee;
-import com.flywire.exercise.util.FileUtil;
+import com.flywire.exercise.model.EmployeeBatchItem;
+import com.flywire.exercise.model.EmployeeStats;
+import com.flywire.exercise.model.OrgNode;
+import com.flywire.exercise.store.EmployeeChange;
+import com.flywire.exercise.store.EmployeeLookup;
+import com.flywire.exercise.store.EmployeeSnapshot;
+import com.flywire.exercise.store.EmployeeStore;
+import com.flywire.exercise.store.PendingChanges;
+import com.flywire.exercise.util.DateUtil;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.function.BiFunction;
 import java.util.stream.Collectors;
-import java.util.TimeZone;
 
 @Service
 public class EmployeeService {
 
-    private final FileUtil fileUtil;
+    // One timer per public method, told apart by the "method" tag
+    static final String SERVICE_TIMER = "employees.service";
+    // Most results a search returns, whatever limit is asked for
+    static final int MAX_SEARCH_RESULTS = 100;
 
-    public EmployeeService(FileUtil fileUtil) {
-        this.fileUtil = fileUtil;
+    private final EmployeeStore employeeStore;
+
+    public EmployeeService(EmployeeStore employeeStore) {
+        this.employeeStore = employeeStore;
     }
 
+    @Timed(SERVICE_TIMER)
     public List<Employee> getAllActiveEmployees() throws IOException {
-        List<Employee> employees = fileUtil.readEmployees();
-        return employees.stream()
-                .filter(Employee::isActive)
-                .sorted(Comparator.comparing(e -> e.getName().split(" ")[1])) // Sort by last name
-                .collect(Collectors.toList());
+        return getAllActiveEmployees(employeeStore.getSnapshot());
+    }
+
+    @Timed(SERVICE_TIMER)
+    public List<Employee> getAllActiveEmployees(EmployeeSnapshot snapshot) {
+        return snapshot.getActiveEmployeesByLastName(); // Sorted by last name
     }
 
+    @Timed(SERVICE_TIMER)
     public List<Employee> getAllEmployees() throws IOException {
-        List<Employee> employees = fileUtil.readEmployees();
-        return employees.stream()
-                .sorted(Comparator.comparing(e -> e.getName().split(" ")[1])) // Sort by last name
-                .collect(Collectors.toList());
+        return getAllEmployees(employeeStore.getSnapshot());
+    }
+
+    @Timed(SERVICE_TIMER)
+    public List<Employee> getAllEmployees(EmployeeSnapshot snapshot) {
+        return snapshot.getEmployeesByLastName(); // Sorted by last name
     }
 
+    /**
+     * Returns the page of employees ordered by last name that follows the given
+     * cursor ("lastName,id" as produced by {@link #cursorOf(Employee)}); a null
+     * cursor starts from the beginning.
+     */
+    @Timed(SERVICE_TIMER)
+    public List<Employee> getEmployeesPage(boolean activeOnly, String after, int limit) {
+        if (limit < 0) {
+            throw new InvalidEmployeeDataException("Limit must not be negative");
+        }
+        String afterLastName = null;
+        long afterId = 0;
+        if (after != null && !after.isEmpty()) {
+            int comma = after.lastIndexOf(',');
+            try {
+                afterLastName = after.substring(0, comma);
+                afterId = Long.parseLong(after.substring(comma + 1).trim());
+            } catch (RuntimeException e) {
+                throw new InvalidEmployeeDataException("Invalid cursor: " + after);
+            }
+        }
+        return employeeStore.getSnapshot().getPageByLastName(activeOnly, afterLastName, afterId, limit);
+    }
+
+    public String cursorOf(Employee employee) {
+        return EmployeeSnapshot.lastNameKey(employee) + "," + employee.getId();
+    }
+
+    @Timed(SERVICE_TIMER)
     public Map<String, Object> getEmployeeWithDirectHires(Long id) throws IOException {
-        List<Employee> employees = fileUtil.readEmployees();
-        
+        return getEmployeeWithDirectHires(employeeStore.getSnapshot(), id);
+    }
+
+    // Read from the given snapshot, so a cached copy of the response can be tied to its version
+    @Timed(SERVICE_TIMER)
+    public Map<String, Object> getEmployeeWithDirectHires(EmployeeSnapshot snapshot, Long id) throws IOException {
         // Find the employee
-        Employee employee = employees.stream()
-                .filter(e -> e.getId().equals(id))
-                .findFirst()
-                .orElseThrow(() -> new EmployeeNotFoundException("Employee not found with id: " + id));
+        Employee employee = findEmployee(snapshot, id);
 
         // Get direct reports that still exist in the system
         List<Employee> directHires = new ArrayList<>();
         if (employee.getDirectReports() != null && !employee.getDirectReports().isEmpty()) {
-            directHires = employees.stream()
-                    .filter(e -> employee.getDirectReports().contains(e.getId()))
-                    .collect(Collectors.toList());
+            for (Long reportId : employee.getDirectReports()) {
+                Employee report = reportId != null ? snapshot.get(reportId) : null;
+                if (report != null) {
+                    directHires.add(report);
+                }
+            }
 
-            // Update employee's direct reports to only include existing employees
-            employee.setDirectReports(directHires.stream()
-                    .map(Employee::getId)
-                    .collect(Collectors.toList()));
-            fileUtil.writeEmployees(employees);
+            // Leave out reports that no longer exist without writing anything;
+            // ReportReconciler removes them from the stored employee in the background
+            if (directHires.size() != employee.getDirectReports().size()) {
+                employee = new Employee(employee);
+                employee.setDirectReports(directHires.stream()
+                        .map(Employee::getId)
+                        .collect(Collectors.toList()));
+            }
         }
 
         Map<String, Object> response = new HashMap<>();
@@ -66,67 +124,311 @@ public class EmployeeService {
         return response;
     }
 
+    @Timed(SERVICE_TIMER)
+    public Employee getManager(Long id) {
+        EmployeeSnapshot snapshot = employeeStore.getSnapshot();
+        findEmployee(snapshot, id);
+
+        Employee manager = snapshot.getManager(id);
+        if (manager == null) {
+            throw new EmployeeNotFoundException("Manager not found for employee with id: " + id);
+        }
+        return manager;
+    }
+
+    // Managers from the direct one up to the top of the hierarchy; empty for someone with no manager
+    @Timed(SERVICE_TIMER)
+    public List<Employee> getReportingChain(Long id) {
+        EmployeeSnapshot snapshot = employeeStore.getSnapshot();
+        findEmployee(snapshot, id);
+
+        List<Employee> chain = snapshot.getChain(id);
+        if (chain == null) {
+            throw new EmployeeNotFoundException("Reporting chain not found for employee with id: " + id);
+        }
+        return chain;
+    }
+
+    @Timed(SERVICE_TIMER)
+    public Employee getCommonManager(Long a, Long b) {
+        if (a == null || b == null) {
+            throw new InvalidEmployeeDataException("Both employee ids are required");
+        }
+        EmployeeSnapshot snapshot = employeeStore.getSnapshot();
+        findEmployee(snapshot, a);
+        findEmployee(snapshot, b);
+
+        Employee manager = snapshot.getCommonManager(a, b);
+        if (manager == null) {
+            throw new EmployeeNotFoundException("No common manager for employees " + a + " and " + b);
+        }
+        return manager;
+    }
+
+    /**
+     * Everyone below the given employee, depth-first and starting with the employee
+     * itself, each with the headcount of their own org. {@code depth} limits how
+     * many levels are returned; null returns the whole subtree.
+     */
+    @Timed(SERVICE_TIMER)
+    public List<OrgNode> getOrg(Long id, Integer depth, boolean activeOnly) {
+        if (depth != null && depth < 0) {
+            throw new InvalidEmployeeDataException("Depth must not be negative");
+        }
+        EmployeeSnapshot snapshot = employeeStore.getSnapshot();
+        findEmployee(snapshot, id);
+        return snapshot.getSubtree(id, depth != null ? depth : Integer.MAX_VALUE, activeOnly);
+    }
+
+    /**
+     * Employees whose name or position (as chosen by {@code field}) has words
+     * starting with the words of the query, best matches first, with close
+     * misspellings after them. At most {@link #MAX_SEARCH_RESULTS} are returned.
+     */
+    @Timed(SERVICE_TIMER)
+    public List<Employee> searchEmployees(String query, String field, int limit) {
+        if (query == null || query.trim().isEmpty()) {
+            throw new InvalidEmployeeDataException("Search query is required");
+        }
+        if (limit < 0) {
+            throw new InvalidEmployeeDataException("Limit must not be negative");
+        }
+        int capped = Math.min(limit, MAX_SEARCH_RESULTS);
+        EmployeeSnapshot snapshot = employeeStore.getSnapshot();
+        if ("name".equals(field)) {
+            return snapshot.searchByName(query, capped);
+        }
+        if ("position".equals(field)) {
+            return snapshot.searchByPosition(query, capped);
+        }
+        throw new InvalidEmployeeDataException("Unknown search field: " + field + " (expected name or position)");
+    }
+
+    @Timed(SERVICE_TIMER)
     public List<Employee> getEmployeesByHireDateRange(Date startDate, Date endDate) throws IOException {
-        SimpleDateFormat sdf = new SimpleDateFormat("MM/dd/yyyy");
-        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return getEmployeesByHireDateRange(startDate, endDate, 0, Integer.MAX_VALUE);
+    }
 
+    @Timed(SERVICE_TIMER)
+    public List<Employee> getEmployeesByHireDateRange(Date startDate, Date endDate, int offset, int limit) throws IOException {
         // Validate dates
         if (startDate == null || endDate == null) {
             throw new InvalidEmployeeDataException("Both start date and end date are required");
         }
+        if (offset < 0 || limit < 0) {
+            throw new InvalidEmployeeDataException("Offset and limit must not be negative");
+        }
 
-        try {
-            // Normalize input dates
-            startDate = sdf.parse(sdf.format(startDate));
-            endDate = sdf.parse(sdf.format(endDate));
+        // Normalize input dates to UTC days
+        int startDay = DateUtil.toEpochDay(startDate);
+        int endDay = DateUtil.toEpochDay(endDate);
 
-            if (startDate.after(endDate)) {
-                throw new InvalidEmployeeDataException("Start date must be before end date");
+        if (startDay > endDay) {
+            throw new InvalidEmployeeDataException("Start date must be before end date");
+        }
+
+        // Already sorted by hire date descending
+        return employeeStore.getSnapshot().getHiredBetween(startDay, endDay, offset, limit);
+    }
+
+    /**
+     * Employees upserted and ids deleted after {@code since}, for clients that already
+     * hold that version; a full snapshot marker when those changes are no longer kept.
+     * {@code epoch} is the one {@code since} was handed out in; without it the
+     * version can't be told apart from one of an earlier run, so a reload is asked for.
+     */
+    @Timed(SERVICE_TIMER)
+    public ChangeSet getChangesSince(long since, String epoch) {
+        if (since < 0) {
+            throw new InvalidEmployeeDataException("since must not be negative");
+        }
+        return employeeStore.getChangesSince(since, epoch);
+    }
+
+    /**
+     * Headcounts, active ratio, hires per month and span of control, all read from
+     * totals the snapshot keeps up to date, so the cost doesn't grow with the number
+     * of employees. With a window (either end may be left open), hires are counted
+     * and broken down by month within it only.
+     */
+    @Timed(SERVICE_TIMER)
+    public EmployeeStats getStats(Date startDate, Date endDate) {
+        EmployeeSnapshot snapshot = employeeStore.getSnapshot();
+        boolean windowed = startDate != null || endDate != null;
+        int[] hireDays = snapshot.getHireDayRange();
+        int startDay = startDate != null ? DateUtil.toEpochDay(startDate) : hireDays != null ? hireDays[0] : 0;
+        int endDay = endDate != null ? DateUtil.toEpochDay(endDate) : hireDays != null ? hireDays[1] : -1;
+        if (startDate != null && endDate != null && startDay > endDay) {
+            throw new InvalidEmployeeDataException("Start date must be before end date");
+        }
+
+        List<EmployeeStats.PositionCount> positions = new ArrayList<>();
+        for (Map.Entry<String, int[]> entry : snapshot.getHeadcountByPosition().entrySet()) {
+            positions.add(new EmployeeStats.PositionCount(entry.getKey(), entry.getValue()[0], entry.getValue()[1]));
+        }
+        positions.sort(Comparator.comparingInt(EmployeeStats.PositionCount::getTotal).reversed()
+                .thenComparing(EmployeeStats.PositionCount::getPosition, Comparator.nullsLast(Comparator.naturalOrder())));
+
+        // One count per month, each two binary searches over the hire-date index
+        Map<String, Integer> hiresByMonth = new LinkedHashMap<>();
+        if (hireDays != null && startDay <= endDay) {
+            LocalDate month = LocalDate.ofEpochDay(Math.max(startDay, hireDays[0])).withDayOfMonth(1);
+            LocalDate last = LocalDate.ofEpochDay(Math.min(endDay, hireDays[1]));
+            for (; !month.isAfter(last); month = month.plusMonths(1)) {
+                int from = (int) Math.max(month.toEpochDay(), startDay);
+                int to = (int) Math.min(month.plusMonths(1).toEpochDay() - 1, endDay);
+                hiresByMonth.put(String.format("%04d-%02d", month.getYear(), month.getMonthValue()),
+                        snapshot.countHiredBetween(from, to));
             }
+        }
 
-            System.out.println("Searching for employees between " + sdf.format(startDate) + " and " + sdf.format(endDate));
+        Map<Integer, Integer> spanOfControl = new LinkedHashMap<>();
+        int[] reportCounts = snapshot.getReportCountDistribution();
+        for (int n = 1; n < reportCounts.length; n++) {
+            if (reportCounts[n] > 0) {
+                spanOfControl.put(n, reportCounts[n]);
+            }
+        }
 
-            // Get all employees and filter by hire date
-            List<Employee> employees = fileUtil.readEmployees();
-            System.out.println("Total employees before filtering: " + employees.size());
+        return new EmployeeStats(snapshot.size(), snapshot.getActiveCount(), positions, hiresByMonth,
+                windowed ? snapshot.countHiredBetween(startDay, endDay) : null, spanOfControl);
+    }
 
-            List<Employee> filteredEmployees = new ArrayList<>();
-            
-            for (Employee e : employees) {
-                if (e.getHireDate() == null) {
-                    System.out.println("Skipping employee " + e.getName() + ": no hire date");
+    @Timed(SERVICE_TIMER)
+    public Employee createEmployee(Employee employee, Long managerId) throws IOException {
+        return createEmployee(employee, managerId, null);
+    }
+
+    @Timed(SERVICE_TIMER)
+    public Employee createEmployee(Employee employee, Long managerId, Long expectedVersion) throws IOException {
+        validateNewEmployee(employee);
+        employeeStore.commit(expectedVersion, snapshot -> createChange(snapshot, employee, managerId));
+        return employee;
+    }
+
+    @Timed(SERVICE_TIMER)
+    public Employee deactivateEmployee(Long id) throws IOException {
+        return deactivateEmployee(id, null);
+    }
+
+    @Timed(SERVICE_TIMER)
+    public Employee deactivateEmployee(Long id, Long expectedVersion) throws IOException {
+        return employeeStore.commit(expectedVersion, snapshot -> deactivateChange(snapshot, id)).get(id);
+    }
+
+    @Timed(SERVICE_TIMER)
+    public Employee reactivateEmployee(Long id) throws IOException {
+        return reactivateEmployee(id, null);
+    }
+
+    @Timed(SERVICE_TIMER)
+    public Employee reactivateEmployee(Long id, Long expectedVersion) throws IOException {
+        return employeeStore.commit(expectedVersion, snapshot -> reactivateChange(snapshot, id)).get(id);
+    }
+
+    @Timed(SERVICE_TIMER)
+    public void deleteEmployee(Long id) throws IOException {
+        deleteEmployee(id, null);
+    }
+
+    @Timed(SERVICE_TIMER)
+    public void deleteEmployee(Long id, Long expectedVersion) throws IOException {
+        employeeStore.commit(expectedVersion, snapshot -> deleteChange(snapshot, id));
+    }
+
+    /**
+     * Creates every valid item against one snapshot and commits them in a single
+     * write. Items are validated in order, so later items may name earlier ones as
+     * manager. With {@code atomic}, nothing is committed if any item fails.
+     */
+    @Timed(SERVICE_TIMER)
+    public BatchResult createEmployees(List<EmployeeBatchItem> items, boolean atomic) throws IOException {
+        BatchResult result = new BatchResult(items.size());
+        List<Employee> employees = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            if (items.get(i) == null) {
+                employees.add(null);
+                result.fail(i, null, "Employee data is required");
+                continue;
+            }
+            Employee employee = new Employee(items.get(i));
+            employees.add(employee);
+            try {
+                validateNewEmployee(employee);
+            } catch (InvalidEmployeeDataException e) {
+                result.fail(i, employee.getId(), e.getMessage());
+            }
+        }
+
+        employeeStore.commitAll(null, snapshot -> {
+            PendingChanges pending = new PendingChanges(snapshot);
+            for (int i = 0; i < employees.size(); i++) {
+                if (result.isFailed(i)) {
                     continue;
                 }
-
-                // Normalize hire date
-                Date hireDate = sdf.parse(sdf.format(e.getHireDate()));
-                System.out.println("Checking employee " + e.getName() + " with hire date: " + sdf.format(hireDate));
-
-                if ((hireDate.equals(startDate) || hireDate.after(startDate)) && 
-                    (hireDate.equals(endDate) || hireDate.before(endDate))) {
-                    System.out.println("Including employee: " + e.getName());
-                    filteredEmployees.add(e);
-                } else {
-                    System.out.println("Excluding employee: " + e.getName() + 
-                                     " (hire date outside range: " + sdf.format(hireDate) + ")");
+                Employee employee = employees.get(i);
+                try {
+                    pending.apply(createChange(pending, employee, items.get(i).getManagerId()));
+                    result.succeed(i, employee.getId());
+                } catch (InvalidEmployeeDataException | EmployeeNotFoundException e) {
+                    result.fail(i, employee.getId(), e.getMessage());
                 }
             }
+            return finishBatch(pending, result, atomic);
+        });
+        return result;
+    }
+
+    @Timed(SERVICE_TIMER)
+    public BatchResult deactivateEmployees(List<Long> ids, boolean atomic) throws IOException {
+        return applyToEach(ids, atomic, this::deactivateChange);
+    }
 
-            // Sort by hire date descending
-            filteredEmployees.sort((e1, e2) -> e2.getHireDate().compareTo(e1.getHireDate()));
+    @Timed(SERVICE_TIMER)
+    public BatchResult reactivateEmployees(List<Long> ids, boolean atomic) throws IOException {
+        return applyToEach(ids, atomic, this::reactivateChange);
+    }
 
-            System.out.println("Found " + filteredEmployees.size() + " employees in date range");
-            return filteredEmployees;
+    private BatchResult applyToEach(List<Long> ids, boolean atomic,
+                                    BiFunction<EmployeeLookup, Long, EmployeeChange> changeFor) throws IOException {
+        BatchResult result = new BatchResult(ids.size());
+        employeeStore.commitAll(null, snapshot -> {
+            PendingChanges pending = new PendingChanges(snapshot);
+            for (int i = 0; i < ids.size(); i++) {
+                Long id = ids.get(i);
+                try {
+                    if (id == null) {
+                        throw new InvalidEmployeeDataException("Employee ID is required");
+                    }
+                    pending.apply(changeFor.apply(pending, id));
+                    result.succeed(i, id);
+                } catch (InvalidEmployeeDataException | EmployeeNotFoundException e) {
+                    result.fail(i, id, e.getMessage());
+                }
+            }
+            return finishBatch(pending, result, atomic);
+        });
+        return result;
+    }
 
-        } catch (ParseException ex) {
-            System.err.println("Error parsing dates: " + ex.getMessage());
-            throw new InvalidEmployeeDataException("Error processing dates");
+    private List<EmployeeChange> finishBatch(PendingChanges pending, BatchResult result, boolean atomic) {
+        if (atomic && result.getFailed() > 0) {
+            result.skipSucceeded();
+            return Collections.emptyList();
         }
+        return pending.getChanges();
     }
 
-    public Employee createEmployee(Employee employee, Long managerId) throws IOException {
-        List<Employee> employees = fileUtil.readEmployees();
+    public long getVersion() {
+        return employeeStore.getSnapshot().getVersion();
+    }
 
+    public String getEpoch() {
+        return employeeStore.getEpoch();
+    }
+
+    // Checks that don't depend on other employees; also normalizes the hire date
+    private void validateNewEmployee(Employee employee) {
         // Validate required fields
         if (employee.getName() == null || employee.getName().trim().isEmpty()) {
             throw new InvalidEmployeeDataException("Employee name is required");
@@ -172,22 +474,28 @@ public class EmployeeService {
         } catch (ParseException e) {
             throw new InvalidEmployeeDataException("Invalid hire date format. Expected format: MM/DD/YYYY");
         }
+    }
+
+    // The change* methods validate against the given snapshot and describe the change; they run on the commit path
+
+    private EmployeeChange createChange(EmployeeLookup snapshot, Employee employee, Long managerId) {
+        List<Employee> changed = new ArrayList<>();
 
         // Validate manager
         if (managerId != null) {
-            Employee manager = employees.stream()
-                    .filter(e -> e.getId().equals(managerId))
-                    .findFirst()
-                    .orElseThrow(() -> new EmployeeNotFoundException("Manager not found with id: " + managerId));
+            Employee manager = snapshot.get(managerId);
+            if (manager == null) {
+                throw new EmployeeNotFoundException("Manager not found with id: " + managerId);
+            }
 
             if (!manager.isActive()) {
                 throw new InvalidEmployeeDataException("Cannot assign an inactive employee as manager");
             }
 
             // Add employee to manager's direct reports
-            List<Long> reports = new ArrayList<>(manager.getDirectReports());
-            reports.add(employee.getId());
-            manager.setDirectReports(reports);
+            manager = new Employee(manager);
+            manager.getDirectReports().add(employee.getId());
+            changed.add(manager);
         }
 
         // Set default values
@@ -198,11 +506,9 @@ public class EmployeeService {
         employee.setOriginal(false);  // Mark as a new employee
 
         // Validate direct reports if provided
-        if (!employee.getDirectReports().isEmpty()) {
-            for (Long reportId : employee.getDirectReports()) {
-                if (!employees.stream().anyMatch(e -> e.getId().equals(reportId))) {
-                    throw new InvalidEmployeeDataException("Direct report not found with id: " + reportId);
-                }
+        for (Long reportId : employee.getDirectReports()) {
+            if (reportId == null || !snapshot.contains(reportId)) {
+                throw new InvalidEmployeeDataException("Direct report not found with id: " + reportId);
             }
         }
 
@@ -210,69 +516,54 @@ public class EmployeeService {
         if (employee.getId() == null) {
             throw new InvalidEmployeeDataException("Employee ID is required");
         }
-        
-        boolean idExists = employees.stream()
-                .anyMatch(e -> e.getId().equals(employee.getId()));
-        if (idExists) {
+
+        if (snapshot.contains(employee.getId())) {
             throw new InvalidEmployeeDataException("Employee ID " + employee.getId() + " already exists");
         }
 
-        employees.add(employee);
-        fileUtil.writeEmployees(employees);
-        return employee;
+        changed.add(employee);
+        return EmployeeChange.upsert(EmployeeChange.Type.CREATE, employee.getId(), changed);
     }
 
-    public Employee deactivateEmployee(Long id) throws IOException {
-        List<Employee> employees = fileUtil.readEmployees();
-        Employee employee = employees.stream()
-                .filter(e -> e.getId().equals(id))
-                .findFirst()
-                .orElseThrow(() -> new EmployeeNotFoundException("Employee not found with id: " + id));
+    private EmployeeChange deactivateChange(EmployeeLookup snapshot, Long id) {
+        Employee employee = findEmployee(snapshot, id);
 
         if (!employee.isActive()) {
             throw new InvalidEmployeeDataException("Employee is already inactive");
         }
 
         // Remove this employee from their manager's direct reports
-        employees.stream()
-                .filter(e -> e.getDirectReports().contains(id))
-                .findFirst()
-                .ifPresent(manager -> {
-                    List<Long> reports = new ArrayList<>(manager.getDirectReports());
-                    reports.remove(id);
-                    manager.setDirectReports(reports);
-                });
+        List<Employee> changed = new ArrayList<>();
+        Employee manager = snapshot.getManager(id);
+        if (manager != null) {
+            manager = new Employee(manager);
+            manager.getDirectReports().remove(id);
+            changed.add(manager);
+        }
 
         // Deactivate the employee
+        employee = new Employee(employee);
         employee.setActive(false);
         employee.setDirectReports(new ArrayList<>()); // Clear direct reports when deactivating
+        changed.add(employee);
 
-        fileUtil.writeEmployees(employees);
-        return employee;
+        return EmployeeChange.upsert(EmployeeChange.Type.DEACTIVATE, id, changed);
     }
 
-    public Employee reactivateEmployee(Long id) throws IOException {
-        List<Employee> employees = fileUtil.readEmployees();
-        Employee employee = employees.stream()
-                .filter(e -> e.getId().equals(id))
-                .findFirst()
-                .orElseThrow(() -> new EmployeeNotFoundException("Employee not found with id: " + id));
+    private EmployeeChange reactivateChange(EmployeeLookup snapshot, Long id) {
+        Employee employee = findEmployee(snapshot, id);
 
         if (employee.isActive()) {
             throw new InvalidEmployeeDataException("Employee is already active");
         }
 
+        employee = new Employee(employee);
         employee.setActive(true);
-        fileUtil.writeEmployees(employees);
-        return employee;
+        return EmployeeChange.upsert(EmployeeChange.Type.REACTIVATE, id, Collections.singletonList(employee));
     }
 
-    public void deleteEmployee(Long id) throws IOException {
-        List<Employee> employees = fileUtil.readEmployees();
-        Employee employee = employees.stream()
-                .filter(e -> e.getId().equals(id))
-                .findFirst()
-                .orElseThrow(() -> new EmployeeNotFoundException("Employee not found with id: " + id));
+    private EmployeeChange deleteChange(EmployeeLookup snapshot, Long id) {
+        Employee employee = findEmployee(snapshot, id);
 
         // Check if employee is original
         if (employee.isOriginal()) {
@@ -280,17 +571,23 @@ public class EmployeeService {
         }
 
         // Remove this employee from their manager's direct reports
-        employees.stream()
-                .filter(e -> e.getDirectReports().contains(id))
-                .findFirst()
-                .ifPresent(manager -> {
-                    List<Long> reports = new ArrayList<>(manager.getDirectReports());
-                    reports.remove(id);
-                    manager.setDirectReports(reports);
-                });
+        List<Employee> changed = new ArrayList<>();
+        Employee manager = snapshot.getManager(id);
+        if (manager != null) {
+            manager = new Employee(manager);
+            manager.getDirectReports().remove(id);
+            changed.add(manager);
+        }
 
         // Remove the employee
-        employees.removeIf(e -> e.getId().equals(id));
-        fileUtil.writeEmployees(employees);
+        return new EmployeeChange(EmployeeChange.Type.DELETE, id, changed, Collections.singletonList(id));
+    }
+
+    private Employee findEmployee(EmployeeLookup snapshot, Long id) {
+        Employee employee = snapshot.get(id);
+        if (employee == null) {
+            throw new EmployeeNotFoundException("Employee not found with id: " + id);
+        }
+        return employee;
     }
 }
@@ -0,0 +1,187 @@
+package com.flywire.exercise.service;
+
+import com.flywire.exercise.model.Employee;
+import com.flywire.exercise.store.EmployeeChange;
+import com.flywire.exercise.store.EmployeeLookup;
+import com.flywire.exercise.store.EmployeeSnapshot;
+import com.flywire.exercise.store.EmployeeStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Repairs the reporting lines in the background, so reads never have to: drops
+ * direct reports that are null, no longer exist or are listed twice, and breaks
+ * reporting cycles by removing the line into the cycle's lowest id. Problems are
+ * found on the published snapshot without locking, then fixed in commits of up
+ * to batch-size managers, each checked again against the state it is applied to.
+ */
+@Component
+public class ReportReconciler {
+
+    private static final Logger log = LoggerFactory.getLogger(ReportReconciler.class);
+
+    private final EmployeeStore employeeStore;
+    private final int batchSize;
+    private final Counter danglingRepaired;
+    private final Counter duplicatesRepaired;
+    private final Counter cyclesRepaired;
+
+    public ReportReconciler(EmployeeStore employeeStore,
+                            @Value("${employees.reconcile.batch-size:100}") int batchSize,
+                            MeterRegistry meterRegistry) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("employees.reconcile.batch-size must be positive");
+        }
+        this.employeeStore = employeeStore;
+        this.batchSize = batchSize;
+        this.danglingRepaired = repairCounter("dangling", meterRegistry);
+        this.duplicatesRepaired = repairCounter("duplicate", meterRegistry);
+        this.cyclesRepaired = repairCounter("cycle", meterRegistry);
+    }
+
+    private static Counter repairCounter(String problem, MeterRegistry meterRegistry) {
+        return Counter.builder("employees.reconcile.repaired")
+                .description("Direct report entries removed by the reconciler")
+                .tag("problem", problem)
+                .register(meterRegistry);
+    }
+
+    // Returns how many direct report entries were removed
+    @Scheduled(fixedDelayString = "${employees.reconcile.interval-ms:60000}")
+    public int reconcile() throws IOException {
+        EmployeeSnapshot snapshot = employeeStore.getSnapshot();
+        // Manager id -> reports to cut because they close a cycle
+        Map<Long, Set<Long>> cycleCuts = findCycleCuts(snapshot);
+        Set<Long> managerIds = new HashSet<>(cycleCuts.keySet());
+        for (Employee employee : snapshot.getEmployees()) {
+            if (hasBrokenReports(employee, snapshot)) {
+                managerIds.add(employee.getId());
+            }
+        }
+
+        int repaired = 0;
+        List<Long> batch = new ArrayList<>(batchSize);
+        for (Iterator<Long> it = managerIds.iterator(); it.hasNext(); ) {
+            batch.add(it.next());
+            if (batch.size() == batchSize || !it.hasNext()) {
+                repaired += repair(batch, cycleCuts);
+                batch.clear();
+            }
+        }
+        if (repaired > 0) {
+            log.info("Removed {} broken direct report entries from {} employees", repaired, managerIds.size());
+        }
+        return repaired;
+    }
+
+    private int repair(List<Long> managerIds, Map<Long, Set<Long>> cycleCuts) throws IOException {
+        int[] counts = new int[3];
+        employeeStore.commitAll(null, current -> {
+            List<EmployeeChange> changes = new ArrayList<>();
+            for (Long id : managerIds) {
+                Employee manager = current.get(id);
+                if (manager == null || manager.getDirectReports() == null) {
+                    continue;
+                }
+                Set<Long> cuts = cycleCuts.getOrDefault(id, Collections.emptySet());
+                Set<Long> kept = new HashSet<>();
+                List<Long> reports = new ArrayList<>(manager.getDirectReports().size());
+                for (Long reportId : manager.getDirectReports()) {
+                    if (reportId == null || !current.contains(reportId)) {
+                        counts[0]++;
+                    } else if (!kept.add(reportId)) {
+                        counts[1]++;
+                    } else if (cuts.contains(reportId) && reachesUp(current, id, reportId)) {
+                        counts[2]++;
+                    } else {
+                        reports.add(reportId);
+                    }
+                }
+                if (reports.size() != manager.getDirectReports().size()) {
+                    Employee updated = new Employee(manager);
+                    updated.setDirectReports(reports);
+                    changes.add(EmployeeChange.upsert(EmployeeChange.Type.UPDATE, id, Collections.singletonList(updated)));
+                }
+            }
+            return changes;
+        });
+        danglingRepaired.increment(counts[0]);
+        duplicatesRepaired.increment(counts[1]);
+        cyclesRepaired.increment(counts[2]);
+        return counts[0] + counts[1] + counts[2];
+    }
+
+    private static boolean hasBrokenReports(Employee employee, EmployeeSnapshot snapshot) {
+        List<Long> reports = employee.getDirectReports();
+        if (reports == null || reports.isEmpty()) {
+            return false;
+        }
+        Set<Long> seen = new HashSet<>();
+        for (Long reportId : reports) {
+            if (reportId == null || !snapshot.contains(reportId) || !seen.add(reportId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Follows every employee's managers upwards; a walk that comes back to an
+     * employee it already passed has found a cycle, which is cut above its lowest id.
+     */
+    private static Map<Long, Set<Long>> findCycleCuts(EmployeeSnapshot snapshot) {
+        Map<Long, Set<Long>> cuts = new LinkedHashMap<>();
+        // Employees already known to lead to the top or into a cycle that has been cut
+        Set<Long> done = new HashSet<>();
+        for (Employee employee : snapshot.getEmployees()) {
+            // Position of each employee on the current walk
+            Map<Long, Integer> walk = new HashMap<>();
+            List<Long> path = new ArrayList<>();
+            Long id = employee.getId();
+            while (id != null && !done.contains(id) && !walk.containsKey(id)) {
+                walk.put(id, path.size());
+                path.add(id);
+                Employee manager = snapshot.getManager(id);
+                id = manager != null ? manager.getId() : null;
+            }
+            if (id != null && walk.containsKey(id)) {
+                long lowest = id;
+                for (Long member : path.subList(walk.get(id), path.size())) {
+                    lowest = Math.min(lowest, member);
+                }
+                Employee manager = snapshot.getManager(lowest);
+                cuts.computeIfAbsent(manager.getId(), m -> new HashSet<>()).add(lowest);
+            }
+            done.addAll(path);
+        }
+        return cuts;
+    }
+
+    // Whether managerId reports, directly or not, to reportId: the line between them still closes a cycle
+    private static boolean reachesUp(EmployeeLookup lookup, long managerId, long reportId) {
+        Set<Long> seen = new HashSet<>();
+        for (Employee current = lookup.get(managerId); current != null && seen.add(current.getId());
+             current = lookup.getManager(current.getId())) {
+            if (current.getId() == reportId) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,272 @@
+package com.flywire.exercise.store;
+
+import com.flywire.exercise.model.Employee;
+import com.flywire.exercise.util.LongHashMap;
+import com.flywire.exercise.util.LongLongHashMap;
+import com.flywire.exercise.util.PersistentLongLongMap;
+import com.flywire.exercise.util.PersistentLongMap;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Binary-lifting table over the reporting lines: for every employee, its depth
+ * below the top of its chain and its 1st, 2nd, 4th, 8th... manager. Any ancestor,
+ * and the lowest common manager of two employees, is then reached in O(log depth)
+ * jumps. Parents are the same ones {@link OrgIndex} uses. A change recomputes only
+ * the subtrees of employees whose manager actually changed, and the table is a
+ * persistent map, so everything else is shared with the previous version.
+ */
+final class AncestorIndex {
+
+    private static final long NO_MANAGER = Long.MIN_VALUE;
+    private static final long[] TOP = {0};
+
+    // Per employee: depth in slot 0, then the 2^k-th manager in slot k + 1
+    private final PersistentLongMap<long[]> ancestors;
+
+    AncestorIndex(EmployeeTable table, PersistentLongLongMap managers, OrgIndex org) {
+        PersistentLongMap<long[]> none = PersistentLongMap.empty();
+        LongHashMap<long[]> relinked = new LongHashMap<>(table.size());
+        for (int row = 0; row < table.size(); row++) {
+            long id = table.idAt(row);
+            if (parentOf(id, table, managers) == NO_MANAGER) {
+                relink(id, NO_MANAGER, org, none, relinked);
+            }
+        }
+        // Whatever is left sits on a reporting cycle; each cycle is cut at an arbitrary member
+        for (int row = 0; row < table.size(); row++) {
+            long id = table.idAt(row);
+            if (!relinked.containsKey(id)) {
+                relink(id, NO_MANAGER, org, none, relinked);
+            }
+        }
+        PersistentLongMap.Builder<long[]> builder = new PersistentLongMap.Builder<>(table.size());
+        for (int row = 0; row < table.size(); row++) {
+            long id = table.idAt(row);
+            builder.put(id, relinked.get(id));
+        }
+        this.ancestors = builder.build();
+    }
+
+    private AncestorIndex(PersistentLongMap<long[]> ancestors) {
+        this.ancestors = ancestors;
+    }
+
+    /**
+     * Returns the index for the snapshot after a change. The old maps describe the
+     * snapshot this index belongs to; the new ones and {@code org} the one being built.
+     */
+    AncestorIndex withChanges(EmployeeTable oldTable, PersistentLongLongMap oldManagers,
+                              EmployeeTable table, PersistentLongLongMap managers, OrgIndex org,
+                              Collection<Employee> previousVersions, Collection<Employee> upserts,
+                              Collection<Long> deletedIds) {
+        // Only the changed employees and the reports they list can have a new manager
+        LongLongHashMap candidates = new LongLongHashMap();
+        for (Long id : deletedIds) {
+            candidates.put(id, 0);
+        }
+        for (Employee emp : previousVersions) {
+            addReports(candidates, emp);
+        }
+        for (Employee emp : upserts) {
+            candidates.put(emp.getId(), 0);
+            addReports(candidates, emp);
+        }
+
+        PersistentLongMap<long[]> kept = ancestors;
+        LongLongHashMap moved = new LongLongHashMap();
+        for (long id : candidates.keys()) {
+            if (!table.contains(id)) {
+                kept = kept.without(id);
+            } else if (!oldTable.contains(id)
+                    || parentOf(id, oldTable, oldManagers) != parentOf(id, table, managers)) {
+                moved.put(id, 0);
+            }
+        }
+        // New entries collect in a scratch map, read ahead of the kept ones, and are merged in at the end
+        LongHashMap<long[]> relinked = new LongHashMap<>();
+        for (long id : moved.keys()) {
+            // A move inside another moved subtree is redone when that subtree is
+            if (!hasMovedAncestorOrCycle(id, moved, table, managers)) {
+                relink(id, parentOf(id, table, managers), org, kept, relinked);
+            }
+        }
+        // Moves still left sit on or under a reporting cycle, which is cut at a member as the constructor does
+        for (long id : moved.keys()) {
+            if (!relinked.containsKey(id)) {
+                relink(cycleAbove(id, table, managers), NO_MANAGER, org, kept, relinked);
+            }
+        }
+        for (long id : relinked.keys()) {
+            kept = kept.with(id, relinked.get(id));
+        }
+        return new AncestorIndex(kept);
+    }
+
+    int depth(long id) {
+        long[] entry = ancestors.get(id);
+        return entry != null ? (int) entry[0] : -1;
+    }
+
+    // The manager {@code distance} levels up, or NO_MANAGER past the top of the chain
+    long ancestor(long id, long distance) {
+        long[] entry = ancestors.get(id);
+        if (entry == null || distance > entry[0]) {
+            return NO_MANAGER;
+        }
+        long current = id;
+        while (distance > 0) {
+            int k = Long.numberOfTrailingZeros(distance);
+            if (entry == null || entry.length <= k + 1) {
+                return NO_MANAGER;
+            }
+            current = entry[k + 1];
+            entry = ancestors.get(current);
+            distance &= distance - 1;
+        }
+        return current;
+    }
+
+    /**
+     * The lowest employee that both are in the org of, counting each employee as
+     * part of their own org; NO_MANAGER when they sit in separate hierarchies.
+     */
+    long lowestCommon(long a, long b) {
+        long[] entryA = ancestors.get(a);
+        long[] entryB = ancestors.get(b);
+        if (entryA == null || entryB == null) {
+            return NO_MANAGER;
+        }
+        // Lift the deeper one to the same depth first
+        if (entryA[0] > entryB[0]) {
+            a = ancestor(a, entryA[0] - entryB[0]);
+        } else if (entryB[0] > entryA[0]) {
+            b = ancestor(b, entryB[0] - entryA[0]);
+        }
+        if (a == b || a == NO_MANAGER || b == NO_MANAGER) {
+            return a == b ? a : NO_MANAGER;
+        }
+        // Then take the largest jumps that still leave them apart
+        entryA = ancestors.get(a);
+        entryB = ancestors.get(b);
+        for (int k = entryA.length - 1; k >= 1; k--) {
+            if (k < entryA.length && k < entryB.length && entryA[k] != entryB[k]) {
+                a = entryA[k];
+                b = entryB[k];
+                entryA = ancestors.get(a);
+                entryB = ancestors.get(b);
+                if (entryA == null || entryB == null) {
+                    return NO_MANAGER;
+                }
+            }
+        }
+        long parentA = entryA.length > 1 ? entryA[1] : NO_MANAGER;
+        long parentB = entryB.length > 1 ? entryB[1] : NO_MANAGER;
+        return parentA == parentB ? parentA : NO_MANAGER;
+    }
+
+    // Recomputes the entries of the whole subtree under rootId, parents before children
+    private static void relink(long rootId, long parentId, OrgIndex org,
+                               PersistentLongMap<long[]> kept, LongHashMap<long[]> relinked) {
+        LongLongHashMap visited = new LongLongHashMap();
+        long[] stack = new long[16];
+        long[] stackParents = new long[16];
+        stack[0] = rootId;
+        stackParents[0] = parentId;
+        int top = 1;
+        while (top > 0) {
+            top--;
+            long id = stack[top];
+            long parent = stackParents[top];
+            if (visited.containsKey(id)) {
+                continue;
+            }
+            visited.put(id, 0);
+            relinked.put(id, entryBelow(parent, kept, relinked));
+            long[] kids = org.childrenOf(id);
+            if (top + kids.length > stack.length) {
+                int capacity = Math.max(stack.length * 2, top + kids.length);
+                stack = Arrays.copyOf(stack, capacity);
+                stackParents = Arrays.copyOf(stackParents, capacity);
+            }
+            for (long kid : kids) {
+                stack[top] = kid;
+                stackParents[top] = id;
+                top++;
+            }
+        }
+    }
+
+    private static long[] entryBelow(long parentId, PersistentLongMap<long[]> kept, LongHashMap<long[]> relinked) {
+        long[] parent = parentId != NO_MANAGER ? entryOf(parentId, kept, relinked) : null;
+        if (parent == null) {
+            return TOP;
+        }
+        long depth = parent[0] + 1;
+        int levels = 64 - Long.numberOfLeadingZeros(depth);
+        long[] entry = new long[levels + 1];
+        entry[0] = depth;
+        entry[1] = parentId;
+        for (int k = 1; k < levels; k++) {
+            // The 2^k-th manager is the 2^(k-1)-th manager of the 2^(k-1)-th manager
+            long[] half = entryOf(entry[k], kept, relinked);
+            if (half == null || half.length <= k) {
+                return Arrays.copyOf(entry, k + 1);
+            }
+            entry[k + 1] = half[k];
+        }
+        return entry;
+    }
+
+    private static long[] entryOf(long id, PersistentLongMap<long[]> kept, LongHashMap<long[]> relinked) {
+        long[] entry = relinked.get(id);
+        return entry != null ? entry : kept.get(id);
+    }
+
+    // Whether a moved manager or a reporting cycle lies anywhere above the employee
+    private static boolean hasMovedAncestorOrCycle(long id, LongLongHashMap moved,
+                                                   EmployeeTable table, PersistentLongLongMap managers) {
+        LongLongHashMap seen = new LongLongHashMap();
+        seen.put(id, 0);
+        for (long current = parentOf(id, table, managers); current != NO_MANAGER;
+             current = parentOf(current, table, managers)) {
+            if (moved.containsKey(current) || seen.containsKey(current)) {
+                return true;
+            }
+            seen.put(current, 0);
+        }
+        return false;
+    }
+
+    // The first employee met twice walking up from the given one, which is on the cycle above it
+    private static long cycleAbove(long id, EmployeeTable table, PersistentLongLongMap managers) {
+        LongLongHashMap seen = new LongLongHashMap();
+        long current = id;
+        while (!seen.containsKey(current)) {
+            seen.put(current, 0);
+            long parent = parentOf(current, table, managers);
+            if (parent == NO_MANAGER) {
+                // No cycle after all: the top of the chain stands in for the cut
+                return current;
+            }
+            current = parent;
+        }
+        return current;
+    }
+
+    private static long parentOf(long id, EmployeeTable table, PersistentLongLongMap managers) {
+        long managerId = managers.get(id, NO_MANAGER);
+        return managerId != NO_MANAGER && table.contains(managerId) ? managerId : NO_MANAGER;
+    }
+
+    private static void addReports(LongLongHashMap ids, Employee emp) {
+        if (emp.getDirectReports() != null) {
+            for (Long reportId : emp.getDirectReports()) {
+                if (reportId != null) {
+                    ids.put(reportId, 0);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.flywire.exercise.store;
+
+import com.flywire.exercise.model.ChangeSet;
+import com.flywire.exercise.model.Employee;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The most recent committed changes, one per version, so a client can ask what
+ * changed since a version it has and get work proportional to the changes rather
+ * than the data set. Older changes are dropped as new ones arrive, and a full
+ * replace drops them all; a client that is behind what is kept has to reload.
+ * Versions start over on every restart, so they are only comparable within one
+ * epoch, which is sent along with them.
+ */
+public final class ChangeLog implements SnapshotListener {
+
+    private final String epoch;
+    // Changes by version modulo length; everything below is guarded by this
+    private final EmployeeChange[] changes;
+    // Version of the latest change
+    private long latest;
+    // Oldest version the kept changes lead on from
+    private long floor;
+
+    public ChangeLog(int capacity, long version, String epoch) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The change log must keep at least one change");
+        }
+        this.epoch = epoch;
+        this.changes = new EmployeeChange[capacity];
+        this.latest = version;
+        this.floor = version;
+    }
+
+    public String getEpoch() {
+        return epoch;
+    }
+
+    @Override
+    public synchronized void beforePublish(EmployeeSnapshot previous, EmployeeSnapshot updated,
+                                           List<EmployeeChange> committed) {
+        if (committed == null) {
+            Arrays.fill(changes, null);
+            latest = updated.getVersion();
+            floor = latest;
+            return;
+        }
+        long version = previous.getVersion();
+        for (EmployeeChange change : committed) {
+            version++;
+            changes[slot(version)] = change;
+        }
+        latest = version;
+        floor = Math.max(floor, latest - changes.length);
+    }
+
+    /**
+     * Everything that changed after {@code since}, collapsed to the latest version of
+     * each upserted employee and the ids deleted and not since re-created. Asks for a
+     * full reload when {@code since} is from another epoch or comes without one, is
+     * no longer covered by the kept changes or is ahead of them.
+     */
+    public ChangeSet since(long since, String sinceEpoch) {
+        EmployeeChange[] window;
+        long version;
+        synchronized (this) {
+            version = latest;
+            if (!epoch.equals(sinceEpoch) || since < floor || since > latest) {
+                return ChangeSet.fullSnapshot(epoch, since, version);
+            }
+            window = new EmployeeChange[(int) (latest - since)];
+            for (int i = 0; i < window.length; i++) {
+                window[i] = changes[slot(since + 1 + i)];
+            }
+        }
+        // Collapsed outside the lock, which the writer thread takes on every commit
+        Map<Long, Employee> upserted = new LinkedHashMap<>();
+        Set<Long> deleted = new LinkedHashSet<>();
+        for (EmployeeChange change : window) {
+            for (Employee employee : change.getUpserts()) {
+                upserted.put(employee.getId(), employee);
+                deleted.remove(employee.getId());
+            }
+            for (Long id : change.getDeletedIds()) {
+                upserted.remove(id);
+                deleted.add(id);
+            }
+        }
+        return ChangeSet.delta(epoch, since, version, new ArrayList<>(upserted.values()), new ArrayList<>(deleted));
+    }
+
+    private int slot(long version) {
+        return (int) (version % changes.length);
+    }
+}
@@ -0,0 +1,71 @@
+package com.flywire.exercise.store;
+
+import com.flywire.exercise.model.Employee;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One committed mutation: the full new versions of every employee it touched plus
+ * the ids it removed. Records are state-based, so replaying them is idempotent.
+ */
+public class EmployeeChange {
+
+    public enum Type {
+        CREATE, DEACTIVATE, REACTIVATE, DELETE, UPDATE
+    }
+
+    private Type type;
+    private Long employeeId;
+    private List<Employee> upserts;
+    private List<Long> deletedIds;
+
+    public EmployeeChange() {
+        this.upserts = new ArrayList<>();
+        this.deletedIds = new ArrayList<>();
+    }
+
+    public EmployeeChange(Type type, Long employeeId, List<Employee> upserts, List<Long> deletedIds) {
+        this.type = type;
+        this.employeeId = employeeId;
+        this.upserts = upserts;
+        this.deletedIds = deletedIds;
+    }
+
+    public static EmployeeChange upsert(Type type, Long employeeId, List<Employee> upserts) {
+        return new EmployeeChange(type, employeeId, upserts, Collections.emptyList());
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public Long getEmployeeId() {
+        return employeeId;
+    }
+
+    public void setEmployeeId(Long employeeId) {
+        this.employeeId = employeeId;
+    }
+
+    public List<Employee> getUpserts() {
+        return upserts;
+    }
+
+    public void setUpserts(List<Employee> upserts) {
+        this.upserts = upserts;
+    }
+
+    public List<Long> getDeletedIds() {
+        return deletedIds;
+    }
+
+    public void setDeletedIds(List<Long> deletedIds) {
+        this.deletedIds = deletedIds;
+    }
+}
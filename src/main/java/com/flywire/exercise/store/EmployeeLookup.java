@@ -0,0 +1,16 @@
+package com.flywire.exercise.store;
+
+import com.flywire.exercise.model.Employee;
+
+/**
+ * Point lookups that mutation rules are validated against: either a published
+ * snapshot or a snapshot with a batch's earlier changes layered on top.
+ */
+public interface EmployeeLookup {
+
+    Employee get(long id);
+
+    boolean contains(long id);
+
+    Employee getManager(long reportId);
+}
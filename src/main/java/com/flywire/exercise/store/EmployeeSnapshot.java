@@ -0,0 +1,325 @@
+package com.flywire.exercise.store;
+
+import com.flywire.exercise.model.Employee;
+import com.flywire.exercise.model.OrgNode;
+import com.flywire.exercise.util.LongLongHashMap;
+import com.flywire.exercise.util.PersistentLongLongMap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable, versioned view of the merged employee set (original data plus
+ * overrides). Employees are stored column-wise in an {@link EmployeeTable} and
+ * the indexes hold ids, so the snapshot keeps no {@link Employee} objects; every
+ * read materializes fresh ones. Changes publish a new snapshot, whose version is
+ * one higher.
+ */
+public final class EmployeeSnapshot implements EmployeeLookup {
+
+    private static final long NO_MANAGER = Long.MIN_VALUE;
+
+    private final long version;
+    private final EmployeeTable table;
+    // Reverse of Employee.directReports: report id -> manager id
+    private final PersistentLongLongMap managerByReport;
+    private final HireDateIndex hireDates;
+    private final LastNameIndex byLastName;
+    private final LastNameIndex activeByLastName;
+    private final OrgIndex org;
+    private final AncestorIndex ancestors;
+    private final SearchIndex nameSearch;
+    private final SearchIndex positionSearch;
+    private final StatsIndex stats;
+
+    public EmployeeSnapshot(Collection<Employee> employees) {
+        this(employees, 0);
+    }
+
+    public EmployeeSnapshot(Collection<Employee> employees, long version) {
+        this(new EmployeeTable(employees), employees, version);
+    }
+
+    // For a table read back from a snapshot file; rows are materialized once to build the indexes
+    EmployeeSnapshot(EmployeeTable table, long version) {
+        this(table, table.asList(), version);
+    }
+
+    private EmployeeSnapshot(EmployeeTable table, Collection<Employee> employees, long version) {
+        this.version = version;
+        this.table = table;
+        PersistentLongLongMap.Builder managers = new PersistentLongLongMap.Builder(table.size());
+        for (int row = 0; row < table.size(); row++) {
+            for (int i = 0; i < table.reportCount(row); i++) {
+                managers.put(table.reportAt(row, i), table.idAt(row));
+            }
+        }
+        this.managerByReport = managers.build();
+        this.hireDates = new HireDateIndex(employees);
+        this.byLastName = new LastNameIndex(employees, false);
+        this.activeByLastName = new LastNameIndex(employees, true);
+        this.org = new OrgIndex(table, managerByReport);
+        this.ancestors = new AncestorIndex(table, managerByReport, org);
+        this.nameSearch = new SearchIndex(table, SearchIndex.Field.NAME);
+        this.positionSearch = new SearchIndex(table, SearchIndex.Field.POSITION);
+        this.stats = new StatsIndex(table);
+    }
+
+    private EmployeeSnapshot(long version, EmployeeTable table, PersistentLongLongMap managerByReport,
+                             HireDateIndex hireDates, LastNameIndex byLastName, LastNameIndex activeByLastName,
+                             OrgIndex org, AncestorIndex ancestors, SearchIndex nameSearch,
+                             SearchIndex positionSearch, StatsIndex stats) {
+        this.version = version;
+        this.table = table;
+        this.managerByReport = managerByReport;
+        this.hireDates = hireDates;
+        this.byLastName = byLastName;
+        this.activeByLastName = activeByLastName;
+        this.org = org;
+        this.ancestors = ancestors;
+        this.nameSearch = nameSearch;
+        this.positionSearch = positionSearch;
+        this.stats = stats;
+    }
+
+    /**
+     * Returns a new snapshot with the given employees inserted or replaced and the
+     * given ids removed. This snapshot is left untouched.
+     */
+    public EmployeeSnapshot withChanges(Collection<Employee> upserts, Collection<Long> deletedIds) {
+        return apply(upserts, deletedIds, 1);
+    }
+
+    public EmployeeSnapshot withChange(EmployeeChange change) {
+        return apply(change.getUpserts(), change.getDeletedIds(), 1);
+    }
+
+    /**
+     * Applies several changes in order as one step. The result is the same as
+     * applying them one by one, including a version that is higher by the number
+     * of changes, but the indexes are copied only once.
+     */
+    public EmployeeSnapshot withChanges(List<EmployeeChange> changes) {
+        Map<Long, Employee> upserts = new LinkedHashMap<>();
+        Set<Long> deletedIds = new LinkedHashSet<>();
+        for (EmployeeChange change : changes) {
+            for (Long id : change.getDeletedIds()) {
+                upserts.remove(id);
+                deletedIds.add(id);
+            }
+            for (Employee emp : change.getUpserts()) {
+                deletedIds.remove(emp.getId());
+                upserts.put(emp.getId(), emp);
+            }
+        }
+        return apply(upserts.values(), deletedIds, changes.size());
+    }
+
+    private EmployeeSnapshot apply(Collection<Employee> upserts, Collection<Long> deletedIds, int changeCount) {
+        PersistentLongLongMap managers = managerByReport;
+        List<Employee> previousVersions = new ArrayList<>();
+        // Mirrors the order the table applies changes in: deletions first, then upserts
+        LongLongHashMap deleted = new LongLongHashMap();
+        for (Long id : deletedIds) {
+            Employee removed = table.get(id);
+            if (removed != null && !deleted.containsKey(id)) {
+                managers = removeReports(managers, removed);
+                previousVersions.add(removed);
+                deleted.put(id, 0);
+            }
+            managers = managers.without(id);
+        }
+        Map<Long, Employee> current = new HashMap<>();
+        for (Employee emp : upserts) {
+            Employee previous = current.containsKey(emp.getId()) ? current.get(emp.getId())
+                    : deleted.containsKey(emp.getId()) ? null : table.get(emp.getId());
+            if (previous != null) {
+                managers = removeReports(managers, previous);
+                previousVersions.add(previous);
+            }
+            managers = addReports(managers, emp);
+            current.put(emp.getId(), emp);
+        }
+        EmployeeTable updated = table.withChanges(upserts, deletedIds);
+        OrgIndex updatedOrg = org.withChanges(managerByReport, updated, managers, previousVersions, upserts, deletedIds);
+        return new EmployeeSnapshot(version + changeCount, updated, managers,
+                hireDates.withChanges(previousVersions, upserts),
+                byLastName.withChanges(previousVersions, upserts),
+                activeByLastName.withChanges(previousVersions, upserts),
+                updatedOrg,
+                ancestors.withChanges(table, managerByReport, updated, managers, updatedOrg,
+                        previousVersions, upserts, deletedIds),
+                nameSearch.withChanges(previousVersions, upserts),
+                positionSearch.withChanges(previousVersions, upserts),
+                stats.withChanges(previousVersions, upserts));
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    EmployeeTable getTable() {
+        return table;
+    }
+
+    // Each call to get() on the returned lists materializes a new Employee
+    public List<Employee> getEmployees() {
+        return table.asList();
+    }
+
+    public List<Employee> getEmployeesByLastName() {
+        return byLastName.asList(table);
+    }
+
+    public List<Employee> getActiveEmployeesByLastName() {
+        return activeByLastName.asList(table);
+    }
+
+    /**
+     * Keyset page of the last-name ordering: employees after the (lastName, id)
+     * cursor, or from the start when {@code afterLastName} is null.
+     */
+    public List<Employee> getPageByLastName(boolean activeOnly, String afterLastName, long afterId, int limit) {
+        return (activeOnly ? activeByLastName : byLastName).page(afterLastName, afterId, limit, table);
+    }
+
+    public static String lastNameKey(Employee employee) {
+        return LastNameIndex.sortKey(employee.getName());
+    }
+
+    @Override
+    public Employee get(long id) {
+        return table.get(id);
+    }
+
+    @Override
+    public boolean contains(long id) {
+        return table.contains(id);
+    }
+
+    @Override
+    public Employee getManager(long reportId) {
+        long managerId = managerByReport.get(reportId, NO_MANAGER);
+        return managerId != NO_MANAGER ? table.get(managerId) : null;
+    }
+
+    /**
+     * The org below {@code rootId} in depth-first order, starting with the root
+     * itself, down to {@code maxDepth} levels; null if there is no such employee.
+     */
+    public List<OrgNode> getSubtree(long rootId, int maxDepth, boolean activeOnly) {
+        return table.contains(rootId) ? org.subtree(rootId, maxDepth, activeOnly, table) : null;
+    }
+
+    // Number of employees anywhere below the given one
+    public int getHeadcount(long id, boolean activeOnly) {
+        return org.headcount(id, activeOnly);
+    }
+
+    /**
+     * The employee's managers from the direct one up to the top of the hierarchy;
+     * null if there is no such employee.
+     */
+    public List<Employee> getChain(long id) {
+        int depth = ancestors.depth(id);
+        if (depth < 0) {
+            return null;
+        }
+        List<Employee> chain = new ArrayList<>(depth);
+        for (long current = ancestors.ancestor(id, 1); current != NO_MANAGER; current = ancestors.ancestor(current, 1)) {
+            chain.add(table.get(current));
+            if (chain.size() == depth) {
+                break;
+            }
+        }
+        return chain;
+    }
+
+    /**
+     * The lowest employee both are part of the org of (one of the two themselves if
+     * the other reports up to them); null if they share no manager.
+     */
+    public Employee getCommonManager(long a, long b) {
+        long id = ancestors.lowestCommon(a, b);
+        return id != NO_MANAGER ? table.get(id) : null;
+    }
+
+    /**
+     * Employees hired between the two epoch days (inclusive), newest first, paged by
+     * offset and limit.
+     */
+    public List<Employee> getHiredBetween(int startDay, int endDay, int offset, int limit) {
+        return hireDates.range(startDay, endDay, offset, limit, table);
+    }
+
+    /**
+     * Up to {@code limit} employees with a word in their name starting with each
+     * word of the query, best matches first, followed by near misses when there
+     * are too few. See {@link SearchIndex#search}.
+     */
+    public List<Employee> searchByName(String query, int limit) {
+        return nameSearch.search(query, limit, table);
+    }
+
+    // The same search over positions
+    public List<Employee> searchByPosition(String query, int limit) {
+        return positionSearch.search(query, limit, table);
+    }
+
+    public int getActiveCount() {
+        return stats.active();
+    }
+
+    // Position -> {total, active}, kept up to date by every change; the arrays must not be modified
+    public Map<String, int[]> getHeadcountByPosition() {
+        return stats.byPosition();
+    }
+
+    // Element n is how many employees list n direct reports
+    public int[] getReportCountDistribution() {
+        return stats.reportCounts();
+    }
+
+    // Employees hired between the two epoch days (inclusive), counted without visiting them
+    public int countHiredBetween(int startDay, int endDay) {
+        return hireDates.count(startDay, endDay);
+    }
+
+    // Epoch days of the earliest and latest hire date, or null when no one has one
+    public int[] getHireDayRange() {
+        return hireDates.dayRange();
+    }
+
+    public int size() {
+        return table.size();
+    }
+
+    private static PersistentLongLongMap addReports(PersistentLongLongMap managers, Employee manager) {
+        if (manager.getDirectReports() != null) {
+            for (Long reportId : manager.getDirectReports()) {
+                if (reportId != null) {
+                    managers = managers.with(reportId, manager.getId());
+                }
+            }
+        }
+        return managers;
+    }
+
+    private static PersistentLongLongMap removeReports(PersistentLongLongMap managers, Employee manager) {
+        if (manager.getDirectReports() != null) {
+            for (Long reportId : manager.getDirectReports()) {
+                // Only drop the entry if it still points at this manager
+                if (reportId != null && managers.get(reportId, NO_MANAGER) == manager.getId()) {
+                    managers = managers.without(reportId);
+                }
+            }
+        }
+        return managers;
+    }
+}
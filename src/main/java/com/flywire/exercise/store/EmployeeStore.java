@@ -0,0 +1,65 @@
+package com.flywire.exercise.store;
+
+import com.flywire.exercise.model.ChangeSet;
+import com.flywire.exercise.model.Employee;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Where the employee set is kept. Readers work on immutable snapshots, which are
+ * never locked; every write goes through {@link #commitAll} (or a full replace),
+ * which persists the changes and then publishes the snapshot that includes them.
+ */
+public interface EmployeeStore {
+
+    /**
+     * Returns the current employee set without locking. The returned employees are
+     * shared and must be treated as read-only.
+     */
+    EmployeeSnapshot getSnapshot();
+
+    /**
+     * Identifies this run of the store. Versions start over on every restart, so a
+     * version means nothing without the epoch it was handed out in.
+     */
+    String getEpoch();
+
+    // Listeners only hear about snapshots published after they were added
+    void addListener(SnapshotListener listener);
+
+    // What changed after the given version of the given epoch, or a marker to reload everything
+    ChangeSet getChangesSince(long since, String epoch);
+
+    /**
+     * Returns a mutable copy of the current employee set, for callers that modify
+     * employees and hand the list back to {@link #writeEmployees(List)}.
+     */
+    List<Employee> readEmployees();
+
+    // Replaces the whole employee set
+    void writeEmployees(List<Employee> employees) throws IOException;
+
+    EmployeeSnapshot commit(Long expectedVersion, Function<EmployeeLookup, EmployeeChange> mutation) throws IOException;
+
+    /**
+     * The single write path: computes changes against the latest state, persists
+     * them and publishes the result, blocking until that is done. Changes never see
+     * state that another writer is about to replace. When {@code expectedVersion}
+     * is given and no longer current, fails with
+     * {@link com.flywire.exercise.exception.VersionConflictException} instead of
+     * applying anything.
+     */
+    EmployeeSnapshot commitAll(Long expectedVersion, Function<EmployeeLookup, List<EmployeeChange>> mutation) throws IOException;
+
+    /**
+     * Queues a mutation without waiting for it; the future completes with a snapshot
+     * that includes the change, or with the error that rejected it.
+     */
+    CompletableFuture<EmployeeSnapshot> submit(Long expectedVersion, Function<EmployeeLookup, List<EmployeeChange>> mutation);
+
+    // Finishes what is already queued and releases the underlying storage
+    void close() throws IOException;
+}
@@ -0,0 +1,440 @@
+package com.flywire.exercise.store;
+
+import com.flywire.exercise.model.Employee;
+import com.flywire.exercise.util.DateUtil;
+import com.flywire.exercise.util.LongLongHashMap;
+import com.flywire.exercise.util.PersistentArray;
+import com.flywire.exercise.util.PersistentLongLongMap;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Column-per-field storage for the employees of one snapshot: primitive arrays for
+ * ids and hire dates (as epoch days), bit masks for the flags, dictionary codes for
+ * positions and CSR-style offsets for the direct reports. Rows are grouped into
+ * immutable chunks of {@value #CHUNK_SIZE}, kept in a {@link PersistentArray}, and
+ * ids map to rows through a {@link PersistentLongLongMap}; a change rebuilds only
+ * the chunks of the rows it touches and shares the rest with the previous table.
+ * Nothing here holds an {@link Employee}; rows are materialized on access, as
+ * fresh objects each time, so callers can keep or modify what they get.
+ */
+final class EmployeeTable {
+
+    static final int NO_HIRE_DATE = Integer.MIN_VALUE;
+    private static final int NO_POSITION = -1;
+    private static final long NO_ROW = -1;
+    private static final int CHUNK_BITS = 6;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static final EmployeeTable EMPTY = new EmployeeTable(0, PersistentArray.<Chunk>empty(),
+            PersistentLongLongMap.empty(), new String[0], Collections.<String, Integer>emptyMap());
+
+    private final int size;
+    // Row r is entry r & CHUNK_MASK of chunk r >>> CHUNK_BITS
+    private final PersistentArray<Chunk> chunks;
+    private final PersistentLongLongMap rowById;
+    // Shared between versions until a new position shows up; never modified once built
+    private final String[] positionNames;
+    private final Map<String, Integer> positionCodes;
+    private final List<Employee> view;
+
+    EmployeeTable(Collection<Employee> employees) {
+        this(EMPTY, new ArrayList<>(employees), Collections.<Long>emptyList());
+    }
+
+    private EmployeeTable(int size, PersistentArray<Chunk> chunks, PersistentLongLongMap rowById,
+                          String[] positionNames, Map<String, Integer> positionCodes) {
+        this.size = size;
+        this.chunks = chunks;
+        this.rowById = rowById;
+        this.positionNames = positionNames;
+        this.positionCodes = positionCodes;
+        this.view = new Rows();
+    }
+
+    private EmployeeTable(EmployeeTable base, List<Employee> upserts, Collection<Long> deletedIds) {
+        // Rows whose id changes, by id (NO_ROW once deleted); everyone else keeps the row in base.rowById
+        LongLongHashMap movedRows = new LongLongHashMap();
+        // Where the changed rows of the new table come from: >= 0 is a row of the
+        // base table, < 0 is -(index into upserts) - 1; any other row keeps its place
+        LongLongHashMap sources = new LongLongHashMap();
+        int count = base.size;
+        for (Long id : deletedIds) {
+            int row = (int) movedRows.get(id, base.rowById.get(id, NO_ROW));
+            if (row == NO_ROW) {
+                continue;
+            }
+            // Fill the gap with the last row so the table stays dense
+            movedRows.put(id, NO_ROW);
+            count--;
+            if (row != count) {
+                int from = (int) sources.get(count, count);
+                sources.put(row, from);
+                movedRows.put(idOf(base, upserts, from), row);
+            }
+        }
+        // A later entry for the same id takes over the row of an earlier one
+        for (int i = 0; i < upserts.size(); i++) {
+            long id = upserts.get(i).getId();
+            int row = (int) movedRows.get(id, base.rowById.get(id, NO_ROW));
+            if (row == NO_ROW) {
+                row = count++;
+                movedRows.put(id, row);
+            }
+            sources.put(row, -i - 1);
+        }
+
+        // Extend the position dictionary only if something new came in
+        String[] dictionary = base.positionNames;
+        Map<String, Integer> codes = base.positionCodes;
+        for (Employee emp : upserts) {
+            if (emp.getPosition() != null && !codes.containsKey(emp.getPosition())) {
+                if (codes == base.positionCodes) {
+                    codes = new HashMap<>(base.positionCodes);
+                }
+                dictionary = Arrays.copyOf(dictionary, dictionary.length + 1);
+                dictionary[dictionary.length - 1] = emp.getPosition();
+                codes.put(emp.getPosition(), dictionary.length - 1);
+            }
+        }
+
+        this.size = count;
+        this.positionNames = dictionary;
+        this.positionCodes = codes;
+        this.rowById = withRows(base.rowById, movedRows);
+        this.chunks = withChunks(base, upserts, sources, count, codes);
+        this.view = new Rows();
+    }
+
+    /**
+     * Builds a table straight from columns, as read back from a snapshot file.
+     * Positions are re-encoded into a dictionary.
+     */
+    EmployeeTable(long[] ids, String[] names, String[] positionValues, int[] hireDays,
+                  BitSet active, BitSet original, int[] reportStart, long[] reportIds) {
+        Map<String, Integer> codes = new HashMap<>();
+        List<String> dictionary = new ArrayList<>();
+        List<Chunk> built = new ArrayList<>((ids.length + CHUNK_MASK) >>> CHUNK_BITS);
+        PersistentLongLongMap.Builder rows = new PersistentLongLongMap.Builder(ids.length);
+        ChunkBuilder chunk = new ChunkBuilder();
+        for (int row = 0; row < ids.length; row++) {
+            String position = positionValues[row];
+            Integer code = position != null ? codes.get(position) : Integer.valueOf(NO_POSITION);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.add(position);
+                codes.put(position, code);
+            }
+            chunk.add(ids[row], names[row], code, hireDays[row], active.get(row), original.get(row),
+                    reportIds, reportStart[row], reportStart[row + 1]);
+            rows.put(ids[row], row);
+            if ((row & CHUNK_MASK) == CHUNK_MASK || row == ids.length - 1) {
+                built.add(chunk.build());
+            }
+        }
+        this.size = ids.length;
+        this.chunks = PersistentArray.of(built);
+        this.rowById = rows.build();
+        this.positionNames = dictionary.toArray(new String[0]);
+        this.positionCodes = codes;
+        this.view = new Rows();
+    }
+
+    /**
+     * Returns a new table with the given employees inserted or replaced and the
+     * given ids removed. Deletions are applied first, as in the snapshot.
+     */
+    EmployeeTable withChanges(Collection<Employee> upserts, Collection<Long> deletedIds) {
+        return new EmployeeTable(this, new ArrayList<>(upserts), deletedIds);
+    }
+
+    int size() {
+        return size;
+    }
+
+    int rowOf(long id) {
+        return (int) rowById.get(id, NO_ROW);
+    }
+
+    boolean contains(long id) {
+        return rowById.containsKey(id);
+    }
+
+    long idAt(int row) {
+        return chunkOf(row).ids[row & CHUNK_MASK];
+    }
+
+    boolean isActiveAt(int row) {
+        return (chunkOf(row).active & 1L << (row & CHUNK_MASK)) != 0;
+    }
+
+    boolean isOriginalAt(int row) {
+        return (chunkOf(row).original & 1L << (row & CHUNK_MASK)) != 0;
+    }
+
+    String nameAt(int row) {
+        return chunkOf(row).names[row & CHUNK_MASK];
+    }
+
+    String positionAt(int row) {
+        int code = chunkOf(row).positions[row & CHUNK_MASK];
+        return code != NO_POSITION ? positionNames[code] : null;
+    }
+
+    // Epoch day of the hire date, or Integer.MIN_VALUE when there is none
+    int hireDayAt(int row) {
+        return chunkOf(row).hireDays[row & CHUNK_MASK];
+    }
+
+    // Reports of a row are reportAt(row, i) for 0 <= i < reportCount(row)
+    int reportCount(int row) {
+        Chunk chunk = chunkOf(row);
+        int i = row & CHUNK_MASK;
+        return chunk.reportStart[i + 1] - chunk.reportStart[i];
+    }
+
+    long reportAt(int row, int i) {
+        Chunk chunk = chunkOf(row);
+        return chunk.reportIds[chunk.reportStart[row & CHUNK_MASK] + i];
+    }
+
+    Employee get(long id) {
+        int row = rowOf(id);
+        return row >= 0 ? materialize(row) : null;
+    }
+
+    Employee materialize(int row) {
+        Chunk chunk = chunkOf(row);
+        int i = row & CHUNK_MASK;
+        int code = chunk.positions[i];
+        int hireDay = chunk.hireDays[i];
+        Employee emp = new Employee(chunk.ids[i], chunk.names[i], code != NO_POSITION ? positionNames[code] : null,
+                (chunk.active & 1L << i) != 0, hireDay != NO_HIRE_DATE ? DateUtil.fromEpochDay(hireDay) : null,
+                (chunk.original & 1L << i) != 0);
+        List<Long> reports = emp.getDirectReports();
+        for (int r = chunk.reportStart[i]; r < chunk.reportStart[i + 1]; r++) {
+            reports.add(chunk.reportIds[r]);
+        }
+        return emp;
+    }
+
+    // Every row, materialized as it is read
+    List<Employee> asList() {
+        return view;
+    }
+
+    // The employees at positions from to to of an id sequence, materialized as they are read; ids must all be in the table
+    List<Employee> select(IntToLongFunction selected, int from, int to) {
+        return new Selection(selected, from, to);
+    }
+
+    private Chunk chunkOf(int row) {
+        return chunks.get(row >>> CHUNK_BITS);
+    }
+
+    private static PersistentLongLongMap withRows(PersistentLongLongMap rows, LongLongHashMap movedRows) {
+        long[] ids = movedRows.keys();
+        if (rows.size() == 0) {
+            PersistentLongLongMap.Builder builder = new PersistentLongLongMap.Builder(ids.length);
+            for (long id : ids) {
+                long row = movedRows.get(id, NO_ROW);
+                if (row != NO_ROW) {
+                    builder.put(id, row);
+                }
+            }
+            return builder.build();
+        }
+        for (long id : ids) {
+            long row = movedRows.get(id, NO_ROW);
+            rows = row != NO_ROW ? rows.with(id, row) : rows.without(id);
+        }
+        return rows;
+    }
+
+    /**
+     * Rebuilds the chunks holding a changed row, plus the last one when the table
+     * shrinks, and drops the chunks past the end. All others are shared with base.
+     */
+    private static PersistentArray<Chunk> withChunks(EmployeeTable base, List<Employee> upserts,
+                                                     LongLongHashMap sources, int count, Map<String, Integer> codes) {
+        int chunkCount = (count + CHUNK_MASK) >>> CHUNK_BITS;
+        BitSet touched = new BitSet(chunkCount);
+        for (long row : sources.keys()) {
+            if (row < count) {
+                touched.set((int) (row >>> CHUNK_BITS));
+            }
+        }
+        if (count < base.size && (count & CHUNK_MASK) != 0) {
+            touched.set(chunkCount - 1);
+        }
+        List<Chunk> rebuilt = new ArrayList<>(touched.cardinality());
+        ChunkBuilder builder = new ChunkBuilder();
+        for (int c = touched.nextSetBit(0); c >= 0; c = touched.nextSetBit(c + 1)) {
+            int end = Math.min(count, (c + 1) << CHUNK_BITS);
+            for (int row = c << CHUNK_BITS; row < end; row++) {
+                int from = (int) sources.get(row, row);
+                if (from >= 0) {
+                    builder.add(base.chunkOf(from), from & CHUNK_MASK);
+                } else {
+                    builder.add(upserts.get(-from - 1), codes);
+                }
+            }
+            rebuilt.add(builder.build());
+        }
+        if (base.chunks.size() == 0) {
+            return PersistentArray.of(rebuilt);
+        }
+        PersistentArray<Chunk> updated = chunkCount < base.chunks.size() ? base.chunks.truncated(chunkCount) : base.chunks;
+        int i = 0;
+        // Ascending, so chunks past the old end are appended in order
+        for (int c = touched.nextSetBit(0); c >= 0; c = touched.nextSetBit(c + 1)) {
+            updated = updated.with(c, rebuilt.get(i++));
+        }
+        return updated;
+    }
+
+    private static long idOf(EmployeeTable base, List<Employee> upserts, int source) {
+        return source >= 0 ? base.idAt(source) : upserts.get(-source - 1).getId();
+    }
+
+    /**
+     * Up to {@value #CHUNK_SIZE} consecutive rows. Reports of entry i are
+     * reportIds[reportStart[i]] up to reportIds[reportStart[i + 1]].
+     */
+    private static final class Chunk {
+        final long[] ids;
+        final String[] names;
+        final int[] positions;
+        final int[] hireDays;
+        // Bit i is the flag of entry i
+        final long active;
+        final long original;
+        final int[] reportStart;
+        final long[] reportIds;
+
+        Chunk(long[] ids, String[] names, int[] positions, int[] hireDays, long active, long original,
+              int[] reportStart, long[] reportIds) {
+            this.ids = ids;
+            this.names = names;
+            this.positions = positions;
+            this.hireDays = hireDays;
+            this.active = active;
+            this.original = original;
+            this.reportStart = reportStart;
+            this.reportIds = reportIds;
+        }
+    }
+
+    // Collects the rows of one chunk; build() hands the chunk over and starts the next
+    private static final class ChunkBuilder {
+        private final long[] ids = new long[CHUNK_SIZE];
+        private final String[] names = new String[CHUNK_SIZE];
+        private final int[] positions = new int[CHUNK_SIZE];
+        private final int[] hireDays = new int[CHUNK_SIZE];
+        private final int[] reportStart = new int[CHUNK_SIZE + 1];
+        private long[] reportIds = new long[CHUNK_SIZE];
+        private long active;
+        private long original;
+        private int count;
+
+        void add(Chunk chunk, int i) {
+            add(chunk.ids[i], chunk.names[i], chunk.positions[i], chunk.hireDays[i], (chunk.active & 1L << i) != 0,
+                    (chunk.original & 1L << i) != 0, chunk.reportIds, chunk.reportStart[i], chunk.reportStart[i + 1]);
+        }
+
+        void add(Employee emp, Map<String, Integer> codes) {
+            List<Long> reports = emp.getDirectReports();
+            long[] reportIds = new long[reports != null ? reports.size() : 0];
+            int length = 0;
+            if (reports != null) {
+                for (Long reportId : reports) {
+                    // A null entry can't point at anyone; it is dropped rather than stored
+                    if (reportId != null) {
+                        reportIds[length++] = reportId;
+                    }
+                }
+            }
+            add(emp.getId(), emp.getName(), emp.getPosition() != null ? codes.get(emp.getPosition()) : NO_POSITION,
+                    emp.getHireDate() != null ? DateUtil.toEpochDay(emp.getHireDate()) : NO_HIRE_DATE,
+                    emp.isActive(), emp.isOriginal(), reportIds, 0, length);
+        }
+
+        void add(long id, String name, int position, int hireDay, boolean isActive, boolean isOriginal,
+                 long[] reports, int from, int to) {
+            ids[count] = id;
+            names[count] = name;
+            positions[count] = position;
+            hireDays[count] = hireDay;
+            active |= isActive ? 1L << count : 0;
+            original |= isOriginal ? 1L << count : 0;
+            int next = reportStart[count];
+            if (next + to - from > reportIds.length) {
+                reportIds = Arrays.copyOf(reportIds, Math.max(reportIds.length * 2, next + to - from));
+            }
+            System.arraycopy(reports, from, reportIds, next, to - from);
+            reportStart[++count] = next + to - from;
+        }
+
+        Chunk build() {
+            Chunk chunk = new Chunk(Arrays.copyOf(ids, count), Arrays.copyOf(names, count),
+                    Arrays.copyOf(positions, count), Arrays.copyOf(hireDays, count), active, original,
+                    Arrays.copyOf(reportStart, count + 1), Arrays.copyOf(reportIds, reportStart[count]));
+            Arrays.fill(names, null);
+            active = 0;
+            original = 0;
+            count = 0;
+            return chunk;
+        }
+    }
+
+    private final class Rows extends AbstractList<Employee> implements RandomAccess {
+        @Override
+        public Employee get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return materialize(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    private final class Selection extends AbstractList<Employee> implements RandomAccess {
+        private final IntToLongFunction selected;
+        private final int from;
+        private final int to;
+
+        Selection(IntToLongFunction selected, int from, int to) {
+            this.selected = selected;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public Employee get(int index) {
+            if (index < 0 || index >= to - from) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (to - from));
+            }
+            return EmployeeTable.this.get(selected.applyAsLong(from + index));
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.flywire.exercise.store;
+
+import com.flywire.exercise.model.Employee;
+import com.flywire.exercise.util.DateUtil;
+import com.flywire.exercise.util.SortedIdTree;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Employee ids ordered by hire date, newest first (ties by id), keyed by the hire
+ * date as an epoch day. A date range maps to one contiguous run of positions found
+ * with two searches. The entries are kept in a {@link SortedIdTree}, so a change
+ * touches O(log n) of it and shares the rest with the previous version. Employees
+ * without a hire date are not indexed.
+ */
+final class HireDateIndex {
+
+    private static final Comparator<Integer> NEWEST_FIRST = Comparator.reverseOrder();
+    private static final Comparator<Employee> ORDER = Comparator
+            .comparingInt((Employee e) -> -DateUtil.toEpochDay(e.getHireDate()))
+            .thenComparing(Employee::getId);
+
+    private final SortedIdTree<Integer> entries;
+
+    HireDateIndex(Collection<Employee> all) {
+        List<Employee> dated = new ArrayList<>(all.size());
+        for (Employee emp : all) {
+            if (emp.getHireDate() != null) {
+                dated.add(emp);
+            }
+        }
+        dated.sort(ORDER);
+        Integer[] days = new Integer[dated.size()];
+        long[] ids = new long[dated.size()];
+        for (int i = 0; i < days.length; i++) {
+            ids[i] = dated.get(i).getId();
+            days[i] = DateUtil.toEpochDay(dated.get(i).getHireDate());
+        }
+        this.entries = SortedIdTree.of(NEWEST_FIRST, days, ids, days.length);
+    }
+
+    private HireDateIndex(SortedIdTree<Integer> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Returns a new index with the previous versions of changed employees removed and
+     * their new versions inserted, each in O(log n).
+     */
+    HireDateIndex withChanges(Collection<Employee> removed, Collection<Employee> added) {
+        SortedIdTree<Integer> updated = entries;
+        for (Employee emp : removed) {
+            if (emp.getHireDate() != null) {
+                updated = updated.without(DateUtil.toEpochDay(emp.getHireDate()), emp.getId());
+            }
+        }
+        for (Employee emp : added) {
+            if (emp.getHireDate() != null) {
+                updated = updated.with(DateUtil.toEpochDay(emp.getHireDate()), emp.getId());
+            }
+        }
+        return new HireDateIndex(updated);
+    }
+
+    /**
+     * Returns up to {@code limit} employees hired between the two epoch days
+     * (inclusive), newest first, skipping the first {@code offset} matches. Rows are
+     * read from {@code table}, which must be the one this index was built with.
+     */
+    List<Employee> range(int startDay, int endDay, int offset, int limit, EmployeeTable table) {
+        int from = firstAtOrBefore(endDay);
+        int to = firstAtOrBefore(startDay - 1);
+        int start = (int) Math.min((long) from + offset, to);
+        int end = (int) Math.min((long) start + limit, to);
+        if (start >= end) {
+            return Collections.emptyList();
+        }
+        return table.select(entries::idAt, start, end);
+    }
+
+    // Employees hired between the two epoch days (inclusive), counted from their positions
+    int count(int startDay, int endDay) {
+        return startDay > endDay ? 0 : firstAtOrBefore(startDay - 1) - firstAtOrBefore(endDay);
+    }
+
+    // Earliest and latest hire day, or null when no one has a hire date
+    int[] dayRange() {
+        int size = entries.size();
+        return size > 0 ? new int[] {entries.keyAt(size - 1), entries.keyAt(0)} : null;
+    }
+
+    // First position whose day is <= the given day (days are descending)
+    private int firstAtOrBefore(int day) {
+        return entries.lowerBound(day, Long.MIN_VALUE);
+    }
+}
@@ -0,0 +1,110 @@
+package com.flywire.exercise.store;
+
+import com.flywire.exercise.model.Employee;
+import com.flywire.exercise.util.SortedIdTree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Employee ids ordered by last name (ties by id), optionally restricted to active
+ * employees. Sort keys are extracted once when an employee is indexed and kept
+ * with the ids in a {@link SortedIdTree}, so reads are a plain view over it and a
+ * change touches O(log n) of it.
+ */
+final class LastNameIndex {
+
+    private static final Comparator<String> KEY_ORDER = Comparator.naturalOrder();
+
+    private final boolean activeOnly;
+    private final SortedIdTree<String> entries;
+
+    LastNameIndex(Collection<Employee> all, boolean activeOnly) {
+        List<Employee> included = new ArrayList<>(all.size());
+        for (Employee emp : all) {
+            if (includes(activeOnly, emp)) {
+                included.add(emp);
+            }
+        }
+        String[] unsortedKeys = new String[included.size()];
+        Integer[] order = new Integer[included.size()];
+        for (int i = 0; i < order.length; i++) {
+            unsortedKeys[i] = sortKey(included.get(i).getName());
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> compare(unsortedKeys[a], included.get(a).getId(), unsortedKeys[b], included.get(b).getId()));
+
+        String[] keys = new String[order.length];
+        long[] ids = new long[order.length];
+        for (int i = 0; i < order.length; i++) {
+            keys[i] = unsortedKeys[order[i]];
+            ids[i] = included.get(order[i]).getId();
+        }
+        this.activeOnly = activeOnly;
+        this.entries = SortedIdTree.of(KEY_ORDER, keys, ids, keys.length);
+    }
+
+    private LastNameIndex(boolean activeOnly, SortedIdTree<String> entries) {
+        this.activeOnly = activeOnly;
+        this.entries = entries;
+    }
+
+    /**
+     * Returns a new index with the previous versions of changed employees removed and
+     * their new versions inserted, each in O(log n).
+     */
+    LastNameIndex withChanges(Collection<Employee> removed, Collection<Employee> added) {
+        SortedIdTree<String> updated = entries;
+        for (Employee emp : removed) {
+            updated = updated.without(sortKey(emp.getName()), emp.getId());
+        }
+        for (Employee emp : added) {
+            if (includes(activeOnly, emp)) {
+                updated = updated.with(sortKey(emp.getName()), emp.getId());
+            }
+        }
+        return new LastNameIndex(activeOnly, updated);
+    }
+
+    // Rows are read from the table this index was built with
+    List<Employee> asList(EmployeeTable table) {
+        return table.select(entries::idAt, 0, entries.size());
+    }
+
+    /**
+     * Up to {@code limit} employees ordered strictly after the (key, id) cursor, or
+     * from the start when {@code afterKey} is null. Returned as a view of this
+     * version of the index, which later changes never modify.
+     */
+    List<Employee> page(String afterKey, long afterId, int limit, EmployeeTable table) {
+        int start = 0;
+        if (afterKey != null) {
+            int i = entries.indexOf(afterKey, afterId);
+            start = i >= 0 ? i + 1 : -(i + 1);
+        }
+        int end = (int) Math.min((long) start + limit, entries.size());
+        return table.select(entries::idAt, start, Math.max(start, end));
+    }
+
+    // Last whitespace-separated token of the name; single-word names sort by the whole name
+    static String sortKey(String name) {
+        if (name == null) {
+            return "";
+        }
+        String trimmed = name.trim();
+        int space = trimmed.lastIndexOf(' ');
+        return space >= 0 ? trimmed.substring(space + 1) : trimmed;
+    }
+
+    private static boolean includes(boolean activeOnly, Employee emp) {
+        return !activeOnly || emp.isActive();
+    }
+
+    private static int compare(String key1, long id1, String key2, long id2) {
+        int cmp = key1.compareTo(key2);
+        return cmp != 0 ? cmp : Long.compare(id1, id2);
+    }
+}
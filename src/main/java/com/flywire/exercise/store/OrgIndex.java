@@ -0,0 +1,313 @@
+package com.flywire.exercise.store;
+
+import com.flywire.exercise.model.Employee;
+import com.flywire.exercise.model.OrgNode;
+import com.flywire.exercise.util.LongLongHashMap;
+import com.flywire.exercise.util.PersistentLongLongMap;
+import com.flywire.exercise.util.PersistentLongMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Children of every manager, resolved from {@code Employee.directReports}, plus
+ * the headcount of each employee's subtree. A report only counts under the
+ * manager the snapshot's reverse index assigns it to, so nobody has two parents.
+ * Both are kept in persistent maps, so a change shares everything it does not
+ * touch with the previous version: it relinks the children of the managers it
+ * affects, drops the cached headcounts along the ancestor paths it touches and
+ * recomputes just those.
+ */
+final class OrgIndex {
+
+    private static final long NO_MANAGER = Long.MIN_VALUE;
+    private static final long[] NO_CHILDREN = new long[0];
+    private static final long MISSING = -1;
+
+    private final PersistentLongMap<long[]> children;
+    // Per employee: everyone below it in the high half, the active ones among them in the low half
+    private final PersistentLongLongMap headcounts;
+
+    OrgIndex(EmployeeTable table, PersistentLongLongMap managers) {
+        PersistentLongMap.Builder<long[]> builder = new PersistentLongMap.Builder<>(table.size());
+        for (int row = 0; row < table.size(); row++) {
+            long[] kids = childrenAt(row, table, managers);
+            if (kids != null) {
+                builder.put(table.idAt(row), kids);
+            }
+        }
+        this.children = builder.build();
+        this.headcounts = withHeadcounts(children, PersistentLongLongMap.empty(), allIds(table), table);
+    }
+
+    private OrgIndex(PersistentLongMap<long[]> children, PersistentLongLongMap headcounts) {
+        this.children = children;
+        this.headcounts = headcounts;
+    }
+
+    /**
+     * Returns the index for the snapshot after a change. The old maps describe the
+     * snapshot this index belongs to, the new ones the snapshot being built.
+     */
+    OrgIndex withChanges(PersistentLongLongMap oldManagers, EmployeeTable table, PersistentLongLongMap managers,
+                         Collection<Employee> previousVersions, Collection<Employee> upserts,
+                         Collection<Long> deletedIds) {
+        // Anyone whose list of children may differ: the changed employees and the
+        // old and new managers of them and of every report they list
+        LongLongHashMap affected = new LongLongHashMap();
+        for (Long id : deletedIds) {
+            markWithManagers(affected, id, oldManagers, managers);
+        }
+        for (Employee emp : previousVersions) {
+            markReports(affected, emp, oldManagers, managers);
+        }
+        for (Employee emp : upserts) {
+            markWithManagers(affected, emp.getId(), oldManagers, managers);
+            markReports(affected, emp, oldManagers, managers);
+        }
+
+        PersistentLongMap<long[]> updatedChildren = children;
+        LongLongHashMap invalidated = new LongLongHashMap();
+        for (long id : affected.keys()) {
+            int row = table.rowOf(id);
+            long[] kids = row >= 0 ? childrenAt(row, table, managers) : null;
+            updatedChildren = kids != null ? updatedChildren.with(id, kids) : updatedChildren.without(id);
+            // Every ancestor, before and after the change, may have gained or lost headcount
+            invalidateUpwards(id, oldManagers, invalidated);
+            invalidateUpwards(id, managers, invalidated);
+        }
+        PersistentLongLongMap kept = headcounts;
+        long[] recompute = invalidated.keys();
+        int count = 0;
+        for (long id : recompute) {
+            kept = kept.without(id);
+            if (table.contains(id)) {
+                recompute[count++] = id;
+            }
+        }
+        return new OrgIndex(updatedChildren,
+                withHeadcounts(updatedChildren, kept, Arrays.copyOf(recompute, count), table));
+    }
+
+    int headcount(long id, boolean activeOnly) {
+        long count = headcounts.get(id, 0);
+        return (int) (activeOnly ? count & 0xFFFFFFFFL : count >>> 32);
+    }
+
+    /**
+     * Walks the subtree under {@code root} depth-first, down to {@code maxDepth}
+     * levels below it. With {@code activeOnly}, inactive employees are left out
+     * (the root excepted) but their reports are still listed.
+     */
+    List<OrgNode> subtree(long rootId, int maxDepth, boolean activeOnly, EmployeeTable table) {
+        List<OrgNode> nodes = new ArrayList<>(Math.min(headcount(rootId, false), 1 << 16) + 1);
+        LongLongHashMap visited = new LongLongHashMap();
+        // Pending employees with their manager and level; children are pushed in reverse to come out in order
+        long[] stackIds = new long[16];
+        long[] stackManagers = new long[16];
+        int[] stackLevels = new int[16];
+        stackIds[0] = rootId;
+        stackManagers[0] = NO_MANAGER;
+        int top = 1;
+        while (top > 0) {
+            top--;
+            long id = stackIds[top];
+            long managerId = stackManagers[top];
+            int level = stackLevels[top];
+            if (visited.containsKey(id)) {
+                continue;
+            }
+            visited.put(id, 0);
+            int row = table.rowOf(id);
+            if (level == 0 || !activeOnly || table.isActiveAt(row)) {
+                nodes.add(new OrgNode(table.materialize(row), managerId != NO_MANAGER ? managerId : null, level,
+                        headcount(id, activeOnly)));
+            }
+            if (level < maxDepth) {
+                long[] kids = childrenOf(id);
+                if (top + kids.length > stackIds.length) {
+                    int capacity = Math.max(stackIds.length * 2, top + kids.length);
+                    stackIds = Arrays.copyOf(stackIds, capacity);
+                    stackManagers = Arrays.copyOf(stackManagers, capacity);
+                    stackLevels = Arrays.copyOf(stackLevels, capacity);
+                }
+                for (int i = kids.length - 1; i >= 0; i--) {
+                    stackIds[top] = kids[i];
+                    stackManagers[top] = id;
+                    stackLevels[top] = level + 1;
+                    top++;
+                }
+            }
+        }
+        return nodes;
+    }
+
+    long[] childrenOf(long id) {
+        return childrenOf(children, id);
+    }
+
+    private static long[] childrenOf(PersistentLongMap<long[]> children, long id) {
+        long[] kids = children.get(id);
+        return kids != null ? kids : NO_CHILDREN;
+    }
+
+    // The reports of the employee at row that count under it, or null when there are none
+    private static long[] childrenAt(int row, EmployeeTable table, PersistentLongLongMap managers) {
+        int length = table.reportCount(row);
+        if (length == 0) {
+            return null;
+        }
+        long managerId = table.idAt(row);
+        long[] kids = new long[length];
+        // Long report lists are deduplicated through a set rather than by scanning
+        LongLongHashMap seen = length > 32 ? new LongLongHashMap(length) : null;
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            long reportId = table.reportAt(row, i);
+            if (!table.contains(reportId) || managers.get(reportId, NO_MANAGER) != managerId) {
+                continue;
+            }
+            if (seen != null) {
+                if (seen.containsKey(reportId)) {
+                    continue;
+                }
+                seen.put(reportId, 0);
+            } else if (contains(kids, count, reportId)) {
+                continue;
+            }
+            kids[count++] = reportId;
+        }
+        if (count == 0) {
+            return null;
+        }
+        return count == kids.length ? kids : Arrays.copyOf(kids, count);
+    }
+
+    /**
+     * The cached headcounts with those of the given employees added. They are
+     * worked out in a scratch map first and only then merged in, so a full build
+     * fills the persistent map in one pass.
+     */
+    private static PersistentLongLongMap withHeadcounts(PersistentLongMap<long[]> children,
+                                                        PersistentLongLongMap cached, long[] ids,
+                                                        EmployeeTable table) {
+        LongLongHashMap computed = new LongLongHashMap(ids.length);
+        for (long id : ids) {
+            computeHeadcount(id, children, cached, computed, table);
+        }
+        long[] computedIds = computed.keys();
+        if (cached.size() == 0) {
+            PersistentLongLongMap.Builder builder = new PersistentLongLongMap.Builder(computedIds.length);
+            for (long id : computedIds) {
+                builder.put(id, computed.get(id, 0));
+            }
+            return builder.build();
+        }
+        for (long id : computedIds) {
+            cached = cached.with(id, computed.get(id, 0));
+        }
+        return cached;
+    }
+
+    // Post-order walk with an explicit stack; stops at employees whose headcount is already known
+    private static void computeHeadcount(long rootId, PersistentLongMap<long[]> children,
+                                         PersistentLongLongMap cached, LongLongHashMap computed,
+                                         EmployeeTable table) {
+        if (cached.containsKey(rootId) || computed.containsKey(rootId)) {
+            return;
+        }
+        long[] stack = new long[16];
+        int[] next = new int[16];
+        LongLongHashMap onStack = new LongLongHashMap();
+        stack[0] = rootId;
+        onStack.put(rootId, 0);
+        int top = 0;
+        while (top >= 0) {
+            long id = stack[top];
+            long[] kids = childrenOf(children, id);
+            if (next[top] < kids.length) {
+                long child = kids[next[top]++];
+                // A child already on the stack closes a reporting cycle; it adds nothing
+                if (!cached.containsKey(child) && !computed.containsKey(child) && !onStack.containsKey(child)) {
+                    if (++top == stack.length) {
+                        stack = Arrays.copyOf(stack, top * 2);
+                        next = Arrays.copyOf(next, top * 2);
+                    }
+                    stack[top] = child;
+                    next[top] = 0;
+                    onStack.put(child, 0);
+                }
+                continue;
+            }
+            long total = 0;
+            long active = 0;
+            for (long child : kids) {
+                long count = computed.get(child, MISSING);
+                if (count == MISSING) {
+                    count = cached.get(child, MISSING);
+                }
+                if (count != MISSING) {
+                    total += 1 + (count >>> 32);
+                    active += (table.isActiveAt(table.rowOf(child)) ? 1 : 0) + (count & 0xFFFFFFFFL);
+                }
+            }
+            computed.put(id, (total << 32) | active);
+            onStack.remove(id);
+            top--;
+        }
+    }
+
+    private static void invalidateUpwards(long id, PersistentLongLongMap managers, LongLongHashMap invalidated) {
+        long current = id;
+        // Stops at the top of the chain, or where an earlier walk (or a cycle) already passed
+        while (current != NO_MANAGER && !invalidated.containsKey(current)) {
+            invalidated.put(current, 0);
+            current = managers.get(current, NO_MANAGER);
+        }
+    }
+
+    private static void markWithManagers(LongLongHashMap affected, long id,
+                                         PersistentLongLongMap oldManagers, PersistentLongLongMap managers) {
+        affected.put(id, 0);
+        mark(affected, oldManagers.get(id, NO_MANAGER));
+        mark(affected, managers.get(id, NO_MANAGER));
+    }
+
+    private static void markReports(LongLongHashMap affected, Employee emp,
+                                    PersistentLongLongMap oldManagers, PersistentLongLongMap managers) {
+        if (emp.getDirectReports() == null) {
+            return;
+        }
+        for (Long reportId : emp.getDirectReports()) {
+            if (reportId != null) {
+                mark(affected, oldManagers.get(reportId, NO_MANAGER));
+                mark(affected, managers.get(reportId, NO_MANAGER));
+            }
+        }
+    }
+
+    private static void mark(LongLongHashMap affected, long id) {
+        if (id != NO_MANAGER) {
+            affected.put(id, 0);
+        }
+    }
+
+    private static long[] allIds(EmployeeTable table) {
+        long[] ids = new long[table.size()];
+        for (int row = 0; row < table.size(); row++) {
+            ids[row] = table.idAt(row);
+        }
+        return ids;
+    }
+
+    private static boolean contains(long[] ids, int length, long id) {
+        for (int i = 0; i < length; i++) {
+            if (ids[i] == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,96 @@
+package com.flywire.exercise.store;
+
+import com.flywire.exercise.model.Employee;
+import com.flywire.exercise.util.LongHashMap;
+import com.flywire.exercise.util.LongLongHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Changes accumulated against a base snapshot (or another pending set) without publishing them, so each
+ * item of a batch is validated against the effect of the items before it. Only
+ * the touched employees are tracked; everything else is read from the base.
+ */
+public class PendingChanges implements EmployeeLookup {
+
+    private static final long NO_MANAGER = Long.MIN_VALUE;
+    private static final Employee DELETED = new Employee();
+
+    private final EmployeeLookup base;
+    private final LongHashMap<Employee> overlay = new LongHashMap<>();
+    private final LongLongHashMap managerOverrides = new LongLongHashMap();
+    private final List<EmployeeChange> changes = new ArrayList<>();
+
+    public PendingChanges(EmployeeLookup base) {
+        this.base = base;
+    }
+
+    public void apply(EmployeeChange change) {
+        for (Long id : change.getDeletedIds()) {
+            Employee previous = get(id);
+            if (previous != null) {
+                unlinkReports(previous);
+            }
+            overlay.put(id, DELETED);
+            managerOverrides.put(id, NO_MANAGER);
+        }
+        for (Employee emp : change.getUpserts()) {
+            Employee previous = get(emp.getId());
+            if (previous != null) {
+                unlinkReports(previous);
+            }
+            overlay.put(emp.getId(), emp);
+            if (emp.getDirectReports() != null) {
+                for (Long reportId : emp.getDirectReports()) {
+                    if (reportId != null) {
+                        managerOverrides.put(reportId, emp.getId());
+                    }
+                }
+            }
+        }
+        changes.add(change);
+    }
+
+    public List<EmployeeChange> getChanges() {
+        return changes;
+    }
+
+    @Override
+    public Employee get(long id) {
+        Employee emp = overlay.get(id);
+        if (emp == null) {
+            return base.get(id);
+        }
+        return emp != DELETED ? emp : null;
+    }
+
+    @Override
+    public boolean contains(long id) {
+        return get(id) != null;
+    }
+
+    @Override
+    public Employee getManager(long reportId) {
+        if (managerOverrides.containsKey(reportId)) {
+            long managerId = managerOverrides.get(reportId, NO_MANAGER);
+            return managerId != NO_MANAGER ? get(managerId) : null;
+        }
+        Employee manager = base.getManager(reportId);
+        return manager != null ? get(manager.getId()) : null;
+    }
+
+    private void unlinkReports(Employee manager) {
+        if (manager.getDirectReports() == null) {
+            return;
+        }
+        for (Long reportId : manager.getDirectReports()) {
+            if (reportId != null) {
+                Employee current = getManager(reportId);
+                if (current != null && current.getId().equals(manager.getId())) {
+                    managerOverrides.put(reportId, NO_MANAGER);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,625 @@
+package com.flywire.exercise.store;
+
+import com.flywire.exercise.model.Employee;
+import com.flywire.exercise.util.LongHashMap;
+import com.flywire.exercise.util.PersistentLongMap;
+import com.flywire.exercise.util.SortedIdTree;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Word search over one text field. Each employee's field is split into normalized
+ * terms (lower case, accents stripped), and (term, id) pairs are kept sorted in a
+ * {@link SortedIdTree}, so every term starting with a prefix sits in one slice
+ * found with two binary searches. Typo tolerance comes from a trigram index over
+ * the distinct terms: terms that share enough trigrams with a query word are
+ * checked by edit distance. Both structures are persistent, so a change costs
+ * O(log n) per term rather than a copy of the index.
+ */
+final class SearchIndex {
+
+    enum Field {
+        NAME {
+            @Override
+            String of(Employee emp) {
+                return emp.getName();
+            }
+
+            @Override
+            String at(EmployeeTable table, int row) {
+                return table.nameAt(row);
+            }
+        },
+        POSITION {
+            @Override
+            String of(Employee emp) {
+                return emp.getPosition();
+            }
+
+            @Override
+            String at(EmployeeTable table, int row) {
+                return table.positionAt(row);
+            }
+        };
+
+        abstract String of(Employee emp);
+
+        abstract String at(EmployeeTable table, int row);
+    }
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final String[] NO_TERMS = new String[0];
+    // Shorter query words only match as prefixes; fuzzy matches of them are mostly noise
+    private static final int MIN_FUZZY_LENGTH = 4;
+    // Most terms a query word may match and still be checked by looking ids up in their runs
+    private static final int MAX_RUNS = 16;
+    private static final Comparator<String> TERM_ORDER = Comparator.naturalOrder();
+
+    private final Field field;
+    // One pair per distinct term of each employee, ordered by term, then id
+    private final SortedIdTree<String> entries;
+    // Trigram (packed by trigramKey) -> sorted distinct terms containing it, for terms some employee has
+    private final PersistentLongMap<String[]> termsByTrigram;
+
+    SearchIndex(EmployeeTable table, Field field) {
+        // Code every distinct term, then lay out each term's ids in one sorted run
+        Map<String, Integer> codes = new HashMap<>();
+        List<String> dictionary = new ArrayList<>();
+        int[][] rowCodes = new int[table.size()][];
+        int total = 0;
+        for (int row = 0; row < table.size(); row++) {
+            String[] rowTerms = tokenize(field.at(table, row));
+            rowCodes[row] = new int[rowTerms.length];
+            for (int i = 0; i < rowTerms.length; i++) {
+                Integer code = codes.get(rowTerms[i]);
+                if (code == null) {
+                    code = dictionary.size();
+                    codes.put(rowTerms[i], code);
+                    dictionary.add(rowTerms[i]);
+                }
+                rowCodes[row][i] = code;
+            }
+            total += rowTerms.length;
+        }
+        String[] sorted = dictionary.toArray(NO_TERMS);
+        Arrays.sort(sorted);
+        int[] rank = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            rank[codes.get(sorted[i])] = i;
+        }
+        int[] start = new int[sorted.length + 1];
+        for (int[] row : rowCodes) {
+            for (int code : row) {
+                start[rank[code] + 1]++;
+            }
+        }
+        for (int i = 0; i < sorted.length; i++) {
+            start[i + 1] += start[i];
+        }
+
+        String[] terms = new String[total];
+        long[] ids = new long[total];
+        int[] next = Arrays.copyOf(start, sorted.length);
+        for (int row = 0; row < rowCodes.length; row++) {
+            for (int code : rowCodes[row]) {
+                int at = next[rank[code]]++;
+                terms[at] = sorted[rank[code]];
+                ids[at] = table.idAt(row);
+            }
+        }
+        for (int i = 0; i < sorted.length; i++) {
+            Arrays.sort(ids, start[i], start[i + 1]);
+        }
+
+        LongHashMap<List<String>> byTrigram = new LongHashMap<>();
+        for (String term : sorted) {
+            for (long trigram : trigrams(term, true)) {
+                List<String> postings = byTrigram.get(trigram);
+                if (postings == null) {
+                    postings = new ArrayList<>();
+                    byTrigram.put(trigram, postings);
+                }
+                postings.add(term);
+            }
+        }
+        PersistentLongMap.Builder<String[]> trigramBuilder = new PersistentLongMap.Builder<>(byTrigram.size());
+        for (long trigram : byTrigram.keys()) {
+            trigramBuilder.put(trigram, byTrigram.get(trigram).toArray(NO_TERMS));
+        }
+        this.field = field;
+        this.entries = SortedIdTree.of(TERM_ORDER, terms, ids, total);
+        this.termsByTrigram = trigramBuilder.build();
+    }
+
+    private SearchIndex(Field field, SortedIdTree<String> entries, PersistentLongMap<String[]> termsByTrigram) {
+        this.field = field;
+        this.entries = entries;
+        this.termsByTrigram = termsByTrigram;
+    }
+
+    /**
+     * Returns a new index with the previous versions of changed employees removed and
+     * their new versions inserted, each term in O(log n). Terms it hasn't seen
+     * before are added to the trigram index too, and terms no employee has any more
+     * are dropped from it.
+     */
+    SearchIndex withChanges(Collection<Employee> removed, Collection<Employee> added) {
+        SortedIdTree<String> updated = entries;
+        Set<String> vacated = new HashSet<>();
+        for (Employee emp : removed) {
+            for (String term : tokenize(field.of(emp))) {
+                updated = updated.without(term, emp.getId());
+                vacated.add(term);
+            }
+        }
+        Set<String> unseen = new LinkedHashSet<>();
+        for (Employee emp : added) {
+            for (String term : tokenize(field.of(emp))) {
+                int i = updated.indexOf(term, emp.getId());
+                if (i >= 0) {
+                    continue;
+                }
+                i = -(i + 1);
+                // Share the instance already held for this term
+                if (i > 0 && updated.keyAt(i - 1).equals(term)) {
+                    term = updated.keyAt(i - 1);
+                } else if (i < updated.size() && updated.keyAt(i).equals(term)) {
+                    term = updated.keyAt(i);
+                } else if (!isKnown(term)) {
+                    unseen.add(term);
+                }
+                updated = updated.with(term, emp.getId());
+            }
+        }
+        PersistentLongMap<String[]> trigrams = unseen.isEmpty() ? termsByTrigram : withTerms(termsByTrigram, unseen);
+        Set<String> gone = new LinkedHashSet<>();
+        for (String term : vacated) {
+            int i = updated.lowerBound(term, Long.MIN_VALUE);
+            if (i == updated.size() || !updated.keyAt(i).equals(term)) {
+                gone.add(term);
+            }
+        }
+        return new SearchIndex(field, updated, gone.isEmpty() ? trigrams : withoutTerms(trigrams, gone));
+    }
+
+    /**
+     * Up to {@code limit} employees whose field has a word starting with each word of
+     * the query. Employees matching a query word exactly rank above ones that only
+     * match a prefix. If that finds fewer than {@code limit}, employees with words
+     * one edit away (two for words of eight letters or more) follow. Matches are
+     * collected in term order and the search stops as soon as it has enough, so the
+     * cost depends on the limit rather than on the number of employees.
+     */
+    List<Employee> search(String query, int limit, EmployeeTable table) {
+        String[] words = tokenize(query);
+        if (words.length == 0 || limit <= 0) {
+            return Collections.emptyList();
+        }
+        long[] found = new long[limit];
+        int[] scores = new int[limit];
+        Set<Long> seen = new HashSet<>();
+        int count = collect(words, null, table, found, scores, 0, seen);
+        // Stable, so ties keep term order; limits are small enough for an insertion sort
+        for (int i = 1; i < count; i++) {
+            long id = found[i];
+            int score = scores[i];
+            int j = i - 1;
+            for (; j >= 0 && scores[j] < score; j--) {
+                found[j + 1] = found[j];
+                scores[j + 1] = scores[j];
+            }
+            found[j + 1] = id;
+            scores[j + 1] = score;
+        }
+        if (count < limit) {
+            List<List<String>> fuzzy = new ArrayList<>(words.length);
+            boolean any = false;
+            for (String word : words) {
+                List<String> similar = similarTerms(word);
+                fuzzy.add(similar);
+                any |= !similar.isEmpty();
+            }
+            if (any) {
+                count = collect(words, fuzzy, table, found, scores, count, seen);
+            }
+        }
+        return table.select(i -> found[i], 0, count);
+    }
+
+    /**
+     * Adds employees matching every query word to {@code found}, starting at
+     * {@code count}, and returns the new count. A word matches a term it is a prefix
+     * of, or, when {@code fuzzy} is given, one of its similar terms. Candidates come
+     * from the query word with the fewest matches. For the other words, each id is
+     * looked up in the id-sorted run of every term they match, with a cursor per run
+     * that only moves forward while candidate ids ascend; words that match too many
+     * terms for that are checked against the employee's own terms instead.
+     */
+    private int collect(String[] words, List<List<String>> fuzzy, EmployeeTable table,
+                        long[] found, int[] scores, int count, Set<Long> seen) {
+        int driver = 0;
+        long fewest = Long.MAX_VALUE;
+        int[][] ranges = new int[words.length][];
+        for (int w = 0; w < words.length; w++) {
+            ranges[w] = prefixRange(words[w]);
+            long matches = ranges[w][1] - ranges[w][0];
+            if (fuzzy != null) {
+                for (String term : fuzzy.get(w)) {
+                    int[] range = exactRange(term);
+                    matches += range[1] - range[0];
+                }
+            }
+            if (matches < fewest) {
+                fewest = matches;
+                driver = w;
+            }
+        }
+        if (fewest == 0) {
+            return count;
+        }
+
+        List<List<int[]>> runs = new ArrayList<>(words.length);
+        int[][] cursors = new int[words.length][];
+        for (int w = 0; w < words.length; w++) {
+            runs.add(w == driver ? null
+                    : termRuns(ranges[w], fuzzy != null ? fuzzy.get(w) : Collections.<String>emptyList()));
+            cursors[w] = runs.get(w) != null ? new int[runs.get(w).size()] : null;
+        }
+        long previous = Long.MAX_VALUE;
+        List<int[]> slices = new ArrayList<>();
+        slices.add(ranges[driver]);
+        if (fuzzy != null) {
+            for (String term : fuzzy.get(driver)) {
+                slices.add(exactRange(term));
+            }
+        }
+        for (int[] slice : slices) {
+            for (int i = slice[0]; i < slice[1] && count < found.length; i++) {
+                long id = entries.idAt(i);
+                if (id < previous) {
+                    // A new term run starts over from the lowest ids
+                    for (int w = 0; w < words.length; w++) {
+                        for (int r = 0; cursors[w] != null && r < cursors[w].length; r++) {
+                            cursors[w][r] = runs.get(w).get(r)[0];
+                        }
+                    }
+                }
+                previous = id;
+                int score = entries.keyAt(i).equals(words[driver]) ? 1 : 0;
+                String[] empTerms = null;
+                for (int w = 0; w < words.length && score >= 0; w++) {
+                    if (w == driver) {
+                        continue;
+                    }
+                    int match;
+                    if (runs.get(w) != null) {
+                        match = matchInRuns(runs.get(w), cursors[w], id, words[w]);
+                    } else {
+                        if (empTerms == null) {
+                            empTerms = tokenize(field.at(table, table.rowOf(id)));
+                        }
+                        match = matchInTerms(empTerms, words[w], fuzzy != null ? fuzzy.get(w) : null);
+                    }
+                    score = match >= 0 ? score + match : -1;
+                }
+                if (score < 0 || !seen.add(id)) {
+                    continue;
+                }
+                found[count] = id;
+                scores[count] = score;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // The range split into one run per term, followed by the runs of the similar terms; null if that is too many
+    private List<int[]> termRuns(int[] range, List<String> similar) {
+        List<int[]> runs = new ArrayList<>();
+        for (int from = range[0]; from < range[1]; from = runs.get(runs.size() - 1)[1]) {
+            if (runs.size() == MAX_RUNS) {
+                return null;
+            }
+            runs.add(new int[] {from, upperBound(entries.keyAt(from))});
+        }
+        for (String term : similar) {
+            int[] run = exactRange(term);
+            if (run[1] > run[0]) {
+                if (runs.size() == MAX_RUNS) {
+                    return null;
+                }
+                runs.add(run);
+            }
+        }
+        return runs;
+    }
+
+    /**
+     * 1 if the id is in the run of the word itself, 0 if only in another run, -1 if
+     * in none. Each cursor is moved up to the id in its run; ids must not go down
+     * between calls without the cursors being reset.
+     */
+    private int matchInRuns(List<int[]> runs, int[] cursors, long id, String word) {
+        int match = -1;
+        for (int r = 0; r < runs.size(); r++) {
+            int[] run = runs.get(r);
+            int at = seek(cursors[r], run[1], id);
+            cursors[r] = at;
+            if (at < run[1] && entries.idAt(at) == id) {
+                if (entries.keyAt(run[0]).equals(word)) {
+                    return 1;
+                }
+                match = 0;
+            }
+        }
+        return match;
+    }
+
+    // First position from {@code from} on whose id is not below the given one, galloping ahead then bisecting
+    private int seek(int from, int to, long id) {
+        int step = 1;
+        int lo = from;
+        int hi = from;
+        while (hi < to && entries.idAt(hi) < id) {
+            lo = hi + 1;
+            hi = (int) Math.min((long) hi + step, to);
+            step <<= 1;
+        }
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (entries.idAt(mid) < id) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // The same answer from the employee's own terms
+    private static int matchInTerms(String[] empTerms, String word, List<String> similar) {
+        int match = -1;
+        for (String term : empTerms) {
+            if (term.equals(word)) {
+                return 1;
+            }
+            if (term.startsWith(word) || (similar != null && similar.contains(term))) {
+                match = 0;
+            }
+        }
+        return match;
+    }
+
+    /**
+     * Known terms other than the word's own prefix matches that start with something
+     * within the allowed edit distance of the word, closest first.
+     */
+    private List<String> similarTerms(String word) {
+        if (word.length() < MIN_FUZZY_LENGTH) {
+            return Collections.emptyList();
+        }
+        int maxEdits = word.length() < 8 ? 1 : 2;
+        // An edit changes at most three trigrams, so closer terms share at least this many
+        long[] grams = trigrams(word, false);
+        int needed = Math.max(1, grams.length - 3 * maxEdits);
+        Map<String, Integer> shared = new HashMap<>();
+        for (long gram : grams) {
+            String[] postings = termsByTrigram.get(gram);
+            if (postings != null) {
+                for (String term : postings) {
+                    shared.merge(term, 1, Integer::sum);
+                }
+            }
+        }
+        List<String> similar = new ArrayList<>();
+        Map<String, Integer> distances = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : shared.entrySet()) {
+            String term = entry.getKey();
+            if (entry.getValue() < needed || term.startsWith(word)) {
+                continue;
+            }
+            int distance = prefixDistance(word, term, maxEdits);
+            if (distance <= maxEdits) {
+                similar.add(term);
+                distances.put(term, distance);
+            }
+        }
+        similar.sort((a, b) -> distances.get(a).equals(distances.get(b))
+                ? a.compareTo(b) : Integer.compare(distances.get(a), distances.get(b)));
+        return similar;
+    }
+
+    // Smallest edit distance between the word and a prefix of the term of about the word's length
+    private static int prefixDistance(String word, String term, int maxEdits) {
+        int best = Integer.MAX_VALUE;
+        for (int length = word.length() - maxEdits; length <= word.length() + maxEdits; length++) {
+            if (length > 0 && length <= term.length()) {
+                best = Math.min(best, distance(word, term.substring(0, length)));
+            }
+        }
+        return best;
+    }
+
+    // Edit distance counting insertions, deletions, substitutions and swaps of neighbouring letters
+    private static int distance(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            d[i][0] = i;
+        }
+        for (int j = 0; j <= b.length(); j++) {
+            d[0][j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+                }
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+
+    // Positions of every pair whose term starts with the prefix
+    private int[] prefixRange(String prefix) {
+        int from = lowerBound(prefix);
+        int lo = from;
+        int hi = entries.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (entries.keyAt(mid).startsWith(prefix)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return new int[] {from, lo};
+    }
+
+    private int[] exactRange(String term) {
+        return new int[] {lowerBound(term), upperBound(term)};
+    }
+
+    // First position whose term is not before the given one
+    private int lowerBound(String term) {
+        return entries.lowerBound(term, Long.MIN_VALUE);
+    }
+
+    // First position whose term comes after the given one
+    private int upperBound(String term) {
+        int i = entries.indexOf(term, Long.MAX_VALUE);
+        return i >= 0 ? i + 1 : -(i + 1);
+    }
+
+    // Whether the term is in the trigram index
+    boolean isKnown(String term) {
+        String[] postings = termsByTrigram.get(trigrams(term, true)[0]);
+        return postings != null && Arrays.binarySearch(postings, term) >= 0;
+    }
+
+    private static PersistentLongMap<String[]> withTerms(PersistentLongMap<String[]> base, Set<String> added) {
+        PersistentLongMap<String[]> updated = base;
+        for (String term : added) {
+            for (long trigram : trigrams(term, true)) {
+                String[] postings = updated.get(trigram);
+                if (postings == null) {
+                    postings = NO_TERMS;
+                }
+                int i = Arrays.binarySearch(postings, term);
+                if (i < 0) {
+                    i = -(i + 1);
+                    String[] grown = new String[postings.length + 1];
+                    System.arraycopy(postings, 0, grown, 0, i);
+                    grown[i] = term;
+                    System.arraycopy(postings, i, grown, i + 1, postings.length - i);
+                    updated = updated.with(trigram, grown);
+                }
+            }
+        }
+        return updated;
+    }
+
+    private static PersistentLongMap<String[]> withoutTerms(PersistentLongMap<String[]> base, Set<String> removed) {
+        PersistentLongMap<String[]> updated = base;
+        for (String term : removed) {
+            for (long trigram : trigrams(term, true)) {
+                String[] postings = updated.get(trigram);
+                int i = postings == null ? -1 : Arrays.binarySearch(postings, term);
+                if (i < 0) {
+                    continue;
+                }
+                if (postings.length == 1) {
+                    updated = updated.without(trigram);
+                } else {
+                    String[] shrunk = new String[postings.length - 1];
+                    System.arraycopy(postings, 0, shrunk, 0, i);
+                    System.arraycopy(postings, i + 1, shrunk, i, shrunk.length - i);
+                    updated = updated.with(trigram, shrunk);
+                }
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Trigrams of the term with a '$' marking its start and, for whole terms, its
+     * end. Query words leave the end open, as they may be a word still being typed.
+     * Each is packed into a long, one char per 16 bits; a padded term shorter than
+     * three chars is a single trigram.
+     */
+    private static long[] trigrams(String term, boolean whole) {
+        String padded = "$" + term + (whole ? "$" : "");
+        if (padded.length() < 3) {
+            return new long[] {trigramKey(padded, 0, padded.length())};
+        }
+        long[] grams = new long[padded.length() - 2];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = trigramKey(padded, i, i + 3);
+        }
+        return grams;
+    }
+
+    private static long trigramKey(String padded, int from, int to) {
+        long key = 0;
+        for (int i = from; i < to; i++) {
+            key = key << 16 | padded.charAt(i);
+        }
+        return key;
+    }
+
+    // Distinct normalized words of the text: lower case, accents stripped, split at anything but letters and digits
+    static String[] tokenize(String text) {
+        if (text == null || text.isEmpty()) {
+            return NO_TERMS;
+        }
+        // Accents only need stripping outside ASCII, which saves the normalizer for most names
+        String normalized = text;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                normalized = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+                break;
+            }
+        }
+        normalized = normalized.toLowerCase(Locale.ROOT);
+        String[] words = new String[4];
+        int count = 0;
+        int i = 0;
+        while (i < normalized.length()) {
+            while (i < normalized.length() && !Character.isLetterOrDigit(normalized.codePointAt(i))) {
+                i += Character.charCount(normalized.codePointAt(i));
+            }
+            int from = i;
+            while (i < normalized.length() && Character.isLetterOrDigit(normalized.codePointAt(i))) {
+                i += Character.charCount(normalized.codePointAt(i));
+            }
+            if (i > from) {
+                String word = normalized.substring(from, i);
+                boolean duplicate = false;
+                for (int w = 0; w < count && !duplicate; w++) {
+                    duplicate = words[w].equals(word);
+                }
+                if (!duplicate) {
+                    if (count == words.length) {
+                        words = Arrays.copyOf(words, count * 2);
+                    }
+                    words[count++] = word;
+                }
+            }
+        }
+        return count == words.length ? words : Arrays.copyOf(words, count);
+    }
+}
@@ -0,0 +1,257 @@
+package com.flywire.exercise.store;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary form of a whole snapshot, read back without any JSON parsing. Layout,
+ * all big-endian:
+ * <pre>
+ * header   magic, format, employee count, report count, string heap size,
+ *          CRC32 of everything after the header (ints), checksum of the original
+ *          data it was merged from (long)
+ * records  one 32-byte record per employee: id (long), name, position (string
+ *          heap offsets or -1), hire epoch day (or Integer.MIN_VALUE), flags,
+ *          first report, report count (ints)
+ * reports  every direct report id (longs), records point into this section
+ * strings  length-prefixed UTF-8; each distinct position is stored once
+ * </pre>
+ * The file is opened with {@link FileChannel#map}, so reading it is a walk over
+ * the page cache straight into the columns of an {@link EmployeeTable}.
+ */
+public final class SnapshotFile {
+
+    private static final int MAGIC = 0x454D5053; // "EMPS"
+    // Format 1 had no checksum of its own, so such files are left for the JSON to replace
+    private static final int FORMAT = 2;
+    private static final int HEADER_BYTES = 32;
+    private static final int BODY_CRC_AT = 20;
+    private static final int RECORD_BYTES = 32;
+    private static final int NONE = -1;
+    private static final int ACTIVE = 1;
+    private static final int ORIGINAL = 2;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Writes the snapshot to {@code target} through a synced temp file, so a crash
+     * leaves either the old file or the new one.
+     */
+    public static void write(EmployeeSnapshot snapshot, long checksum, File target) throws IOException {
+        EmployeeTable table = snapshot.getTable();
+        int size = table.size();
+
+        ByteArrayOutputStream heapBytes = new ByteArrayOutputStream();
+        DataOutputStream heap = new DataOutputStream(heapBytes);
+        Map<String, Integer> offsets = new HashMap<>();
+        int[] nameRefs = new int[size];
+        int[] positionRefs = new int[size];
+        int reportCount = 0;
+        for (int row = 0; row < size; row++) {
+            nameRefs[row] = append(table.nameAt(row), heap);
+            positionRefs[row] = intern(table.positionAt(row), heap, offsets);
+            reportCount += table.reportCount(row);
+        }
+
+        File temp = new File(target.getPath() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temp)) {
+            CRC32 crc = new CRC32();
+            DataOutputStream out = new DataOutputStream(
+                    new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), crc));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeInt(size);
+            out.writeInt(reportCount);
+            out.writeInt(heapBytes.size());
+            // Filled in once the rest is written
+            out.writeInt(0);
+            out.writeLong(checksum);
+            crc.reset();
+            int firstReport = 0;
+            for (int row = 0; row < size; row++) {
+                out.writeLong(table.idAt(row));
+                out.writeInt(nameRefs[row]);
+                out.writeInt(positionRefs[row]);
+                out.writeInt(table.hireDayAt(row));
+                out.writeInt((table.isActiveAt(row) ? ACTIVE : 0) | (table.isOriginalAt(row) ? ORIGINAL : 0));
+                out.writeInt(firstReport);
+                out.writeInt(table.reportCount(row));
+                firstReport += table.reportCount(row);
+            }
+            for (int row = 0; row < size; row++) {
+                for (int i = 0; i < table.reportCount(row); i++) {
+                    out.writeLong(table.reportAt(row, i));
+                }
+            }
+            heapBytes.writeTo(out);
+            out.flush();
+            ByteBuffer bodyCrc = ByteBuffer.allocate(4).putInt(0, (int) crc.getValue());
+            while (bodyCrc.hasRemaining()) {
+                file.getChannel().write(bodyCrc, BODY_CRC_AT + bodyCrc.position());
+            }
+            file.getFD().sync();
+        }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a snapshot written by {@link #write}; the result has the given version.
+     * Fails with an IOException if the file is not a complete snapshot or fails its
+     * checksum.
+     */
+    public static EmployeeSnapshot read(File source, long version) throws IOException {
+        try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new EmployeeSnapshot(readTable(buffer, source), version);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Truncated or corrupt snapshot file " + source, e);
+        }
+    }
+
+    // The original-data checksum recorded in the header, or null if this isn't a readable snapshot file
+    public static Long readChecksum(File source) throws IOException {
+        if (source.length() < HEADER_BYTES) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // keep reading until the header is complete
+            }
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt(0) != MAGIC || header.getInt(4) != FORMAT) {
+                return null;
+            }
+            return header.getLong(24);
+        }
+    }
+
+    private static EmployeeTable readTable(ByteBuffer buffer, File source) throws IOException {
+        if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT) {
+            throw new IOException("Not an employee snapshot file: " + source);
+        }
+        int size = buffer.getInt();
+        int reportCount = buffer.getInt();
+        int heapSize = buffer.getInt();
+        int bodyCrc = buffer.getInt();
+        long expected = HEADER_BYTES + (long) size * RECORD_BYTES + (long) reportCount * 8 + heapSize;
+        if (size < 0 || reportCount < 0 || heapSize < 0 || expected != buffer.capacity()) {
+            throw new IOException("Snapshot file " + source + " is truncated or has a bad header");
+        }
+        CRC32 crc = new CRC32();
+        ByteBuffer body = buffer.duplicate();
+        body.position(HEADER_BYTES);
+        crc.update(body);
+        if ((int) crc.getValue() != bodyCrc) {
+            throw new IOException("Snapshot file " + source + " does not match its checksum");
+        }
+        int reportsAt = HEADER_BYTES + size * RECORD_BYTES;
+        int heapAt = reportsAt + reportCount * 8;
+
+        long[] ids = new long[size];
+        String[] names = new String[size];
+        String[] positions = new String[size];
+        int[] hireDays = new int[size];
+        BitSet active = new BitSet(size);
+        BitSet original = new BitSet(size);
+        int[] reportStart = new int[size + 1];
+        // Positions repeat, so each distinct one is decoded once
+        Map<Integer, String> positionCache = new HashMap<>();
+        byte[] scratch = new byte[256];
+
+        buffer.position(HEADER_BYTES);
+        int nextReport = 0;
+        for (int row = 0; row < size; row++) {
+            ids[row] = buffer.getLong();
+            int nameRef = buffer.getInt();
+            int positionRef = buffer.getInt();
+            hireDays[row] = buffer.getInt();
+            int flags = buffer.getInt();
+            int from = buffer.getInt();
+            int count = buffer.getInt();
+            // Reports are laid out in row order; anything else means a damaged file
+            if (from != nextReport || count < 0 || (long) from + count > reportCount) {
+                throw new IOException("Snapshot file " + source + " has inconsistent report offsets");
+            }
+            reportStart[row] = from;
+            nextReport = from + count;
+            active.set(row, (flags & ACTIVE) != 0);
+            original.set(row, (flags & ORIGINAL) != 0);
+
+            int mark = buffer.position();
+            names[row] = readString(buffer, heapAt, heapSize, nameRef, scratch);
+            String position = positionCache.get(positionRef);
+            if (position == null && positionRef != NONE) {
+                position = readString(buffer, heapAt, heapSize, positionRef, scratch);
+                positionCache.put(positionRef, position);
+            }
+            positions[row] = position;
+            buffer.position(mark);
+        }
+        reportStart[size] = nextReport;
+
+        long[] reportIds = new long[reportCount];
+        buffer.position(reportsAt);
+        buffer.asLongBuffer().get(reportIds);
+        return new EmployeeTable(ids, names, positions, hireDays, active, original, reportStart, reportIds);
+    }
+
+    private static String readString(ByteBuffer buffer, int heapAt, int heapSize, int ref, byte[] scratch)
+            throws IOException {
+        if (ref == NONE) {
+            return null;
+        }
+        if (ref < 0 || ref > heapSize - 4) {
+            throw new IOException("String offset " + ref + " is outside the string heap");
+        }
+        int length = buffer.getInt(heapAt + ref);
+        if (length < 0 || length > heapSize - ref - 4) {
+            throw new IOException("String at offset " + ref + " runs past the string heap");
+        }
+        byte[] bytes = length <= scratch.length ? scratch : new byte[length];
+        buffer.position(heapAt + ref + 4);
+        buffer.get(bytes, 0, length);
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static int intern(String value, DataOutputStream heap, Map<String, Integer> offsets) throws IOException {
+        if (value == null) {
+            return NONE;
+        }
+        Integer offset = offsets.get(value);
+        if (offset == null) {
+            offset = append(value, heap);
+            offsets.put(value, offset);
+        }
+        return offset;
+    }
+
+    private static int append(String value, DataOutputStream heap) throws IOException {
+        if (value == null) {
+            return NONE;
+        }
+        int offset = heap.size();
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        heap.writeInt(bytes.length);
+        heap.write(bytes);
+        return offset;
+    }
+}
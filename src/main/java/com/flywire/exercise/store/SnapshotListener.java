@@ -0,0 +1,22 @@
+package com.flywire.exercise.store;
+
+import java.util.List;
+
+/**
+ * Told about every snapshot the store publishes, on the writer thread: once before
+ * any reader can see it, so derived state keyed by version is never behind the
+ * data, and once after, for anything that tells others the data has changed.
+ * Implementations must be quick and must not block.
+ */
+public interface SnapshotListener {
+
+    /**
+     * {@code changes} are the ones that turned {@code previous} into {@code updated},
+     * or null when the whole employee set was replaced.
+     */
+    void beforePublish(EmployeeSnapshot previous, EmployeeSnapshot updated, List<EmployeeChange> changes);
+
+    // Same arguments, once readers can see {@code updated}
+    default void afterPublish(EmployeeSnapshot previous, EmployeeSnapshot updated, List<EmployeeChange> changes) {
+    }
+}
@@ -0,0 +1,151 @@
+package com.flywire.exercise.store;
+
+import com.flywire.exercise.model.Employee;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Running totals for the whole employee set: how many are active, headcount per
+ * position and how many employees list each number of direct reports. Built with
+ * one pass over the table, then adjusted by the difference between the old and
+ * new versions of whatever each change touches, so reading them is free.
+ */
+final class StatsIndex {
+
+    private final int total;
+    private final int active;
+    // Position -> {total, active}; employees without a position are counted under null
+    private final Map<String, int[]> byPosition;
+    // reportCounts[n] is how many employees list n direct reports
+    private final int[] reportCounts;
+
+    StatsIndex(EmployeeTable table) {
+        Map<String, int[]> positions = new HashMap<>();
+        int[] reports = new int[8];
+        int activeCount = 0;
+        for (int row = 0; row < table.size(); row++) {
+            boolean isActive = table.isActiveAt(row);
+            if (isActive) {
+                activeCount++;
+            }
+            int[] counts = positions.computeIfAbsent(table.positionAt(row), p -> new int[2]);
+            counts[0]++;
+            if (isActive) {
+                counts[1]++;
+            }
+            int n = table.reportCount(row);
+            if (n >= reports.length) {
+                reports = Arrays.copyOf(reports, Math.max(n + 1, reports.length * 2));
+            }
+            reports[n]++;
+        }
+        this.total = table.size();
+        this.active = activeCount;
+        this.byPosition = positions;
+        this.reportCounts = reports;
+    }
+
+    private StatsIndex(int total, int active, Map<String, int[]> byPosition, int[] reportCounts) {
+        this.total = total;
+        this.active = active;
+        this.byPosition = byPosition;
+        this.reportCounts = reportCounts;
+    }
+
+    /**
+     * Returns new totals with the previous versions of changed employees taken out
+     * and their new versions counted in. Only the counts of touched positions are copied.
+     */
+    StatsIndex withChanges(Collection<Employee> removed, Collection<Employee> added) {
+        Map<String, int[]> positions = new HashMap<>(byPosition);
+        Map<String, int[]> copied = new HashMap<>();
+        int[] reports = reportCounts.clone();
+        int newTotal = total;
+        int newActive = active;
+        for (Employee emp : removed) {
+            newTotal--;
+            if (emp.isActive()) {
+                newActive--;
+            }
+            int[] counts = mutable(positions, copied, emp.getPosition());
+            counts[0]--;
+            if (emp.isActive()) {
+                counts[1]--;
+            }
+            reports[reportCount(emp)]--;
+        }
+        for (Employee emp : added) {
+            newTotal++;
+            if (emp.isActive()) {
+                newActive++;
+            }
+            int[] counts = mutable(positions, copied, emp.getPosition());
+            counts[0]++;
+            if (emp.isActive()) {
+                counts[1]++;
+            }
+            int n = reportCount(emp);
+            if (n >= reports.length) {
+                reports = Arrays.copyOf(reports, Math.max(n + 1, reports.length * 2));
+            }
+            reports[n]++;
+        }
+        for (Map.Entry<String, int[]> entry : copied.entrySet()) {
+            if (entry.getValue()[0] == 0) {
+                positions.remove(entry.getKey());
+            }
+        }
+        return new StatsIndex(newTotal, newActive, positions, reports);
+    }
+
+    int total() {
+        return total;
+    }
+
+    int active() {
+        return active;
+    }
+
+    // Position -> {total, active}; the arrays must not be modified
+    Map<String, int[]> byPosition() {
+        return Collections.unmodifiableMap(byPosition);
+    }
+
+    // Element n is how many employees list n direct reports; trailing zeros are trimmed
+    int[] reportCounts() {
+        int length = reportCounts.length;
+        while (length > 0 && reportCounts[length - 1] == 0) {
+            length--;
+        }
+        return Arrays.copyOf(reportCounts, length);
+    }
+
+    // Counts shared with the previous totals are copied before the first change
+    private static int[] mutable(Map<String, int[]> positions, Map<String, int[]> copied, String position) {
+        int[] counts = copied.get(position);
+        if (counts == null) {
+            int[] shared = positions.get(position);
+            counts = shared != null ? shared.clone() : new int[2];
+            copied.put(position, counts);
+            positions.put(position, counts);
+        }
+        return counts;
+    }
+
+    // Null entries are dropped by the table, so they don't count either
+    private static int reportCount(Employee emp) {
+        int n = 0;
+        if (emp.getDirectReports() != null) {
+            for (Long reportId : emp.getDirectReports()) {
+                if (reportId != null) {
+                    n++;
+                }
+            }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,326 @@
+package com.flywire.exercise.util;
+
+import com.flywire.exercise.exception.VersionConflictException;
+import com.flywire.exercise.model.ChangeSet;
+import com.flywire.exercise.model.Employee;
+import com.flywire.exercise.store.ChangeLog;
+import com.flywire.exercise.store.EmployeeChange;
+import com.flywire.exercise.store.EmployeeLookup;
+import com.flywire.exercise.store.EmployeeSnapshot;
+import com.flywire.exercise.store.EmployeeStore;
+import com.flywire.exercise.store.PendingChanges;
+import com.flywire.exercise.store.SnapshotListener;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * The part of a store that doesn't depend on how employees are persisted: the
+ * published snapshot, listeners and change log, and the writer thread that runs
+ * commits in groups and hands each group to {@link #persistChanges} in one call.
+ * Subclasses load their data, then call {@link #start} from their constructor.
+ */
+abstract class AbstractEmployeeStore implements EmployeeStore {
+
+    private static final Logger log = LoggerFactory.getLogger(AbstractEmployeeStore.class);
+
+    // Serializes writers; readers never take it
+    final ReentrantLock commitLock = new ReentrantLock();
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    // Merged view served to readers; replaced wholesale on every commit
+    private final AtomicReference<EmployeeSnapshot> snapshot = new AtomicReference<>();
+    private final List<SnapshotListener> listeners = new CopyOnWriteArrayList<>();
+    // Recent changes by version, for clients catching up on what they missed
+    private final ChangeLog changeLog;
+    // System.nanoTime() when the current snapshot was published, for the snapshot age gauge
+    private volatile long publishedAt;
+
+    private final MeterRegistry meterRegistry;
+    private final Timer persistTimer;
+
+    // Commits waiting for the writer thread, which applies and persists them in groups
+    private final BlockingQueue<PendingCommit> commitQueue = new LinkedBlockingQueue<>();
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private Thread writerThread;
+    private volatile boolean closed;
+
+    AbstractEmployeeStore(String mode, int maxBatchSize, long lingerMillis, int changeLogSize,
+                          MeterRegistry meterRegistry) {
+        if (maxBatchSize < 1 || lingerMillis < 0) {
+            throw new IllegalArgumentException("employees.write.max-batch-size must be positive and employees.write.linger-ms not negative");
+        }
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.changeLog = new ChangeLog(changeLogSize, 0, epoch);
+        this.meterRegistry = meterRegistry;
+        this.persistTimer = Timer.builder("employees.persist")
+                .description("Time to durably write one group of commits")
+                .tag("mode", mode)
+                .register(meterRegistry);
+    }
+
+    // Publishes the loaded employee set and starts taking commits
+    final void start(EmployeeSnapshot loaded) {
+        publish(loaded);
+        changeLog.beforePublish(null, loaded, null);
+        listeners.add(changeLog);
+
+        Gauge.builder("employees.dataset.size", this, s -> s.getSnapshot().size())
+                .description("Employees in the current snapshot")
+                .register(meterRegistry);
+        Gauge.builder("employees.snapshot.version", this, s -> s.getSnapshot().getVersion())
+                .description("Version of the current snapshot")
+                .register(meterRegistry);
+        Gauge.builder("employees.snapshot.age", this, s -> (System.nanoTime() - s.publishedAt) / 1e9)
+                .description("Time since the current snapshot was published")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+
+        this.writerThread = new Thread(this::runWriter, "employee-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Durably writes one group of changes, which turn {@code current} into
+     * {@code updated}. Called on the writer thread with the commit lock held; if it
+     * throws, none of the group's commits is applied.
+     */
+    abstract void persistChanges(EmployeeSnapshot current, EmployeeSnapshot updated,
+                                 List<EmployeeChange> changes) throws IOException;
+
+    @Override
+    public EmployeeSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    @Override
+    public String getEpoch() {
+        return epoch;
+    }
+
+    @Override
+    public void addListener(SnapshotListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public ChangeSet getChangesSince(long since, String epoch) {
+        return changeLog.since(since, epoch);
+    }
+
+    @Override
+    public List<Employee> readEmployees() {
+        // The snapshot materializes fresh employees, so these are already private copies
+        return new ArrayList<>(snapshot.get().getEmployees());
+    }
+
+    @Override
+    public EmployeeSnapshot commit(Long expectedVersion, Function<EmployeeLookup, EmployeeChange> mutation) throws IOException {
+        return commitAll(expectedVersion, current -> Collections.singletonList(mutation.apply(current)));
+    }
+
+    @Override
+    public EmployeeSnapshot commitAll(Long expectedVersion, Function<EmployeeLookup, List<EmployeeChange>> mutation) throws IOException {
+        try {
+            return submit(expectedVersion, mutation).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for commit");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Queues a mutation for the writer thread. Mutations that arrive together are
+     * run one after another against the accumulated state and persisted in a single
+     * write; the future then completes with a snapshot that includes the change.
+     */
+    @Override
+    public CompletableFuture<EmployeeSnapshot> submit(Long expectedVersion, Function<EmployeeLookup, List<EmployeeChange>> mutation) {
+        PendingCommit commit = new PendingCommit(expectedVersion, mutation);
+        if (closed) {
+            commit.future.completeExceptionally(new IllegalStateException("Employee store is closed"));
+            return commit.future;
+        }
+        commitQueue.add(commit);
+        return commit.future;
+    }
+
+    // Lets the writer finish what is already queued, then stops it
+    final void stopWriter() {
+        closed = true;
+        commitQueue.add(SHUTDOWN);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Publishes a replacement for the whole employee set, which the caller has
+     * already persisted. Must be called with the commit lock held.
+     */
+    final void replace(EmployeeSnapshot updated) {
+        EmployeeSnapshot previous = snapshot.get();
+        notifyListeners(previous, updated, null);
+        publish(updated);
+        announce(previous, updated, null);
+    }
+
+    private void runWriter() {
+        List<PendingCommit> batch = new ArrayList<>(maxBatchSize);
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                PendingCommit first = commitQueue.take();
+                if (first == SHUTDOWN) {
+                    break;
+                }
+                batch.add(first);
+                // Give concurrent writers a moment to join this batch
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingCommit next = remaining > 0
+                            ? commitQueue.poll(remaining, TimeUnit.NANOSECONDS)
+                            : commitQueue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    if (next == SHUTDOWN) {
+                        stopping = true;
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                stopping = true;
+            }
+            if (!batch.isEmpty()) {
+                applyBatch(batch);
+                batch.clear();
+            }
+        }
+        // Anything queued after close() was called will never be written
+        PendingCommit leftover;
+        while ((leftover = commitQueue.poll()) != null) {
+            leftover.future.completeExceptionally(new IllegalStateException("Employee store is closed"));
+        }
+    }
+
+    private void applyBatch(List<PendingCommit> batch) {
+        commitLock.lock();
+        try {
+            EmployeeSnapshot current = snapshot.get();
+            PendingChanges pending = new PendingChanges(current);
+            List<PendingCommit> accepted = new ArrayList<>(batch.size());
+            for (PendingCommit commit : batch) {
+                // Each commit in the group counts as though the ones before it had already been published
+                long version = current.getVersion() + pending.getChanges().size();
+                try {
+                    if (commit.expectedVersion != null && commit.expectedVersion != version) {
+                        throw new VersionConflictException("Employee data has changed: expected version "
+                                + commit.expectedVersion + " but current version is " + version);
+                    }
+                    List<EmployeeChange> changes = commit.mutation.apply(pending);
+                    changes.forEach(pending::apply);
+                    accepted.add(commit);
+                } catch (RuntimeException e) {
+                    commit.future.completeExceptionally(e);
+                }
+            }
+
+            EmployeeSnapshot updated = current;
+            if (!pending.getChanges().isEmpty()) {
+                try {
+                    updated = current.withChanges(pending.getChanges());
+                    long persistStart = System.nanoTime();
+                    persistChanges(current, updated, pending.getChanges());
+                    persistTimer.record(System.nanoTime() - persistStart, TimeUnit.NANOSECONDS);
+                } catch (IOException | RuntimeException e) {
+                    accepted.forEach(commit -> commit.future.completeExceptionally(e));
+                    return;
+                }
+                notifyListeners(current, updated, pending.getChanges());
+                publish(updated);
+                announce(current, updated, pending.getChanges());
+            }
+            for (PendingCommit commit : accepted) {
+                commit.future.complete(updated);
+            }
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    private void notifyListeners(EmployeeSnapshot previous, EmployeeSnapshot updated, List<EmployeeChange> changes) {
+        for (SnapshotListener listener : listeners) {
+            try {
+                listener.beforePublish(previous, updated, changes);
+            } catch (RuntimeException e) {
+                // The change is already persisted; a failing listener must not hold it back
+                log.warn("Snapshot listener failed", e);
+            }
+        }
+    }
+
+    private void announce(EmployeeSnapshot previous, EmployeeSnapshot updated, List<EmployeeChange> changes) {
+        for (SnapshotListener listener : listeners) {
+            try {
+                listener.afterPublish(previous, updated, changes);
+            } catch (RuntimeException e) {
+                log.warn("Snapshot listener failed", e);
+            }
+        }
+    }
+
+    private void publish(EmployeeSnapshot updated) {
+        snapshot.set(updated);
+        publishedAt = System.nanoTime();
+    }
+
+    private static final PendingCommit SHUTDOWN = new PendingCommit(null, null);
+
+    private static final class PendingCommit {
+        final Long expectedVersion;
+        final Function<EmployeeLookup, List<EmployeeChange>> mutation;
+        final CompletableFuture<EmployeeSnapshot> future = new CompletableFuture<>();
+
+        PendingCommit(Long expectedVersion, Function<EmployeeLookup, List<EmployeeChange>> mutation) {
+            this.expectedVersion = expectedVersion;
+            this.mutation = mutation;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.flywire.exercise.util;
+
+import java.util.Date;
+
+public final class DateUtil {
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    private DateUtil() {
+    }
+
+    // Day number since 1970-01-01 in UTC, matching the MM/dd/yyyy UTC format used for storage
+    public static int toEpochDay(Date date) {
+        return (int) Math.floorDiv(date.getTime(), MILLIS_PER_DAY);
+    }
+
+    public static Date fromEpochDay(int epochDay) {
+        return new Date(epochDay * MILLIS_PER_DAY);
+    }
+}
@@ -0,0 +1,202 @@
+package com.flywire.exercise.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.flywire.exercise.store.EmployeeChange;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only log of {@link EmployeeChange} records, one compact JSON object per
+ * line. Compaction rotates the live log aside so writers can keep appending while
+ * the rotated records are folded into the snapshot file.
+ */
+class EmployeeJournal implements Closeable {
+
+    private final File file;
+    private final File rotatedFile;
+    private final ObjectWriter writer;
+    private final ObjectReader reader;
+    private final FileMetrics metrics;
+    private FileOutputStream out;
+    private int records;
+
+    EmployeeJournal(File file, ObjectMapper objectMapper, FileMetrics metrics) {
+        this.file = file;
+        this.rotatedFile = new File(file.getPath() + ".compacting");
+        this.writer = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+        this.reader = objectMapper.readerFor(EmployeeChange.class);
+        this.metrics = metrics;
+    }
+
+    /**
+     * Reads back every record left by a previous run (an interrupted compaction
+     * first, then the live log). A torn final line from a crash mid-append is
+     * dropped.
+     */
+    List<EmployeeChange> recover() throws IOException {
+        List<EmployeeChange> changes = new ArrayList<>();
+        if (rotatedFile.exists()) {
+            read(rotatedFile, changes, true);
+        }
+        if (file.exists()) {
+            records = read(file, changes, true);
+        }
+        return changes;
+    }
+
+    // The records recover() would return, read without cutting off a torn final line
+    List<EmployeeChange> read() throws IOException {
+        List<EmployeeChange> changes = new ArrayList<>();
+        if (rotatedFile.exists()) {
+            read(rotatedFile, changes, false);
+        }
+        if (file.exists()) {
+            read(file, changes, false);
+        }
+        return changes;
+    }
+
+    /**
+     * Appends the records in one write and syncs once, so a batch costs a single
+     * flush. A write that fails partway is cut back off, so the next append doesn't
+     * land behind a torn line that recovery would then find mid-file.
+     */
+    void append(List<EmployeeChange> changes) throws IOException {
+        ByteArrayOutputStream lines = new ByteArrayOutputStream();
+        for (EmployeeChange change : changes) {
+            writer.writeValue(lines, change);
+            lines.write('\n');
+        }
+        if (out == null) {
+            out = openForAppend(file);
+        }
+        long length = out.getChannel().size();
+        try {
+            lines.writeTo(out);
+            out.flush();
+            out.getFD().sync();
+        } catch (IOException e) {
+            try {
+                close();
+                truncate(file, length);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        metrics.written(FileMetrics.JOURNAL, lines.size());
+        records += changes.size();
+    }
+
+    // Opens the live log at its end; overridden in tests to fail partway through an append
+    FileOutputStream openForAppend(File file) throws IOException {
+        return new FileOutputStream(file, true);
+    }
+
+    int size() {
+        return records;
+    }
+
+    boolean hasRotated() {
+        return rotatedFile.exists();
+    }
+
+    /**
+     * Moves the live log aside for compaction and starts a fresh one. Records from
+     * an earlier compaction that never finished are kept ahead of the new ones.
+     */
+    void rotate() throws IOException {
+        close();
+        if (rotatedFile.exists()) {
+            if (file.exists()) {
+                // The live records must be durable in the rotated file before the live file goes
+                try (FileChannel rotated = FileChannel.open(rotatedFile.toPath(), StandardOpenOption.APPEND)) {
+                    ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+                    while (bytes.hasRemaining()) {
+                        rotated.write(bytes);
+                    }
+                    rotated.force(true);
+                }
+                Files.delete(file.toPath());
+            }
+        } else if (file.exists() && !file.renameTo(rotatedFile)) {
+            throw new IOException("Could not rotate journal " + file);
+        }
+        records = 0;
+    }
+
+    // Called once the rotated records are safely part of the snapshot file
+    void discardRotated() throws IOException {
+        Files.deleteIfExists(rotatedFile.toPath());
+    }
+
+    // Drops every record; used when a full snapshot supersedes the log
+    void reset() throws IOException {
+        close();
+        discardRotated();
+        Files.deleteIfExists(file.toPath());
+        records = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    private int read(File source, List<EmployeeChange> changes, boolean truncateTorn) throws IOException {
+        byte[] bytes = Files.readAllBytes(source.toPath());
+        metrics.read(FileMetrics.JOURNAL, bytes.length);
+        long parseStart = System.nanoTime();
+        int count = 0;
+        int start = 0;
+        while (start < bytes.length) {
+            int end = start;
+            while (end < bytes.length && bytes[end] != '\n') {
+                end++;
+            }
+            if (end == bytes.length) {
+                // No trailing newline: the last append never completed
+                if (truncateTorn) {
+                    truncate(source, start);
+                }
+                break;
+            }
+            if (end > start) {
+                try {
+                    changes.add(reader.readValue(bytes, start, end - start));
+                    count++;
+                } catch (JsonProcessingException e) {
+                    throw new IOException("Corrupt journal record in " + source + " at byte " + start, e);
+                }
+            }
+            start = end + 1;
+        }
+        metrics.parsed(FileMetrics.JOURNAL, parseStart);
+        return count;
+    }
+
+    private static void truncate(File source, long length) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(source, "rw")) {
+            raf.setLength(length);
+            raf.getFD().sync();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.flywire.exercise.util;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bytes read and written and JSON parse time for the files behind the employee
+ * store, each tagged with the file it was measured on. A distribution summary
+ * counts the operations and sums their bytes as well as keeping their sizes.
+ */
+final class FileMetrics {
+
+    static final String ORIGINALS = "data.json";
+    static final String OVERRIDES = "new_employees.json";
+    static final String JOURNAL = "journal";
+    static final String SNAPSHOT = "snapshot";
+    static final String SHARDS = "shards";
+
+    private final MeterRegistry registry;
+    private final Map<String, DistributionSummary> reads = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> writes = new ConcurrentHashMap<>();
+    private final Map<String, Timer> parses = new ConcurrentHashMap<>();
+
+    FileMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    void read(String file, long bytes) {
+        reads.computeIfAbsent(file, f -> DistributionSummary.builder("employees.file.read")
+                .description("Bytes read per read of an employee data file")
+                .baseUnit("bytes")
+                .tag("file", f)
+                .register(registry)).record(bytes);
+    }
+
+    void written(String file, long bytes) {
+        writes.computeIfAbsent(file, f -> DistributionSummary.builder("employees.file.written")
+                .description("Bytes written per write of an employee data file")
+                .baseUnit("bytes")
+                .tag("file", f)
+                .register(registry)).record(bytes);
+    }
+
+    // Time spent turning the file's JSON into employees, from a System.nanoTime() taken before parsing
+    void parsed(String file, long startNanos) {
+        parses.computeIfAbsent(file, f -> Timer.builder("employees.json.parse")
+                .description("Time to parse an employee data file")
+                .tag("file", f)
+                .register(registry)).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+}
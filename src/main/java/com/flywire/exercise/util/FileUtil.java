@@ -4,140 +4,470 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.flywire.exercise.model.Employee;
+import com.flywire.exercise.store.EmployeeChange;
+import com.flywire.exercise.store.EmployeeSnapshot;
+import com.flywire.exercise.store.SnapshotFile;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+import javax.annotation.PreDestroy;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 import java.util.TimeZone;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
 
+// The default store: json/data.json from the classpath with the changes to it kept under the data directory
 @Component
-public class FileUtil {
+@Profile("!" + H2EmployeeStore.PROFILE)
+public class FileUtil extends AbstractEmployeeStore {
+
+    private static final Logger log = LoggerFactory.getLogger(FileUtil.class);
 
     private final ObjectMapper objectMapper;
-    private final String NEW_DATA_FILE = "data/new_employees.json";
+    private final String NEW_DATA_FILE = "new_employees.json";
+    private final String JOURNAL_FILE = "new_employees.journal";
+    private final String SNAPSHOT_FILE = "employees.snap";
+    private final String SHARDS_DIRECTORY = "shards";
     private final File newEmployeesFile;
+    private final File snapshotFile;
+
+    // "json" rewrites new_employees.json on every change; "journal" appends to the journal;
+    // "sharded" rewrites only the shard files under data/shards holding the changed employees
+    private final boolean journaled;
+    private final ShardedOverrides shards;
+    private final EmployeeJournal journal;
+    // Held while the journal is being folded into new_employees.json
+    private final ReentrantLock compactionLock = new ReentrantLock();
+
+    // Also keep a binary copy of the whole snapshot in employees.snap, which startup reads instead of the JSON
+    private final boolean binarySnapshot;
+    // Checksum of json/data.json, recorded in employees.snap so it is never used against different originals
+    private final long originalsChecksum;
+
+    // Original employees from the classpath; parsed on first use, which a start from employees.snap avoids
+    private volatile Map<Long, Employee> originalEmployees;
+
+    private final FileMetrics metrics;
 
     public FileUtil() throws IOException {
-        this.objectMapper = new ObjectMapper();
-        this.objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
-        SimpleDateFormat sdf = new SimpleDateFormat("MM/dd/yyyy");
-        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
-        this.objectMapper.setDateFormat(sdf);
+        this("json");
+    }
+
+    public FileUtil(String persistenceMode) throws IOException {
+        this(persistenceMode, 64, 1, false, "data");
+    }
+
+    // Meters go to Micrometer's global registry, which records nothing unless a registry has been added to it
+    public FileUtil(String persistenceMode, int maxBatchSize, long lingerMillis, boolean binarySnapshot,
+                    String dataDirectory) throws IOException {
+        this(persistenceMode, maxBatchSize, lingerMillis, binarySnapshot, dataDirectory, 64, 10000, Metrics.globalRegistry);
+    }
+
+    @Autowired
+    public FileUtil(@Value("${employees.persistence.mode:json}") String persistenceMode,
+                    @Value("${employees.write.max-batch-size:64}") int maxBatchSize,
+                    @Value("${employees.write.linger-ms:1}") long lingerMillis,
+                    @Value("${employees.snapshot.binary:false}") boolean binarySnapshot,
+                    @Value("${employees.data-dir:data}") String dataDirectory,
+                    @Value("${employees.shards.count:64}") int shardCount,
+                    @Value("${employees.changes.log-size:10000}") int changeLogSize,
+                    MeterRegistry meterRegistry) throws IOException {
+        super(checkMode(persistenceMode), maxBatchSize, lingerMillis, changeLogSize, meterRegistry);
+        this.journaled = "journal".equals(persistenceMode);
+        this.binarySnapshot = binarySnapshot;
+        this.objectMapper = createObjectMapper();
+        this.metrics = new FileMetrics(meterRegistry);
 
         // Create data directory if it doesn't exist
-        File dataDir = new File("data");
+        File dataDir = new File(dataDirectory);
         if (!dataDir.exists()) {
-            dataDir.mkdir();
+            dataDir.mkdirs();
         }
 
         // Initialize new employees file
-        this.newEmployeesFile = new File(NEW_DATA_FILE);
+        this.newEmployeesFile = new File(dataDir, NEW_DATA_FILE);
         if (!newEmployeesFile.exists()) {
             objectMapper.writeValue(newEmployeesFile, new ArrayList<Employee>());
         }
-    }
 
-    public List<Employee> readEmployees() throws IOException {
-        // Read original employees
-        List<Employee> originalEmployees;
-        try (InputStream is = new ClassPathResource("json/data.json").getInputStream()) {
-            originalEmployees = objectMapper.readValue(is, new TypeReference<List<Employee>>() {});
-            // Mark all original employees
-            originalEmployees.forEach(emp -> emp.setOriginal(true));
+        this.snapshotFile = new File(dataDir, SNAPSHOT_FILE);
+        ShardedOverrides layout = new ShardedOverrides(dataDir, shardCount, objectMapper, metrics);
+        layout.recover();
+        if ("sharded".equals(persistenceMode)) {
+            this.shards = layout;
+        } else {
+            this.shards = null;
+            if (layout.exists()) {
+                // Left by an earlier sharded run, so newer than new_employees.json: fold it back in
+                writeOverrides(layout.readAll());
+                layout.delete();
+                log.info("Moved the overrides in {} back into {}", SHARDS_DIRECTORY, newEmployeesFile);
+            }
         }
+        this.originalsChecksum = binarySnapshot ? originalsChecksum() : 0;
+        this.journal = new EmployeeJournal(new File(dataDir, JOURNAL_FILE), objectMapper, metrics);
+        List<EmployeeChange> pending = journal.recover();
 
-        // Read status overrides and new employees
-        final List<Employee> newEmployees = newEmployeesFile.exists() && newEmployeesFile.length() > 0 ?
-            objectMapper.readValue(newEmployeesFile, new TypeReference<List<Employee>>() {}) :
-            new ArrayList<>();
+        EmployeeSnapshot binary = binarySnapshot ? readBinarySnapshot(pending.size()) : null;
+        EmployeeSnapshot loaded;
+        if (binary != null) {
+            // Replayed on top of the binary snapshot, the journal brings it to version 0 like the JSON path
+            loaded = pending.isEmpty() ? binary : binary.withChanges(pending);
+            if (!journaled && !pending.isEmpty()) {
+                persist(loaded);
+                journal.reset();
+            } else if (shards != null && shards.isStale()) {
+                writeOverrides(toOverrides(loaded.getEmployees()));
+            }
+        } else {
+            // Read status overrides and new employees; a complete shard layout replaces new_employees.json
+            Map<Long, Employee> overrides = new LinkedHashMap<>();
+            if (shards != null && shards.exists()) {
+                overrides.putAll(shards.readAll());
+            } else {
+                overrides.putAll(readNewEmployees(newEmployeesFile, objectMapper, metrics));
+            }
 
-        // Create a map of all employees
-        Map<Long, Employee> employeeMap = new HashMap<>();
+            // Replay changes journaled since the last compaction
+            replay(pending, overrides, originals());
 
-        // First, add all original employees
-        originalEmployees.forEach(emp -> employeeMap.put(emp.getId(), emp));
+            loaded = merge(originals(), overrides, 0);
 
-        // Then process overrides and new employees
-        for (Employee emp : newEmployees) {
-            if (employeeMap.containsKey(emp.getId())) {
-                // Update status of original employee
-                Employee original = employeeMap.get(emp.getId());
-                original.setActive(emp.isActive());
-            } else {
-                // Add new employee
-                emp.setOriginal(false);
-                employeeMap.put(emp.getId(), emp);
+            // Without journaling, fold anything replayed straight back into the JSON file
+            if (!journaled && !pending.isEmpty()) {
+                writeOverrides(overrides);
+                journal.reset();
+            } else if (shards != null && shards.isStale()) {
+                // First sharded start, or a different shard count: lay the overrides out again
+                writeOverrides(overrides);
+            }
+            // Leave a binary snapshot for the next start; with journaled changes the next compaction writes it
+            if (binarySnapshot && (!journaled || pending.isEmpty())) {
+                writeBinarySnapshot(loaded);
             }
         }
+        log.info("Loaded {} employees from {} ({} journaled changes replayed)",
+                loaded.size(), binary != null ? snapshotFile : shards != null ? SHARDS_DIRECTORY : newEmployeesFile,
+                pending.size());
 
-        // Return only employees that exist in new_employees.json (for non-original employees)
-        // or original employees that haven't been deleted
-        return employeeMap.values().stream()
-            .filter(emp -> emp.isOriginal() || newEmployees.stream().anyMatch(e -> e.getId().equals(emp.getId())))
-            .collect(Collectors.toList());
+        start(loaded);
     }
 
+    /**
+     * The employees a store on the given data directory would load, read without
+     * writing anything: the journal is replayed but neither folded in nor trimmed,
+     * and a shard layout is read where it lies, whatever mode wrote it.
+     */
+    static EmployeeSnapshot read(String dataDirectory, MeterRegistry meterRegistry) throws IOException {
+        ObjectMapper objectMapper = createObjectMapper();
+        FileMetrics metrics = new FileMetrics(meterRegistry);
+        File dataDir = new File(dataDirectory);
+        ShardedOverrides layout = new ShardedOverrides(dataDir, 1, objectMapper, metrics);
+        Map<Long, Employee> overrides = new LinkedHashMap<>(layout.exists()
+                ? layout.readAll() : readNewEmployees(new File(dataDir, "new_employees.json"), objectMapper, metrics));
+        Map<Long, Employee> originals = readOriginals(objectMapper, metrics);
+        replay(new EmployeeJournal(new File(dataDir, "new_employees.journal"), objectMapper, metrics).read(),
+                overrides, originals);
+        return merge(originals, overrides, 0);
+    }
+
+    @Override
     public void writeEmployees(List<Employee> employees) throws IOException {
-        // Get original employees to identify them
-        List<Employee> originalEmployees;
-        try (InputStream is = new ClassPathResource("json/data.json").getInputStream()) {
-            originalEmployees = objectMapper.readValue(is, new TypeReference<List<Employee>>() {});
+        // A full rewrite supersedes the journal, so keep compaction out of the way
+        compactionLock.lock();
+        commitLock.lock();
+        try {
+            Map<Long, Employee> overrides = toOverrides(employees);
+            EmployeeSnapshot updated = merge(originals(), overrides, getSnapshot().getVersion() + 1);
+            writeOverrides(overrides);
+            if (binarySnapshot) {
+                writeBinarySnapshot(updated);
+            }
+            journal.reset();
+            replace(updated);
+        } finally {
+            commitLock.unlock();
+            compactionLock.unlock();
         }
-        
-        // Create a map of original employee IDs
-        Set<Long> originalIds = originalEmployees.stream()
-            .map(Employee::getId)
-            .collect(Collectors.toSet());
+    }
 
-        // Read existing overrides
-        List<Employee> existingOverrides = new ArrayList<>();
-        if (newEmployeesFile.exists() && newEmployeesFile.length() > 0) {
-            existingOverrides = objectMapper.readValue(newEmployeesFile, new TypeReference<List<Employee>>() {});
+    @Override
+    void persistChanges(EmployeeSnapshot current, EmployeeSnapshot updated, List<EmployeeChange> changes) throws IOException {
+        if (journaled) {
+            journal.append(changes);
+        } else if (shards != null) {
+            writeShards(updated, changes);
+        } else {
+            persist(updated);
         }
-        
-        // Create a map of existing overrides
-        Map<Long, Employee> overridesMap = existingOverrides.stream()
-            .collect(Collectors.toMap(Employee::getId, e -> e));
+    }
 
-        // First, remove any employees that are not in the input list
-        Set<Long> currentEmployeeIds = employees.stream()
-            .map(Employee::getId)
-            .collect(Collectors.toSet());
+    /**
+     * Rewrites the shards holding the employees the changes touched, as they are in
+     * {@code updated}. The binary snapshot is left behind and only rewritten on close.
+     */
+    private void writeShards(EmployeeSnapshot updated, List<EmployeeChange> changes) throws IOException {
+        Set<Long> touched = new LinkedHashSet<>();
+        for (EmployeeChange change : changes) {
+            for (Employee employee : change.getUpserts()) {
+                touched.add(employee.getId());
+            }
+            touched.addAll(change.getDeletedIds());
+        }
+        List<Employee> present = new ArrayList<>(touched.size());
+        for (Long id : touched) {
+            Employee employee = updated.get(id);
+            if (employee != null) {
+                present.add(employee);
+            }
+        }
+        Map<Long, Employee> upserts = toOverrides(present);
+        touched.removeAll(upserts.keySet());
+        shards.write(upserts, touched);
+    }
 
-        // Remove employees that are no longer present (deleted)
-        overridesMap.keySet().removeIf(id -> !currentEmployeeIds.contains(id));
+    /**
+     * Folds journaled changes into new_employees.json and drops them from the
+     * journal. Writers only wait for the journal rotation, not for the rewrite.
+     */
+    @Scheduled(fixedDelayString = "${employees.journal.compaction-interval-ms:30000}")
+    public void compactJournal() throws IOException {
+        if (!compactionLock.tryLock()) {
+            return;
+        }
+        try {
+            EmployeeSnapshot captured;
+            commitLock.lock();
+            try {
+                if (journal.size() == 0 && !journal.hasRotated()) {
+                    return;
+                }
+                journal.rotate();
+                captured = getSnapshot();
+            } finally {
+                commitLock.unlock();
+            }
+            persist(captured);
+            journal.discardRotated();
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    @Override
+    @PreDestroy
+    public void close() throws IOException {
+        // Let the writer finish what is already queued before the final compaction
+        stopWriter();
+        compactJournal();
+        journal.close();
+        if (shards != null && binarySnapshot) {
+            writeBinarySnapshot(getSnapshot());
+        }
+    }
 
-        // Process each employee in the input list
+    // Writes the full state: new_employees.json, then employees.snap if enabled, so the binary file is never the older one
+    private void persist(EmployeeSnapshot state) throws IOException {
+        writeOverrides(toOverrides(state.getEmployees()));
+        if (binarySnapshot) {
+            writeBinarySnapshot(state);
+        }
+    }
+
+    private void writeBinarySnapshot(EmployeeSnapshot state) throws IOException {
+        SnapshotFile.write(state, originalsChecksum, snapshotFile);
+        metrics.written(FileMetrics.SNAPSHOT, snapshotFile.length());
+    }
+
+    /**
+     * Opens employees.snap if it can stand in for the JSON files: at least as new
+     * as new_employees.json (or the newest shard) and built from the same original
+     * data. Returns null, so the JSON is read instead, if not.
+     */
+    private EmployeeSnapshot readBinarySnapshot(int pendingChanges) throws IOException {
+        long overridesModified = shards != null && shards.exists()
+                ? shards.lastModified() : newEmployeesFile.lastModified();
+        if (!snapshotFile.exists() || snapshotFile.lastModified() < overridesModified) {
+            return null;
+        }
+        Long checksum = SnapshotFile.readChecksum(snapshotFile);
+        if (checksum == null || checksum != originalsChecksum) {
+            return null;
+        }
+        try {
+            EmployeeSnapshot read = SnapshotFile.read(snapshotFile, -pendingChanges);
+            metrics.read(FileMetrics.SNAPSHOT, snapshotFile.length());
+            return read;
+        } catch (IOException e) {
+            // A damaged binary snapshot is only a cache; the JSON files are still authoritative
+            log.warn("Ignoring unreadable {}: {}", snapshotFile, e.getMessage());
+            return null;
+        }
+    }
+
+    private Map<Long, Employee> originals() throws IOException {
+        Map<Long, Employee> originals = originalEmployees;
+        if (originals == null) {
+            synchronized (this) {
+                originals = originalEmployees;
+                if (originals == null) {
+                    originals = readOriginals(objectMapper, metrics);
+                    originalEmployees = originals;
+                }
+            }
+        }
+        return originals;
+    }
+
+    private static Map<Long, Employee> readOriginals(ObjectMapper objectMapper, FileMetrics metrics) throws IOException {
+        Map<Long, Employee> originals = new LinkedHashMap<>();
+        byte[] json;
+        try (InputStream is = new ClassPathResource("json/data.json").getInputStream()) {
+            json = StreamUtils.copyToByteArray(is);
+        }
+        metrics.read(FileMetrics.ORIGINALS, json.length);
+        long parseStart = System.nanoTime();
+        List<Employee> employees = objectMapper.readValue(json, new TypeReference<List<Employee>>() {});
+        metrics.parsed(FileMetrics.ORIGINALS, parseStart);
         for (Employee emp : employees) {
-            if (originalIds.contains(emp.getId())) {
-                // This is an original employee, update or create override
-                Employee override = overridesMap.computeIfAbsent(emp.getId(), k -> {
-                    Employee e = new Employee();
-                    e.setId(emp.getId());
-                    return e;
-                });
-                override.setActive(emp.isActive());
-                override.setDirectReports(emp.getDirectReports());
-                override.setName(emp.getName());
-                override.setPosition(emp.getPosition());
-                override.setHireDate(emp.getHireDate());
-            } else if (!emp.isOriginal()) {
-                // This is a new employee, update or add to overrides
-                overridesMap.put(emp.getId(), emp);
+            originals.put(emp.getId(), emp);
+        }
+        return originals;
+    }
+
+    private static Map<Long, Employee> readNewEmployees(File newEmployeesFile, ObjectMapper objectMapper,
+                                                        FileMetrics metrics) throws IOException {
+        Map<Long, Employee> overrides = new LinkedHashMap<>();
+        if (newEmployeesFile.length() > 0) {
+            byte[] json = Files.readAllBytes(newEmployeesFile.toPath());
+            metrics.read(FileMetrics.OVERRIDES, json.length);
+            long parseStart = System.nanoTime();
+            List<Employee> newEmployees = objectMapper.readValue(json, new TypeReference<List<Employee>>() {});
+            metrics.parsed(FileMetrics.OVERRIDES, parseStart);
+            newEmployees.forEach(emp -> overrides.put(emp.getId(), emp));
+        }
+        return overrides;
+    }
+
+    private static void replay(List<EmployeeChange> changes, Map<Long, Employee> overrides,
+                               Map<Long, Employee> originals) {
+        for (EmployeeChange change : changes) {
+            change.getDeletedIds().forEach(overrides::remove);
+            overrides.putAll(toOverrides(change.getUpserts(), originals));
+        }
+    }
+
+    // CRC32 of the classpath json/data.json, as recorded in binary snapshots built from it
+    static long originalsChecksum() throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream is = new ClassPathResource("json/data.json").getInputStream()) {
+            int read;
+            while ((read = is.read(buffer)) > 0) {
+                crc.update(buffer, 0, read);
             }
         }
+        return crc.getValue();
+    }
+
+    // Indented output with MM/dd/yyyy dates in UTC, the format both JSON files are kept in
+    static ObjectMapper createObjectMapper() {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.enable(SerializationFeature.INDENT_OUTPUT);
+        SimpleDateFormat sdf = new SimpleDateFormat("MM/dd/yyyy");
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+        mapper.setDateFormat(sdf);
+        return mapper;
+    }
+
+    private void writeOverrides(Map<Long, Employee> overrides) throws IOException {
+        if (shards != null) {
+            shards.replaceAll(overrides);
+            return;
+        }
+        // Write all overrides and new employees to a synced temp file, then swap it in
+        File tempFile = new File(newEmployeesFile.getPath() + ".tmp");
+        byte[] json = objectMapper.writeValueAsBytes(new ArrayList<>(overrides.values()));
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            out.write(json);
+            out.getFD().sync();
+        }
+        metrics.written(FileMetrics.OVERRIDES, json.length);
+        Files.move(tempFile.toPath(), newEmployeesFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
 
-        // Write all overrides and new employees to the file
-        objectMapper.writeValue(newEmployeesFile, new ArrayList<>(overridesMap.values()));
+    private Map<Long, Employee> toOverrides(Collection<Employee> employees) throws IOException {
+        return toOverrides(employees, originals());
     }
 
+    private static Map<Long, Employee> toOverrides(Collection<Employee> employees, Map<Long, Employee> originals) {
+        // Every employee in the list is written as an override; anything missing has been deleted
+        Map<Long, Employee> overrides = new LinkedHashMap<>();
+        for (Employee emp : employees) {
+            if (originals.containsKey(emp.getId()) || !emp.isOriginal()) {
+                Employee override = new Employee(emp);
+                override.setOriginal(false);
+                overrides.put(emp.getId(), override);
+            }
+        }
+        return overrides;
+    }
+
+    private static EmployeeSnapshot merge(Map<Long, Employee> originals, Map<Long, Employee> overrides, long version) {
+        Map<Long, Employee> employeeMap = new LinkedHashMap<>();
 
+        // First, add all original employees, applying their status and reporting overrides
+        for (Employee original : originals.values()) {
+            Employee emp = new Employee(original);
+            emp.setOriginal(true);
+            Employee override = overrides.get(emp.getId());
+            if (override != null) {
+                emp.setActive(override.isActive());
+                if (override.getDirectReports() != null) {
+                    emp.setDirectReports(new ArrayList<>(override.getDirectReports()));
+                }
+            }
+            employeeMap.put(emp.getId(), emp);
+        }
+
+        // Then add new employees
+        for (Employee override : overrides.values()) {
+            if (!employeeMap.containsKey(override.getId())) {
+                Employee emp = new Employee(override);
+                emp.setOriginal(false);
+                employeeMap.put(emp.getId(), emp);
+            }
+        }
+
+        return new EmployeeSnapshot(employeeMap.values(), version);
+    }
+
+    private static String checkMode(String persistenceMode) {
+        if (!"json".equals(persistenceMode) && !"journal".equals(persistenceMode) && !"sharded".equals(persistenceMode)) {
+            throw new IllegalArgumentException("Unknown employees.persistence.mode: " + persistenceMode);
+        }
+        return persistenceMode;
+    }
 }
@@ -0,0 +1,304 @@
+package com.flywire.exercise.util;
+
+import com.flywire.exercise.model.Employee;
+import com.flywire.exercise.store.EmployeeChange;
+import com.flywire.exercise.store.EmployeeSnapshot;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps employees in an embedded H2 database instead of JSON files, selected with
+ * the {@value #PROFILE} profile. A commit writes only the rows it touches, in one
+ * transaction, and startup reads rows instead of parsing whole files. Every read,
+ * including hire-date, last-name and manager queries, is served from the published
+ * snapshot, so answers always match the version sent with them; the database is
+ * only looked up by primary key. An empty database is filled from the JSON data on
+ * first start, as {@link H2Migrator} does.
+ */
+@Component
+@Profile(H2EmployeeStore.PROFILE)
+public class H2EmployeeStore extends AbstractEmployeeStore {
+
+    public static final String PROFILE = "h2";
+
+    private static final Logger log = LoggerFactory.getLogger(H2EmployeeStore.class);
+
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS employees ("
+                    + "id BIGINT PRIMARY KEY, name VARCHAR(255), position VARCHAR(255), active BOOLEAN NOT NULL, "
+                    + "hire_date BIGINT, original BOOLEAN NOT NULL, manager_id BIGINT)",
+            // Direct reports in the order employees list them
+            "CREATE TABLE IF NOT EXISTS direct_reports ("
+                    + "manager_id BIGINT NOT NULL, ordinal INT NOT NULL, report_id BIGINT NOT NULL, "
+                    + "PRIMARY KEY (manager_id, ordinal))",
+            // Reads never query the database, so indexes and columns earlier versions added for that go
+            "DROP INDEX IF EXISTS employees_hire_date",
+            "DROP INDEX IF EXISTS employees_active",
+            "DROP INDEX IF EXISTS employees_last_name",
+            "DROP INDEX IF EXISTS employees_manager",
+            "ALTER TABLE employees DROP COLUMN IF EXISTS last_name_key"
+    };
+
+    private static final String UPSERT = "MERGE INTO employees (id, name, position, active, hire_date, original, manager_id) "
+            + "KEY (id) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT = "INSERT INTO employees (id, name, position, active, hire_date, original, manager_id) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_REPORT = "INSERT INTO direct_reports (manager_id, ordinal, report_id) VALUES (?, ?, ?)";
+
+    // Only used with the commit lock held, or before the writer starts
+    private final Connection connection;
+
+    public H2EmployeeStore(@Value("${employees.h2.url:}") String url,
+                           @Value("${employees.write.max-batch-size:64}") int maxBatchSize,
+                           @Value("${employees.write.linger-ms:1}") long lingerMillis,
+                           @Value("${employees.data-dir:data}") String dataDirectory,
+                           @Value("${employees.changes.log-size:10000}") int changeLogSize,
+                           MeterRegistry meterRegistry) throws IOException {
+        super(PROFILE, maxBatchSize, lingerMillis, changeLogSize, meterRegistry);
+        String jdbcUrl = url.isEmpty() ? defaultUrl(dataDirectory) : url;
+        try {
+            this.connection = open(jdbcUrl);
+            EmployeeSnapshot loaded = load(connection);
+            if (loaded.size() == 0) {
+                log.info("{} is empty, importing the JSON data from {}", jdbcUrl, dataDirectory);
+                H2Migrator.migrate(dataDirectory, connection);
+                loaded = load(connection);
+            }
+            log.info("Loaded {} employees from {}", loaded.size(), jdbcUrl);
+            start(loaded);
+        } catch (SQLException e) {
+            throw new IOException("Could not open employee database " + jdbcUrl, e);
+        }
+    }
+
+    // data/employees.mv.db next to the JSON files
+    static String defaultUrl(String dataDirectory) {
+        return "jdbc:h2:file:" + new File(dataDirectory, "employees").getAbsolutePath();
+    }
+
+    // A connection with the schema in place and auto-commit off
+    static Connection open(String jdbcUrl) throws SQLException {
+        Connection connection = DriverManager.getConnection(jdbcUrl);
+        try (Statement statement = connection.createStatement()) {
+            for (String ddl : SCHEMA) {
+                statement.execute(ddl);
+            }
+        }
+        connection.setAutoCommit(false);
+        return connection;
+    }
+
+    @Override
+    public void writeEmployees(List<Employee> employees) throws IOException {
+        commitLock.lock();
+        try {
+            EmployeeSnapshot updated = new EmployeeSnapshot(employees, getSnapshot().getVersion() + 1);
+            try {
+                replaceAll(connection, updated);
+            } catch (SQLException e) {
+                throw new IOException("Could not write employees", e);
+            }
+            replace(updated);
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /**
+     * Writes the rows of every employee the changes touched, as they are in
+     * {@code updated}, and moves the manager of anyone who was or now is listed
+     * as one of their reports.
+     */
+    @Override
+    void persistChanges(EmployeeSnapshot current, EmployeeSnapshot updated, List<EmployeeChange> changes) throws IOException {
+        Set<Long> touched = new LinkedHashSet<>();
+        for (EmployeeChange change : changes) {
+            for (Employee employee : change.getUpserts()) {
+                touched.add(employee.getId());
+            }
+            touched.addAll(change.getDeletedIds());
+        }
+        Set<Long> reports = new HashSet<>();
+        for (Long id : touched) {
+            addReports(reports, current.get(id));
+            addReports(reports, updated.get(id));
+        }
+        reports.removeAll(touched);
+
+        try (PreparedStatement upsert = connection.prepareStatement(UPSERT);
+             PreparedStatement delete = connection.prepareStatement("DELETE FROM employees WHERE id = ?");
+             PreparedStatement deleteReports = connection.prepareStatement("DELETE FROM direct_reports WHERE manager_id = ?");
+             PreparedStatement insertReport = connection.prepareStatement(INSERT_REPORT);
+             PreparedStatement setManager = connection.prepareStatement("UPDATE employees SET manager_id = ? WHERE id = ?")) {
+            for (Long id : touched) {
+                deleteReports.setLong(1, id);
+                deleteReports.addBatch();
+                Employee employee = updated.get(id);
+                if (employee == null) {
+                    delete.setLong(1, id);
+                    delete.addBatch();
+                } else {
+                    bind(upsert, employee, updated);
+                    upsert.addBatch();
+                    bindReports(insertReport, employee);
+                }
+            }
+            for (Long id : reports) {
+                setNullableLong(setManager, 1, managerId(updated, id));
+                setManager.setLong(2, id);
+                setManager.addBatch();
+            }
+            deleteReports.executeBatch();
+            delete.executeBatch();
+            upsert.executeBatch();
+            insertReport.executeBatch();
+            setManager.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            rollback(connection);
+            throw new IOException("Could not write employee changes", e);
+        }
+    }
+
+    @Override
+    @PreDestroy
+    public void close() throws IOException {
+        stopWriter();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            throw new IOException("Could not close employee database", e);
+        }
+    }
+
+    // Replaces every row with the given employees in one transaction
+    static void replaceAll(Connection connection, EmployeeSnapshot snapshot) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             PreparedStatement insert = connection.prepareStatement(INSERT);
+             PreparedStatement insertReport = connection.prepareStatement(INSERT_REPORT)) {
+            statement.execute("DELETE FROM direct_reports");
+            statement.execute("DELETE FROM employees");
+            int pending = 0;
+            for (Employee employee : snapshot.getEmployees()) {
+                bind(insert, employee, snapshot);
+                insert.addBatch();
+                bindReports(insertReport, employee);
+                // Keeps the batches of a large import from piling up in memory
+                if (++pending % 10_000 == 0) {
+                    insert.executeBatch();
+                    insertReport.executeBatch();
+                }
+            }
+            insert.executeBatch();
+            insertReport.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            rollback(connection);
+            throw e;
+        }
+    }
+
+    static EmployeeSnapshot load(Connection connection) throws SQLException {
+        Map<Long, Employee> employees = new LinkedHashMap<>();
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet rows = statement.executeQuery(
+                    "SELECT id, name, position, active, hire_date, original FROM employees ORDER BY id")) {
+                while (rows.next()) {
+                    long hireMillis = rows.getLong(5);
+                    Date hireDate = rows.wasNull() ? null : new Date(hireMillis);
+                    Employee employee = new Employee(rows.getLong(1), rows.getString(2), rows.getString(3),
+                            rows.getBoolean(4), hireDate, rows.getBoolean(6));
+                    employees.put(employee.getId(), employee);
+                }
+            }
+            try (ResultSet rows = statement.executeQuery(
+                    "SELECT manager_id, report_id FROM direct_reports ORDER BY manager_id, ordinal")) {
+                while (rows.next()) {
+                    Employee manager = employees.get(rows.getLong(1));
+                    if (manager != null) {
+                        manager.getDirectReports().add(rows.getLong(2));
+                    }
+                }
+            }
+        }
+        connection.commit();
+        return new EmployeeSnapshot(employees.values(), 0);
+    }
+
+    private static void bind(PreparedStatement statement, Employee employee, EmployeeSnapshot snapshot) throws SQLException {
+        statement.setLong(1, employee.getId());
+        statement.setString(2, employee.getName());
+        statement.setString(3, employee.getPosition());
+        statement.setBoolean(4, employee.isActive());
+        setNullableLong(statement, 5, employee.getHireDate() != null ? employee.getHireDate().getTime() : null);
+        statement.setBoolean(6, employee.isOriginal());
+        setNullableLong(statement, 7, managerId(snapshot, employee.getId()));
+    }
+
+    private static void bindReports(PreparedStatement statement, Employee employee) throws SQLException {
+        int ordinal = 0;
+        for (Long reportId : employee.getDirectReports()) {
+            if (reportId != null) {
+                statement.setLong(1, employee.getId());
+                statement.setInt(2, ordinal++);
+                statement.setLong(3, reportId);
+                statement.addBatch();
+            }
+        }
+    }
+
+    private static void addReports(Collection<Long> reports, Employee employee) {
+        if (employee != null) {
+            for (Long reportId : employee.getDirectReports()) {
+                if (reportId != null) {
+                    reports.add(reportId);
+                }
+            }
+        }
+    }
+
+    private static Long managerId(EmployeeSnapshot snapshot, long id) {
+        Employee manager = snapshot.getManager(id);
+        return manager != null ? manager.getId() : null;
+    }
+
+    private static void setNullableLong(PreparedStatement statement, int index, Long value) throws SQLException {
+        if (value != null) {
+            statement.setLong(index, value);
+        } else {
+            statement.setNull(index, Types.BIGINT);
+        }
+    }
+
+    private static void rollback(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            log.warn("Rollback failed", e);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.flywire.exercise.util;
+
+import com.flywire.exercise.store.EmployeeSnapshot;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Imports the JSON data into the database the {@value H2EmployeeStore#PROFILE}
+ * profile uses, replacing whatever it held:
+ * <pre>
+ * H2Migrator &lt;data-dir&gt; [&lt;jdbc-url&gt;]
+ * </pre>
+ * The employees are the ones the JSON store would serve: json/data.json from the
+ * classpath merged with new_employees.json (or the shards of the sharded mode)
+ * and any journal in the data directory, none of which is modified. The database
+ * defaults to employees.mv.db in the same directory.
+ */
+public final class H2Migrator {
+
+    private H2Migrator() {
+    }
+
+    public static void main(String[] args) throws IOException, SQLException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: H2Migrator <data-dir> [<jdbc-url>]");
+            System.exit(2);
+        }
+        String url = args.length == 2 ? args[1] : H2EmployeeStore.defaultUrl(args[0]);
+        try (Connection connection = H2EmployeeStore.open(url)) {
+            int imported = migrate(args[0], connection);
+            System.out.println("Imported " + imported + " employees into " + url);
+        }
+    }
+
+    // Returns how many employees were imported
+    static int migrate(String dataDirectory, Connection connection) throws IOException, SQLException {
+        // Read-only, so the JSON store can still be started on the same directory afterwards
+        EmployeeSnapshot snapshot = FileUtil.read(dataDirectory, new SimpleMeterRegistry());
+        H2EmployeeStore.replaceAll(connection, snapshot);
+        return snapshot.size();
+    }
+}
@@ -0,0 +1,26 @@
+package com.flywire.exercise.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets through one call in every {@code n}, for log lines that would otherwise be
+ * written on every request. Check the log level first, so the counter is only
+ * touched when the line would actually be logged.
+ */
+public final class LogSampler {
+
+    private final int n;
+    private final AtomicLong calls = new AtomicLong();
+
+    public LogSampler(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("Sample rate must be at least 1, got " + n);
+        }
+        this.n = n;
+    }
+
+    // True for the first call and every n-th one after it
+    public boolean sample() {
+        return n == 1 || calls.getAndIncrement() % n == 0;
+    }
+}
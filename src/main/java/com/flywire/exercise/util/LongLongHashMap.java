@@ -0,0 +1,151 @@
+package com.flywire.exercise.util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing map from primitive {@code long} to primitive {@code long}, with
+ * the same probing scheme as {@link LongHashMap}. Absent keys are reported through
+ * a caller-supplied default value.
+ */
+public final class LongLongHashMap {
+
+    private long[] keys;
+    private long[] values;
+    private boolean[] used;
+    private int size;
+    private int mask;
+
+    public LongLongHashMap() {
+        this(16);
+    }
+
+    public LongLongHashMap(int expectedSize) {
+        int capacity = LongHashMap.capacityFor(expectedSize);
+        this.keys = new long[capacity];
+        this.values = new long[capacity];
+        this.used = new boolean[capacity];
+        this.mask = capacity - 1;
+    }
+
+    private LongLongHashMap(LongLongHashMap other) {
+        this.keys = other.keys.clone();
+        this.values = other.values.clone();
+        this.used = other.used.clone();
+        this.size = other.size;
+        this.mask = other.mask;
+    }
+
+    public LongLongHashMap copy() {
+        return new LongLongHashMap(this);
+    }
+
+    public long get(long key, long defaultValue) {
+        int i = LongHashMap.hash(key) & mask;
+        while (used[i]) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return defaultValue;
+    }
+
+    public boolean containsKey(long key) {
+        int i = LongHashMap.hash(key) & mask;
+        while (used[i]) {
+            if (keys[i] == key) {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    public void put(long key, long value) {
+        int i = LongHashMap.hash(key) & mask;
+        while (used[i]) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        used[i] = true;
+        if (++size > (mask + 1) >> 1) {
+            resize(keys.length << 1);
+        }
+    }
+
+    public boolean remove(long key) {
+        int i = LongHashMap.hash(key) & mask;
+        while (used[i]) {
+            if (keys[i] == key) {
+                shiftBack(i);
+                size--;
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Snapshot of the keys, in no particular order; safe to iterate while the map changes
+    public long[] keys() {
+        long[] result = new long[size];
+        int n = 0;
+        for (int i = 0; i < used.length; i++) {
+            if (used[i]) {
+                result[n++] = keys[i];
+            }
+        }
+        return result;
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    private void shiftBack(int gap) {
+        used[gap] = false;
+        int j = (gap + 1) & mask;
+        while (used[j]) {
+            int home = LongHashMap.hash(keys[j]) & mask;
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                used[gap] = true;
+                used[j] = false;
+                gap = j;
+            }
+            j = (j + 1) & mask;
+        }
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        boolean[] oldUsed = used;
+        keys = new long[capacity];
+        values = new long[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldUsed.length; i++) {
+            if (oldUsed[i]) {
+                int j = LongHashMap.hash(oldKeys[i]) & mask;
+                while (used[j]) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+                used[j] = true;
+            }
+        }
+    }
+}
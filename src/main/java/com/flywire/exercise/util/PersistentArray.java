@@ -0,0 +1,114 @@
+package com.flywire.exercise.util;
+
+import java.util.List;
+
+/**
+ * Immutable array that publishes a new version on every change. Elements sit in
+ * the leaves of a 32-way trie indexed by successive five-bit slices of the index,
+ * so {@link #with} copies only the nodes on the path to one element and shares the
+ * rest with the previous version. Appending is {@code with(size(), value)}.
+ */
+public final class PersistentArray<T> {
+
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    private static final PersistentArray<Object> EMPTY = new PersistentArray<>(new Object[WIDTH], 0, 0);
+
+    private final Object[] root;
+    // Bits of the index below the root's slot; the trie holds WIDTH << shift elements
+    private final int shift;
+    private final int size;
+
+    private PersistentArray(Object[] root, int shift, int size) {
+        this.root = root;
+        this.shift = shift;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> PersistentArray<T> empty() {
+        return (PersistentArray<T>) EMPTY;
+    }
+
+    // An array of the given elements, built bottom-up in one pass
+    public static <T> PersistentArray<T> of(List<T> values) {
+        if (values.isEmpty()) {
+            return empty();
+        }
+        Object[] level = values.toArray();
+        int shift = 0;
+        while (true) {
+            Object[] parents = new Object[(level.length + MASK) >>> BITS];
+            for (int i = 0; i < parents.length; i++) {
+                Object[] node = new Object[WIDTH];
+                System.arraycopy(level, i << BITS, node, 0, Math.min(WIDTH, level.length - (i << BITS)));
+                parents[i] = node;
+            }
+            if (parents.length == 1) {
+                return new PersistentArray<>((Object[]) parents[0], shift, values.size());
+            }
+            level = parents;
+            shift += BITS;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(index >>> level) & MASK];
+        }
+        return (T) node[index & MASK];
+    }
+
+    // This array with the element at index replaced, or appended when index is size()
+    public PersistentArray<T> with(int index, T value) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        Object[] top = root;
+        int topShift = shift;
+        if (index == size && (size >>> BITS) >>> topShift > 0) {
+            // Full: the old root becomes the first child of a new one
+            top = new Object[WIDTH];
+            top[0] = root;
+            topShift += BITS;
+        }
+        return new PersistentArray<>(set(top, topShift, index, value), topShift, index == size ? size + 1 : size);
+    }
+
+    /**
+     * This array cut down to its first {@code length} elements. The dropped slots
+     * are cleared so they no longer hold on to their elements.
+     */
+    public PersistentArray<T> truncated(int length) {
+        if (length < 0 || length > size) {
+            throw new IndexOutOfBoundsException("Length: " + length + ", Size: " + size);
+        }
+        if (length == 0) {
+            return empty();
+        }
+        Object[] top = root;
+        for (int index = length; index < size; index++) {
+            top = set(top, shift, index, null);
+        }
+        return new PersistentArray<>(top, shift, length);
+    }
+
+    // A copy of the node with the element at index set, copying the nodes down to it
+    private static Object[] set(Object[] node, int level, int index, Object value) {
+        Object[] copy = node != null ? node.clone() : new Object[WIDTH];
+        int slot = (index >>> level) & MASK;
+        copy[slot] = level == 0 ? value : set((Object[]) copy[slot], level - BITS, index, value);
+        return copy;
+    }
+}
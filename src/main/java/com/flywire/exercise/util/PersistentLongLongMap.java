@@ -0,0 +1,240 @@
+package com.flywire.exercise.util;
+
+import java.util.Arrays;
+
+import static com.flywire.exercise.util.PersistentLongMap.LEAF_SIZE;
+import static com.flywire.exercise.util.PersistentLongMap.MAX_DEPTH;
+import static com.flywire.exercise.util.PersistentLongMap.WIDTH;
+import static com.flywire.exercise.util.PersistentLongMap.hash;
+import static com.flywire.exercise.util.PersistentLongMap.slot;
+
+/**
+ * Immutable map from primitive {@code long} to primitive {@code long}, with the
+ * same hash trie as {@link PersistentLongMap}. Absent keys are reported through a
+ * caller-supplied default value.
+ */
+public final class PersistentLongLongMap {
+
+    private static final PersistentLongLongMap EMPTY = new PersistentLongLongMap(null, 0);
+
+    // A Leaf, a PersistentLongMap.Inner or null
+    private final Object root;
+    private final int size;
+
+    private PersistentLongLongMap(Object root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    public static PersistentLongLongMap empty() {
+        return EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long get(long key, long defaultValue) {
+        Leaf leaf = leafFor(key);
+        int i = leaf != null ? Arrays.binarySearch(leaf.keys, key) : -1;
+        return i >= 0 ? leaf.values[i] : defaultValue;
+    }
+
+    public boolean containsKey(long key) {
+        Leaf leaf = leafFor(key);
+        return leaf != null && Arrays.binarySearch(leaf.keys, key) >= 0;
+    }
+
+    // This map with the key set to the value
+    public PersistentLongLongMap with(long key, long value) {
+        long hash = hash(key);
+        PersistentLongMap.Inner[] path = new PersistentLongMap.Inner[MAX_DEPTH];
+        int depth = 0;
+        Object node = root;
+        while (node instanceof PersistentLongMap.Inner) {
+            path[depth] = (PersistentLongMap.Inner) node;
+            node = ((PersistentLongMap.Inner) node).children[slot(hash, depth++)];
+        }
+        Leaf leaf = (Leaf) node;
+        int i = leaf != null ? Arrays.binarySearch(leaf.keys, key) : -1;
+        Object replaced;
+        if (i >= 0) {
+            if (leaf.values[i] == value) {
+                return this;
+            }
+            long[] values = leaf.values.clone();
+            values[i] = value;
+            replaced = new Leaf(leaf.keys, values);
+        } else {
+            replaced = inserted(leaf, -(i + 1), key, value, depth);
+        }
+        return new PersistentLongLongMap(PersistentLongMap.Inner.rebuild(path, depth, hash, replaced),
+                i >= 0 ? size : size + 1);
+    }
+
+    // This map without the key
+    public PersistentLongLongMap without(long key) {
+        long hash = hash(key);
+        PersistentLongMap.Inner[] path = new PersistentLongMap.Inner[MAX_DEPTH];
+        int depth = 0;
+        Object node = root;
+        while (node instanceof PersistentLongMap.Inner) {
+            path[depth] = (PersistentLongMap.Inner) node;
+            node = ((PersistentLongMap.Inner) node).children[slot(hash, depth++)];
+        }
+        Leaf leaf = (Leaf) node;
+        int i = leaf != null ? Arrays.binarySearch(leaf.keys, key) : -1;
+        if (i < 0) {
+            return this;
+        }
+        Leaf replaced = null;
+        if (leaf.keys.length > 1) {
+            long[] keys = new long[leaf.keys.length - 1];
+            long[] values = new long[keys.length];
+            System.arraycopy(leaf.keys, 0, keys, 0, i);
+            System.arraycopy(leaf.values, 0, values, 0, i);
+            System.arraycopy(leaf.keys, i + 1, keys, i, keys.length - i);
+            System.arraycopy(leaf.values, i + 1, values, i, values.length - i);
+            replaced = new Leaf(keys, values);
+        }
+        return new PersistentLongLongMap(PersistentLongMap.Inner.rebuild(path, depth, hash, replaced), size - 1);
+    }
+
+    private Leaf leafFor(long key) {
+        long hash = hash(key);
+        Object node = root;
+        for (int depth = 0; node instanceof PersistentLongMap.Inner; depth++) {
+            node = ((PersistentLongMap.Inner) node).children[slot(hash, depth)];
+        }
+        return (Leaf) node;
+    }
+
+    // The leaf with the entry added at position i, split into an inner node if it overflows
+    private static Object inserted(Leaf leaf, int i, long key, long value, int depth) {
+        int length = leaf != null ? leaf.keys.length : 0;
+        long[] keys = new long[length + 1];
+        long[] values = new long[keys.length];
+        if (leaf != null) {
+            System.arraycopy(leaf.keys, 0, keys, 0, i);
+            System.arraycopy(leaf.values, 0, values, 0, i);
+            System.arraycopy(leaf.keys, i, keys, i + 1, length - i);
+            System.arraycopy(leaf.values, i, values, i + 1, length - i);
+        }
+        keys[i] = key;
+        values[i] = value;
+        return keys.length > LEAF_SIZE ? build(keys, values, 0, keys.length, depth, new long[keys.length],
+                new long[keys.length]) : new Leaf(keys, values);
+    }
+
+    // As PersistentLongMap.build, for long values
+    private static Object build(long[] keys, long[] values, int from, int to, int depth,
+                                long[] keyScratch, long[] valueScratch) {
+        if (from == to) {
+            return null;
+        }
+        if (to - from <= LEAF_SIZE || depth == MAX_DEPTH) {
+            return Leaf.sorted(keys, values, from, to);
+        }
+        int[] starts = new int[WIDTH + 1];
+        for (int i = from; i < to; i++) {
+            starts[slot(hash(keys[i]), depth) + 1]++;
+        }
+        for (int s = 0; s < WIDTH; s++) {
+            starts[s + 1] += starts[s];
+        }
+        int[] next = Arrays.copyOf(starts, WIDTH);
+        for (int i = from; i < to; i++) {
+            int at = from + next[slot(hash(keys[i]), depth)]++;
+            keyScratch[at] = keys[i];
+            valueScratch[at] = values[i];
+        }
+        System.arraycopy(keyScratch, from, keys, from, to - from);
+        System.arraycopy(valueScratch, from, values, from, to - from);
+        Object[] children = new Object[WIDTH];
+        for (int s = 0; s < WIDTH; s++) {
+            children[s] = build(keys, values, from + starts[s], from + starts[s + 1], depth + 1, keyScratch, valueScratch);
+        }
+        return new PersistentLongMap.Inner(children);
+    }
+
+    /**
+     * Collects entries and builds the map from them in one pass, for a map filled
+     * all at once. When a key is put twice the later value wins.
+     */
+    public static final class Builder {
+        private long[] keys;
+        private long[] values;
+        private int size;
+
+        public Builder(int expectedSize) {
+            this.keys = new long[Math.max(expectedSize, 1)];
+            this.values = new long[keys.length];
+        }
+
+        public Builder put(long key, long value) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            keys[size] = key;
+            values[size] = value;
+            size++;
+            return this;
+        }
+
+        public PersistentLongLongMap build() {
+            long[] builtKeys = Arrays.copyOf(keys, size);
+            long[] builtValues = Arrays.copyOf(values, size);
+            Object root = PersistentLongLongMap.build(builtKeys, builtValues, 0, size, 0, new long[size], new long[size]);
+            return new PersistentLongLongMap(root, countEntries(root));
+        }
+
+        // Duplicates are only dropped as leaves are built, so the entries are counted afterwards
+        private static int countEntries(Object node) {
+            if (node instanceof Leaf) {
+                return ((Leaf) node).keys.length;
+            }
+            int count = 0;
+            if (node != null) {
+                for (Object child : ((PersistentLongMap.Inner) node).children) {
+                    count += countEntries(child);
+                }
+            }
+            return count;
+        }
+    }
+
+    private static final class Leaf {
+        final long[] keys;
+        final long[] values;
+
+        Leaf(long[] keys, long[] values) {
+            this.keys = keys;
+            this.values = values;
+        }
+
+        // A leaf of entries from to to of the arrays, sorted by key; of equal keys the later entry is kept
+        static Leaf sorted(long[] keys, long[] values, int from, int to) {
+            long[] sortedKeys = new long[to - from];
+            long[] sortedValues = new long[sortedKeys.length];
+            int count = 0;
+            for (int i = from; i < to; i++) {
+                int j = count;
+                while (j > 0 && sortedKeys[j - 1] > keys[i]) {
+                    j--;
+                }
+                if (j > 0 && sortedKeys[j - 1] == keys[i]) {
+                    sortedValues[j - 1] = values[i];
+                    continue;
+                }
+                System.arraycopy(sortedKeys, j, sortedKeys, j + 1, count - j);
+                System.arraycopy(sortedValues, j, sortedValues, j + 1, count - j);
+                sortedKeys[j] = keys[i];
+                sortedValues[j] = values[i];
+                count++;
+            }
+            return count == sortedKeys.length ? new Leaf(sortedKeys, sortedValues)
+                    : new Leaf(Arrays.copyOf(sortedKeys, count), Arrays.copyOf(sortedValues, count));
+        }
+    }
+}
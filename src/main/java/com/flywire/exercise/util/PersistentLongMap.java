@@ -0,0 +1,315 @@
+package com.flywire.exercise.util;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Immutable map keyed by primitive {@code long}, for indexes that publish a new
+ * version on every change. It is a hash trie: inner nodes have 32 slots chosen by
+ * successive five-bit slices of the key's hash, and leaves hold up to
+ * {@value #LEAF_SIZE} entries sorted by key. {@link #with} and {@link #without}
+ * return a new map sharing every node off the path to the key, so a change copies
+ * O(log n) small arrays where {@link LongHashMap#copy} copies the whole table.
+ * Null values are not allowed.
+ */
+public final class PersistentLongMap<V> {
+
+    static final int BITS = 5;
+    static final int WIDTH = 1 << BITS;
+    static final int LEAF_SIZE = 32;
+    // The hash is a bijection, so 13 slices tell any two keys apart and no leaf below that can overflow
+    static final int MAX_DEPTH = 64 / BITS + 1;
+
+    private static final PersistentLongMap<Object> EMPTY = new PersistentLongMap<>(null, 0);
+
+    // A Leaf, an Inner or null
+    private final Object root;
+    private final int size;
+
+    private PersistentLongMap(Object root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <V> PersistentLongMap<V> empty() {
+        return (PersistentLongMap<V>) EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        long hash = hash(key);
+        Object node = root;
+        for (int depth = 0; node instanceof Inner; depth++) {
+            node = ((Inner) node).children[slot(hash, depth)];
+        }
+        if (node == null) {
+            return null;
+        }
+        Leaf leaf = (Leaf) node;
+        int i = Arrays.binarySearch(leaf.keys, key);
+        return i >= 0 ? (V) leaf.values[i] : null;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    // This map with the key set to the value
+    public PersistentLongMap<V> with(long key, V value) {
+        Objects.requireNonNull(value, "value");
+        long hash = hash(key);
+        Inner[] path = new Inner[MAX_DEPTH];
+        int depth = 0;
+        Object node = root;
+        while (node instanceof Inner) {
+            path[depth] = (Inner) node;
+            node = ((Inner) node).children[slot(hash, depth++)];
+        }
+        Leaf leaf = (Leaf) node;
+        int i = leaf != null ? Arrays.binarySearch(leaf.keys, key) : -1;
+        Object replaced;
+        if (i >= 0) {
+            if (leaf.values[i] == value) {
+                return this;
+            }
+            Object[] values = leaf.values.clone();
+            values[i] = value;
+            replaced = new Leaf(leaf.keys, values);
+        } else {
+            replaced = inserted(leaf, -(i + 1), key, value, depth);
+        }
+        return new PersistentLongMap<>(Inner.rebuild(path, depth, hash, replaced), i >= 0 ? size : size + 1);
+    }
+
+    // This map without the key
+    public PersistentLongMap<V> without(long key) {
+        long hash = hash(key);
+        Inner[] path = new Inner[MAX_DEPTH];
+        int depth = 0;
+        Object node = root;
+        while (node instanceof Inner) {
+            path[depth] = (Inner) node;
+            node = ((Inner) node).children[slot(hash, depth++)];
+        }
+        Leaf leaf = (Leaf) node;
+        int i = leaf != null ? Arrays.binarySearch(leaf.keys, key) : -1;
+        if (i < 0) {
+            return this;
+        }
+        Leaf replaced = null;
+        if (leaf.keys.length > 1) {
+            long[] keys = new long[leaf.keys.length - 1];
+            Object[] values = new Object[keys.length];
+            System.arraycopy(leaf.keys, 0, keys, 0, i);
+            System.arraycopy(leaf.values, 0, values, 0, i);
+            System.arraycopy(leaf.keys, i + 1, keys, i, keys.length - i);
+            System.arraycopy(leaf.values, i + 1, values, i, values.length - i);
+            replaced = new Leaf(keys, values);
+        }
+        return new PersistentLongMap<>(Inner.rebuild(path, depth, hash, replaced), size - 1);
+    }
+
+    // The leaf with the entry added at position i, split into an inner node if it overflows
+    private static Object inserted(Leaf leaf, int i, long key, Object value, int depth) {
+        int length = leaf != null ? leaf.keys.length : 0;
+        long[] keys = new long[length + 1];
+        Object[] values = new Object[keys.length];
+        if (leaf != null) {
+            System.arraycopy(leaf.keys, 0, keys, 0, i);
+            System.arraycopy(leaf.values, 0, values, 0, i);
+            System.arraycopy(leaf.keys, i, keys, i + 1, length - i);
+            System.arraycopy(leaf.values, i, values, i + 1, length - i);
+        }
+        keys[i] = key;
+        values[i] = value;
+        return keys.length > LEAF_SIZE ? build(keys, values, 0, keys.length, depth, new long[keys.length],
+                new Object[keys.length]) : new Leaf(keys, values);
+    }
+
+    /**
+     * The node for entries {@code from} to {@code to} of the arrays, whose hashes
+     * share their first {@code depth} slices. Entries are grouped by the next slice
+     * with a counting sort through the scratch arrays until each group fits a leaf.
+     */
+    private static Object build(long[] keys, Object[] values, int from, int to, int depth,
+                                long[] keyScratch, Object[] valueScratch) {
+        if (from == to) {
+            return null;
+        }
+        if (to - from <= LEAF_SIZE || depth == MAX_DEPTH) {
+            return Leaf.sorted(keys, values, from, to);
+        }
+        int[] starts = new int[WIDTH + 1];
+        for (int i = from; i < to; i++) {
+            starts[slot(hash(keys[i]), depth) + 1]++;
+        }
+        for (int s = 0; s < WIDTH; s++) {
+            starts[s + 1] += starts[s];
+        }
+        int[] next = Arrays.copyOf(starts, WIDTH);
+        for (int i = from; i < to; i++) {
+            int at = from + next[slot(hash(keys[i]), depth)]++;
+            keyScratch[at] = keys[i];
+            valueScratch[at] = values[i];
+        }
+        System.arraycopy(keyScratch, from, keys, from, to - from);
+        System.arraycopy(valueScratch, from, values, from, to - from);
+        Object[] children = new Object[WIDTH];
+        for (int s = 0; s < WIDTH; s++) {
+            children[s] = build(keys, values, from + starts[s], from + starts[s + 1], depth + 1, keyScratch, valueScratch);
+        }
+        return new Inner(children);
+    }
+
+    // Fibonacci hashing: multiplying by an odd constant is a bijection, and its high bits mix in every key bit
+    static long hash(long key) {
+        return key * 0x9E3779B97F4A7C15L;
+    }
+
+    // The five-bit slice of the hash that picks the slot at the given depth, from the top down
+    static int slot(long hash, int depth) {
+        return (int) ((hash << (BITS * depth)) >>> (64 - BITS));
+    }
+
+    /**
+     * Collects entries and builds the map from them in one pass, for a map filled
+     * all at once. When a key is put twice the later value wins.
+     */
+    public static final class Builder<V> {
+        private long[] keys;
+        private Object[] values;
+        private int size;
+
+        public Builder(int expectedSize) {
+            this.keys = new long[Math.max(expectedSize, 1)];
+            this.values = new Object[keys.length];
+        }
+
+        public Builder<V> put(long key, V value) {
+            Objects.requireNonNull(value, "value");
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            keys[size] = key;
+            values[size] = value;
+            size++;
+            return this;
+        }
+
+        public PersistentLongMap<V> build() {
+            long[] builtKeys = Arrays.copyOf(keys, size);
+            Object[] builtValues = Arrays.copyOf(values, size);
+            Object root = PersistentLongMap.build(builtKeys, builtValues, 0, size, 0, new long[size], new Object[size]);
+            return new PersistentLongMap<>(root, countEntries(root));
+        }
+
+        // Duplicates are only dropped as leaves are built, so the entries are counted afterwards
+        private static int countEntries(Object node) {
+            if (node instanceof Leaf) {
+                return ((Leaf) node).keys.length;
+            }
+            int count = 0;
+            if (node != null) {
+                for (Object child : ((Inner) node).children) {
+                    count += countEntries(child);
+                }
+            }
+            return count;
+        }
+    }
+
+    static final class Inner {
+        final Object[] children;
+        // Children that are not null
+        final int count;
+
+        Inner(Object[] children) {
+            int count = 0;
+            for (Object child : children) {
+                if (child != null) {
+                    count++;
+                }
+            }
+            this.children = children;
+            this.count = count;
+        }
+
+        private Inner(Object[] children, int count) {
+            this.children = children;
+            this.count = count;
+        }
+
+        /**
+         * This node with one slot replaced: null when that leaves it empty, and the
+         * remaining child itself when that is a lone leaf, which can sit anywhere
+         * above where its keys part ways.
+         */
+        Object with(int slot, Object child) {
+            if (children[slot] == child) {
+                return this;
+            }
+            int updatedCount = count - (children[slot] != null ? 1 : 0) + (child != null ? 1 : 0);
+            if (updatedCount == 0) {
+                return null;
+            }
+            Object[] updated = children.clone();
+            updated[slot] = child;
+            if (updatedCount == 1) {
+                for (Object remaining : updated) {
+                    if (remaining != null && !(remaining instanceof Inner)) {
+                        return remaining;
+                    }
+                }
+            }
+            return new Inner(updated, updatedCount);
+        }
+
+        // Copies the inner nodes on the path down to {@code depth} with the node below them replaced
+        static Object rebuild(Inner[] path, int depth, long hash, Object replaced) {
+            for (int d = depth - 1; d >= 0; d--) {
+                replaced = path[d].with(slot(hash, d), replaced);
+            }
+            return replaced;
+        }
+    }
+
+    private static final class Leaf {
+        final long[] keys;
+        final Object[] values;
+
+        Leaf(long[] keys, Object[] values) {
+            this.keys = keys;
+            this.values = values;
+        }
+
+        // A leaf of entries from to to of the arrays, sorted by key; of equal keys the later entry is kept
+        static Leaf sorted(long[] keys, Object[] values, int from, int to) {
+            long[] sortedKeys = new long[to - from];
+            Object[] sortedValues = new Object[sortedKeys.length];
+            int count = 0;
+            for (int i = from; i < to; i++) {
+                int j = count;
+                while (j > 0 && sortedKeys[j - 1] > keys[i]) {
+                    j--;
+                }
+                if (j > 0 && sortedKeys[j - 1] == keys[i]) {
+                    sortedValues[j - 1] = values[i];
+                    continue;
+                }
+                System.arraycopy(sortedKeys, j, sortedKeys, j + 1, count - j);
+                System.arraycopy(sortedValues, j, sortedValues, j + 1, count - j);
+                sortedKeys[j] = keys[i];
+                sortedValues[j] = values[i];
+                count++;
+            }
+            return count == sortedKeys.length ? new Leaf(sortedKeys, sortedValues)
+                    : new Leaf(Arrays.copyOf(sortedKeys, count), Arrays.copyOf(sortedValues, count));
+        }
+    }
+}
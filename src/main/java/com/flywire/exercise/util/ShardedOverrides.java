@@ -0,0 +1,437 @@
+package com.flywire.exercise.util;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flywire.exercise.model.Employee;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * What new_employees.json holds, split by employee id into shard files named
+ * {@code <shard>-of-<count>.json} under data/shards, so a write rewrites only the
+ * shards holding the employees it touched. Each shard has its own lock and is
+ * written to a synced temp file that is then moved into place. Shards are read
+ * and written in parallel on the common fork-join pool.
+ * <p>
+ * data/shards only ever holds a complete layout: a new one (on the first sharded
+ * start or a change of shard count) is written to shards.tmp and renamed into
+ * place once every shard is on disk, with the layout it replaces moved to
+ * shards.old in between.
+ * <p>
+ * A write is atomic across the shards it touches. Each new shard is staged as
+ * {@code <shard file>.<n>.tmp} and synced, then a list of them is written as
+ * {@code commit-<n>}; only then are they renamed into place, and the list is
+ * removed once the renames are on disk. {@link #recover} finishes the renames of
+ * any list it finds and drops staged files that have none.
+ */
+final class ShardedOverrides {
+
+    private static final String DIRECTORY = "shards";
+
+    private static final Pattern SHARD_FILE = Pattern.compile("(\\d+)-of-(\\d+)\\.json");
+    private static final Pattern COMMIT_FILE = Pattern.compile("commit-(\\d+)");
+    private static final TypeReference<List<Employee>> EMPLOYEE_LIST = new TypeReference<List<Employee>>() {};
+
+    private final File directory;
+    // A layout being written, and the one it replaced while it is moved into place
+    private final File newDirectory;
+    private final File oldDirectory;
+    private final int shardCount;
+    private final ObjectMapper objectMapper;
+    private final FileMetrics metrics;
+    private final ReentrantLock[] locks;
+    // Each shard's overrides as last written, read from its file on first use; guarded by the shard's lock
+    private final List<Map<Long, Employee>> contents;
+    // Numbers this run's writes, for their staged files and commit lists
+    private final AtomicLong commits = new AtomicLong();
+
+    ShardedOverrides(File dataDirectory, int shardCount, ObjectMapper objectMapper, FileMetrics metrics) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("employees.shards.count must be positive");
+        }
+        this.directory = new File(dataDirectory, DIRECTORY);
+        this.newDirectory = new File(dataDirectory, DIRECTORY + ".tmp");
+        this.oldDirectory = new File(dataDirectory, DIRECTORY + ".old");
+        this.shardCount = shardCount;
+        this.objectMapper = objectMapper;
+        this.metrics = metrics;
+        this.locks = new ReentrantLock[shardCount];
+        this.contents = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            locks[i] = new ReentrantLock();
+            contents.add(null);
+        }
+    }
+
+    /**
+     * Finishes or discards a re-layout that a crash interrupted: once the old layout
+     * has been moved aside the new one is complete, so it is moved into place;
+     * before that it is only partly written and is dropped. Then finishes every
+     * write whose commit list is on disk and drops the staged files of any other.
+     */
+    void recover() throws IOException {
+        if (oldDirectory.exists()) {
+            if (!directory.exists()) {
+                Files.move(newDirectory.toPath(), directory.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+            deleteDirectory(oldDirectory);
+        }
+        deleteDirectory(newDirectory);
+
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (Map.Entry<String, File> staged : committedStages(directory).entrySet()) {
+            Files.move(staged.getValue().toPath(), new File(directory, staged.getKey()).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        syncDirectory(directory);
+        for (File file : files) {
+            if (COMMIT_FILE.matcher(file.getName()).matches() || file.getName().endsWith(".tmp")) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+        // Commit numbers start over with each run, so an old list must not come back
+        syncDirectory(directory);
+    }
+
+    // Whether a complete layout exists, for whatever shard count
+    boolean exists() {
+        return layoutDirectory() != null;
+    }
+
+    // Whether the shards are missing or were laid out for another shard count
+    boolean isStale() {
+        File layout = layoutDirectory();
+        return layout == null || layout != directory || layoutCount(layout) != shardCount;
+    }
+
+    // Newest write to any shard; 0 when there are none
+    long lastModified() {
+        long newest = 0;
+        for (File file : shardFiles(layoutDirectory())) {
+            newest = Math.max(newest, file.lastModified());
+        }
+        return newest;
+    }
+
+    /**
+     * Reads every shard of the complete layout, in parallel. Nothing is written, so
+     * this also reads a layout whose move into place or committed write was
+     * interrupted, as it will be once {@link #recover} has run.
+     */
+    Map<Long, Employee> readAll() throws IOException {
+        File layout = layoutDirectory();
+        Map<String, File> staged = committedStages(layout);
+        List<Callable<List<Employee>>> reads = new ArrayList<>();
+        for (File file : shardFiles(layout)) {
+            File current = staged.getOrDefault(file.getName(), file);
+            reads.add(() -> read(current));
+        }
+        // By id, since shards don't keep the order employees were added in
+        Map<Long, Employee> overrides = new TreeMap<>();
+        for (List<Employee> shard : runAll(reads)) {
+            shard.forEach(emp -> overrides.put(emp.getId(), emp));
+        }
+        if (!isStale()) {
+            // Already what each shard holds, so the first write to it needn't read it again
+            for (int i = 0; i < shardCount; i++) {
+                contents.set(i, new HashMap<>());
+            }
+            overrides.forEach((id, emp) -> contents.get(shardOf(id)).put(id, emp));
+        }
+        return overrides;
+    }
+
+    /**
+     * Sets the given overrides and drops the given ids, rewriting only the shards
+     * they fall in, all or none of them: those are staged in parallel, then moved
+     * into place once their commit list is on disk. The layout must not be stale.
+     */
+    void write(Map<Long, Employee> upserts, Collection<Long> deletes) throws IOException {
+        // By index, so writes sharing shards take their locks in the same order
+        Map<Integer, List<Long>> touched = new TreeMap<>();
+        upserts.keySet().forEach(id -> touched.computeIfAbsent(shardOf(id), s -> new ArrayList<>()).add(id));
+        deletes.forEach(id -> touched.computeIfAbsent(shardOf(id), s -> new ArrayList<>()).add(id));
+        if (touched.isEmpty()) {
+            return;
+        }
+        long commit = commits.incrementAndGet();
+        for (int index : touched.keySet()) {
+            locks[index].lock();
+        }
+        List<File> staged = new ArrayList<>();
+        try {
+            Map<Integer, Map<Long, Employee>> updates = new HashMap<>();
+            List<Callable<Void>> stages = new ArrayList<>(touched.size());
+            for (Map.Entry<Integer, List<Long>> shard : touched.entrySet()) {
+                int index = shard.getKey();
+                Map<Long, Employee> updated = new HashMap<>(contentsOf(index));
+                for (Long id : shard.getValue()) {
+                    Employee override = upserts.get(id);
+                    if (override != null) {
+                        updated.put(id, override);
+                    } else {
+                        updated.remove(id);
+                    }
+                }
+                updates.put(index, updated);
+                File stage = stagedFile(fileOf(directory, index), commit);
+                staged.add(stage);
+                stages.add(() -> {
+                    writeSynced(stage, objectMapper.writeValueAsBytes(new ArrayList<>(updated.values())));
+                    return null;
+                });
+            }
+            runAll(stages);
+
+            // From here on the write counts: recover() finishes it if the renames don't
+            StringBuilder list = new StringBuilder();
+            for (int index : touched.keySet()) {
+                list.append(fileOf(directory, index).getName()).append('\n');
+            }
+            File commitFile = new File(directory, "commit-" + commit);
+            File commitTemp = new File(commitFile.getPath() + ".tmp");
+            writeSynced(commitTemp, list.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(commitTemp.toPath(), commitFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory(directory);
+            staged.clear();
+
+            for (int index : touched.keySet()) {
+                // Dropped first, so a failed rename leaves the shard to be read from disk again
+                contents.set(index, null);
+                Files.move(stagedFile(fileOf(directory, index), commit).toPath(), fileOf(directory, index).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                contents.set(index, updates.get(index));
+            }
+            syncDirectory(directory);
+            Files.delete(commitFile.toPath());
+        } finally {
+            // Only left if the write failed before its commit list was on disk
+            for (File stage : staged) {
+                Files.deleteIfExists(stage.toPath());
+            }
+            for (int index : touched.keySet()) {
+                locks[index].unlock();
+            }
+        }
+    }
+
+    // Lays every shard out again from the full set of overrides, replacing the current layout in one step
+    void replaceAll(Map<Long, Employee> overrides) throws IOException {
+        List<Map<Long, Employee>> split = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            split.add(new HashMap<>());
+        }
+        overrides.forEach((id, emp) -> split.get(shardOf(id)).put(id, emp));
+
+        deleteDirectory(newDirectory);
+        Files.createDirectories(newDirectory.toPath());
+        List<Callable<Void>> writes = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            int index = i;
+            writes.add(() -> {
+                writeShard(newDirectory, index, split.get(index));
+                return null;
+            });
+        }
+        runAll(writes);
+        syncDirectory(newDirectory);
+
+        for (ReentrantLock lock : locks) {
+            lock.lock();
+        }
+        try {
+            if (directory.exists()) {
+                Files.move(directory.toPath(), oldDirectory.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+            Files.move(newDirectory.toPath(), directory.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory(directory.getParentFile());
+            deleteDirectory(oldDirectory);
+            for (int i = 0; i < shardCount; i++) {
+                contents.set(i, split.get(i));
+            }
+        } finally {
+            for (ReentrantLock lock : locks) {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Removes the layout, once what it held is kept elsewhere
+    void delete() throws IOException {
+        recover();
+        deleteDirectory(directory);
+    }
+
+    // Spreads sequential ids evenly over the shards
+    int shardOf(long id) {
+        long mixed = id * 0x9E3779B97F4A7C15L;
+        return (int) ((mixed >>> 32) % shardCount);
+    }
+
+    // data/shards, or shards.tmp while it is complete but not yet moved into place; null if neither
+    private File layoutDirectory() {
+        if (directory.exists()) {
+            return directory;
+        }
+        return oldDirectory.exists() && newDirectory.exists() ? newDirectory : null;
+    }
+
+    private static int layoutCount(File layout) {
+        File[] files = shardFiles(layout);
+        if (files.length == 0) {
+            return 0;
+        }
+        Matcher matcher = SHARD_FILE.matcher(files[0].getName());
+        matcher.matches();
+        return Integer.parseInt(matcher.group(2));
+    }
+
+    private Map<Long, Employee> contentsOf(int index) throws IOException {
+        Map<Long, Employee> shard = contents.get(index);
+        if (shard == null) {
+            shard = new HashMap<>();
+            File file = fileOf(directory, index);
+            if (file.exists()) {
+                for (Employee emp : read(file)) {
+                    shard.put(emp.getId(), emp);
+                }
+            }
+            contents.set(index, shard);
+        }
+        return shard;
+    }
+
+    private List<Employee> read(File file) throws IOException {
+        byte[] json = Files.readAllBytes(file.toPath());
+        metrics.read(FileMetrics.SHARDS, json.length);
+        long parseStart = System.nanoTime();
+        List<Employee> employees = objectMapper.readValue(json, EMPLOYEE_LIST);
+        metrics.parsed(FileMetrics.SHARDS, parseStart);
+        return employees;
+    }
+
+    private void writeShard(File layout, int index, Map<Long, Employee> shard) throws IOException {
+        File file = fileOf(layout, index);
+        File tempFile = new File(file.getPath() + ".tmp");
+        writeSynced(tempFile, objectMapper.writeValueAsBytes(new ArrayList<>(shard.values())));
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void writeSynced(File file, byte[] bytes) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(bytes);
+            out.getFD().sync();
+        }
+        metrics.written(FileMetrics.SHARDS, bytes.length);
+    }
+
+    private File fileOf(File layout, int index) {
+        return new File(layout, index + "-of-" + shardCount + ".json");
+    }
+
+    private static File stagedFile(File file, long commit) {
+        return new File(file.getPath() + "." + commit + ".tmp");
+    }
+
+    // Shard file name -> its staged replacement, for every commit list in the layout whose renames are unfinished
+    private static Map<String, File> committedStages(File layout) throws IOException {
+        Map<String, File> staged = new HashMap<>();
+        File[] files = layout != null ? layout.listFiles((dir, name) -> COMMIT_FILE.matcher(name).matches()) : null;
+        if (files == null) {
+            return staged;
+        }
+        for (File commitFile : files) {
+            Matcher matcher = COMMIT_FILE.matcher(commitFile.getName());
+            matcher.matches();
+            long commit = Long.parseLong(matcher.group(1));
+            for (String name : Files.readAllLines(commitFile.toPath(), StandardCharsets.UTF_8)) {
+                File stage = stagedFile(new File(layout, name), commit);
+                if (!name.isEmpty() && stage.exists()) {
+                    staged.put(name, stage);
+                }
+            }
+        }
+        return staged;
+    }
+
+    private static File[] shardFiles(File layout) {
+        File[] files = layout != null ? layout.listFiles((dir, name) -> SHARD_FILE.matcher(name).matches()) : null;
+        return files != null ? files : new File[0];
+    }
+
+    // Makes renames within the directory durable; not every platform can open a directory for this
+    private static void syncDirectory(File dir) {
+        try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Best effort only
+        }
+    }
+
+    private static void deleteDirectory(File dir) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(dir.toPath());
+    }
+
+    // Runs the tasks on the common fork-join pool, or inline when there is only one
+    private static <T> List<T> runAll(List<Callable<T>> tasks) throws IOException {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            if (tasks.size() == 1) {
+                results.add(tasks.get(0).call());
+                return results;
+            }
+            for (Future<T> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while accessing shards", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new UncheckedIOException(new IOException(e));
+        }
+    }
+}
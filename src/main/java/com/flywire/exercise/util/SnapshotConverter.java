@@ -0,0 +1,48 @@
+package com.flywire.exercise.util;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flywire.exercise.model.Employee;
+import com.flywire.exercise.store.EmployeeSnapshot;
+import com.flywire.exercise.store.SnapshotFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Converts between the binary snapshot and JSON, which stays the interchange format:
+ * <pre>
+ * export &lt;snapshot&gt; &lt;json&gt;   every employee in the snapshot, as a JSON array
+ * import &lt;json&gt; &lt;snapshot&gt;   a JSON array of employees (as exported) into a snapshot
+ * </pre>
+ * Imported snapshots are stamped with the checksum of the json/data.json on the
+ * classpath, so the application only picks them up when run with that same data.
+ */
+public final class SnapshotConverter {
+
+    private SnapshotConverter() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3 || !("export".equals(args[0]) || "import".equals(args[0]))) {
+            System.err.println("Usage: SnapshotConverter export <snapshot> <json>");
+            System.err.println("       SnapshotConverter import <json> <snapshot>");
+            System.exit(2);
+        }
+        ObjectMapper objectMapper = FileUtil.createObjectMapper();
+        File source = new File(args[1]);
+        File target = new File(args[2]);
+        if ("export".equals(args[0])) {
+            EmployeeSnapshot snapshot = SnapshotFile.read(source, 0);
+            objectMapper.writeValue(target, new ArrayList<>(snapshot.getEmployees()));
+            System.out.println("Exported " + snapshot.size() + " employees to " + target);
+        } else {
+            List<Employee> employees = objectMapper.readValue(source, new TypeReference<List<Employee>>() {});
+            EmployeeSnapshot snapshot = new EmployeeSnapshot(employees);
+            SnapshotFile.write(snapshot, FileUtil.originalsChecksum(), target);
+            System.out.println("Imported " + snapshot.size() + " employees into " + target);
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package com.flywire.exercise.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable sequence of (key, id) entries kept sorted by key, then by id, that can
+ * be read by position as well as searched. It is a B+tree whose inner nodes record
+ * how many entries lie below each child, so finding an entry, or the entry at a
+ * position, takes O(log n). Adding or removing an entry returns a new tree sharing
+ * every node off the path it changed, so an update copies a few arrays of at most
+ * {@value #MAX_WIDTH} elements instead of the whole sequence.
+ */
+public final class SortedIdTree<K> {
+
+    private static final int MAX_WIDTH = 64;
+    // A node left narrower than this by a removal is merged with a neighbour
+    private static final int MIN_WIDTH = MAX_WIDTH / 4;
+    // Bulk-built nodes are left with room, so the first inserts don't split them all
+    private static final int BUILD_WIDTH = MAX_WIDTH * 3 / 4;
+
+    private final Comparator<? super K> order;
+    // Null when empty
+    private final Node root;
+
+    private SortedIdTree(Comparator<? super K> order, Node root) {
+        this.order = order;
+        this.root = root;
+    }
+
+    public static <K> SortedIdTree<K> empty(Comparator<? super K> order) {
+        return new SortedIdTree<>(order, null);
+    }
+
+    /**
+     * A tree of the first {@code size} entries of the arrays, which must already be
+     * in order and free of duplicates. The arrays are not kept.
+     */
+    public static <K> SortedIdTree<K> of(Comparator<? super K> order, K[] keys, long[] ids, int size) {
+        if (size == 0) {
+            return empty(order);
+        }
+        List<Node> level = new ArrayList<>(size / BUILD_WIDTH + 1);
+        for (int from = 0; from < size; from += BUILD_WIDTH) {
+            int to = Math.min(size, from + BUILD_WIDTH);
+            level.add(new Leaf(Arrays.copyOfRange(keys, from, to, Object[].class), Arrays.copyOfRange(ids, from, to)));
+        }
+        while (level.size() > 1) {
+            List<Node> parents = new ArrayList<>(level.size() / BUILD_WIDTH + 1);
+            for (int from = 0; from < level.size(); from += BUILD_WIDTH) {
+                parents.add(new Inner(level.subList(from, Math.min(level.size(), from + BUILD_WIDTH)).toArray(new Node[0])));
+            }
+            level = parents;
+        }
+        return new SortedIdTree<>(order, level.get(0));
+    }
+
+    public int size() {
+        return root != null ? root.size : 0;
+    }
+
+    public long idAt(int index) {
+        checkIndex(index);
+        Node node = root;
+        while (node instanceof Inner) {
+            Inner inner = (Inner) node;
+            int c = childAt(inner, index);
+            index -= inner.start(c);
+            node = inner.children[c];
+        }
+        return ((Leaf) node).ids[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    public K keyAt(int index) {
+        checkIndex(index);
+        Node node = root;
+        while (node instanceof Inner) {
+            Inner inner = (Inner) node;
+            int c = childAt(inner, index);
+            index -= inner.start(c);
+            node = inner.children[c];
+        }
+        return (K) ((Leaf) node).keys[index];
+    }
+
+    // Position of (key, id), or -(insertion point) - 1 when absent
+    public int indexOf(K key, long id) {
+        if (root == null) {
+            return -1;
+        }
+        Node node = root;
+        int offset = 0;
+        while (node instanceof Inner) {
+            Inner inner = (Inner) node;
+            int c = childFor(inner, key, id);
+            offset += inner.start(c);
+            node = inner.children[c];
+        }
+        int i = search((Leaf) node, key, id);
+        return i >= 0 ? offset + i : i - offset;
+    }
+
+    // Position of the first entry at or after (key, id)
+    public int lowerBound(K key, long id) {
+        int i = indexOf(key, id);
+        return i >= 0 ? i : -(i + 1);
+    }
+
+    // This tree with (key, id) added; itself if the entry is already there
+    public SortedIdTree<K> with(K key, long id) {
+        if (root == null) {
+            return new SortedIdTree<>(order, new Leaf(new Object[] {key}, new long[] {id}));
+        }
+        Node[] replaced = insert(root, key, id);
+        if (replaced == null) {
+            return this;
+        }
+        return new SortedIdTree<>(order, replaced.length == 1 ? replaced[0] : new Inner(replaced));
+    }
+
+    // This tree with (key, id) removed; itself if the entry isn't there
+    public SortedIdTree<K> without(K key, long id) {
+        if (root == null) {
+            return this;
+        }
+        Node node = remove(root, key, id);
+        if (node == root) {
+            return this;
+        }
+        while (node instanceof Inner && ((Inner) node).children.length == 1) {
+            node = ((Inner) node).children[0];
+        }
+        return new SortedIdTree<>(order, node);
+    }
+
+    // The node with the entry added: one node, or two halves if it grew too wide; null if it was there
+    private Node[] insert(Node node, Object key, long id) {
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            int i = search(leaf, key, id);
+            if (i >= 0) {
+                return null;
+            }
+            i = -(i + 1);
+            Object[] keys = new Object[leaf.keys.length + 1];
+            long[] ids = new long[keys.length];
+            System.arraycopy(leaf.keys, 0, keys, 0, i);
+            System.arraycopy(leaf.ids, 0, ids, 0, i);
+            keys[i] = key;
+            ids[i] = id;
+            System.arraycopy(leaf.keys, i, keys, i + 1, leaf.keys.length - i);
+            System.arraycopy(leaf.ids, i, ids, i + 1, leaf.ids.length - i);
+            return leaves(keys, ids);
+        }
+        Inner inner = (Inner) node;
+        int c = childFor(inner, key, id);
+        Node[] replaced = insert(inner.children[c], key, id);
+        return replaced != null ? inners(splice(inner.children, c, 1, replaced)) : null;
+    }
+
+    // The node with the entry removed: itself if the entry isn't there, null if nothing is left
+    private Node remove(Node node, Object key, long id) {
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            int i = search(leaf, key, id);
+            if (i < 0) {
+                return leaf;
+            }
+            if (leaf.ids.length == 1) {
+                return null;
+            }
+            Object[] keys = new Object[leaf.keys.length - 1];
+            long[] ids = new long[keys.length];
+            System.arraycopy(leaf.keys, 0, keys, 0, i);
+            System.arraycopy(leaf.ids, 0, ids, 0, i);
+            System.arraycopy(leaf.keys, i + 1, keys, i, keys.length - i);
+            System.arraycopy(leaf.ids, i + 1, ids, i, ids.length - i);
+            return new Leaf(keys, ids);
+        }
+        Inner inner = (Inner) node;
+        int c = childFor(inner, key, id);
+        Node child = inner.children[c];
+        Node replaced = remove(child, key, id);
+        if (replaced == child) {
+            return inner;
+        }
+        if (replaced == null) {
+            return inner.children.length > 1 ? new Inner(splice(inner.children, c, 1, new Node[0])) : null;
+        }
+        if (replaced.width() >= MIN_WIDTH || inner.children.length == 1) {
+            return new Inner(splice(inner.children, c, 1, new Node[] {replaced}));
+        }
+        // Too narrow: merged with a neighbour, which is split again if that is too wide
+        int left = c > 0 ? c - 1 : c;
+        Node first = left < c ? inner.children[left] : replaced;
+        Node second = left < c ? replaced : inner.children[c + 1];
+        return new Inner(splice(inner.children, left, 2, merge(first, second)));
+    }
+
+    private static Node[] merge(Node first, Node second) {
+        if (first instanceof Leaf) {
+            Leaf a = (Leaf) first;
+            Leaf b = (Leaf) second;
+            Object[] keys = Arrays.copyOf(a.keys, a.keys.length + b.keys.length);
+            long[] ids = Arrays.copyOf(a.ids, keys.length);
+            System.arraycopy(b.keys, 0, keys, a.keys.length, b.keys.length);
+            System.arraycopy(b.ids, 0, ids, a.ids.length, b.ids.length);
+            return leaves(keys, ids);
+        }
+        Node[] a = ((Inner) first).children;
+        Node[] b = ((Inner) second).children;
+        Node[] children = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, children, a.length, b.length);
+        return inners(children);
+    }
+
+    // One leaf, or two halves when there are too many entries for one
+    private static Node[] leaves(Object[] keys, long[] ids) {
+        if (keys.length <= MAX_WIDTH) {
+            return new Node[] {new Leaf(keys, ids)};
+        }
+        int half = keys.length / 2;
+        return new Node[] {
+                new Leaf(Arrays.copyOfRange(keys, 0, half), Arrays.copyOfRange(ids, 0, half)),
+                new Leaf(Arrays.copyOfRange(keys, half, keys.length), Arrays.copyOfRange(ids, half, ids.length))};
+    }
+
+    private static Node[] inners(Node[] children) {
+        if (children.length <= MAX_WIDTH) {
+            return new Node[] {new Inner(children)};
+        }
+        int half = children.length / 2;
+        return new Node[] {
+                new Inner(Arrays.copyOfRange(children, 0, half)),
+                new Inner(Arrays.copyOfRange(children, half, children.length))};
+    }
+
+    // The array with {@code count} elements from {@code at} replaced by the given ones
+    private static Node[] splice(Node[] nodes, int at, int count, Node[] replacement) {
+        Node[] result = new Node[nodes.length - count + replacement.length];
+        System.arraycopy(nodes, 0, result, 0, at);
+        System.arraycopy(replacement, 0, result, at, replacement.length);
+        System.arraycopy(nodes, at + count, result, at + replacement.length, nodes.length - at - count);
+        return result;
+    }
+
+    // The child holding the entry at the given position: the first one ending past it
+    private static int childAt(Inner inner, int index) {
+        int lo = 0;
+        int hi = inner.ends.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (inner.ends[mid] > index) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    // The child (key, id) belongs in: the last one starting at or before it, or the first
+    private int childFor(Inner inner, Object key, long id) {
+        int lo = 1;
+        int hi = inner.children.length - 1;
+        int found = 0;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            Node child = inner.children[mid];
+            if (compare(child.firstKey, child.firstId, key, id) <= 0) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    // Position of (key, id) in the leaf, or -(insertion point) - 1 when absent
+    private int search(Leaf leaf, Object key, long id) {
+        int lo = 0;
+        int hi = leaf.ids.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compare(leaf.keys[mid], leaf.ids[mid], key, id);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(Object key1, long id1, Object key2, long id2) {
+        int cmp = order.compare((K) key1, (K) key2);
+        return cmp != 0 ? cmp : Long.compare(id1, id2);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+    }
+
+    private abstract static class Node {
+        // The node's first entry, which inner nodes search on
+        final Object firstKey;
+        final long firstId;
+        // Entries below the node
+        final int size;
+
+        Node(Object firstKey, long firstId, int size) {
+            this.firstKey = firstKey;
+            this.firstId = firstId;
+            this.size = size;
+        }
+
+        abstract int width();
+    }
+
+    private static final class Leaf extends Node {
+        final Object[] keys;
+        final long[] ids;
+
+        Leaf(Object[] keys, long[] ids) {
+            super(keys[0], ids[0], ids.length);
+            this.keys = keys;
+            this.ids = ids;
+        }
+
+        @Override
+        int width() {
+            return ids.length;
+        }
+    }
+
+    private static final class Inner extends Node {
+        final Node[] children;
+        // Entries below children 0 to i, for each i
+        final int[] ends;
+
+        Inner(Node[] children) {
+            this(children, endsOf(children));
+        }
+
+        private Inner(Node[] children, int[] ends) {
+            super(children[0].firstKey, children[0].firstId, ends[ends.length - 1]);
+            this.children = children;
+            this.ends = ends;
+        }
+
+        int start(int child) {
+            return child > 0 ? ends[child - 1] : 0;
+        }
+
+        @Override
+        int width() {
+            return children.length;
+        }
+
+        private static int[] endsOf(Node[] children) {
+            int[] ends = new int[children.length];
+            int total = 0;
+            for (int i = 0; i < children.length; i++) {
+                total += children[i].size;
+                ends[i] = total;
+            }
+            return ends;
+        }
+    }
+}
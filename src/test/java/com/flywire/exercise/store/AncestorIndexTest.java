@@ -0,0 +1,224 @@
+package com.flywire.exercise.store;
+
+import com.flywire.exercise.model.Employee;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Reporting chains and common managers after incremental changes, against walking the manager links
+class AncestorIndexTest {
+
+    @Test
+    void anUpsertClosingACycleRelinksEveryMember() {
+        Map<Long, Employee> employees = new LinkedHashMap<>();
+        employees.put(1L, employee(1, 3));
+        employees.put(3L, employee(3));
+        EmployeeSnapshot snapshot = new EmployeeSnapshot(employees.values());
+
+        // X joins under 3 and takes over 1, who already manages 3
+        Employee x = employee(10, 1);
+        Employee three = employee(3, 10);
+        employees.put(10L, x);
+        employees.put(3L, three);
+        snapshot = snapshot.withChanges(Arrays.asList(x, three), Collections.emptyList());
+
+        for (long id : employees.keySet()) {
+            assertNotNull(snapshot.getChain(id), "no chain for " + id);
+        }
+        verify(snapshot, employees);
+    }
+
+    @Test
+    void breakingACycleRestoresTheFullChains() {
+        Map<Long, Employee> employees = new LinkedHashMap<>();
+        employees.put(1L, employee(1, 2));
+        employees.put(2L, employee(2, 3));
+        employees.put(3L, employee(3, 1, 4));
+        employees.put(4L, employee(4));
+        EmployeeSnapshot snapshot = new EmployeeSnapshot(employees.values());
+        verify(snapshot, employees);
+
+        Employee three = employee(3, 4);
+        employees.put(3L, three);
+        snapshot = snapshot.withChanges(Collections.singletonList(three), Collections.emptyList());
+        verify(snapshot, employees);
+        assertTrue(snapshot.getChain(1).isEmpty());
+        assertEquals(Arrays.asList(3L, 2L, 1L), ids(snapshot.getChain(4)));
+        assertEquals(2L, (long) snapshot.getCommonManager(4, 2).getId());
+    }
+
+    @Test
+    void randomMovesMatchTheManagerLinks() {
+        Random random = new Random(12);
+        Map<Long, Employee> employees = new LinkedHashMap<>();
+        for (long id = 1; id <= 300; id++) {
+            employees.put(id, employee(id));
+        }
+        for (long id = 2; id <= 300; id++) {
+            if (random.nextInt(10) > 0) {
+                employees.get(1 + (long) random.nextInt((int) id - 1)).getDirectReports().add(id);
+            }
+        }
+        EmployeeSnapshot snapshot = new EmployeeSnapshot(copies(employees.values()));
+        verify(snapshot, employees);
+
+        long nextId = 301;
+        for (int step = 0; step < 400; step++) {
+            List<Employee> upserts = new ArrayList<>();
+            List<Long> deletedIds = new ArrayList<>();
+            int changes = 1 + random.nextInt(3);
+            for (int i = 0; i < changes; i++) {
+                List<Long> ids = new ArrayList<>(employees.keySet());
+                long id = ids.get(random.nextInt(ids.size()));
+                int kind = random.nextInt(10);
+                if (kind == 0) {
+                    // Its reports are left without a manager; whoever listed it keeps a dangling id
+                    employees.remove(id);
+                    deletedIds.add(id);
+                    upserts.removeIf(emp -> emp.getId() == id);
+                } else if (kind == 1) {
+                    Employee hire = employee(nextId++);
+                    employees.put(hire.getId(), hire);
+                    upserts.add(hire);
+                    moveTo(employees, hire.getId(), ids.get(random.nextInt(ids.size())), upserts);
+                } else if (kind == 2) {
+                    moveTo(employees, id, null, upserts);
+                } else {
+                    // Any manager at all, so moves under one's own org close cycles
+                    moveTo(employees, id, ids.get(random.nextInt(ids.size())), upserts);
+                }
+            }
+            snapshot = snapshot.withChanges(copies(upserts), deletedIds);
+            verify(snapshot, employees);
+        }
+    }
+
+    // Moves the employee under the given manager, or to the top when null
+    private static void moveTo(Map<Long, Employee> employees, long id, Long managerId, List<Employee> upserts) {
+        if (managerId != null && managerId == id) {
+            return;
+        }
+        for (Employee manager : employees.values()) {
+            if (manager.getDirectReports().remove(id)) {
+                replace(upserts, manager);
+            }
+        }
+        if (managerId != null) {
+            Employee manager = employees.get(managerId);
+            manager.getDirectReports().add(id);
+            replace(upserts, manager);
+        }
+    }
+
+    private static void replace(List<Employee> upserts, Employee employee) {
+        upserts.removeIf(emp -> emp.getId().equals(employee.getId()));
+        upserts.add(employee);
+    }
+
+    /**
+     * Every chain follows the manager links without repeating anyone. Away from
+     * cycles it goes all the way to the top, and common managers are the lowest
+     * shared entry of the two chains.
+     */
+    private static void verify(EmployeeSnapshot snapshot, Map<Long, Employee> employees) {
+        Map<Long, Long> managers = new LinkedHashMap<>();
+        for (Employee manager : employees.values()) {
+            for (Long reportId : manager.getDirectReports()) {
+                if (employees.containsKey(reportId)) {
+                    managers.put(reportId, manager.getId());
+                }
+            }
+        }
+        Map<Long, List<Long>> fullChains = new LinkedHashMap<>();
+        for (long id : employees.keySet()) {
+            List<Long> walk = new ArrayList<>();
+            Set<Long> seen = new HashSet<>(Collections.singleton(id));
+            Long current = managers.get(id);
+            boolean cyclic = false;
+            while (current != null) {
+                if (!seen.add(current)) {
+                    cyclic = true;
+                    break;
+                }
+                walk.add(current);
+                current = managers.get(current);
+            }
+
+            List<Employee> chain = snapshot.getChain(id);
+            assertNotNull(chain, "no chain for " + id);
+            List<Long> chainIds = ids(chain);
+            assertTrue(chainIds.size() <= walk.size() && chainIds.equals(walk.subList(0, chainIds.size())),
+                    "chain of " + id + " " + chainIds + " does not follow " + walk);
+            if (!cyclic) {
+                assertEquals(walk, chainIds, "chain of " + id);
+                fullChains.put(id, walk);
+            }
+        }
+        Random random = new Random(fullChains.size());
+        List<Long> acyclic = new ArrayList<>(fullChains.keySet());
+        for (int i = 0; i < Math.min(200, acyclic.size() * acyclic.size()); i++) {
+            long a = acyclic.get(random.nextInt(acyclic.size()));
+            long b = acyclic.get(random.nextInt(acyclic.size()));
+            Employee common = snapshot.getCommonManager(a, b);
+            Long expected = lowestCommon(a, fullChains.get(a), b, fullChains.get(b));
+            if (expected == null) {
+                assertNull(common, "common manager of " + a + " and " + b);
+            } else {
+                assertNotNull(common, "common manager of " + a + " and " + b);
+                assertEquals(expected, common.getId(), "common manager of " + a + " and " + b);
+            }
+        }
+    }
+
+    private static Long lowestCommon(long a, List<Long> chainA, long b, List<Long> chainB) {
+        Set<Long> above = new HashSet<>(chainA);
+        above.add(a);
+        if (above.contains(b)) {
+            return b;
+        }
+        for (Long id : chainB) {
+            if (above.contains(id)) {
+                return id;
+            }
+        }
+        return null;
+    }
+
+    private static List<Long> ids(List<Employee> employees) {
+        List<Long> ids = new ArrayList<>(employees.size());
+        for (Employee employee : employees) {
+            ids.add(employee.getId());
+        }
+        return ids;
+    }
+
+    private static List<Employee> copies(Collection<Employee> employees) {
+        List<Employee> copies = new ArrayList<>(employees.size());
+        for (Employee employee : employees) {
+            copies.add(new Employee(employee));
+        }
+        return copies;
+    }
+
+    private static Employee employee(long id, long... reports) {
+        Employee employee = new Employee(id, "Employee " + id, "Engineer", true, null, false);
+        for (long report : reports) {
+            employee.getDirectReports().add(report);
+        }
+        return employee;
+    }
+}
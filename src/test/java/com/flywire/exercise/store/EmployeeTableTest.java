@@ -0,0 +1,145 @@
+package com.flywire.exercise.store;
+
+import com.flywire.exercise.model.Employee;
+import com.flywire.exercise.util.DateUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Rows after incremental changes, including the compaction that refills deleted rows, against a map of employees
+class EmployeeTableTest {
+
+    private static final String[] POSITIONS = {"Engineer", "CEO", "Accountant", null};
+
+    @Test
+    void randomChangesMatchAMapOfEmployees() {
+        Random random = new Random(51);
+        Map<Long, Employee> employees = new LinkedHashMap<>();
+        for (long id = 1; id <= 700; id++) {
+            employees.put(id, employee(id, random));
+        }
+        EmployeeTable table = new EmployeeTable(employees.values());
+        verify(table, employees);
+
+        long nextId = 701;
+        List<EmployeeTable> versions = new ArrayList<>();
+        List<Map<Long, Employee>> expected = new ArrayList<>();
+        for (int step = 0; step < 400; step++) {
+            List<Employee> upserts = new ArrayList<>();
+            List<Long> deletedIds = new ArrayList<>();
+            // Now and then a large batch, which shrinks or grows the table by several chunks
+            int changes = random.nextInt(10) == 0 ? 1 + random.nextInt(3 * EmployeeTable.CHUNK_SIZE) : 1 + random.nextInt(6);
+            // Shrinks and grows in turns of 50 batches
+            boolean shrinking = (step / 50) % 2 == 0;
+            for (int i = 0; i < changes; i++) {
+                List<Long> ids = new ArrayList<>(employees.keySet());
+                int kind = random.nextInt(10);
+                if (!ids.isEmpty() && (shrinking ? kind < 6 : kind < 2)) {
+                    long id = ids.get(random.nextInt(ids.size()));
+                    employees.remove(id);
+                    deletedIds.add(id);
+                    // Deletions are applied first, so an upsert of the same id would bring it back
+                    upserts.removeIf(emp -> emp.getId() == id);
+                } else if (!ids.isEmpty() && kind < 8) {
+                    long id = ids.get(random.nextInt(ids.size()));
+                    Employee changed = employee(id, random);
+                    employees.put(id, changed);
+                    upserts.add(changed);
+                } else {
+                    Employee hire = employee(nextId++, random);
+                    employees.put(hire.getId(), hire);
+                    upserts.add(hire);
+                }
+            }
+            // A deleted id that is upserted in the same batch is re-added
+            if (!deletedIds.isEmpty() && random.nextInt(5) == 0) {
+                Employee back = employee(deletedIds.get(0), random);
+                employees.put(back.getId(), back);
+                upserts.add(back);
+            }
+            table = table.withChanges(upserts, deletedIds);
+            verify(table, employees);
+            if (step % 40 == 0) {
+                versions.add(table);
+                expected.add(new LinkedHashMap<>(employees));
+            }
+        }
+        for (int v = 0; v < versions.size(); v++) {
+            verify(versions.get(v), expected.get(v));
+        }
+    }
+
+    @Test
+    void deletingEveryRowLeavesAnEmptyTable() {
+        Random random = new Random(52);
+        List<Employee> employees = new ArrayList<>();
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= 3 * EmployeeTable.CHUNK_SIZE + 5; id++) {
+            employees.add(employee(id, random));
+            ids.add(id);
+        }
+        EmployeeTable table = new EmployeeTable(employees).withChanges(Collections.<Employee>emptyList(), ids);
+        assertEquals(0, table.size());
+        assertNull(table.get(1));
+
+        Employee hire = employee(9, random);
+        table = table.withChanges(Collections.singletonList(hire), Collections.<Long>emptyList());
+        verify(table, Collections.singletonMap(9L, hire));
+    }
+
+    private static void verify(EmployeeTable table, Map<Long, Employee> employees) {
+        assertEquals(employees.size(), table.size());
+        Set<Long> seen = new HashSet<>();
+        for (int row = 0; row < table.size(); row++) {
+            long id = table.idAt(row);
+            assertTrue(seen.add(id), "id " + id + " on two rows");
+            assertEquals(row, table.rowOf(id), "row of " + id);
+            Employee expected = employees.get(id);
+            assertEquals(describe(expected), describe(table.materialize(row)), "row " + row);
+            assertEquals(expected.getName(), table.nameAt(row));
+            assertEquals(expected.getPosition(), table.positionAt(row));
+            assertEquals(expected.isActive(), table.isActiveAt(row));
+            assertEquals(expected.isOriginal(), table.isOriginalAt(row));
+            assertEquals(expected.getHireDate() != null ? DateUtil.toEpochDay(expected.getHireDate())
+                    : EmployeeTable.NO_HIRE_DATE, table.hireDayAt(row));
+            List<Long> reports = new ArrayList<>();
+            for (int i = 0; i < table.reportCount(row); i++) {
+                reports.add(table.reportAt(row, i));
+            }
+            assertEquals(expected.getDirectReports(), reports, "reports of " + id);
+        }
+        assertEquals(employees.keySet(), seen);
+        assertFalse(table.contains(-5));
+        assertEquals(-1, table.rowOf(-5));
+    }
+
+    private static List<Object> describe(Employee employee) {
+        return Arrays.asList(employee.getId(), employee.getName(), employee.getPosition(), employee.isActive(),
+                employee.getHireDate() != null ? employee.getHireDate().getTime() : null, employee.isOriginal(),
+                employee.getDirectReports());
+    }
+
+    private static Employee employee(long id, Random random) {
+        Employee employee = new Employee(id, random.nextInt(8) == 0 ? null : "Employee " + random.nextInt(1_000),
+                POSITIONS[random.nextInt(POSITIONS.length)], random.nextBoolean(),
+                random.nextInt(8) == 0 ? null : DateUtil.fromEpochDay(10_000 + random.nextInt(5_000)),
+                random.nextBoolean());
+        for (int i = random.nextInt(4); i > 0; i--) {
+            employee.getDirectReports().add((long) random.nextInt(900));
+        }
+        return employee;
+    }
+}
@@ -0,0 +1,126 @@
+package com.flywire.exercise.store;
+
+import com.flywire.exercise.model.Employee;
+import com.flywire.exercise.util.DateUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// Hire-date ranges, counts and bounds after incremental changes, against filtering and sorting every employee
+class HireDateIndexTest {
+
+    private static final int FIRST_DAY = 15_000;
+    private static final int DAYS = 120;
+
+    @Test
+    void randomChangesMatchAFilteredSort() {
+        Random random = new Random(7);
+        Map<Long, Employee> employees = new LinkedHashMap<>();
+        for (long id = 1; id <= 2_000; id++) {
+            employees.put(id, employee(id, random));
+        }
+        EmployeeSnapshot snapshot = new EmployeeSnapshot(new ArrayList<>(employees.values()));
+        verify(snapshot, employees, random);
+
+        long nextId = 2_001;
+        for (int step = 0; step < 300; step++) {
+            List<Employee> upserts = new ArrayList<>();
+            List<Long> deletedIds = new ArrayList<>();
+            for (int i = random.nextInt(8); i >= 0; i--) {
+                List<Long> ids = new ArrayList<>(employees.keySet());
+                long id = ids.get(random.nextInt(ids.size()));
+                int kind = random.nextInt(4);
+                if (kind == 0) {
+                    employees.remove(id);
+                    deletedIds.add(id);
+                    upserts.removeIf(emp -> emp.getId() == id);
+                } else if (kind == 1) {
+                    Employee hire = employee(nextId++, random);
+                    employees.put(hire.getId(), hire);
+                    upserts.add(hire);
+                } else {
+                    // A new hire date, possibly none
+                    Employee changed = employee(id, random);
+                    employees.put(id, changed);
+                    upserts.removeIf(emp -> emp.getId() == id);
+                    upserts.add(changed);
+                }
+            }
+            snapshot = snapshot.withChanges(upserts, deletedIds);
+            if (step % 10 == 0) {
+                verify(snapshot, employees, random);
+            }
+        }
+        verify(snapshot, employees, random);
+    }
+
+    @Test
+    void noHireDatesMeansNoRange() {
+        Employee undated = new Employee(1L, "Ann Lee", "Engineer", true, null, false);
+        EmployeeSnapshot snapshot = new EmployeeSnapshot(Collections.singletonList(undated));
+        assertNull(snapshot.getHireDayRange());
+        assertEquals(0, snapshot.countHiredBetween(Integer.MIN_VALUE + 1, Integer.MAX_VALUE - 1));
+        assertEquals(Collections.emptyList(), snapshot.getHiredBetween(0, Integer.MAX_VALUE - 1, 0, 10));
+    }
+
+    private static void verify(EmployeeSnapshot snapshot, Map<Long, Employee> employees, Random random) {
+        List<Employee> dated = new ArrayList<>();
+        for (Employee employee : employees.values()) {
+            if (employee.getHireDate() != null) {
+                dated.add(employee);
+            }
+        }
+        dated.sort(Comparator.comparingInt((Employee e) -> -DateUtil.toEpochDay(e.getHireDate()))
+                .thenComparing(Employee::getId));
+        if (dated.isEmpty()) {
+            assertNull(snapshot.getHireDayRange());
+        } else {
+            assertArrayEquals(new int[] {DateUtil.toEpochDay(dated.get(dated.size() - 1).getHireDate()),
+                    DateUtil.toEpochDay(dated.get(0).getHireDate())}, snapshot.getHireDayRange());
+        }
+
+        for (int probe = 0; probe < 40; probe++) {
+            int startDay = FIRST_DAY - 5 + random.nextInt(DAYS + 10);
+            int endDay = startDay - 3 + random.nextInt(DAYS / 2);
+            List<Long> expected = new ArrayList<>();
+            for (Employee employee : dated) {
+                int day = DateUtil.toEpochDay(employee.getHireDate());
+                if (day >= startDay && day <= endDay) {
+                    expected.add(employee.getId());
+                }
+            }
+            assertEquals(expected.size(), snapshot.countHiredBetween(startDay, endDay),
+                    "count of " + startDay + ".." + endDay);
+            int offset = random.nextInt(expected.size() + 5);
+            int limit = random.nextInt(30);
+            List<Long> page = expected.subList(Math.min(offset, expected.size()),
+                    Math.min(offset + limit, expected.size()));
+            assertEquals(page, ids(snapshot.getHiredBetween(startDay, endDay, offset, limit)),
+                    "page " + offset + "+" + limit + " of " + startDay + ".." + endDay);
+        }
+    }
+
+    private static List<Long> ids(List<Employee> employees) {
+        List<Long> ids = new ArrayList<>(employees.size());
+        for (Employee employee : employees) {
+            ids.add(employee.getId());
+        }
+        return ids;
+    }
+
+    // Hired on one of a few days, so many share a day; one in ten has no hire date
+    private static Employee employee(long id, Random random) {
+        return new Employee(id, "Employee " + id, "Engineer", random.nextBoolean(),
+                random.nextInt(10) == 0 ? null : DateUtil.fromEpochDay(FIRST_DAY + random.nextInt(DAYS)), false);
+    }
+}
@@ -0,0 +1,133 @@
+package com.flywire.exercise.store;
+
+import com.flywire.exercise.model.Employee;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Last-name orders and keyset pages after incremental changes, against sorting every employee
+class LastNameIndexTest {
+
+    private static final String[] FIRST = {"Ann", "Bob", "Cy", "Dee", "Ed"};
+    private static final String[] LAST = {"Lee", "Li", "Brown", "Lee-Smith", "O'Hara", "van Dyke", "Zed", "adams"};
+
+    @Test
+    void randomChangesMatchASortedList() {
+        Random random = new Random(8);
+        Map<Long, Employee> employees = new LinkedHashMap<>();
+        for (long id = 1; id <= 1_500; id++) {
+            employees.put(id, employee(id, random));
+        }
+        EmployeeSnapshot snapshot = new EmployeeSnapshot(new ArrayList<>(employees.values()));
+        verify(snapshot, employees, random);
+
+        long nextId = 1_501;
+        for (int step = 0; step < 300; step++) {
+            List<Employee> upserts = new ArrayList<>();
+            List<Long> deletedIds = new ArrayList<>();
+            for (int i = random.nextInt(8); i >= 0; i--) {
+                List<Long> ids = new ArrayList<>(employees.keySet());
+                long id = ids.get(random.nextInt(ids.size()));
+                int kind = random.nextInt(4);
+                if (kind == 0) {
+                    employees.remove(id);
+                    deletedIds.add(id);
+                    upserts.removeIf(emp -> emp.getId() == id);
+                } else if (kind == 1) {
+                    Employee hire = employee(nextId++, random);
+                    employees.put(hire.getId(), hire);
+                    upserts.add(hire);
+                } else {
+                    // Renamed, deactivated or reactivated
+                    Employee changed = employee(id, random);
+                    employees.put(id, changed);
+                    upserts.removeIf(emp -> emp.getId() == id);
+                    upserts.add(changed);
+                }
+            }
+            snapshot = snapshot.withChanges(upserts, deletedIds);
+            if (step % 10 == 0) {
+                verify(snapshot, employees, random);
+            }
+        }
+        verify(snapshot, employees, random);
+    }
+
+    private static void verify(EmployeeSnapshot snapshot, Map<Long, Employee> employees, Random random) {
+        List<Employee> all = new ArrayList<>(employees.values());
+        all.sort(Comparator.comparing(EmployeeSnapshot::lastNameKey).thenComparing(Employee::getId));
+        List<Employee> active = new ArrayList<>();
+        for (Employee employee : all) {
+            if (employee.isActive()) {
+                active.add(employee);
+            }
+        }
+        assertEquals(ids(all), ids(snapshot.getEmployeesByLastName()));
+        assertEquals(ids(active), ids(snapshot.getActiveEmployeesByLastName()));
+        verifyPages(snapshot, false, all, random);
+        verifyPages(snapshot, true, active, random);
+    }
+
+    // Walks the whole order page by page, and starts pages from cursors that match no employee
+    private static void verifyPages(EmployeeSnapshot snapshot, boolean activeOnly, List<Employee> expected,
+                                    Random random) {
+        List<Employee> walked = new ArrayList<>();
+        int limit = 1 + random.nextInt(50);
+        List<Employee> page = snapshot.getPageByLastName(activeOnly, null, 0, limit);
+        while (!page.isEmpty()) {
+            walked.addAll(page);
+            Employee last = page.get(page.size() - 1);
+            page = snapshot.getPageByLastName(activeOnly, EmployeeSnapshot.lastNameKey(last), last.getId(), limit);
+        }
+        assertEquals(ids(expected), ids(walked));
+
+        for (int probe = 0; probe < 30; probe++) {
+            String afterKey = LAST[random.nextInt(LAST.length)].substring(0, 1 + random.nextInt(2));
+            long afterId = random.nextInt(2_000);
+            List<Long> rest = new ArrayList<>();
+            for (Employee employee : expected) {
+                int cmp = EmployeeSnapshot.lastNameKey(employee).compareTo(afterKey);
+                if (cmp > 0 || cmp == 0 && employee.getId() > afterId) {
+                    rest.add(employee.getId());
+                }
+            }
+            assertEquals(rest.subList(0, Math.min(limit, rest.size())),
+                    ids(snapshot.getPageByLastName(activeOnly, afterKey, afterId, limit)),
+                    "page after (" + afterKey + ", " + afterId + ")");
+        }
+    }
+
+    private static List<Long> ids(List<Employee> employees) {
+        List<Long> ids = new ArrayList<>(employees.size());
+        for (Employee employee : employees) {
+            ids.add(employee.getId());
+        }
+        return ids;
+    }
+
+    // Two-word, single-word, padded and missing names, so the key extraction is exercised too
+    private static Employee employee(long id, Random random) {
+        String name;
+        switch (random.nextInt(10)) {
+            case 0:
+                name = null;
+                break;
+            case 1:
+                name = LAST[random.nextInt(LAST.length)];
+                break;
+            case 2:
+                name = "  " + FIRST[random.nextInt(FIRST.length)] + " " + LAST[random.nextInt(LAST.length)] + " ";
+                break;
+            default:
+                name = FIRST[random.nextInt(FIRST.length)] + " " + LAST[random.nextInt(LAST.length)];
+        }
+        return new Employee(id, name, "Engineer", random.nextInt(3) > 0, null, false);
+    }
+}
@@ -0,0 +1,183 @@
+package com.flywire.exercise.store;
+
+import com.flywire.exercise.model.Employee;
+import com.flywire.exercise.model.OrgNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Headcounts and org subtrees after incremental changes, against walking the report lists
+class OrgIndexTest {
+
+    @Test
+    void randomChangesMatchTheReportLists() {
+        Random random = new Random(11);
+        Map<Long, Employee> employees = new LinkedHashMap<>();
+        for (long id = 1; id <= 800; id++) {
+            employees.put(id, employee(id, random));
+        }
+        for (long id = 2; id <= 800; id++) {
+            if (random.nextInt(20) > 0) {
+                employees.get(1 + (long) random.nextInt((int) id - 1)).getDirectReports().add(id);
+            }
+        }
+        EmployeeSnapshot snapshot = new EmployeeSnapshot(copies(employees.values()));
+        verify(snapshot, employees, random);
+
+        long nextId = 801;
+        for (int step = 0; step < 300; step++) {
+            Map<Long, Employee> upserts = new LinkedHashMap<>();
+            List<Long> deletedIds = new ArrayList<>();
+            for (int i = random.nextInt(6); i >= 0; i--) {
+                List<Long> ids = new ArrayList<>(employees.keySet());
+                long id = ids.get(random.nextInt(ids.size()));
+                long managerId = ids.get(random.nextInt(ids.size()));
+                int kind = random.nextInt(8);
+                if (kind == 0) {
+                    // Whoever listed it keeps a dangling id, which must not count
+                    employees.remove(id);
+                    deletedIds.add(id);
+                    upserts.remove(id);
+                } else if (kind == 1) {
+                    Employee hire = employee(nextId++, random);
+                    employees.put(hire.getId(), hire);
+                    upserts.put(hire.getId(), hire);
+                    moveTo(employees, hire.getId(), managerId, upserts);
+                } else if (kind == 2) {
+                    Employee changed = employees.get(id);
+                    changed.setActive(!changed.isActive());
+                    upserts.put(id, changed);
+                } else if (kind == 3) {
+                    moveTo(employees, id, null, upserts);
+                } else if (!reportsUpTo(employees, managerId, id)) {
+                    // Reporting lines stay a forest, where headcounts have one right answer
+                    moveTo(employees, id, managerId, upserts);
+                }
+            }
+            snapshot = snapshot.withChanges(copies(upserts.values()), deletedIds);
+            if (step % 5 == 0) {
+                verify(snapshot, employees, random);
+            }
+        }
+        verify(snapshot, employees, random);
+    }
+
+    private static void verify(EmployeeSnapshot snapshot, Map<Long, Employee> employees, Random random) {
+        Map<Long, List<Long>> children = childrenOf(employees);
+        for (long id : employees.keySet()) {
+            List<Long> below = new ArrayList<>();
+            collect(id, children, below);
+            int active = 0;
+            for (long report : below) {
+                active += employees.get(report).isActive() ? 1 : 0;
+            }
+            assertEquals(below.size(), snapshot.getHeadcount(id, false), "headcount of " + id);
+            assertEquals(active, snapshot.getHeadcount(id, true), "active headcount of " + id);
+        }
+        List<Long> ids = new ArrayList<>(employees.keySet());
+        for (int probe = 0; probe < 20; probe++) {
+            long root = ids.get(random.nextInt(ids.size()));
+            int maxDepth = random.nextInt(4) == 0 ? Integer.MAX_VALUE : random.nextInt(4);
+            boolean activeOnly = random.nextBoolean();
+            List<String> expected = new ArrayList<>();
+            walk(root, null, 0, maxDepth, activeOnly, employees, children, expected);
+            List<String> actual = new ArrayList<>();
+            for (OrgNode node : snapshot.getSubtree(root, maxDepth, activeOnly)) {
+                actual.add(node.getEmployee().getId() + "<" + node.getManagerId() + "@" + node.getLevel()
+                        + "#" + node.getHeadcount());
+            }
+            assertEquals(expected, actual, "subtree of " + root);
+        }
+    }
+
+    private static void walk(long id, Long managerId, int level, int maxDepth, boolean activeOnly,
+                             Map<Long, Employee> employees, Map<Long, List<Long>> children, List<String> nodes) {
+        if (level == 0 || !activeOnly || employees.get(id).isActive()) {
+            List<Long> below = new ArrayList<>();
+            collect(id, children, below);
+            int count = 0;
+            for (long report : below) {
+                count += !activeOnly || employees.get(report).isActive() ? 1 : 0;
+            }
+            nodes.add(id + "<" + managerId + "@" + level + "#" + count);
+        }
+        if (level < maxDepth) {
+            for (long child : children.get(id)) {
+                walk(child, id, level + 1, maxDepth, activeOnly, employees, children, nodes);
+            }
+        }
+    }
+
+    // Existing reports in list order, each under the one employee listing it
+    private static Map<Long, List<Long>> childrenOf(Map<Long, Employee> employees) {
+        Map<Long, List<Long>> children = new LinkedHashMap<>();
+        for (Employee employee : employees.values()) {
+            List<Long> kids = new ArrayList<>();
+            for (Long report : employee.getDirectReports()) {
+                if (employees.containsKey(report)) {
+                    kids.add(report);
+                }
+            }
+            children.put(employee.getId(), kids);
+        }
+        return children;
+    }
+
+    private static void collect(long id, Map<Long, List<Long>> children, List<Long> below) {
+        for (long child : children.get(id)) {
+            below.add(child);
+            collect(child, children, below);
+        }
+    }
+
+    private static boolean reportsUpTo(Map<Long, Employee> employees, long id, long managerId) {
+        for (Long current = id; current != null; current = managerOf(employees, current)) {
+            if (current == managerId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Long managerOf(Map<Long, Employee> employees, long id) {
+        for (Employee employee : employees.values()) {
+            if (employee.getDirectReports().contains(id)) {
+                return employee.getId();
+            }
+        }
+        return null;
+    }
+
+    // Moves the employee under the given manager, or to the top when null
+    private static void moveTo(Map<Long, Employee> employees, long id, Long managerId, Map<Long, Employee> upserts) {
+        for (Employee manager : employees.values()) {
+            if (manager.getDirectReports().remove(id)) {
+                upserts.put(manager.getId(), manager);
+            }
+        }
+        if (managerId != null) {
+            Employee manager = employees.get(managerId);
+            manager.getDirectReports().add(id);
+            upserts.put(managerId, manager);
+        }
+    }
+
+    private static List<Employee> copies(Collection<Employee> employees) {
+        List<Employee> copies = new ArrayList<>(employees.size());
+        for (Employee employee : employees) {
+            copies.add(new Employee(employee));
+        }
+        return copies;
+    }
+
+    private static Employee employee(long id, Random random) {
+        return new Employee(id, "Employee " + id, "Engineer", random.nextInt(4) > 0, null, false);
+    }
+}
@@ -0,0 +1,369 @@
+package com.flywire.exercise.store;
+
+import com.flywire.exercise.model.Employee;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Search results after incremental changes, against a scan of every employee's terms ranked by the same rules
+class SearchIndexTest {
+
+    private static final String[] WORDS = {"ann", "anna", "annabel", "bob", "bobby", "robert", "roberta",
+            "silver", "silverman", "sylvia", "green", "greene", "engineer", "engineering", "accountant",
+            "account", "josé", "jose", "müller", "muller", "o'hara", "li", "lee", "x"};
+
+    @Test
+    void exactMatchesRankAboveNearMisses() {
+        List<Employee> employees = Arrays.asList(
+                employee(1, "Annabel Lee", "Engineer"),
+                employee(2, "Ann Green", "Engineer"),
+                employee(3, "Anna Grene", "Accountant"),
+                employee(4, "Bob Silver", "CEO"));
+        EmployeeSnapshot snapshot = new EmployeeSnapshot(employees);
+        assertEquals(Arrays.asList(2L, 3L, 1L), ids(snapshot.searchByName("ann", 10)));
+        // "grene" is one edit from "green", which follows once the exact match is in
+        assertEquals(Arrays.asList(3L, 2L), ids(snapshot.searchByName("grene", 10)));
+        assertEquals(Arrays.asList(2L, 3L), ids(snapshot.searchByName("ann gree", 10)));
+        assertEquals(Collections.singletonList(3L), ids(snapshot.searchByPosition("acc", 10)));
+        assertEquals(Collections.emptyList(), ids(snapshot.searchByName("zzz", 10)));
+        assertEquals(Collections.emptyList(), ids(snapshot.searchByName("ann", 0)));
+    }
+
+    @Test
+    void termsAreLowerCasedStrippedOfAccentsAndDeduplicated() {
+        assertArrayEquals(new String[] {"jose", "muller", "o", "hara"},
+                SearchIndex.tokenize("José  Müller, O'Hara jose"));
+        assertArrayEquals(new String[0], SearchIndex.tokenize(" - "));
+        assertArrayEquals(new String[0], SearchIndex.tokenize(null));
+    }
+
+    @Test
+    void randomChangesMatchABruteForceSearch() {
+        Random random = new Random(61);
+        Map<Long, Employee> employees = new LinkedHashMap<>();
+        for (long id = 1; id <= 600; id++) {
+            employees.put(id, employee(id, random));
+        }
+        EmployeeSnapshot snapshot = new EmployeeSnapshot(new ArrayList<>(employees.values()));
+        verify(snapshot, employees, random);
+
+        long nextId = 601;
+        for (int step = 0; step < 200; step++) {
+            List<Employee> upserts = new ArrayList<>();
+            List<Long> deletedIds = new ArrayList<>();
+            for (int i = random.nextInt(6); i >= 0; i--) {
+                List<Long> ids = new ArrayList<>(employees.keySet());
+                long id = ids.get(random.nextInt(ids.size()));
+                int kind = random.nextInt(4);
+                if (kind == 0) {
+                    employees.remove(id);
+                    deletedIds.add(id);
+                    upserts.removeIf(emp -> emp.getId() == id);
+                } else if (kind == 1) {
+                    Employee hire = employee(nextId++, random);
+                    employees.put(hire.getId(), hire);
+                    upserts.add(hire);
+                } else {
+                    Employee renamed = employee(id, random);
+                    employees.put(id, renamed);
+                    upserts.removeIf(emp -> emp.getId() == id);
+                    upserts.add(renamed);
+                }
+            }
+            snapshot = snapshot.withChanges(upserts, deletedIds);
+            if (step % 10 == 0) {
+                verify(snapshot, employees, random);
+            }
+        }
+        verify(snapshot, employees, random);
+    }
+
+    @Test
+    void termsNoEmployeeHasAreDroppedFromTheTrigramIndex() {
+        Random random = new Random(19);
+        Map<Long, Employee> employees = new LinkedHashMap<>();
+        for (long id = 1; id <= 50; id++) {
+            employees.put(id, employee(id, random));
+        }
+        SearchIndex index = new SearchIndex(new EmployeeTable(employees.values()), SearchIndex.Field.NAME);
+        Set<String> used = new TreeSet<>(Arrays.asList(SearchIndex.tokenize(String.join(" ", WORDS))));
+        for (int step = 0; step < 300; step++) {
+            // Renames to one-off words, so every step leaves terms behind
+            long id = 1 + random.nextInt(50);
+            Employee renamed = employee(id, "Temp" + step + " " + WORDS[random.nextInt(WORDS.length)], null);
+            used.add("temp" + step);
+            index = index.withChanges(Collections.singletonList(employees.put(id, renamed)),
+                    Collections.singletonList(renamed));
+
+            Set<String> live = new HashSet<>();
+            for (Employee employee : employees.values()) {
+                live.addAll(Arrays.asList(SearchIndex.tokenize(employee.getName())));
+            }
+            for (String term : used) {
+                assertEquals(live.contains(term), index.isKnown(term), term);
+            }
+        }
+    }
+
+    private static void verify(EmployeeSnapshot snapshot, Map<Long, Employee> employees, Random random) {
+        Map<Long, String> names = new LinkedHashMap<>();
+        Map<Long, String> positions = new LinkedHashMap<>();
+        for (Employee employee : employees.values()) {
+            names.put(employee.getId(), employee.getName());
+            positions.put(employee.getId(), employee.getPosition());
+        }
+        for (int probe = 0; probe < 60; probe++) {
+            String query = query(random);
+            int limit = 1 + random.nextInt(random.nextBoolean() ? 5 : 60);
+            assertEquals(bruteForce(names, query, limit), ids(snapshot.searchByName(query, limit)),
+                    "names matching \"" + query + "\" up to " + limit);
+            assertEquals(bruteForce(positions, query, limit), ids(snapshot.searchByPosition(query, limit)),
+                    "positions matching \"" + query + "\" up to " + limit);
+        }
+    }
+
+    private static List<Long> bruteForce(Map<Long, String> fields, String query, int limit) {
+        String[] words = SearchIndex.tokenize(query);
+        if (words.length == 0) {
+            return Collections.emptyList();
+        }
+        // Every (term, id) pair in term order, then id order, as the index keeps them
+        Map<Long, String[]> terms = new LinkedHashMap<>();
+        TreeSet<Pair> pairs = new TreeSet<>();
+        for (Map.Entry<Long, String> field : fields.entrySet()) {
+            String[] fieldTerms = SearchIndex.tokenize(field.getValue());
+            terms.put(field.getKey(), fieldTerms);
+            for (String term : fieldTerms) {
+                pairs.add(new Pair(term, field.getKey()));
+            }
+        }
+
+        List<Long> found = new ArrayList<>();
+        List<Integer> scores = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+        collect(words, null, pairs, terms, limit, found, scores, seen);
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < found.size(); i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparing((Integer i) -> -scores.get(i)));
+        List<Long> ranked = new ArrayList<>();
+        for (int i : order) {
+            ranked.add(found.get(i));
+        }
+        if (ranked.size() < limit) {
+            Set<String> live = new TreeSet<>();
+            for (Pair pair : pairs) {
+                live.add(pair.term);
+            }
+            List<List<String>> fuzzy = new ArrayList<>();
+            for (String word : words) {
+                fuzzy.add(similarTerms(word, live));
+            }
+            collect(words, fuzzy, pairs, terms, limit, ranked, new ArrayList<>(), seen);
+        }
+        return ranked;
+    }
+
+    // One pass over the pairs of the query word with the fewest, keeping employees every other word matches
+    private static void collect(String[] words, List<List<String>> fuzzy, TreeSet<Pair> pairs,
+                                Map<Long, String[]> terms, int limit, List<Long> found, List<Integer> scores,
+                                Set<Long> seen) {
+        int driver = -1;
+        List<Pair> driverPairs = null;
+        for (int w = 0; w < words.length; w++) {
+            List<Pair> matching = new ArrayList<>();
+            for (Pair pair : pairs) {
+                if (pair.term.startsWith(words[w])) {
+                    matching.add(pair);
+                }
+            }
+            if (fuzzy != null) {
+                for (String similar : fuzzy.get(w)) {
+                    for (Pair pair : pairs) {
+                        if (pair.term.equals(similar)) {
+                            matching.add(pair);
+                        }
+                    }
+                }
+            }
+            if (driverPairs == null || matching.size() < driverPairs.size()) {
+                driver = w;
+                driverPairs = matching;
+            }
+        }
+        for (Pair pair : driverPairs) {
+            if (found.size() == limit) {
+                return;
+            }
+            int score = pair.term.equals(words[driver]) ? 1 : 0;
+            for (int w = 0; w < words.length && score >= 0; w++) {
+                if (w != driver) {
+                    int match = match(terms.get(pair.id), words[w], fuzzy != null ? fuzzy.get(w) : null);
+                    score = match >= 0 ? score + match : -1;
+                }
+            }
+            if (score >= 0 && seen.add(pair.id)) {
+                found.add(pair.id);
+                scores.add(score);
+            }
+        }
+    }
+
+    private static int match(String[] terms, String word, List<String> similar) {
+        int match = -1;
+        for (String term : terms) {
+            if (term.equals(word)) {
+                return 1;
+            }
+            if (term.startsWith(word) || similar != null && similar.contains(term)) {
+                match = 0;
+            }
+        }
+        return match;
+    }
+
+    // Live terms sharing enough trigrams with the word and within its edit allowance, closest first
+    private static List<String> similarTerms(String word, Set<String> live) {
+        if (word.length() < 4) {
+            return Collections.emptyList();
+        }
+        int maxEdits = word.length() < 8 ? 1 : 2;
+        List<String> grams = trigrams("$" + word);
+        int needed = Math.max(1, grams.size() - 3 * maxEdits);
+        List<String> similar = new ArrayList<>();
+        Map<String, Integer> distances = new LinkedHashMap<>();
+        for (String term : live) {
+            Set<String> termGrams = new HashSet<>(trigrams("$" + term + "$"));
+            int shared = 0;
+            for (String gram : grams) {
+                shared += termGrams.contains(gram) ? 1 : 0;
+            }
+            if (shared < needed || term.startsWith(word)) {
+                continue;
+            }
+            int best = Integer.MAX_VALUE;
+            for (int length = word.length() - maxEdits; length <= word.length() + maxEdits; length++) {
+                if (length > 0 && length <= term.length()) {
+                    best = Math.min(best, distance(word, term.substring(0, length)));
+                }
+            }
+            if (best <= maxEdits) {
+                similar.add(term);
+                distances.put(term, best);
+            }
+        }
+        similar.sort(Comparator.comparing((String term) -> distances.get(term)).thenComparing(term -> term));
+        return similar;
+    }
+
+    private static List<String> trigrams(String padded) {
+        if (padded.length() < 3) {
+            return Collections.singletonList(padded);
+        }
+        List<String> grams = new ArrayList<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + 3));
+        }
+        return grams;
+    }
+
+    // Optimal string alignment distance: insertions, deletions, substitutions and adjacent swaps
+    private static int distance(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            for (int j = 0; j <= b.length(); j++) {
+                if (i == 0 || j == 0) {
+                    d[i][j] = i + j;
+                    continue;
+                }
+                d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1),
+                        d[i - 1][j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1));
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+                }
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+
+    // One or two words, each a prefix of a known word, the whole of one, or one with a typo
+    private static String query(Random random) {
+        StringBuilder query = new StringBuilder();
+        for (int i = random.nextInt(4) == 0 ? 2 : 1; i > 0; i--) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            switch (random.nextInt(4)) {
+                case 0:
+                    word = word.substring(0, 1 + random.nextInt(word.length()));
+                    break;
+                case 1:
+                    if (word.length() > 2) {
+                        int at = random.nextInt(word.length() - 1);
+                        word = word.substring(0, at) + word.charAt(at + 1) + word.charAt(at) + word.substring(at + 2);
+                    }
+                    break;
+                case 2:
+                    int at = random.nextInt(word.length());
+                    word = word.substring(0, at) + (char) ('a' + random.nextInt(26)) + word.substring(at + 1);
+                    break;
+                default:
+                    break;
+            }
+            query.append(query.length() > 0 ? " " : "").append(random.nextBoolean() ? word.toUpperCase() : word);
+        }
+        return query.toString();
+    }
+
+    private static List<Long> ids(List<Employee> employees) {
+        List<Long> ids = new ArrayList<>(employees.size());
+        for (Employee employee : employees) {
+            ids.add(employee.getId());
+        }
+        return ids;
+    }
+
+    private static Employee employee(long id, Random random) {
+        StringBuilder name = new StringBuilder();
+        for (int i = 1 + random.nextInt(3); i > 0; i--) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            name.append(name.length() > 0 ? " " : "")
+                    .append(Character.toUpperCase(word.charAt(0))).append(word.substring(1));
+        }
+        String position = random.nextInt(10) == 0 ? null : WORDS[random.nextInt(WORDS.length)]
+                + (random.nextBoolean() ? " " + WORDS[random.nextInt(WORDS.length)] : "");
+        return employee(id, random.nextInt(20) == 0 ? null : name.toString(), position);
+    }
+
+    private static Employee employee(long id, String name, String position) {
+        return new Employee(id, name, position, true, null, false);
+    }
+
+    private static final class Pair implements Comparable<Pair> {
+        final String term;
+        final long id;
+
+        Pair(String term, long id) {
+            this.term = term;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Pair other) {
+            int cmp = term.compareTo(other.term);
+            return cmp != 0 ? cmp : Long.compare(id, other.id);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.flywire.exercise.store;
+
+import com.flywire.exercise.model.Employee;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// Round trips of random snapshots, and every truncation and single-byte flip of one
+class SnapshotFileTest {
+
+    private static final String[] NAMES = {"Ann Lee", "José Müller", "李 小龙", "", null};
+    private static final String[] POSITIONS = {"Engineer", "CEO", "Ingénieure", null};
+
+    @TempDir
+    File dataDir;
+
+    @Test
+    void readsBackWhatWasWritten() throws IOException {
+        Random random = new Random(14);
+        for (int size : new int[] {0, 1, 70, 900}) {
+            EmployeeSnapshot snapshot = new EmployeeSnapshot(employees(size, random));
+            File file = new File(dataDir, "employees-" + size + ".snap");
+            SnapshotFile.write(snapshot, 42L, file);
+            assertEquals(42L, (long) SnapshotFile.readChecksum(file));
+            EmployeeSnapshot read = SnapshotFile.read(file, 7);
+            assertEquals(7, read.getVersion());
+            assertEquals(describe(snapshot), describe(read));
+        }
+    }
+
+    @Test
+    void damagedFilesFailToRead() throws IOException {
+        File file = new File(dataDir, "employees.snap");
+        SnapshotFile.write(new EmployeeSnapshot(employees(12, new Random(15))), 42L, file);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        File damaged = new File(dataDir, "damaged.snap");
+        for (int length = 0; length < bytes.length; length++) {
+            Files.write(damaged.toPath(), Arrays.copyOf(bytes, length));
+            assertThrows(IOException.class, () -> SnapshotFile.read(damaged, 0), "cut at " + length);
+        }
+        for (int at = 0; at < bytes.length; at++) {
+            // The original-data checksum is the caller's to check
+            if (at >= 24 && at < 32) {
+                continue;
+            }
+            byte[] flipped = bytes.clone();
+            flipped[at] ^= 0x10;
+            Files.write(damaged.toPath(), flipped);
+            assertThrows(IOException.class, () -> SnapshotFile.read(damaged, 0), "flipped byte " + at);
+        }
+        Files.write(damaged.toPath(), new byte[40]);
+        assertNull(SnapshotFile.readChecksum(damaged));
+    }
+
+    private static List<Employee> employees(int size, Random random) {
+        List<Employee> employees = new ArrayList<>(size);
+        for (long id = 1; id <= size; id++) {
+            Date hireDate = random.nextInt(5) == 0 ? null : new Date(86_400_000L * random.nextInt(20_000));
+            Employee employee = new Employee(id * 3, NAMES[random.nextInt(NAMES.length)],
+                    POSITIONS[random.nextInt(POSITIONS.length)], random.nextBoolean(), hireDate, random.nextBoolean());
+            for (int i = random.nextInt(4); i > 0 && id > 1; i--) {
+                employee.getDirectReports().add(3 * (1 + (long) random.nextInt((int) id - 1)));
+            }
+            employees.add(employee);
+        }
+        return employees;
+    }
+
+    private static Map<Long, List<Object>> describe(EmployeeSnapshot snapshot) {
+        Map<Long, List<Object>> described = new TreeMap<>();
+        for (Employee employee : snapshot.getEmployees()) {
+            described.put(employee.getId(), Arrays.asList(employee.getName(), employee.getPosition(),
+                    employee.isActive(), employee.getHireDate() != null ? employee.getHireDate().getTime() : null,
+                    employee.isOriginal(), new ArrayList<>(employee.getDirectReports())));
+        }
+        return described;
+    }
+}
@@ -0,0 +1,130 @@
+package com.flywire.exercise.util;
+
+import com.flywire.exercise.model.Employee;
+import com.flywire.exercise.store.EmployeeChange;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Each test leaves the journal files as one kind of crash would and recovers from them
+class EmployeeJournalTest {
+
+    @TempDir
+    File dataDir;
+
+    @Test
+    void aTornFinalLineIsDroppedAndCutOff() throws IOException {
+        EmployeeJournal journal = open();
+        journal.append(Arrays.asList(change(1), change(2)));
+        journal.close();
+        byte[] complete = Files.readAllBytes(file().toPath());
+        Files.write(file().toPath(), "{\"type\":\"CREATE\",\"employeeId\":3,\"ups".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        EmployeeJournal reopened = open();
+        assertEquals(Arrays.asList(1L, 2L), ids(reopened.read()));
+        assertEquals(Arrays.asList(1L, 2L), ids(reopened.recover()));
+        assertArrayEquals(complete, Files.readAllBytes(file().toPath()));
+        assertEquals(2, reopened.size());
+
+        // The next record starts on a line of its own
+        reopened.append(Collections.singletonList(change(3)));
+        reopened.close();
+        assertEquals(Arrays.asList(1L, 2L, 3L), ids(open().recover()));
+    }
+
+    @Test
+    void aCorruptRecordBeforeTheEndFailsRecovery() throws IOException {
+        Files.write(file().toPath(), "{\"type\":\n".getBytes(StandardCharsets.UTF_8));
+        assertThrows(IOException.class, () -> open().recover());
+    }
+
+    @Test
+    void aFailedAppendIsCutBackOff() throws IOException {
+        EmployeeJournal journal = open();
+        journal.append(Collections.singletonList(change(1)));
+        journal.close();
+        byte[] complete = Files.readAllBytes(file().toPath());
+
+        // Writes a few bytes of the batch, as a full disk would, then fails
+        EmployeeJournal failing = new EmployeeJournal(file(), FileUtil.createObjectMapper(),
+                new FileMetrics(new SimpleMeterRegistry())) {
+            @Override
+            FileOutputStream openForAppend(File file) throws IOException {
+                return new FileOutputStream(file, true) {
+                    @Override
+                    public void write(byte[] bytes, int offset, int length) throws IOException {
+                        super.write(bytes, offset, Math.min(length, 10));
+                        throw new IOException("No space left on device");
+                    }
+                };
+            }
+        };
+        failing.recover();
+        assertThrows(IOException.class, () -> failing.append(Arrays.asList(change(2), change(3))));
+        assertArrayEquals(complete, Files.readAllBytes(file().toPath()));
+        assertEquals(1, failing.size());
+
+        EmployeeJournal reopened = open();
+        reopened.recover();
+        reopened.append(Collections.singletonList(change(4)));
+        reopened.close();
+        assertEquals(Arrays.asList(1L, 4L), ids(open().recover()));
+    }
+
+    @Test
+    void recordsOfAnUnfinishedCompactionComeFirst() throws IOException {
+        EmployeeJournal journal = open();
+        journal.append(Collections.singletonList(change(1)));
+        journal.rotate();
+        journal.append(Collections.singletonList(change(2)));
+        // A second rotation while the first compaction never finished keeps both
+        journal.rotate();
+        journal.append(Collections.singletonList(change(3)));
+        journal.close();
+
+        assertTrue(journal.hasRotated());
+        assertEquals(Arrays.asList(1L, 2L, 3L), ids(open().recover()));
+        journal.discardRotated();
+        assertFalse(journal.hasRotated());
+        assertEquals(Collections.singletonList(3L), ids(open().recover()));
+    }
+
+    private EmployeeJournal open() {
+        return new EmployeeJournal(file(), FileUtil.createObjectMapper(), new FileMetrics(new SimpleMeterRegistry()));
+    }
+
+    private File file() {
+        return new File(dataDir, "new_employees.journal");
+    }
+
+    private static EmployeeChange change(long id) {
+        Employee hire = new Employee(id, "Employee " + id, "Engineer", true, null, false);
+        return EmployeeChange.upsert(EmployeeChange.Type.CREATE, id, Collections.singletonList(hire));
+    }
+
+    private static List<Long> ids(List<EmployeeChange> changes) {
+        List<Long> ids = new ArrayList<>(changes.size());
+        for (EmployeeChange change : changes) {
+            ids.add(change.getEmployeeId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,304 @@
+package com.flywire.exercise.util;
+
+import com.flywire.exercise.model.Employee;
+import com.flywire.exercise.store.EmployeeChange;
+import com.flywire.exercise.store.EmployeeLookup;
+import com.flywire.exercise.store.EmployeeSnapshot;
+import com.flywire.exercise.store.SnapshotFile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Restarts on a data directory left as a crash at some point of a write would leave it
+class FileUtilTest {
+
+    @TempDir
+    File dataDir;
+
+    @Test
+    void journaledChangesAreReplayedAfterACrash() throws IOException {
+        FileUtil store = open("journal");
+        hire(store, 1000);
+        EmployeeSnapshot committed = deactivate(store, 53);
+        crash(store);
+
+        FileUtil reopened = open("journal");
+        assertEquals(describe(committed), describe(reopened.getSnapshot()));
+        assertFalse(reopened.getSnapshot().get(53L).isActive());
+        reopened.close();
+        assertFalse(journalFile().exists());
+        assertFalse(rotatedFile().exists());
+
+        FileUtil compacted = open("journal");
+        assertEquals(describe(committed), describe(compacted.getSnapshot()));
+        compacted.close();
+    }
+
+    @Test
+    void aTornJournalTailIsDroppedOnRestart() throws IOException {
+        FileUtil store = open("journal");
+        EmployeeSnapshot committed = hire(store, 1000);
+        crash(store);
+        Files.write(journalFile().toPath(), "{\"type\":\"CREATE\",\"empl".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        FileUtil reopened = open("journal");
+        assertEquals(describe(committed), describe(reopened.getSnapshot()));
+        // Lands where the torn line was, so the journal stays readable
+        committed = hire(reopened, 1001);
+        crash(reopened);
+
+        FileUtil again = open("journal");
+        assertEquals(describe(committed), describe(again.getSnapshot()));
+        again.close();
+    }
+
+    @Test
+    void aCompactionInterruptedAfterRotatingKeepsEveryRecord() throws IOException {
+        FileUtil store = open("journal");
+        EmployeeSnapshot committed = hire(store, 1000);
+        crash(store);
+        // Rotated for compaction, then the process died before folding it in
+        assertTrue(journalFile().renameTo(rotatedFile()));
+
+        FileUtil reopened = open("journal");
+        assertEquals(describe(committed), describe(reopened.getSnapshot()));
+        committed = hire(reopened, 1001);
+        crash(reopened);
+        assertTrue(rotatedFile().exists() && journalFile().exists());
+
+        FileUtil again = open("journal");
+        assertEquals(describe(committed), describe(again.getSnapshot()));
+        again.compactJournal();
+        assertFalse(rotatedFile().exists());
+        crash(again);
+
+        FileUtil compacted = open("journal");
+        assertEquals(describe(committed), describe(compacted.getSnapshot()));
+        compacted.close();
+    }
+
+    @Test
+    void journaledChangesAreFoldedInWhenRestartingInJsonMode() throws IOException {
+        FileUtil store = open("journal");
+        EmployeeSnapshot committed = hire(store, 1000);
+        crash(store);
+
+        FileUtil reopened = open("json");
+        assertEquals(describe(committed), describe(reopened.getSnapshot()));
+        assertFalse(journalFile().exists());
+        reopened.close();
+    }
+
+    @Test
+    void concurrentCommitsShareOneWriteAndAllSurviveARestart() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        FileUtil store = new FileUtil("json", 64, 200, false, dataDir.getPath(), 4, 100, registry);
+        List<CompletableFuture<EmployeeSnapshot>> futures = new ArrayList<>();
+        for (long id = 1000; id < 1020; id++) {
+            futures.add(store.submit(null, hireOf(id)));
+        }
+        EmployeeSnapshot committed = null;
+        for (CompletableFuture<EmployeeSnapshot> future : futures) {
+            committed = future.get();
+        }
+        assertEquals(20, store.getSnapshot().getVersion());
+        assertTrue(registry.get("employees.persist").timer().count() < 20);
+        crash(store);
+
+        FileUtil reopened = open("json");
+        assertEquals(describe(committed), describe(reopened.getSnapshot()));
+        reopened.close();
+    }
+
+    @Test
+    void aBatchThatFailsToWriteFailsEveryCommitInItAndPublishesNothing() throws Exception {
+        FileUtil store = new FileUtil("json", 64, 200, false, dataDir.getPath(), 4, 100, new SimpleMeterRegistry());
+        EmployeeSnapshot before = store.getSnapshot();
+        // The temp file can't be created while a directory sits in its place
+        File tempFile = new File(dataDir, "new_employees.json.tmp");
+        assertTrue(tempFile.mkdir());
+        CompletableFuture<EmployeeSnapshot> first = store.submit(null, hireOf(1000));
+        CompletableFuture<EmployeeSnapshot> second = store.submit(null, hireOf(1001));
+        ExecutionException failure = assertThrows(ExecutionException.class, first::get);
+        assertTrue(failure.getCause() instanceof IOException);
+        assertThrows(ExecutionException.class, second::get);
+        assertSame(before, store.getSnapshot());
+
+        assertTrue(tempFile.delete());
+        EmployeeSnapshot committed = hire(store, 1002);
+        assertEquals(before.getVersion() + 1, committed.getVersion());
+        assertNull(committed.get(1000L));
+        crash(store);
+
+        FileUtil reopened = open("json");
+        assertEquals(describe(committed), describe(reopened.getSnapshot()));
+        reopened.close();
+    }
+
+    @Test
+    void aTempFileLeftByAnInterruptedWriteIsIgnored() throws IOException {
+        FileUtil store = open("json");
+        EmployeeSnapshot committed = hire(store, 1000);
+        crash(store);
+        Files.write(new File(dataDir, "new_employees.json.tmp").toPath(), "[{\"id\":".getBytes(StandardCharsets.UTF_8));
+
+        FileUtil reopened = open("json");
+        assertEquals(describe(committed), describe(reopened.getSnapshot()));
+        committed = hire(reopened, 1001);
+        crash(reopened);
+
+        FileUtil again = open("json");
+        assertEquals(describe(committed), describe(again.getSnapshot()));
+        again.close();
+    }
+
+    @Test
+    void aBinarySnapshotOfOtherOriginalDataIsIgnored() throws IOException {
+        FileUtil store = openBinary("json");
+        EmployeeSnapshot committed = hire(store, 1000);
+        store.close();
+        // Same layout, but recorded against a different json/data.json
+        EmployeeSnapshot stale = committed.withChanges(Collections.<Employee>emptyList(), Collections.singletonList(1000L));
+        SnapshotFile.write(stale, FileUtil.originalsChecksum() + 1, snapshotFile());
+        assertTrue(snapshotFile().setLastModified(System.currentTimeMillis() + 60_000));
+
+        FileUtil reopened = openBinary("json");
+        assertEquals(describe(committed), describe(reopened.getSnapshot()));
+        reopened.close();
+        assertEquals(FileUtil.originalsChecksum(), (long) SnapshotFile.readChecksum(snapshotFile()));
+    }
+
+    @Test
+    void aBinarySnapshotFailingItsChecksumIsIgnored() throws IOException {
+        FileUtil store = openBinary("json");
+        EmployeeSnapshot committed = hire(store, 1000);
+        store.close();
+        // A flipped bit in the last string of the heap still parses, but fails the CRC
+        byte[] bytes = Files.readAllBytes(snapshotFile().toPath());
+        bytes[bytes.length - 1] ^= 0x01;
+        Files.write(snapshotFile().toPath(), bytes);
+
+        FileUtil reopened = openBinary("json");
+        assertEquals(describe(committed), describe(reopened.getSnapshot()));
+        reopened.close();
+    }
+
+    @Test
+    void aTruncatedOrOlderBinarySnapshotFallsBackToTheJson() throws IOException {
+        FileUtil store = openBinary("json");
+        EmployeeSnapshot committed = hire(store, 1000);
+        store.close();
+        byte[] bytes = Files.readAllBytes(snapshotFile().toPath());
+        Files.write(snapshotFile().toPath(), Arrays.copyOf(bytes, bytes.length - 5));
+
+        FileUtil reopened = openBinary("json");
+        assertEquals(describe(committed), describe(reopened.getSnapshot()));
+        // A crash between writing the JSON and the binary file leaves the binary one older
+        EmployeeSnapshot previous = committed;
+        committed = hire(reopened, 1001);
+        crash(reopened);
+        SnapshotFile.write(previous, FileUtil.originalsChecksum(), snapshotFile());
+        assertTrue(snapshotFile().setLastModified(new File(dataDir, "new_employees.json").lastModified() - 60_000));
+
+        FileUtil again = openBinary("json");
+        assertEquals(describe(committed), describe(again.getSnapshot()));
+        again.close();
+    }
+
+    @Test
+    void journaledChangesAreReplayedOverTheBinarySnapshot() throws IOException {
+        FileUtil store = openBinary("journal");
+        store.close();
+        assertTrue(snapshotFile().exists());
+        FileUtil reopened = openBinary("journal");
+        EmployeeSnapshot committed = hire(reopened, 1000);
+        crash(reopened);
+
+        FileUtil again = openBinary("journal");
+        assertEquals(describe(committed), describe(again.getSnapshot()));
+        again.close();
+    }
+
+    private FileUtil openBinary(String mode) throws IOException {
+        return new FileUtil(mode, 64, 0, true, dataDir.getPath(), 4, 100, new SimpleMeterRegistry());
+    }
+
+    private File snapshotFile() {
+        return new File(dataDir, "employees.snap");
+    }
+
+    private FileUtil open(String mode) throws IOException {
+        return new FileUtil(mode, 64, 0, false, dataDir.getPath(), 4, 100, new SimpleMeterRegistry());
+    }
+
+    // Stops taking commits without the final compaction or anything else close() would write
+    private static void crash(FileUtil store) {
+        store.stopWriter();
+    }
+
+    private File journalFile() {
+        return new File(dataDir, "new_employees.journal");
+    }
+
+    private File rotatedFile() {
+        return new File(dataDir, "new_employees.journal.compacting");
+    }
+
+    private static EmployeeSnapshot hire(FileUtil store, long id) throws IOException {
+        return store.commitAll(null, hireOf(id));
+    }
+
+    // A new employee reporting to 3
+    private static Function<EmployeeLookup, List<EmployeeChange>> hireOf(long id) {
+        return current -> {
+            Employee hire = new Employee(id, "Employee " + id, "Engineer", true, null, false);
+            Employee manager = new Employee(current.get(3));
+            manager.getDirectReports().add(id);
+            return Collections.singletonList(
+                    EmployeeChange.upsert(EmployeeChange.Type.CREATE, id, Arrays.asList(hire, manager)));
+        };
+    }
+
+    private static EmployeeSnapshot deactivate(FileUtil store, long id) throws IOException {
+        return store.commitAll(null, current -> {
+            Employee deactivated = new Employee(current.get(id));
+            deactivated.setActive(false);
+            return Collections.singletonList(
+                    EmployeeChange.upsert(EmployeeChange.Type.DEACTIVATE, id, Collections.singletonList(deactivated)));
+        });
+    }
+
+    // Every persisted field of every employee, by id
+    static Map<Long, List<Object>> describe(EmployeeSnapshot snapshot) {
+        Map<Long, List<Object>> described = new TreeMap<>();
+        for (Employee employee : snapshot.getEmployees()) {
+            described.put(employee.getId(), Arrays.asList(employee.getName(), employee.getPosition(),
+                    employee.isActive(), employee.getHireDate() != null ? employee.getHireDate().getTime() : null,
+                    employee.isOriginal(), new ArrayList<>(employee.getDirectReports())));
+        }
+        return described;
+    }
+}
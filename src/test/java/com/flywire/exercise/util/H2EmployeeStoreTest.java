@@ -0,0 +1,174 @@
+package com.flywire.exercise.util;
+
+import com.flywire.exercise.model.Employee;
+import com.flywire.exercise.store.EmployeeChange;
+import com.flywire.exercise.store.EmployeeSnapshot;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class H2EmployeeStoreTest {
+
+    @TempDir
+    File dataDir;
+
+    @Test
+    void importsTheJsonDataOnFirstStart() throws Exception {
+        H2EmployeeStore store = open();
+        try {
+            EmployeeSnapshot expected = FileUtil.read(dataDir.getPath(), new SimpleMeterRegistry());
+            assertTrue(expected.size() > 0);
+            assertEquals(describe(expected), describe(store.getSnapshot()));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    void committedChangesSurviveARestart() throws Exception {
+        H2EmployeeStore store = open();
+        EmployeeSnapshot committed;
+        try {
+            committed = store.commitAll(null, current -> {
+                Employee hire = new Employee(1000L, "Ada Lovelace", "Engineer", true, new Date(1_600_000_000_000L), false);
+                Employee manager = new Employee(current.get(3));
+                manager.getDirectReports().add(1000L);
+                Employee deactivated = new Employee(current.get(53));
+                deactivated.setActive(false);
+                return Arrays.asList(
+                        EmployeeChange.upsert(EmployeeChange.Type.CREATE, 1000L, Arrays.asList(hire, manager)),
+                        EmployeeChange.upsert(EmployeeChange.Type.DEACTIVATE, 53L, Collections.singletonList(deactivated)),
+                        new EmployeeChange(EmployeeChange.Type.DELETE, 5L, Collections.emptyList(),
+                                Collections.singletonList(5L)));
+            });
+        } finally {
+            store.close();
+        }
+
+        H2EmployeeStore reopened = open();
+        try {
+            assertEquals(describe(committed), describe(reopened.getSnapshot()));
+            assertEquals(3L, (long) reopened.getSnapshot().getManager(1000L).getId());
+            assertNull(reopened.getSnapshot().get(5L));
+            assertFalse(reopened.getSnapshot().get(53L).isActive());
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void movingAReportUpdatesBothManagersRows() throws Exception {
+        H2EmployeeStore store = open();
+        try {
+            // 53 moves from 3 to 4 with only the managers in the change
+            store.commitAll(null, current -> {
+                Employee from = new Employee(current.get(3));
+                from.getDirectReports().remove(53L);
+                Employee to = new Employee(current.get(4));
+                to.getDirectReports().add(53L);
+                return Collections.singletonList(
+                        EmployeeChange.upsert(EmployeeChange.Type.UPDATE, 53L, Arrays.asList(from, to)));
+            });
+        } finally {
+            store.close();
+        }
+        try (Connection connection = DriverManager.getConnection(url());
+             Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT manager_id FROM employees WHERE id = 53")) {
+            assertTrue(rows.next());
+            assertEquals(4L, rows.getLong(1));
+        }
+    }
+
+    @Test
+    void replacingEveryEmployeeSurvivesARestart() throws Exception {
+        H2EmployeeStore store = open();
+        List<Employee> employees;
+        try {
+            employees = store.readEmployees();
+            employees.removeIf(employee -> employee.getId() == 24L);
+            employees.get(0).setName("Timothy Silver");
+            store.writeEmployees(employees);
+        } finally {
+            store.close();
+        }
+        H2EmployeeStore reopened = open();
+        try {
+            assertEquals(describe(new EmployeeSnapshot(employees)), describe(reopened.getSnapshot()));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void dropsTheQueryIndexesOfEarlierVersions() throws Exception {
+        try (Connection connection = DriverManager.getConnection(url());
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE employees (id BIGINT PRIMARY KEY, name VARCHAR(255), position VARCHAR(255), "
+                    + "active BOOLEAN NOT NULL, hire_date BIGINT, original BOOLEAN NOT NULL, manager_id BIGINT, "
+                    + "last_name_key VARCHAR(255))");
+            statement.execute("CREATE INDEX employees_hire_date ON employees (hire_date)");
+            statement.execute("CREATE INDEX employees_active ON employees (active, last_name_key, id)");
+            statement.execute("CREATE INDEX employees_last_name ON employees (last_name_key, id)");
+            statement.execute("CREATE INDEX employees_manager ON employees (manager_id)");
+            statement.execute("INSERT INTO employees VALUES (7, 'Grace Hopper', 'Engineer', TRUE, NULL, FALSE, NULL, 'Hopper')");
+        }
+
+        H2EmployeeStore store = open();
+        try {
+            // Not empty, so nothing is imported over the existing row
+            assertEquals(1, store.getSnapshot().size());
+            assertEquals("Grace Hopper", store.getSnapshot().get(7L).getName());
+        } finally {
+            store.close();
+        }
+        try (Connection connection = DriverManager.getConnection(url());
+             Statement statement = connection.createStatement()) {
+            try (ResultSet rows = statement.executeQuery("SELECT INDEX_NAME FROM INFORMATION_SCHEMA.INDEXES "
+                    + "WHERE TABLE_NAME = 'EMPLOYEES' AND PRIMARY_KEY = FALSE")) {
+                assertFalse(rows.next(), "secondary index left behind");
+            }
+            try (ResultSet rows = statement.executeQuery("SELECT COLUMN_NAME FROM INFORMATION_SCHEMA.COLUMNS "
+                    + "WHERE TABLE_NAME = 'EMPLOYEES' AND COLUMN_NAME = 'LAST_NAME_KEY'")) {
+                assertFalse(rows.next(), "last_name_key column left behind");
+            }
+        }
+    }
+
+    private H2EmployeeStore open() throws Exception {
+        return new H2EmployeeStore(url(), 64, 0, dataDir.getPath(), 100, new SimpleMeterRegistry());
+    }
+
+    private String url() {
+        return H2EmployeeStore.defaultUrl(dataDir.getPath());
+    }
+
+    // Every persisted field of every employee, by id
+    private static Map<Long, List<Object>> describe(EmployeeSnapshot snapshot) {
+        Map<Long, List<Object>> described = new TreeMap<>();
+        for (Employee employee : snapshot.getEmployees()) {
+            described.put(employee.getId(), Arrays.asList(employee.getName(), employee.getPosition(),
+                    employee.isActive(), employee.getHireDate() != null ? employee.getHireDate().getTime() : null,
+                    employee.isOriginal(), new ArrayList<>(employee.getDirectReports())));
+        }
+        return described;
+    }
+}
@@ -0,0 +1,106 @@
+package com.flywire.exercise.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// Checked against an ArrayList holding the same elements
+class PersistentArrayTest {
+
+    @Test
+    void randomSetsAppendsAndTruncationsMatchAList() {
+        Random random = new Random(41);
+        PersistentArray<Integer> array = PersistentArray.empty();
+        List<Integer> model = new ArrayList<>();
+        for (int step = 0; step < 50_000; step++) {
+            int kind = random.nextInt(10);
+            if (kind < 5 || model.isEmpty()) {
+                array = array.with(model.size(), step);
+                model.add(step);
+            } else if (kind < 9) {
+                int index = random.nextInt(model.size());
+                array = array.with(index, step);
+                model.set(index, step);
+            } else {
+                // Mostly small cuts, now and then most of the array
+                int length = random.nextInt(8) > 0 ? Math.max(0, model.size() - random.nextInt(70))
+                        : random.nextInt(model.size() + 1);
+                array = array.truncated(length);
+                model.subList(length, model.size()).clear();
+            }
+            assertEquals(model.size(), array.size());
+            if (step % 1_000 == 0) {
+                assertMatches(model, array);
+            }
+        }
+        assertMatches(model, array);
+    }
+
+    @Test
+    void arraysBuiltAtLevelBoundariesMatch() {
+        for (int size : new int[] {0, 1, 31, 32, 33, 1023, 1024, 1025, 32 * 1024 + 1}) {
+            List<Integer> model = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                model.add(i);
+            }
+            PersistentArray<Integer> array = PersistentArray.of(model);
+            assertMatches(model, array);
+
+            // Growing past the boundary adds a level
+            array = array.with(size, -1);
+            model.add(-1);
+            assertMatches(model, array);
+        }
+    }
+
+    @Test
+    void olderVersionsAreLeftUnchanged() {
+        Random random = new Random(42);
+        List<PersistentArray<Integer>> versions = new ArrayList<>();
+        List<List<Integer>> expected = new ArrayList<>();
+        PersistentArray<Integer> array = PersistentArray.empty();
+        List<Integer> model = new ArrayList<>();
+        for (int step = 0; step < 10_000; step++) {
+            if (model.isEmpty() || random.nextBoolean()) {
+                array = array.with(model.size(), step);
+                model.add(step);
+            } else if (random.nextInt(20) == 0) {
+                int length = random.nextInt(model.size());
+                array = array.truncated(length);
+                model.subList(length, model.size()).clear();
+            } else {
+                int index = random.nextInt(model.size());
+                array = array.with(index, step);
+                model.set(index, step);
+            }
+            if (step % 500 == 0) {
+                versions.add(array);
+                expected.add(new ArrayList<>(model));
+            }
+        }
+        for (int v = 0; v < versions.size(); v++) {
+            assertMatches(expected.get(v), versions.get(v));
+        }
+    }
+
+    @Test
+    void indexesOutsideTheArrayAreRejected() {
+        PersistentArray<Integer> array = PersistentArray.<Integer>empty().with(0, 1);
+        assertThrows(IndexOutOfBoundsException.class, () -> array.get(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> array.get(-1));
+        assertThrows(IndexOutOfBoundsException.class, () -> array.with(2, 1));
+        assertThrows(IndexOutOfBoundsException.class, () -> array.truncated(2));
+    }
+
+    private static void assertMatches(List<Integer> model, PersistentArray<Integer> array) {
+        assertEquals(model.size(), array.size());
+        for (int i = 0; i < model.size(); i++) {
+            assertEquals(model.get(i), array.get(i), "element " + i);
+        }
+    }
+}
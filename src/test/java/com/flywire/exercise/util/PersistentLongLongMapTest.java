@@ -0,0 +1,118 @@
+package com.flywire.exercise.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Checked against a HashMap holding the same entries
+class PersistentLongLongMapTest {
+
+    private static final long ABSENT = 42;
+
+    @Test
+    void randomPutsAndRemovesMatchAHashMap() {
+        Random random = new Random(31);
+        PersistentLongLongMap map = PersistentLongLongMap.empty();
+        Map<Long, Long> model = new HashMap<>();
+        for (int step = 0; step < 60_000; step++) {
+            long key = PersistentLongMapTest.key(random);
+            if (random.nextInt(60_000) > step) {
+                long value = random.nextInt(5) - 2;
+                PersistentLongLongMap updated = map.with(key, value);
+                if (model.containsKey(key) && model.get(key) == value) {
+                    assertSame(map, updated);
+                }
+                map = updated;
+                model.put(key, value);
+            } else {
+                PersistentLongLongMap updated = map.without(key);
+                if (!model.containsKey(key)) {
+                    assertSame(map, updated);
+                }
+                map = updated;
+                model.remove(key);
+            }
+            assertEquals(model.size(), map.size());
+            if (step % 2_000 == 0) {
+                assertMatches(model, map, random);
+            }
+        }
+        assertMatches(model, map, random);
+    }
+
+    @Test
+    void olderVersionsAreLeftUnchanged() {
+        Random random = new Random(32);
+        List<PersistentLongLongMap> versions = new ArrayList<>();
+        List<Map<Long, Long>> expected = new ArrayList<>();
+        PersistentLongLongMap map = PersistentLongLongMap.empty();
+        Map<Long, Long> model = new HashMap<>();
+        for (int step = 0; step < 10_000; step++) {
+            long key = random.nextInt(2_000);
+            if (model.containsKey(key) && random.nextBoolean()) {
+                map = map.without(key);
+                model.remove(key);
+            } else {
+                map = map.with(key, step);
+                model.put(key, (long) step);
+            }
+            if (step % 500 == 0) {
+                versions.add(map);
+                expected.add(new HashMap<>(model));
+            }
+        }
+        for (int v = 0; v < versions.size(); v++) {
+            assertMatches(expected.get(v), versions.get(v), random);
+        }
+    }
+
+    @Test
+    void theBuilderKeepsTheLastValueOfARepeatedKey() {
+        Random random = new Random(33);
+        PersistentLongLongMap.Builder builder = new PersistentLongLongMap.Builder(0);
+        Map<Long, Long> model = new HashMap<>();
+        for (int i = 0; i < 20_000; i++) {
+            long key = PersistentLongMapTest.key(random);
+            builder.put(key, i);
+            model.put(key, (long) i);
+        }
+        PersistentLongLongMap map = builder.build();
+        assertMatches(model, map, random);
+
+        for (int i = 0; i < 5_000; i++) {
+            long key = PersistentLongMapTest.key(random);
+            if (random.nextBoolean()) {
+                map = map.with(key, -1);
+                model.put(key, -1L);
+            } else {
+                map = map.without(key);
+                model.remove(key);
+            }
+        }
+        assertMatches(model, map, random);
+    }
+
+    private static void assertMatches(Map<Long, Long> model, PersistentLongLongMap map, Random random) {
+        assertEquals(model.size(), map.size());
+        for (Map.Entry<Long, Long> entry : model.entrySet()) {
+            assertEquals((long) entry.getValue(), map.get(entry.getKey(), ABSENT), "value of " + entry.getKey());
+            assertTrue(map.containsKey(entry.getKey()));
+        }
+        for (int probe = 0; probe < 1_000; probe++) {
+            long key = PersistentLongMapTest.key(random);
+            if (!model.containsKey(key)) {
+                assertEquals(ABSENT, map.get(key, ABSENT), "value of " + key);
+                assertFalse(map.containsKey(key));
+            }
+        }
+    }
+}
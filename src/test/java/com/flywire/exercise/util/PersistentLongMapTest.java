@@ -0,0 +1,139 @@
+package com.flywire.exercise.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Checked against a HashMap holding the same entries
+class PersistentLongMapTest {
+
+    @Test
+    void randomPutsAndRemovesMatchAHashMap() {
+        Random random = new Random(21);
+        PersistentLongMap<String> map = PersistentLongMap.empty();
+        Map<Long, String> model = new HashMap<>();
+        for (int step = 0; step < 60_000; step++) {
+            long key = key(random);
+            // Grows for the first half, then shrinks back
+            if (random.nextInt(60_000) > step) {
+                String value = "v" + random.nextInt(5);
+                map = map.with(key, value);
+                model.put(key, value);
+            } else {
+                PersistentLongMap<String> updated = map.without(key);
+                if (!model.containsKey(key)) {
+                    assertSame(map, updated);
+                }
+                map = updated;
+                model.remove(key);
+            }
+            assertEquals(model.size(), map.size());
+            if (step % 2_000 == 0) {
+                assertMatches(model, map, random);
+            }
+        }
+        assertMatches(model, map, random);
+    }
+
+    @Test
+    void settingTheSameValueReturnsTheSameMap() {
+        String value = "a";
+        PersistentLongMap<String> map = PersistentLongMap.<String>empty().with(1, value);
+        assertSame(map, map.with(1, value));
+        assertThrows(NullPointerException.class, () -> map.with(2, null));
+    }
+
+    @Test
+    void olderVersionsAreLeftUnchanged() {
+        Random random = new Random(22);
+        List<PersistentLongMap<String>> versions = new ArrayList<>();
+        List<Map<Long, String>> expected = new ArrayList<>();
+        PersistentLongMap<String> map = PersistentLongMap.empty();
+        Map<Long, String> model = new HashMap<>();
+        for (int step = 0; step < 10_000; step++) {
+            long key = random.nextInt(2_000);
+            if (model.containsKey(key) && random.nextBoolean()) {
+                map = map.without(key);
+                model.remove(key);
+            } else {
+                String value = Integer.toString(step);
+                map = map.with(key, value);
+                model.put(key, value);
+            }
+            if (step % 500 == 0) {
+                versions.add(map);
+                expected.add(new HashMap<>(model));
+            }
+        }
+        for (int v = 0; v < versions.size(); v++) {
+            assertMatches(expected.get(v), versions.get(v), random);
+        }
+    }
+
+    @Test
+    void theBuilderKeepsTheLastValueOfARepeatedKey() {
+        Random random = new Random(23);
+        PersistentLongMap.Builder<String> builder = new PersistentLongMap.Builder<>(0);
+        Map<Long, String> model = new HashMap<>();
+        for (int i = 0; i < 20_000; i++) {
+            long key = key(random);
+            String value = Integer.toString(i);
+            builder.put(key, value);
+            model.put(key, value);
+        }
+        PersistentLongMap<String> map = builder.build();
+        assertMatches(model, map, random);
+
+        // A built map takes changes like any other
+        for (int i = 0; i < 5_000; i++) {
+            long key = key(random);
+            if (random.nextBoolean()) {
+                map = map.with(key, "x");
+                model.put(key, "x");
+            } else {
+                map = map.without(key);
+                model.remove(key);
+            }
+        }
+        assertMatches(model, map, random);
+        assertEquals(0, new PersistentLongMap.Builder<String>(4).build().size());
+    }
+
+    // Dense small keys, keys spread over the whole range and the extremes
+    static long key(Random random) {
+        switch (random.nextInt(4)) {
+            case 0:
+                return random.nextLong();
+            case 1:
+                return random.nextBoolean() ? Long.MIN_VALUE + random.nextInt(3) : Long.MAX_VALUE - random.nextInt(3);
+            default:
+                return random.nextInt(5_000) - 100;
+        }
+    }
+
+    private static void assertMatches(Map<Long, String> model, PersistentLongMap<String> map, Random random) {
+        assertEquals(model.size(), map.size());
+        for (Map.Entry<Long, String> entry : model.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()), "value of " + entry.getKey());
+            assertTrue(map.containsKey(entry.getKey()));
+        }
+        for (int probe = 0; probe < 1_000; probe++) {
+            long key = key(random);
+            if (!model.containsKey(key)) {
+                assertNull(map.get(key), "value of " + key);
+                assertFalse(map.containsKey(key));
+            }
+        }
+    }
+}
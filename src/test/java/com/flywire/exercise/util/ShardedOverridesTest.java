@@ -0,0 +1,222 @@
+package com.flywire.exercise.util;
+
+import com.flywire.exercise.model.Employee;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Shard layouts left as a crash part-way through a write or a re-layout would leave them
+class ShardedOverridesTest {
+
+    @TempDir
+    File dataDir;
+
+    @Test
+    void aPartlyWrittenNewLayoutIsDropped() throws IOException {
+        Map<Long, Employee> before = employees(1, 40);
+        open(4).replaceAll(before);
+        // Crashed while writing a layout for 8 shards: shards.tmp holds some of them
+        File partial = new File(dataDir, "shards.tmp");
+        assertTrue(partial.mkdir());
+        Files.write(new File(partial, "0-of-8.json").toPath(), "[]".getBytes(StandardCharsets.UTF_8));
+
+        ShardedOverrides shards = open(4);
+        assertEquals(names(before), names(shards.readAll()));
+        shards.recover();
+        assertFalse(partial.exists());
+        assertFalse(shards.isStale());
+        assertEquals(names(before), names(open(4).readAll()));
+    }
+
+    @Test
+    void aNewLayoutMovedAsideButNotIntoPlaceIsFinished() throws IOException {
+        // Crashed between moving data/shards to shards.old and shards.tmp to data/shards
+        Map<Long, Employee> after = employees(1, 60);
+        open(8).replaceAll(after);
+        File shardsDir = new File(dataDir, "shards");
+        File complete = new File(dataDir, "complete");
+        Files.move(shardsDir.toPath(), complete.toPath());
+        open(4).replaceAll(employees(1, 40));
+        Files.move(shardsDir.toPath(), new File(dataDir, "shards.old").toPath());
+        Files.move(complete.toPath(), new File(dataDir, "shards.tmp").toPath());
+
+        ShardedOverrides shards = open(8);
+        assertTrue(shards.exists());
+        assertEquals(names(after), names(shards.readAll()));
+        shards.recover();
+        assertFalse(new File(dataDir, "shards.old").exists());
+        assertFalse(new File(dataDir, "shards.tmp").exists());
+        assertFalse(shards.isStale());
+        assertEquals(names(after), names(open(8).readAll()));
+    }
+
+    @Test
+    void anOldLayoutLeftAfterTheSwapIsRemoved() throws IOException {
+        Map<Long, Employee> after = employees(1, 60);
+        open(8).replaceAll(after);
+        File oldDir = new File(dataDir, "shards.old");
+        assertTrue(oldDir.mkdir());
+        Files.write(new File(oldDir, "0-of-4.json").toPath(), "[]".getBytes(StandardCharsets.UTF_8));
+
+        ShardedOverrides shards = open(8);
+        shards.recover();
+        assertFalse(oldDir.exists());
+        assertEquals(names(after), names(shards.readAll()));
+    }
+
+    @Test
+    void aShardTempFileLeftByAFailedWriteIsIgnored() throws IOException {
+        Map<Long, Employee> before = employees(1, 40);
+        open(4).replaceAll(before);
+        File shardsDir = new File(dataDir, "shards");
+        Files.write(new File(shardsDir, "2-of-4.json.tmp").toPath(), "[{\"id\":".getBytes(StandardCharsets.UTF_8));
+
+        ShardedOverrides shards = open(4);
+        shards.recover();
+        assertEquals(names(before), names(shards.readAll()));
+        shards.write(employees(41, 41), Collections.singletonList(7L));
+        Map<Long, Employee> expected = new TreeMap<>(before);
+        expected.remove(7L);
+        expected.putAll(employees(41, 41));
+        assertEquals(names(expected), names(open(4).readAll()));
+    }
+
+    @Test
+    void aWriteSpanningShardsLandsInEveryOne() throws IOException {
+        Map<Long, Employee> before = employees(1, 40);
+        ShardedOverrides shards = open(4);
+        shards.replaceAll(before);
+        Map<Long, Employee> upserts = renamed(before, 1, 2, 3, 4, 5, 6);
+        shards.write(upserts, Arrays.asList(7L, 8L));
+        assertEquals(names(applied(before, upserts, 7L, 8L)), names(open(4).readAll()));
+        assertEquals(4, new File(dataDir, "shards").list().length);
+    }
+
+    @Test
+    void aWriteWhoseCommitListIsOnDiskIsFinished() throws IOException {
+        Map<Long, Employee> before = employees(1, 40);
+        Map<Long, Employee> upserts = renamed(before, 1, 2, 3, 4, 5, 6);
+        // Crashed after listing the staged shards, before renaming any of them
+        stage(before, upserts, 7L, true);
+        Map<Long, Employee> after = applied(before, upserts, 7L);
+
+        ShardedOverrides shards = open(4);
+        assertEquals(names(after), names(shards.readAll()));
+        shards.recover();
+        assertEquals(4, new File(dataDir, "shards").list().length);
+        assertEquals(names(after), names(open(4).readAll()));
+    }
+
+    @Test
+    void aWriteWithoutItsCommitListIsDropped() throws IOException {
+        Map<Long, Employee> before = employees(1, 40);
+        // Crashed while staging shards, before they were listed
+        stage(before, renamed(before, 1, 2, 3, 4, 5, 6), 7L, false);
+
+        ShardedOverrides shards = open(4);
+        assertEquals(names(before), names(shards.readAll()));
+        shards.recover();
+        assertEquals(4, new File(dataDir, "shards").list().length);
+        assertEquals(names(before), names(open(4).readAll()));
+
+        // Commit numbers start over, and the dropped ones don't come back with them
+        shards.write(renamed(before, 9), Collections.emptyList());
+        assertEquals(names(applied(before, renamed(before, 9))), names(open(4).readAll()));
+    }
+
+    @Test
+    void aShardedStoreRestartsFromAFinishedSwap() throws IOException {
+        FileUtil store = new FileUtil("sharded", 64, 0, false, dataDir.getPath(), 4, 100, new SimpleMeterRegistry());
+        store.close();
+        File shardsDir = new File(dataDir, "shards");
+        Files.move(shardsDir.toPath(), new File(dataDir, "shards.tmp").toPath(), StandardCopyOption.ATOMIC_MOVE);
+        assertTrue(new File(dataDir, "shards.old").mkdir());
+
+        FileUtil reopened = new FileUtil("sharded", 64, 0, false, dataDir.getPath(), 4, 100, new SimpleMeterRegistry());
+        assertEquals(FileUtilTest.describe(store.getSnapshot()), FileUtilTest.describe(reopened.getSnapshot()));
+        assertTrue(shardsDir.exists());
+        reopened.close();
+    }
+
+    /**
+     * Lays out {@code before} in 4 shards and stages what writing the changes would
+     * make of the shards they touch, as commit 1, listed or not.
+     */
+    private void stage(Map<Long, Employee> before, Map<Long, Employee> upserts, long deleted, boolean listed)
+            throws IOException {
+        open(4).replaceAll(before);
+        File scratch = new File(dataDir, "scratch");
+        ShardedOverrides written = new ShardedOverrides(scratch, 4, FileUtil.createObjectMapper(),
+                new FileMetrics(new SimpleMeterRegistry()));
+        written.replaceAll(before);
+        written.write(upserts, Collections.singletonList(deleted));
+
+        File shardsDir = new File(dataDir, "shards");
+        StringBuilder list = new StringBuilder();
+        for (File file : new File(scratch, "shards").listFiles()) {
+            File current = new File(shardsDir, file.getName());
+            if (!Arrays.equals(Files.readAllBytes(file.toPath()), Files.readAllBytes(current.toPath()))) {
+                Files.copy(file.toPath(), new File(shardsDir, file.getName() + ".1.tmp").toPath());
+                list.append(file.getName()).append('\n');
+            }
+        }
+        assertTrue(list.toString().split("\n").length > 1, "changes should span shards");
+        if (listed) {
+            Files.write(new File(shardsDir, "commit-1").toPath(), list.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static Map<Long, Employee> renamed(Map<Long, Employee> employees, long... ids) {
+        Map<Long, Employee> renamed = new LinkedHashMap<>();
+        for (long id : ids) {
+            Employee employee = new Employee(employees.get(id));
+            employee.setName("Renamed " + id);
+            renamed.put(id, employee);
+        }
+        return renamed;
+    }
+
+    private static Map<Long, Employee> applied(Map<Long, Employee> employees, Map<Long, Employee> upserts,
+                                               long... deletedIds) {
+        Map<Long, Employee> applied = new TreeMap<>(employees);
+        applied.putAll(upserts);
+        for (long id : deletedIds) {
+            applied.remove(id);
+        }
+        return applied;
+    }
+
+    private ShardedOverrides open(int shardCount) {
+        return new ShardedOverrides(dataDir, shardCount, FileUtil.createObjectMapper(),
+                new FileMetrics(new SimpleMeterRegistry()));
+    }
+
+    private static Map<Long, Employee> employees(long from, long to) {
+        Map<Long, Employee> employees = new LinkedHashMap<>();
+        for (long id = from; id <= to; id++) {
+            employees.put(id, new Employee(id, "Employee " + id, "Engineer", true, null, false));
+        }
+        return employees;
+    }
+
+    private static Map<Long, String> names(Map<Long, Employee> employees) {
+        Map<Long, String> names = new TreeMap<>();
+        employees.forEach((id, employee) -> names.put(id, employee.getName()));
+        return names;
+    }
+}
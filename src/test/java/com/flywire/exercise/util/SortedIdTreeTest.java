@@ -0,0 +1,160 @@
+package com.flywire.exercise.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+// Checked against a sorted list of the same (key, id) entries
+class SortedIdTreeTest {
+
+    private static final Comparator<Integer> DESCENDING = Comparator.reverseOrder();
+
+    @Test
+    void randomInsertsAndDeletesMatchASortedList() {
+        Random random = new Random(4);
+        SortedIdTree<Integer> tree = SortedIdTree.empty(DESCENDING);
+        List<Entry> model = new ArrayList<>();
+        for (int step = 0; step < 30_000; step++) {
+            // Few keys, so most entries tie on the key and are ordered by id
+            int key = random.nextInt(40);
+            long id = random.nextInt(3_000);
+            Entry entry = new Entry(key, id);
+            int i = Collections.binarySearch(model, entry);
+            // Grows for the first half, then shrinks back
+            if (random.nextInt(30_000) > step) {
+                SortedIdTree<Integer> updated = tree.with(key, id);
+                if (i >= 0) {
+                    assertSame(tree, updated);
+                } else {
+                    model.add(-(i + 1), entry);
+                }
+                tree = updated;
+            } else {
+                SortedIdTree<Integer> updated = tree.without(key, id);
+                if (i < 0) {
+                    assertSame(tree, updated);
+                } else {
+                    model.remove(i);
+                }
+                tree = updated;
+            }
+            assertEquals(model.size(), tree.size());
+            if (step % 1_000 == 0) {
+                assertMatches(model, tree, random);
+            }
+        }
+        assertMatches(model, tree, random);
+    }
+
+    @Test
+    void aBuiltTreeMatchesAndKeepsUpdating() {
+        Random random = new Random(5);
+        List<Entry> model = new ArrayList<>();
+        for (long id = 0; id < 20_000; id++) {
+            model.add(new Entry(random.nextInt(500), id));
+        }
+        Collections.sort(model);
+        Integer[] keys = new Integer[model.size() + 10];
+        long[] ids = new long[keys.length];
+        for (int i = 0; i < model.size(); i++) {
+            keys[i] = model.get(i).key;
+            ids[i] = model.get(i).id;
+        }
+        SortedIdTree<Integer> tree = SortedIdTree.of(DESCENDING, keys, ids, model.size());
+        assertMatches(model, tree, random);
+
+        for (int step = 0; step < 15_000; step++) {
+            Entry entry = model.remove(random.nextInt(model.size()));
+            tree = tree.without(entry.key, entry.id);
+        }
+        assertMatches(model, tree, random);
+        for (long id = 20_000; id < 25_000; id++) {
+            Entry entry = new Entry(random.nextInt(500), id);
+            model.add(-(Collections.binarySearch(model, entry) + 1), entry);
+            tree = tree.with(entry.key, entry.id);
+        }
+        assertMatches(model, tree, random);
+    }
+
+    @Test
+    void olderVersionsAreLeftUnchanged() {
+        Random random = new Random(6);
+        List<SortedIdTree<Integer>> versions = new ArrayList<>();
+        List<List<Entry>> expected = new ArrayList<>();
+        SortedIdTree<Integer> tree = SortedIdTree.empty(DESCENDING);
+        List<Entry> model = new ArrayList<>();
+        for (int step = 0; step < 5_000; step++) {
+            Entry entry = new Entry(random.nextInt(20), random.nextInt(500));
+            int i = Collections.binarySearch(model, entry);
+            if (i >= 0) {
+                model.remove(i);
+                tree = tree.without(entry.key, entry.id);
+            } else {
+                model.add(-(i + 1), entry);
+                tree = tree.with(entry.key, entry.id);
+            }
+            if (step % 250 == 0) {
+                versions.add(tree);
+                expected.add(new ArrayList<>(model));
+            }
+        }
+        for (int v = 0; v < versions.size(); v++) {
+            assertMatches(expected.get(v), versions.get(v), random);
+        }
+    }
+
+    @Test
+    void emptyTreeLookups() {
+        SortedIdTree<Integer> tree = SortedIdTree.empty(DESCENDING);
+        assertEquals(0, tree.size());
+        assertEquals(-1, tree.indexOf(3, 3));
+        assertEquals(0, tree.lowerBound(3, 3));
+        assertSame(tree, tree.without(3, 3));
+    }
+
+    private static void assertMatches(List<Entry> model, SortedIdTree<Integer> tree, Random random) {
+        assertEquals(model.size(), tree.size());
+        for (int i = 0; i < model.size(); i++) {
+            assertEquals(model.get(i).key, tree.keyAt(i), "key at " + i);
+            assertEquals(model.get(i).id, tree.idAt(i), "id at " + i);
+        }
+        for (int probe = 0; probe < 500; probe++) {
+            Entry entry = new Entry(random.nextInt(600) - 50, random.nextInt(30_000) - 1);
+            int expected = Collections.binarySearch(model, entry);
+            assertEquals(expected, tree.indexOf(entry.key, entry.id), "index of " + entry);
+            assertEquals(expected >= 0 ? expected : -(expected + 1), tree.lowerBound(entry.key, entry.id));
+        }
+        for (int probe = 0; probe < Math.min(200, model.size()); probe++) {
+            int i = random.nextInt(model.size());
+            assertEquals(i, tree.indexOf(model.get(i).key, model.get(i).id));
+        }
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+        final int key;
+        final long id;
+
+        Entry(int key, long id) {
+            this.key = key;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int cmp = DESCENDING.compare(key, other.key);
+            return cmp != 0 ? cmp : Long.compare(id, other.id);
+        }
+
+        @Override
+        public String toString() {
+            return "(" + key + ", " + id + ")";
+        }
+    }
+}